@@ -0,0 +1,105 @@
+package org.sakaiproject.archiver.api;
+
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * Details of the site being archived, and the users in it, that providers need for every file they write. These are looked up once per
+ * archive rather than for every file.
+ *
+ * Get the context for an archive via {@link ArchiverService#getArchiveContext(String)}.
+ *
+ * @since 12.0
+ */
+public interface ArchiveContext {
+
+	/**
+	 * Get the id of the archive
+	 *
+	 * @return
+	 */
+	String getArchiveId();
+
+	/**
+	 * Get the id of the site being archived
+	 *
+	 * @return
+	 */
+	String getSiteId();
+
+	/**
+	 * Get the title of the site being archived
+	 *
+	 * @return
+	 */
+	String getSiteTitle();
+
+	/**
+	 * Get the term (course session) of the site being archived
+	 *
+	 * @return the term or null if the site does not have one
+	 */
+	String getSiteTerm();
+
+	/**
+	 * Get the name of a tool in the site. See {@link ArchiverService#getToolName(String, String)}.
+	 *
+	 * @param toolId the toolId we are looking for
+	 * @return the name of the tool
+	 */
+	String getToolName(String toolId);
+
+	/**
+	 * Get a heading for the top of the html file. See {@link ArchiverService#getSiteHeader(String, String)}.
+	 *
+	 * @param toolId to toolId to lookup the name for
+	 * @return the formatted string
+	 */
+	String getSiteHeader(String toolId);
+
+	/**
+	 * Get the path that a file is archived to, relative to the root of the archive. Names are sanitised and made unique within their
+	 * directory by an {@link ArchivePathPlanner}, and the same arguments always give the same path, so use this with
+	 * {@link ArchivePathPlanner#relativeLink(String, String)} to link between the files you archive. Name anything that can share its name
+	 * with another item, such as a message or an assignment, with {@link ArchivePathPlanner#item(String, String)} here and when archiving
+	 * it.
+	 *
+	 * @param dirName the name of the directory where the content is archived to, as given to {@link ArchiverService}
+	 * @param filename the name of the file
+	 * @param subdirectories the subdirectories within the archive where the file is written
+	 * @return the path, separated by /
+	 */
+	String getArchivePath(String dirName, String filename, String... subdirectories);
+
+	/**
+	 * Get the number of times the site service has been called for this archive
+	 *
+	 * @return
+	 */
+	int getSiteLookups();
+
+	/**
+	 * Get a user. Members of the site are fetched in bulk when the archive starts, and each user is only looked up once per archive, so
+	 * use this rather than the {@link UserDirectoryService} when looking up users for each item you archive.
+	 *
+	 * @param userUuid the id of the user
+	 * @return the user or null if they could not be found
+	 */
+	User getUser(String userUuid);
+
+	/**
+	 * Get the number of user lookups that were answered without going to the {@link UserDirectoryService}
+	 *
+	 * @return
+	 */
+	long getUserHits();
+
+	/**
+	 * Get the number of user lookups that went to the {@link UserDirectoryService}
+	 *
+	 * @return
+	 */
+	long getUserMisses();
+
+}
@@ -1,14 +1,24 @@
 package org.sakaiproject.archiver.api;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.sakaiproject.archiver.dto.Archive;
+import org.sakaiproject.archiver.dto.ProviderResult;
 import org.sakaiproject.archiver.exception.ArchiveAlreadyInProgressException;
 import org.sakaiproject.archiver.exception.ArchiveCancellationException;
 import org.sakaiproject.archiver.exception.ArchiveCompletionException;
 import org.sakaiproject.archiver.exception.ArchiveInitialisationException;
 import org.sakaiproject.archiver.exception.ArchiveNotFoundException;
+import org.sakaiproject.archiver.exception.ArchiveQueueFullException;
 import org.sakaiproject.archiver.exception.ToolsNotSpecifiedException;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
+import org.sakaiproject.content.api.ContentResource;
 
 /**
  * Service for performing an archive. Provides methods that all implementers will need to use to get their content into the aggregated
@@ -20,7 +30,7 @@ import org.sakaiproject.archiver.exception.ToolsNotSpecifiedException;
 public interface ArchiverService {
 
 	/**
-	 * Start creating an archive for this site.
+	 * Start creating an archive for this site. The archive is queued and will start as soon as a slot is free.
 	 *
 	 * @param siteId siteId to archive
 	 * @param userUuid userUuid who started the archive
@@ -31,10 +41,42 @@ public interface ArchiverService {
 	 * @throws {@link ArchiveAlreadyInProgressException} if an archive is already in progress for the given site
 	 * @throws {@link ArchiveInitialisationException} if the archive could not be initialised
 	 * @throws {@link ArchiveCompletionException} if the archive could not be completed properly
+	 * @throws {@link ArchiveQueueFullException} if the archive queue is full
 	 */
 	void startArchive(final String siteId, final String userUuid, final boolean includeStudentData, final String... toolIds)
 			throws ToolsNotSpecifiedException, ArchiveAlreadyInProgressException, ArchiveInitialisationException,
-			ArchiveCompletionException;
+			ArchiveCompletionException, ArchiveQueueFullException;
+
+	/**
+	 * Start creating an incremental archive for this site. Only content that has changed since the base archive was started is included,
+	 * and the archive records which archive it is based on. The base archive must be a complete archive of the same site.
+	 *
+	 * Providers can get the date to compare against via {@link #getModifiedSince(String)}.
+	 *
+	 * @param siteId siteId to archive
+	 * @param userUuid userUuid who started the archive
+	 * @param includeStudentData if student data is to be included
+	 * @param baseArchiveId the id of the archive that this archive builds on
+	 * @param toolIds the id of the tool in the site
+	 *
+	 * @throws {@link ToolsNotSpecifiedException} if no tools are specified
+	 * @throws {@link ArchiveAlreadyInProgressException} if an archive is already in progress for the given site
+	 * @throws {@link ArchiveInitialisationException} if the archive could not be initialised, eg the base archive is not suitable
+	 * @throws {@link ArchiveCompletionException} if the archive could not be completed properly
+	 * @throws {@link ArchiveQueueFullException} if the archive queue is full
+	 */
+	void startIncrementalArchive(final String siteId, final String userUuid, final boolean includeStudentData,
+			final String baseArchiveId, final String... toolIds)
+			throws ToolsNotSpecifiedException, ArchiveAlreadyInProgressException, ArchiveInitialisationException,
+			ArchiveCompletionException, ArchiveQueueFullException;
+
+	/**
+	 * Get the date that content must have changed after to be included in an archive. Providers should skip anything older.
+	 *
+	 * @param archiveId the id of the archive
+	 * @return the date, or null if the archive is a full archive and everything should be included
+	 */
+	Date getModifiedSince(final String archiveId);
 
 	/**
 	 * Tools can call this to add content of a file into the archive
@@ -61,6 +103,80 @@ public interface ArchiverService {
 	void archiveContent(final String archiveId, final String siteId, final String dirName, byte[] content, String filename,
 			final String... subdirectories);
 
+	/**
+	 * Tools can call this to stream the content of a file into the archive, with an optional set of subdirectory. Use this for files
+	 * that are already stored elsewhere, eg in content hosting, so that the content does not need to be held in memory.
+	 *
+	 * @param archiveId the id of the archive that the content is for
+	 * @param siteId that this archive is for
+	 * @param dirName the name of the directory where the content should be archived to
+	 * @param content stream of the content to be archived. This will be closed once the content has been archived.
+	 * @param length the length of the content in bytes, or -1 if not known
+	 * @param filename the name of the file that the content will be archived into. This should include the relevant extension.
+	 * @param subdirectories the subdirectories within the archive where the file will be written. Do not include any path separator, these
+	 *            will be added automatically.
+	 */
+	void archiveContent(final String archiveId, final String siteId, final String dirName, InputStream content, long length,
+			String filename, final String... subdirectories);
+
+	/**
+	 * Tools can call this to stream the content of a content hosting resource into the archive, with an optional set of subdirectory.
+	 * The reference and content type of the resource are recorded in the archive manifest.
+	 *
+	 * @param archiveId the id of the archive that the content is for
+	 * @param siteId that this archive is for
+	 * @param dirName the name of the directory where the content should be archived to
+	 * @param resource the resource to be archived
+	 * @param filename the name of the file that the content will be archived into. This should include the relevant extension.
+	 * @param subdirectories the subdirectories within the archive where the file will be written. Do not include any path separator, these
+	 *            will be added automatically.
+	 */
+	void archiveContent(final String archiveId, final String siteId, final String dirName, ContentResource resource, String filename,
+			final String... subdirectories);
+
+	/**
+	 * Tools can call this to write a file into the archive as it is generated, eg a large html page built up from many records, so that
+	 * the content never needs to be held in memory. The file is added to the archive when the stream is closed, so the stream must always
+	 * be closed. Writing more than the maximum file size fails with an {@link IOException} and the file is not archived.
+	 *
+	 * @param archiveId the id of the archive that the content is for
+	 * @param siteId that this archive is for
+	 * @param dirName the name of the directory where the content should be archived to
+	 * @param filename the name of the file that the content will be archived into. This should include the relevant extension.
+	 * @param subdirectories the subdirectories within the archive where the file will be written. Do not include any path separator, these
+	 *            will be added automatically.
+	 * @return the stream to write the content to
+	 * @throws IOException if the stream could not be opened
+	 */
+	OutputStream openContentStream(final String archiveId, final String siteId, final String dirName, String filename,
+			final String... subdirectories) throws IOException;
+
+	/**
+	 * Check if tools should also archive their records as JSON, alongside the html, for machine readable exports. Tools that support it
+	 * should then write their records with {@link #openRecordStream(String, String, String, String, String...)}.
+	 *
+	 * @return true if JSON should be archived
+	 */
+	boolean isJsonOutputEnabled();
+
+	/**
+	 * Tools can call this to write a collection of records into the archive as JSON, one at a time, so that large collections never need
+	 * to be held in memory. Depending on configuration the file is either a JSON array with a <code>.json</code> extension or newline
+	 * delimited JSON with a <code>.ndjson</code> extension. The file is added to the archive when the writer is closed, so the writer must
+	 * always be closed.
+	 *
+	 * @param archiveId the id of the archive that the content is for
+	 * @param siteId that this archive is for
+	 * @param dirName the name of the directory where the content should be archived to
+	 * @param name the name of the file that the records will be archived into, without an extension
+	 * @param subdirectories the subdirectories within the archive where the file will be written. Do not include any path separator, these
+	 *            will be added automatically.
+	 * @return the writer to add the records to
+	 * @throws IOException if the stream could not be opened
+	 */
+	JsonRecordWriter openRecordStream(final String archiveId, final String siteId, final String dirName, String name,
+			final String... subdirectories) throws IOException;
+
 	/**
 	 * Get an archive for the given archiveId
 	 *
@@ -78,6 +194,14 @@ public interface ArchiverService {
 	 */
 	Archive getLatest(final String siteId);
 
+	/**
+	 * Get the latest complete archive for the given siteId. This is the archive that an incremental archive would be based on.
+	 *
+	 * @param siteId the siteId to get the archive for
+	 * @return the {@link Archive} dto or null if none;
+	 */
+	Archive getLatestComplete(final String siteId);
+
 	/**
 	 * Get a list of archives for the given site
 	 *
@@ -88,6 +212,43 @@ public interface ArchiverService {
 	 */
 	List<Archive> getArchives(final String siteId, final int max);
 
+	/**
+	 * Get a page of archives for the given site, newest first
+	 *
+	 * @param siteId the siteId to get the archives for. Can be blank to get for all sites however you must be a superuser to call it this
+	 *            way.
+	 * @param first the index of the first archive to return
+	 * @param count the maximum number to return
+	 * @return List of {@link Archive}
+	 */
+	List<Archive> getArchives(final String siteId, final int first, final int count);
+
+	/**
+	 * Count the archives for the given site
+	 *
+	 * @param siteId the siteId to count the archives for. Can be blank to count for all sites however you must be a superuser to call it
+	 *            this way.
+	 * @return the number of archives, or 0 if not permitted
+	 */
+	long countArchives(final String siteId);
+
+	/**
+	 * Get the results of each provider that ran as part of an archive, including how long it took and how much it wrote
+	 *
+	 * @param archiveId the id of the archive
+	 * @return List of {@link ProviderResult}, in the order they started. Empty if the archive has not run yet.
+	 */
+	List<ProviderResult> getProviderResults(final String archiveId);
+
+	/**
+	 * Get the results of each provider that ran as part of a set of archives, eg for a page of history, in a single lookup
+	 *
+	 * @param archiveIds the ids of the archives
+	 * @return map of archiveId to its List of {@link ProviderResult}, in the order they started. Archives that have not run yet are not
+	 *         in the map.
+	 */
+	Map<String, List<ProviderResult>> getProviderResults(final Collection<String> archiveIds);
+
 	/**
 	 * Get a heading for the top of the html file, in the form: "Site name (course session): Tool name"
 	 *
@@ -113,11 +274,50 @@ public interface ArchiverService {
 	String getToolName(String siteId, String toolId);
 
 	/**
-	 * Cancel an archive.
+	 * Get the site details for an archive. For an archive that is running these are looked up once and shared by all providers, so
+	 * providers should use this rather than {@link #getSiteHeader(String, String)} for every file they write.
+	 *
+	 * @param archiveId the id of the archive
+	 * @return the {@link ArchiveContext} for the archive
+	 */
+	ArchiveContext getArchiveContext(String archiveId);
+
+	/**
+	 * Cancel an archive. Providers that are running are interrupted, nothing more is written and the files for the archive are removed.
 	 *
 	 * @param archiveId the id of the archive to cancel
-	 * @throws {@link ArchiveCancellationException} if the archive could not be cancelled
+	 * @throws {@link ArchiveCancellationException} if the archive could not be cancelled, eg it has finished or is being finalised
 	 */
 	void cancelArchive(final String archiveId) throws ArchiveCancellationException;
 
+	/**
+	 * Check if an archive has been cancelled whilst it is running. Providers that loop over a lot of content should check this as they go
+	 * and stop early if it returns true. Any content sent to the archive after it has been cancelled is ignored.
+	 *
+	 * @param archiveId the id of the archive
+	 * @return true if the archive is running on this node and has been cancelled
+	 */
+	boolean isArchiveCancelled(final String archiveId);
+
+	/**
+	 * Check if an item was archived before the archive was interrupted by a restart, so that a provider can skip it when the archive is
+	 * resumed. Providers that archive a lot of separate items, eg resources or assignments, can opt in to this by calling
+	 * {@link #checkpointItem(String, String, String)} as they finish each item.
+	 *
+	 * @param archiveId the id of the archive
+	 * @param toolId the tool the item belongs to
+	 * @param itemId the id of the item, eg the id of a resource
+	 * @return true if the item has already been archived and everything written for it is still in the archive
+	 */
+	boolean isItemArchived(final String archiveId, final String toolId, final String itemId);
+
+	/**
+	 * Record that an item has been archived, once all of the content for it has been written
+	 *
+	 * @param archiveId the id of the archive
+	 * @param toolId the tool the item belongs to
+	 * @param itemId the id of the item, eg the id of a resource
+	 */
+	void checkpointItem(final String archiveId, final String toolId, final String itemId);
+
 }
@@ -5,6 +5,11 @@ package org.sakaiproject.archiver.api;
  */
 public enum Status {
 
+	/**
+	 * Archive is waiting for a free slot before it can start
+	 */
+	QUEUED,
+
 	/**
 	 * Archive has been started
 	 */
@@ -28,6 +33,11 @@ public enum Status {
 	/**
 	 * Archive failed
 	 */
-	FAILED;
+	FAILED,
+
+	/**
+	 * Archive has been removed by the retention policy
+	 */
+	EXPIRED;
 
 }
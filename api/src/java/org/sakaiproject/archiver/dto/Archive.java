@@ -52,6 +52,22 @@ public class Archive implements Comparable<Archive>, Serializable {
 	@Setter
 	private String zipPath;
 
+	/**
+	 * The archive that this archive is an increment of, or null if it is a full archive
+	 */
+	@Getter
+	@Setter
+	private String baseArchiveId;
+
+	/**
+	 * Check if this archive only contains what changed since its base archive
+	 *
+	 * @return true/false
+	 */
+	public boolean isIncremental() {
+		return this.baseArchiveId != null;
+	}
+
 	@Override
 	public String toString() {
 		return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
@@ -0,0 +1,75 @@
+package org.sakaiproject.archiver.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.sakaiproject.archiver.api.Status;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * DTO for the result of a single provider within an archive
+ *
+ * @since 12.0
+ */
+public class ProviderResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	@Setter
+	private String archiveId;
+
+	@Getter
+	@Setter
+	private String provider;
+
+	@Getter
+	@Setter
+	private String toolId;
+
+	@Getter
+	@Setter
+	private Status status;
+
+	@Getter
+	@Setter
+	private Date startDate;
+
+	@Getter
+	@Setter
+	private Date endDate;
+
+	@Getter
+	@Setter
+	private long bytesWritten;
+
+	@Getter
+	@Setter
+	private int fileCount;
+
+	@Getter
+	@Setter
+	private String error;
+
+	/**
+	 * Get how long the provider took to run
+	 *
+	 * @return duration in milliseconds or 0 if it has not finished
+	 */
+	public long getDuration() {
+		if (this.startDate == null || this.endDate == null) {
+			return 0;
+		}
+		return this.endDate.getTime() - this.startDate.getTime();
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
+	}
+
+}
@@ -9,13 +9,13 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
 import org.hibernate.annotations.GenericGenerator;
-import org.hibernate.annotations.Index;
 import org.sakaiproject.archiver.api.Status;
 
 import lombok.Getter;
@@ -25,12 +25,17 @@ import lombok.ToString;
 /**
  * Persistent entity for the archive records
  *
+ * The archives of a site are looked up by their start date, and archives in progress by their status, so both are indexed.
+ *
  * @since 12.0
  * @author Steve Swinsburg (steve.swinsburg@gmail.com)
  */
 @ToString(includeFieldNames = true)
 @Entity
-@Table(name = "archiver_archives")
+@Table(name = "archiver_archives", indexes = {
+		@Index(name = "archiver_site_start_date_idx", columnList = "site_id, start_date"),
+		@Index(name = "archiver_status_idx", columnList = "status")
+})
 public class ArchiveEntity implements Serializable {
 
 	private static final long serialVersionUID = 1L;
@@ -46,7 +51,6 @@ public class ArchiveEntity implements Serializable {
 	@Getter
 	@Setter
 	@Column(name = "site_id", length = 50, nullable = false)
-	@Index(name = "site_id_idx")
 	private String siteId;
 
 	@Getter
@@ -76,6 +80,16 @@ public class ArchiveEntity implements Serializable {
 	@Column(name = "zip_path", length = 2000, nullable = true)
 	private String zipPath;
 
+	@Getter
+	@Setter
+	@Column(name = "server_id", length = 255, nullable = true)
+	private String serverId;
+
+	@Getter
+	@Setter
+	@Column(name = "base_archive_id", length = 36, nullable = true)
+	private String baseArchiveId;
+
 	@Getter
 	@Setter
 	@Column(name = "start_date", nullable = false)
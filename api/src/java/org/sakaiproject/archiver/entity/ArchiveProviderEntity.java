@@ -0,0 +1,92 @@
+package org.sakaiproject.archiver.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.sakaiproject.archiver.api.Status;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Persistent entity for the result of running a single provider as part of an archive
+ *
+ * @since 12.0
+ */
+@ToString(includeFieldNames = true)
+@Entity
+@Table(name = "archiver_providers", indexes = @Index(name = "archive_id_idx", columnList = "archive_id"))
+public class ArchiveProviderEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	@Setter
+	@Id
+	@Column(name = "id", length = 36)
+	@GeneratedValue(generator = "uuid")
+	@GenericGenerator(name = "uuid", strategy = "uuid2")
+	private String id;
+
+	@Getter
+	@Setter
+	@Column(name = "archive_id", length = 36, nullable = false)
+	private String archiveId;
+
+	@Getter
+	@Setter
+	@Column(name = "provider", length = 255, nullable = false)
+	private String provider;
+
+	@Getter
+	@Setter
+	@Column(name = "tool_id", length = 99, nullable = false)
+	private String toolId;
+
+	@Getter
+	@Setter
+	@Column(name = "status", nullable = true)
+	@Enumerated(EnumType.STRING)
+	private Status status;
+
+	@Getter
+	@Setter
+	@Column(name = "start_date", nullable = false)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date startDate;
+
+	@Getter
+	@Setter
+	@Column(name = "end_date", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date endDate;
+
+	@Getter
+	@Setter
+	@Column(name = "bytes_written", nullable = false)
+	private long bytesWritten;
+
+	@Getter
+	@Setter
+	@Column(name = "file_count", nullable = false)
+	private int fileCount;
+
+	@Getter
+	@Setter
+	@Column(name = "error", length = 2000, nullable = true)
+	private String error;
+
+}
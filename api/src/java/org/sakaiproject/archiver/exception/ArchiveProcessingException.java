@@ -6,6 +6,10 @@ package org.sakaiproject.archiver.exception;
 public class ArchiveProcessingException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 
+	public ArchiveProcessingException(final String message) {
+		super(message);
+	}
+
 	public ArchiveProcessingException(final String message, final Throwable e) {
 		super(message, e);
 	}
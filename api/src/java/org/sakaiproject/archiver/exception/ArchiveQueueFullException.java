@@ -0,0 +1,13 @@
+package org.sakaiproject.archiver.exception;
+
+/**
+ * Exception indicating that the archive queue is full and no more archives can be accepted right now
+ */
+public class ArchiveQueueFullException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public ArchiveQueueFullException(final String message) {
+		super(message);
+	}
+
+}
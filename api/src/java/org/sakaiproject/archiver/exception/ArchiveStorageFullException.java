@@ -0,0 +1,14 @@
+package org.sakaiproject.archiver.exception;
+
+/**
+ * Exception indicating that the archives have used all of the disk space allowed and no more archives can be accepted until some are
+ * removed. This is a kind of full queue, so callers that handle a full queue handle this too.
+ */
+public class ArchiveStorageFullException extends ArchiveQueueFullException {
+	private static final long serialVersionUID = 1L;
+
+	public ArchiveStorageFullException(final String message) {
+		super(message);
+	}
+
+}
@@ -1,9 +1,12 @@
 package org.sakaiproject.archiver.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.sakaiproject.archiver.api.ArchiverService;
+import org.sakaiproject.archiver.api.Status;
 import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.entity.ArchiveProviderEntity;
 
 /**
  * DAO for the Archiver. This is not part of the API and you should not use it. Use {@link ArchiverService} instead.
@@ -11,7 +14,7 @@ import org.sakaiproject.archiver.entity.ArchiveEntity;
 public interface ArchiverPersistenceService {
 
 	/**
-	 * Create a new archive
+	 * Create a new archive. It will be in the {@link Status#QUEUED} state until it is started.
 	 *
 	 * @param siteId
 	 * @param userUuid
@@ -28,13 +31,22 @@ public interface ArchiverPersistenceService {
 	ArchiveEntity update(ArchiveEntity entity);
 
 	/**
-	 * Get the latest archive for the given site. Return null if none exists
+	 * Get the latest archive for the given site, which is the one that started last. Return null if none exists
 	 *
 	 * @param siteId
 	 * @return
 	 */
 	ArchiveEntity getLatest(String siteId);
 
+	/**
+	 * Get the latest archive for the given site that is in the given status. Return null if none exists
+	 *
+	 * @param siteId
+	 * @param status the {@link Status} the archive must be in
+	 * @return
+	 */
+	ArchiveEntity getLatest(String siteId, Status status);
+
 	/**
 	 * Get an archive by its id. Returns null if none exists by that id.
 	 *
@@ -53,4 +65,73 @@ public interface ArchiverPersistenceService {
 	 */
 	List<ArchiveEntity> getBySiteId(String siteId, int max);
 
+	/**
+	 * Get a page of archives by the associated siteId ordered by date descending. The siteId can be left blank to get archives for all
+	 * sites.
+	 *
+	 * @param siteId the id to lookup the archives for
+	 * @param first the index of the first archive to return
+	 * @param count the maximum number to return
+	 * @return List of {@link ArchiveEntity} or empty list if none exist
+	 */
+	List<ArchiveEntity> getBySiteId(String siteId, int first, int count);
+
+	/**
+	 * Count the archives for the associated siteId. The siteId can be left blank to count archives for all sites.
+	 *
+	 * @param siteId the id to count the archives for
+	 * @return the number of archives
+	 */
+	long countBySiteId(String siteId);
+
+	/**
+	 * Get the ids of the sites that have archives, in order, a page at a time
+	 *
+	 * @param after the last siteId of the previous page, or null for the first page
+	 * @param count the maximum number to return
+	 * @return List of siteIds or empty list if there are no more
+	 */
+	List<String> getSiteIds(String after, int count);
+
+	/**
+	 * Get all archives in the given status, in no particular order.
+	 *
+	 * @param status the {@link Status} to lookup the archives for
+	 * @return List of {@link ArchiveEntity} or empty list if none exist
+	 */
+	List<ArchiveEntity> findByStatus(Status status);
+
+	/**
+	 * Get the archives for the given site that are queued or started, in no particular order. There should be at most one.
+	 *
+	 * @param siteId the id of the site
+	 * @return List of {@link ArchiveEntity} or empty list if none are in progress
+	 */
+	List<ArchiveEntity> findInProgress(String siteId);
+
+	/**
+	 * Save the result of running a provider for an archive. If the provider has already run for the archive, eg before the archive was
+	 * interrupted and resumed, its earlier result is replaced.
+	 *
+	 * @param entity the result to be persisted
+	 * @return the persisted entity
+	 */
+	ArchiveProviderEntity saveProviderResult(ArchiveProviderEntity entity);
+
+	/**
+	 * Get the results of each provider that ran for an archive, in the order they started
+	 *
+	 * @param archiveId the id of the archive
+	 * @return List of {@link ArchiveProviderEntity} or empty list if none exist
+	 */
+	List<ArchiveProviderEntity> getProviderResults(String archiveId);
+
+	/**
+	 * Get the results of each provider that ran for a set of archives in a single query, eg for a page of history
+	 *
+	 * @param archiveIds the ids of the archives
+	 * @return List of {@link ArchiveProviderEntity} for all of the archives, in the order they started, or empty list if none exist
+	 */
+	List<ArchiveProviderEntity> getProviderResults(Collection<String> archiveIds);
+
 }
@@ -0,0 +1,267 @@
+package org.sakaiproject.archiver.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Plans the paths that files are written to within an archive.
+ *
+ * Each name is sanitised with {@link Sanitiser} and shortened to fit within filesystem limits. If it then clashes with a different name
+ * in the same directory, ignoring case as some filesystems do, it is given a numbered suffix. For example two topics called "Week 1?" and
+ * "Week 1!" are planned as "Week 1_" and "Week 1_ (2)" rather than one overwriting the other.
+ *
+ * Names are remembered once they are planned, so the same names always give the same path and a path can be planned to link to a file
+ * before or after the file is archived. Names are given their suffixes in the order they are first planned. Items that can share a name,
+ * such as two messages called "Re: Question", should be named with {@link #item(String, String)} so that each is planned by its id and
+ * gets its own path.
+ *
+ * One planner is used for each archive. Providers run concurrently so this is safe to use from multiple threads.
+ *
+ * As suffixes depend on the order that names are planned in, a planner can be restored by planning the same names again in the same
+ * order. A listener can be set to record the names of each path that planned anything new.
+ */
+public class ArchivePathPlanner {
+
+	/**
+	 * Default maximum length of each name in a path
+	 */
+	public static final int DEFAULT_MAX_NAME_LENGTH = 100;
+
+	/**
+	 * Shortest maximum name length that leaves room for a suffix and an extension
+	 */
+	public static final int MIN_MAX_NAME_LENGTH = 20;
+
+	// extensions longer than this are treated as part of the name when shortening
+	private static final int MAX_EXTENSION_LENGTH = 10;
+
+	// separates the id of an item from its name, and cannot be part of either
+	private static final char ID_SEPARATOR = '\0';
+
+	private final int maxNameLength;
+
+	private final Directory root = new Directory();
+
+	// number of names planned so far, to tell if a path planned anything new
+	private int planned = 0;
+
+	private Consumer<String[]> listener;
+
+	/**
+	 * Create a planner with the default maximum name length
+	 */
+	public ArchivePathPlanner() {
+		this(DEFAULT_MAX_NAME_LENGTH);
+	}
+
+	/**
+	 * Create a planner
+	 *
+	 * @param maxNameLength the maximum length of each name in a path, at least {@link #MIN_MAX_NAME_LENGTH}
+	 */
+	public ArchivePathPlanner(final int maxNameLength) {
+		if (maxNameLength < MIN_MAX_NAME_LENGTH) {
+			throw new IllegalArgumentException("Maximum name length must be at least " + MIN_MAX_NAME_LENGTH);
+		}
+		this.maxNameLength = maxNameLength;
+	}
+
+	/**
+	 * Set the listener that is given the names of each path that plans anything new, in the order they are planned
+	 *
+	 * @param listener the listener, or null for none. It is called whilst the planner is locked so it must be quick.
+	 */
+	public synchronized void setListener(final Consumer<String[]> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Plan the path of a file
+	 *
+	 * @param names the name of each directory in the path, followed by the name of the file. Blank names are skipped.
+	 * @return the planned name of each directory, followed by the planned name of the file
+	 */
+	public synchronized String[] plan(final String... names) {
+		int last = names.length - 1;
+		while (last >= 0 && StringUtils.isBlank(names[last])) {
+			last--;
+		}
+
+		final int before = this.planned;
+		final List<String> path = new ArrayList<>(last + 1);
+		Directory directory = this.root;
+		for (int i = 0; i <= last; i++) {
+			if (StringUtils.isBlank(names[i])) {
+				continue;
+			}
+			final Entry entry = directory.plan(names[i], i == last);
+			path.add(entry.name);
+			if (i < last) {
+				directory = entry.getDirectory();
+			}
+		}
+		if (this.listener != null && this.planned != before) {
+			this.listener.accept(names.clone());
+		}
+		return path.toArray(new String[path.size()]);
+	}
+
+	/**
+	 * Name an item so that it is planned by its id as well as its name. Different items with the same name are then planned as different
+	 * paths, whilst the same item always gives the same path. Use it wherever the item is named, for the file or directory that is written
+	 * as well as for any links to it.
+	 *
+	 * @param id the id of the item, or null to plan by name alone
+	 * @param name the name of the item
+	 * @return the name to plan the item with
+	 */
+	public static String item(final String id, final String name) {
+		return (id == null) ? name : id + ID_SEPARATOR + StringUtils.defaultString(name);
+	}
+
+	/**
+	 * Get the relative link from one file in an archive to another, eg for an href
+	 *
+	 * @param from the path of the file that the link is in, separated by /
+	 * @param to the path of the file that is linked to, separated by /
+	 * @return the link, eg <code>../attachments/file.pdf</code>
+	 */
+	public static String relativeLink(final String from, final String to) {
+		final String[] fromNames = StringUtils.split(from, '/');
+		final String[] toNames = StringUtils.split(to, '/');
+
+		// only the directories of the file the link is in are compared
+		int common = 0;
+		while (common < fromNames.length - 1 && common < toNames.length - 1 && fromNames[common].equals(toNames[common])) {
+			common++;
+		}
+
+		final StringBuilder link = new StringBuilder();
+		for (int i = common; i < fromNames.length - 1; i++) {
+			link.append("../");
+		}
+		if (link.length() == 0) {
+			link.append("./");
+		}
+		for (int i = common; i < toNames.length; i++) {
+			link.append(toNames[i]);
+			if (i < toNames.length - 1) {
+				link.append('/');
+			}
+		}
+		return link.toString();
+	}
+
+	/**
+	 * Sanitise a name and make sure it is not empty and does not refer to the current or parent directory. Trailing dots and spaces are
+	 * removed as some filesystems drop them.
+	 *
+	 * @param name
+	 * @return
+	 */
+	private static String clean(final String name) {
+		final String sanitised = Sanitiser.sanitise(StringUtils.stripEnd(withoutId(name).trim(), ". "));
+		return (sanitised.isEmpty() || StringUtils.containsOnly(sanitised, '.')) ? "_" : sanitised;
+	}
+
+	/**
+	 * Get the name of an item without the id it was named with, if any
+	 *
+	 * @param name
+	 * @return
+	 */
+	private static String withoutId(final String name) {
+		final int separator = name.indexOf(ID_SEPARATOR);
+		return (separator < 0) ? name : name.substring(separator + 1);
+	}
+
+	/**
+	 * Get the position of the extension in the name of a file, if it has a short one
+	 *
+	 * @param name
+	 * @param file if the name is of a file rather than a directory
+	 * @return the position of the dot or the length of the name if it has no extension
+	 */
+	private static int extensionStart(final String name, final boolean file) {
+		final int dot = name.lastIndexOf('.');
+		return (file && dot > 0 && name.length() - dot <= MAX_EXTENSION_LENGTH) ? dot : name.length();
+	}
+
+	/**
+	 * Build a name from the start of a base name, a suffix and an extension so that it fits within the maximum length
+	 *
+	 * @param name the cleaned name
+	 * @param suffix the suffix to add before the extension, may be empty
+	 * @param file if the name is of a file rather than a directory
+	 * @return
+	 */
+	private String fit(final String name, final String suffix, final boolean file) {
+		if (suffix.isEmpty() && name.length() <= this.maxNameLength) {
+			return name;
+		}
+		final int dot = extensionStart(name, file);
+		final String extension = name.substring(dot);
+		final int room = this.maxNameLength - suffix.length() - extension.length();
+		final String base = StringUtils.stripEnd(name.substring(0, Math.min(dot, room)), ". ");
+		return (base.isEmpty() ? "_" : base) + suffix + extension;
+	}
+
+	/**
+	 * A directory in the archive and the names that have been planned in it
+	 */
+	private final class Directory {
+
+		// names as they were given, to what they were planned as
+		private final Map<String, Entry> entries = new HashMap<>();
+
+		// planned names in lower case
+		private final Set<String> taken = new HashSet<>();
+
+		Entry plan(final String name, final boolean file) {
+			Entry entry = this.entries.get(name);
+			if (entry == null) {
+				entry = new Entry(unique(clean(name), file));
+				this.entries.put(name, entry);
+				ArchivePathPlanner.this.planned++;
+			}
+			return entry;
+		}
+
+		private String unique(final String name, final boolean file) {
+			String planned = fit(name, "", file);
+			for (int n = 2; !this.taken.add(planned.toLowerCase(Locale.ROOT)); n++) {
+				planned = fit(name, " (" + n + ")", file);
+			}
+			return planned;
+		}
+	}
+
+	/**
+	 * A planned name, which is also a directory if anything is planned within it
+	 */
+	private final class Entry {
+
+		private final String name;
+
+		private Directory directory;
+
+		Entry(final String name) {
+			this.name = name;
+		}
+
+		Directory getDirectory() {
+			if (this.directory == null) {
+				this.directory = new Directory();
+			}
+			return this.directory;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.sakaiproject.archiver.util;
+
+/**
+ * Combines the CRC-32 of two blocks of data into the CRC-32 of the blocks joined together, without needing the data. This is a port of
+ * crc32_combine from zlib and lets chunks of a file be checksummed in parallel.
+ */
+class Crc32Combine {
+
+	private Crc32Combine() {
+	}
+
+	/**
+	 * Combine two crcs
+	 *
+	 * @param crc1 crc of the first block
+	 * @param crc2 crc of the second block
+	 * @param len2 length of the second block
+	 * @return the crc of the first block followed by the second
+	 */
+	static long combine(long crc1, final long crc2, long len2) {
+
+		if (len2 <= 0) {
+			return crc1;
+		}
+
+		final long[] even = new long[32];
+		final long[] odd = new long[32];
+
+		// operator for one zero bit in odd
+		odd[0] = 0xedb88320L;
+		long row = 1;
+		for (int n = 1; n < 32; n++) {
+			odd[n] = row;
+			row <<= 1;
+		}
+
+		// operator for two zero bits in even, then four zero bits in odd
+		square(even, odd);
+		square(odd, even);
+
+		// apply len2 zeros to crc1, the first square puts the operator for one zero byte in even
+		do {
+			square(even, odd);
+			if ((len2 & 1) != 0) {
+				crc1 = times(even, crc1);
+			}
+			len2 >>= 1;
+			if (len2 == 0) {
+				break;
+			}
+
+			square(odd, even);
+			if ((len2 & 1) != 0) {
+				crc1 = times(odd, crc1);
+			}
+			len2 >>= 1;
+		} while (len2 != 0);
+
+		return crc1 ^ crc2;
+	}
+
+	private static long times(final long[] mat, long vec) {
+		long sum = 0;
+		int i = 0;
+		while (vec != 0) {
+			if ((vec & 1) != 0) {
+				sum ^= mat[i];
+			}
+			vec >>>= 1;
+			i++;
+		}
+		return sum;
+	}
+
+	private static void square(final long[] square, final long[] mat) {
+		for (int n = 0; n < 32; n++) {
+			square[n] = times(mat, mat[n]);
+		}
+	}
+}
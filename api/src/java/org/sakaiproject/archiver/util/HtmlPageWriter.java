@@ -0,0 +1,191 @@
+package org.sakaiproject.archiver.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Writes a html page, with the same styling as {@link Htmlifier}, straight to a stream so the page is never held in memory. Typically
+ * the stream is from {@link org.sakaiproject.archiver.api.ArchiverService#openContentStream}, so the page is added to the archive when
+ * this is closed:
+ *
+ * <pre>
+ * try (HtmlPageWriter page = new HtmlPageWriter(archiverService.openContentStream(...), header)) {
+ * 	page.append("&lt;h2&gt;").appendText(title).append("&lt;/h2&gt;");
+ * }
+ * </pre>
+ *
+ * The page is always written as UTF-8. Html fragments given to {@link #append(String)} are written as is, anything that is plain text
+ * should go through {@link #appendText(String)} so it is escaped.
+ */
+public class HtmlPageWriter implements Closeable {
+
+	private static final byte[] HTML_START = Htmlifier.HTML_START.getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] HTML_END = Htmlifier.HTML_END.getBytes(StandardCharsets.UTF_8);
+
+	private final OutputStream out;
+
+	private final CountingOutputStream counter;
+
+	private final Writer writer;
+
+	private boolean closed;
+
+	/**
+	 * Start a page. If the start of the page can't be written the stream is closed.
+	 *
+	 * @param out where to write the page, which is closed when the page is closed
+	 * @param heading the heading for the page, or null for none. This is escaped.
+	 * @throws IOException if the page could not be written
+	 */
+	public HtmlPageWriter(final OutputStream out, final String heading) throws IOException {
+		// the bytes are counted above the stream's buffer so that the count can be brought up to date without writing to the stream
+		this.out = new BufferedOutputStream(out, 16 * 1024);
+		this.counter = new CountingOutputStream(this.out);
+		this.writer = new BufferedWriter(new OutputStreamWriter(this.counter, StandardCharsets.UTF_8));
+		try {
+			this.counter.write(HTML_START);
+			if (StringUtils.isNotBlank(heading)) {
+				append("<h1>").appendText(heading).append("</h1>");
+			}
+		} catch (final IOException | RuntimeException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Add a html fragment to the page. This is not escaped.
+	 *
+	 * @param html the html, null is ignored
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public HtmlPageWriter append(final String html) throws IOException {
+		if (html != null) {
+			this.writer.write(html);
+		}
+		return this;
+	}
+
+	/**
+	 * Add some text to the page, escaping anything that has a meaning in html
+	 *
+	 * @param text the text, null is ignored
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public HtmlPageWriter appendText(final String text) throws IOException {
+		if (text == null) {
+			return this;
+		}
+		final int length = text.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			final String entity = getEntity(text.charAt(i));
+			if (entity != null) {
+				this.writer.write(text, start, i - start);
+				this.writer.write(entity);
+				start = i + 1;
+			}
+		}
+		this.writer.write(text, start, length - start);
+		return this;
+	}
+
+	/**
+	 * Add a table of the fields of an object to the page, see {@link HtmlRenderer}
+	 *
+	 * @param object the object
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public HtmlPageWriter appendObject(final Object object) throws IOException {
+		HtmlRenderer.render(object, this.writer);
+		return this;
+	}
+
+	/**
+	 * Get the number of bytes in the page so far, including anything that is still buffered. The end of the page is not included.
+	 *
+	 * @return the size in bytes
+	 * @throws IOException if buffered content could not be written
+	 */
+	public long getSize() throws IOException {
+		this.writer.flush();
+		return this.counter.count;
+	}
+
+	/**
+	 * Finish the page and close the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.writer.flush();
+			this.counter.write(HTML_END);
+			this.out.flush();
+		} finally {
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Counts the bytes written through it. Flushing stops here, as the count is brought up to date by flushing the writer and that should
+	 * not flush the stream as well. The stream is flushed when the page is closed.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+		@Override
+		public void flush() {
+			// see above
+		}
+	}
+
+	private static String getEntity(final char c) {
+		switch (c) {
+			case '&':
+				return "&amp;";
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			case '"':
+				return "&quot;";
+			case '\'':
+				return "&#39;";
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package org.sakaiproject.archiver.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.SystemUtils;
+
+/**
+ * Renders objects as html tables of their fields, with a nested table for any field that is itself an object.
+ *
+ * The fields of each class are looked up once and read through {@link MethodHandle}s from then on, so rendering many objects of the same
+ * class does not repeat the reflection. Html is appended straight to the output rather than built up in intermediate strings.
+ *
+ * Static and transient fields are skipped. Strings, primitives, enums, dates and other JDK types are written as their string value,
+ * arrays and collections as their elements separated by commas, and null as <code>&lt;null&gt;</code>.
+ */
+public class HtmlRenderer {
+
+	private HtmlRenderer() {
+	}
+
+	private static final String TABLE_START = "<table class=\"table table-bordered table-condensed table-sm\">" + SystemUtils.LINE_SEPARATOR
+			+ "<thead><tr><th>Field</th><th>Data</th></tr></thead><tbody><tr><td>";
+
+	private static final String FIELD_SEPARATOR = "</td></tr>" + SystemUtils.LINE_SEPARATOR + "<tr><td>";
+
+	private static final String NAME_VALUE_SEPARATOR = "</td><td>";
+
+	private static final String TABLE_END = "</td></tr>" + SystemUtils.LINE_SEPARATOR + "</tbody></table>";
+
+	private static final String NULL_TEXT = "<null>";
+
+	private static final String ARRAY_SEPARATOR = ",";
+
+	// every getter is adapted to this type so it can be called with invokeExact
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final ClassValue<List<Accessor>> PLANS = new ClassValue<List<Accessor>>() {
+		@Override
+		protected List<Accessor> computeValue(final Class<?> type) {
+			return plan(type);
+		}
+	};
+
+	/**
+	 * Render an object as a html table
+	 *
+	 * @param object the object to render
+	 * @return the html
+	 */
+	public static String render(final Object object) {
+		final StringBuilder sb = new StringBuilder();
+		try {
+			render(object, sb);
+		} catch (final IOException e) {
+			// StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Render an object as a html table
+	 *
+	 * @param object the object to render
+	 * @param out where to write the html
+	 * @throws IOException if the html could not be written
+	 */
+	public static void render(final Object object, final Appendable out) throws IOException {
+		if (object == null) {
+			out.append(NULL_TEXT);
+			return;
+		}
+		renderTable(object, out, Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	/**
+	 * Write the table for an object
+	 *
+	 * @param object the object
+	 * @param out where to write it
+	 * @param rendering the objects that are already being rendered further up, to stop cycles
+	 * @throws IOException
+	 */
+	private static void renderTable(final Object object, final Appendable out, final Set<Object> rendering) throws IOException {
+		rendering.add(object);
+
+		out.append(TABLE_START);
+		boolean first = true;
+		for (final Accessor accessor : PLANS.get(object.getClass())) {
+			if (!first) {
+				out.append(FIELD_SEPARATOR);
+			}
+			first = false;
+			out.append(accessor.name).append(NAME_VALUE_SEPARATOR);
+			renderValue(accessor.get(object), out, rendering);
+		}
+		out.append(TABLE_END);
+
+		rendering.remove(object);
+	}
+
+	/**
+	 * Write the value of a field
+	 *
+	 * @param value the value
+	 * @param out where to write it
+	 * @param rendering the objects that are already being rendered further up, to stop cycles
+	 * @throws IOException
+	 */
+	private static void renderValue(final Object value, final Appendable out, final Set<Object> rendering) throws IOException {
+		if (value == null) {
+			out.append(NULL_TEXT);
+		} else if (value instanceof Collection) {
+			renderElements(((Collection<?>) value).toArray(), out, rendering);
+		} else if (value.getClass().isArray()) {
+			renderArray(value, out, rendering);
+		} else if (isValue(value.getClass())) {
+			out.append(String.valueOf(value));
+		} else if (rendering.contains(value)) {
+			out.append(ObjectUtils.identityToString(value));
+		} else {
+			renderTable(value, out, rendering);
+		}
+	}
+
+	private static void renderArray(final Object array, final Appendable out, final Set<Object> rendering) throws IOException {
+		if (array instanceof Object[]) {
+			renderElements((Object[]) array, out, rendering);
+			return;
+		}
+		// primitive arrays
+		final int length = Array.getLength(array);
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				out.append(ARRAY_SEPARATOR);
+			}
+			out.append(String.valueOf(Array.get(array, i)));
+		}
+	}
+
+	private static void renderElements(final Object[] elements, final Appendable out, final Set<Object> rendering) throws IOException {
+		for (int i = 0; i < elements.length; i++) {
+			if (i > 0) {
+				out.append(ARRAY_SEPARATOR);
+			}
+			renderValue(elements[i], out, rendering);
+		}
+	}
+
+	/**
+	 * Check if a type is written as its string value rather than as a table of its fields
+	 *
+	 * @param type
+	 * @return
+	 */
+	private static boolean isValue(final Class<?> type) {
+		if (type == String.class || ClassUtils.isPrimitiveOrWrapper(type) || type.isEnum() || Map.class.isAssignableFrom(type)
+				|| Date.class.isAssignableFrom(type) || TemporalAccessor.class.isAssignableFrom(type)) {
+			return true;
+		}
+		// the internals of JDK classes are not useful, or accessible
+		final String name = type.getName();
+		return name.startsWith("java.") || name.startsWith("javax.");
+	}
+
+	/**
+	 * Find the fields of a class, including those of its superclasses, and create a getter for each
+	 *
+	 * @param type the class
+	 * @return the accessors in the order the fields are rendered
+	 */
+	private static List<Accessor> plan(final Class<?> type) {
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		final List<Accessor> accessors = new ArrayList<>();
+
+		for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+			for (final Field field : clazz.getDeclaredFields()) {
+				final int modifiers = field.getModifiers();
+				// skip the reference to an outer class and any other synthetic field
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.getName().indexOf('$') != -1) {
+					continue;
+				}
+				try {
+					field.setAccessible(true);
+					accessors.add(new Accessor(field.getName(), lookup.unreflectGetter(field).asType(GETTER_TYPE)));
+				} catch (final IllegalAccessException | RuntimeException e) {
+					// not accessible, eg in a module that is not open
+					continue;
+				}
+			}
+		}
+		return Collections.unmodifiableList(accessors);
+	}
+
+	/**
+	 * Reads one field
+	 */
+	private static class Accessor {
+
+		private final String name;
+
+		private final MethodHandle getter;
+
+		Accessor(final String name, final MethodHandle getter) {
+			this.name = name;
+			this.getter = getter;
+		}
+
+		Object get(final Object object) {
+			try {
+				return (Object) this.getter.invokeExact(object);
+			} catch (final Throwable e) {
+				throw new IllegalStateException("Could not read field " + this.name, e);
+			}
+		}
+	}
+}
@@ -3,40 +3,39 @@ package org.sakaiproject.archiver.util;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.SystemUtils;
-import org.apache.commons.lang3.builder.RecursiveToStringStyle;
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
 /**
  * Utility to convert an object into a basic HTML representation.
  *
- * Leverages {@link ReflectionToStringBuilder} and {@link RecursiveToStringStyle} and adds some basic styling.
+ * Objects are rendered as tables of their fields by {@link HtmlRenderer}, with some basic styling. To write a page into the archive
+ * without holding it in memory use {@link HtmlPageWriter}.
  */
-public class Htmlifier extends RecursiveToStringStyle {
-
-	private static final long serialVersionUID = 1L;
+public class Htmlifier {
 
 	private Htmlifier() {
-		setFieldSeparator("</td></tr>" + SystemUtils.LINE_SEPARATOR + "<tr><td>");
-
-		setContentStart("<table class=\"table table-bordered table-condensed table-sm\">" + SystemUtils.LINE_SEPARATOR +
-				"<thead><tr><th>Field</th><th>Data</th></tr></thead>" +
-				"<tbody><tr><td>");
-
-		setFieldNameValueSeparator("</td><td>");
-
-		setContentEnd("</td></tr>" + SystemUtils.LINE_SEPARATOR + "</tbody></table>");
-
-		setUseShortClassName(true);
-		setUseClassName(false);
-		setUseIdentityHashCode(false);
-		setArrayContentDetail(true);
+	}
 
-		// remove the { and } around arrays
-		setArrayStart(null);
-		setArrayEnd(null);
+	/**
+	 * The start of every page, up to where the heading goes. Uses bootstrap for a bit of bling.
+	 */
+	static final String HTML_START = "<!DOCTYPE html>"
+			+ "<html lang=\"en\">"
+			+ "<head>"
+			+ "<meta charset=\"utf-8\">"
+			+ "<meta http-equiv=\"X-UA-Compatible\" content=\"IE=edge\">"
+			+ "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">"
+			+ "<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap.min.css\">"
+			+ "<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap-theme.min.css\">"
+			+ "<script src=\"https://ajax.googleapis.com/ajax/libs/jquery/1.12.4/jquery.min.js\"></script>"
+			+ "<script src=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/js/bootstrap.min.js\"></script>"
+			+ "</head>"
+			+ "<body>"
+			+ "<div class=\"container\">";
 
-	}
+	/**
+	 * The end of every page
+	 */
+	static final String HTML_END = "</div></body></html>";
 
 	/**
 	 * Serialise an object to HTML, with some styling.
@@ -47,7 +46,7 @@ public class Htmlifier extends RecursiveToStringStyle {
 	public static String toHtml(final Object object) {
 		final StringBuilder sb = new StringBuilder();
 		sb.append(getHtmlStart());
-		sb.append(ReflectionToStringBuilder.toString(object, new Htmlifier()));
+		sb.append(HtmlRenderer.render(object));
 		sb.append(getHtmlEnd());
 		return sb.toString();
 	}
@@ -62,7 +61,7 @@ public class Htmlifier extends RecursiveToStringStyle {
 		final StringBuilder sb = new StringBuilder();
 		sb.append(getHtmlStart());
 		objects.forEach(o -> {
-			sb.append(ReflectionToStringBuilder.toString(o, new Htmlifier()));
+			sb.append(HtmlRenderer.render(o));
 		});
 		sb.append(getHtmlEnd());
 		return sb.toString();
@@ -95,28 +94,14 @@ public class Htmlifier extends RecursiveToStringStyle {
 	/**
 	 * Gets the HTML to startup the HTML document. Uses bootstrap for a bit of bling.
 	 *
+	 * @param heading the page heading, or null for none
 	 * @return
 	 */
 	private static String getHtmlStart(final String heading) {
-
-		final StringBuilder sb = new StringBuilder();
-		sb.append("<!DOCTYPE html>");
-		sb.append("<html lang=\"en\">");
-		sb.append("<head>");
-		sb.append("<meta charset=\"utf-8\">");
-		sb.append("<meta http-equiv=\"X-UA-Compatible\" content=\"IE=edge\">");
-		sb.append("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">");
-		sb.append("<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap.min.css\">");
-		sb.append("<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap-theme.min.css\">");
-		sb.append("<script src=\"https://ajax.googleapis.com/ajax/libs/jquery/1.12.4/jquery.min.js\"></script>");
-		sb.append("<script src=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/js/bootstrap.min.js\"></script>");
-		sb.append("</head>");
-		sb.append("<body>");
-		sb.append("<div class=\"container\">");
 		if (StringUtils.isNotBlank(heading)) {
-			sb.append("<h1>" + heading + "</h1>");
+			return HTML_START + "<h1>" + heading + "</h1>";
 		}
-		return sb.toString();
+		return HTML_START;
 	}
 
 	/**
@@ -125,11 +110,6 @@ public class Htmlifier extends RecursiveToStringStyle {
 	 * @return
 	 */
 	private static String getHtmlEnd() {
-
-		final StringBuilder sb = new StringBuilder();
-		sb.append("</div>");
-		sb.append("</body>");
-		sb.append("</html>");
-		return sb.toString();
+		return HTML_END;
 	}
 }
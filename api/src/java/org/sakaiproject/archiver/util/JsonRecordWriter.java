@@ -0,0 +1,102 @@
+package org.sakaiproject.archiver.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes a collection of records as JSON straight to a stream, so the records never need to be held in memory together. Typically the
+ * stream is from {@link org.sakaiproject.archiver.api.ArchiverService#openRecordStream}, so the file is added to the archive when this is
+ * closed.
+ *
+ * Records are serialised with the shared Gson from {@link Jsonifier}. They are written either as a JSON array, or as newline delimited
+ * JSON (NDJSON) with one record per line, which can be read a line at a time no matter how large the file is.
+ */
+public class JsonRecordWriter implements Closeable {
+
+	private final Writer writer;
+
+	private final JsonWriter jsonWriter;
+
+	private final boolean lines;
+
+	private long count;
+
+	private boolean closed;
+
+	/**
+	 * Start a file of records
+	 *
+	 * @param out where to write the records, which is closed when this is closed
+	 * @param lines true to write NDJSON, false to write a JSON array
+	 * @throws IOException if the file could not be written
+	 */
+	public JsonRecordWriter(final OutputStream out, final boolean lines) throws IOException {
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		this.lines = lines;
+		if (lines) {
+			this.jsonWriter = null;
+		} else {
+			this.jsonWriter = new JsonWriter(this.writer);
+			this.jsonWriter.setHtmlSafe(false);
+			try {
+				this.jsonWriter.beginArray();
+			} catch (final IOException | RuntimeException e) {
+				out.close();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Add a record
+	 *
+	 * @param record the record to add
+	 * @throws IOException
+	 */
+	public void write(final Object record) throws IOException {
+		if (this.lines) {
+			Jsonifier.getGson().toJson(record, this.writer);
+			this.writer.write('\n');
+		} else if (record == null) {
+			this.jsonWriter.nullValue();
+		} else {
+			Jsonifier.getGson().toJson(record, record.getClass(), this.jsonWriter);
+		}
+		this.count++;
+	}
+
+	/**
+	 * Get the number of records written so far
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Finish the file and close the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			if (!this.lines) {
+				this.jsonWriter.endArray();
+			}
+			this.writer.flush();
+		} finally {
+			this.writer.close();
+		}
+	}
+}
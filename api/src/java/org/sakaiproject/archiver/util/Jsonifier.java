@@ -11,6 +11,9 @@ public class Jsonifier {
 	private Jsonifier() {
 	}
 
+	// Gson is thread safe and caches the adapter for each type, so one instance is shared
+	private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
 	/**
 	 * Serialise an object to JSON
 	 *
@@ -18,7 +21,26 @@ public class Jsonifier {
 	 * @return a String of JSON
 	 */
 	public static String toJson(final Object obj) {
-		final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-		return gson.toJson(obj);
+		return GSON.toJson(obj);
+	}
+
+	/**
+	 * Deserialise JSON into an object of the given type
+	 *
+	 * @param json the JSON to deserialise
+	 * @param clazz the type to deserialise into
+	 * @return the object or null if the JSON is blank
+	 */
+	public static <T> T fromJson(final String json, final Class<T> clazz) {
+		return GSON.fromJson(json, clazz);
+	}
+
+	/**
+	 * Get the Gson instance used to serialise objects, eg to stream them with a {@link com.google.gson.stream.JsonWriter}
+	 *
+	 * @return the shared Gson instance
+	 */
+	public static Gson getGson() {
+		return GSON;
 	}
 }
@@ -0,0 +1,513 @@
+package org.sakaiproject.archiver.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.sakaiproject.archiver.exception.ZipWriteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Zips a directory using multiple threads, in the style of pigz.
+ *
+ * Each file is split into chunks that are deflated concurrently on a fork-join pool. Every chunk but the last of a file ends on a sync
+ * flush so the compressed chunks can be joined, in order, into a single deflate stream. Each chunk is primed with the 32KB before it so
+ * the compression ratio is close to that of a single stream. The crc of each chunk is calculated alongside and combined at the end.
+ *
+ * The zip is written by the calling thread as the chunks complete, with a bounded number of chunks in flight so memory use stays flat no
+ * matter how large the archive is. Files that are already compressed are stored, as per {@link Zipper}. Zip64 records are written when
+ * needed so archives and entries over 4GB are supported.
+ */
+public class ParallelZipper {
+
+	private static Logger log = LoggerFactory.getLogger(ParallelZipper.class);
+
+	/**
+	 * Size of each chunk of a file that is compressed independently
+	 */
+	static final int CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * Size of the preceding data used to prime the deflater for each chunk
+	 */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * Number of chunks that can be in flight per thread
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+	private static final int FLAG_UTF8 = 1 << 11;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final int VERSION_DEFAULT = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	private final int threads;
+	private final int level;
+
+	/**
+	 * Create a zipper
+	 *
+	 * @param threads the number of threads to compress with
+	 * @param level the deflate level, 0-9 or -1 for the default
+	 */
+	public ParallelZipper(final int threads, final int level) {
+		this.threads = Math.max(1, threads);
+		this.level = level;
+	}
+
+	/**
+	 * Zip a directory. It is stored alongside the given directory.
+	 *
+	 * @param directory directory to be zipped
+	 * @param name name of the zip, without extension
+	 * @return the zip file path
+	 * @throws IOException
+	 * @throws ZipWriteException
+	 */
+	public String zipDirectory(final File directory, final String name) throws IOException, ZipWriteException {
+
+		final File zipFile = new File(directory.getParent(), name + ".zip");
+		final Path base = Paths.get(directory.getCanonicalPath());
+
+		final List<FileEntry> entries;
+		try (Stream<Path> paths = Files.walk(base)) {
+			entries = paths
+					.filter(path -> !Files.isDirectory(path))
+					.map(path -> new FileEntry(path, base.relativize(path).toString().replace(File.separatorChar, '/')))
+					.collect(Collectors.toList());
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool(this.threads);
+		final Path p = Files.createFile(Paths.get(zipFile.getCanonicalPath()));
+		try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(p), 64 * 1024))) {
+			write(entries, pool, out);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ZipWriteException("Interrupted whilst creating zip file", e);
+		} catch (final ExecutionException e) {
+			log.error("Error creating zip file", e.getCause());
+			throw new ZipWriteException("Error creating zip file", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return zipFile.getCanonicalPath();
+	}
+
+	/**
+	 * Compress the entries and write the zip
+	 */
+	private void write(final List<FileEntry> entries, final ForkJoinPool pool, final CountingOutputStream out)
+			throws IOException, InterruptedException, ExecutionException {
+
+		for (final FileEntry entry : entries) {
+			entry.prepare();
+		}
+
+		// chunks are submitted ahead of the writer, up to the window size
+		final Iterator<Chunk> chunks = entries.stream().flatMap(e -> e.chunks().stream()).iterator();
+		final Deque<Future<Chunk>> window = new ArrayDeque<>();
+		final int windowSize = this.threads * CHUNKS_PER_THREAD;
+
+		final byte[] buffer = new byte[64 * 1024];
+
+		for (final FileEntry entry : entries) {
+			entry.offset = out.getCount();
+
+			if (entry.stored) {
+				// all crcs are needed before the header, the data is then copied straight across
+				final List<Chunk> done = new ArrayList<>();
+				for (int i = 0; i < entry.chunkCount; i++) {
+					fill(window, chunks, pool, windowSize);
+					done.add(window.removeFirst().get());
+				}
+				entry.crc = combine(done);
+				entry.compressedSize = entry.size;
+				writeLocalHeader(out, entry);
+				copy(entry.path, out, buffer);
+			} else {
+				// sizes and crc follow in a data descriptor so chunks can be written as they complete
+				writeLocalHeader(out, entry);
+				final List<Chunk> done = new ArrayList<>();
+				long compressedSize = 0;
+				for (int i = 0; i < entry.chunkCount; i++) {
+					fill(window, chunks, pool, windowSize);
+					final Chunk chunk = window.removeFirst().get();
+					out.write(chunk.data, 0, chunk.dataLength);
+					compressedSize += chunk.dataLength;
+					chunk.data = null;
+					done.add(chunk);
+				}
+				entry.crc = combine(done);
+				entry.compressedSize = compressedSize;
+				writeDataDescriptor(out, entry);
+			}
+		}
+
+		writeCentralDirectory(out, entries);
+	}
+
+	/**
+	 * Keep the window of in flight chunks full
+	 */
+	private void fill(final Deque<Future<Chunk>> window, final Iterator<Chunk> chunks, final ForkJoinPool pool, final int windowSize) {
+		while (window.size() < windowSize && chunks.hasNext()) {
+			final Chunk chunk = chunks.next();
+			window.addLast(pool.submit(() -> process(chunk)));
+		}
+	}
+
+	/**
+	 * Read a chunk, calculate its crc and deflate it if required
+	 */
+	private Chunk process(final Chunk chunk) throws IOException {
+
+		final FileEntry entry = chunk.entry;
+		final int dictionaryLength = entry.stored ? 0 : (int) Math.min(DICTIONARY_SIZE, chunk.offset);
+		final ByteBuffer input = ByteBuffer.allocate(dictionaryLength + chunk.length);
+
+		try (FileChannel channel = FileChannel.open(entry.path, StandardOpenOption.READ)) {
+			long position = chunk.offset - dictionaryLength;
+			while (input.hasRemaining()) {
+				final int read = channel.read(input, position);
+				if (read == -1) {
+					throw new IOException("File " + entry.path + " changed whilst it was being zipped");
+				}
+				position += read;
+			}
+		}
+		final byte[] bytes = input.array();
+
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, dictionaryLength, chunk.length);
+		chunk.crc = crc.getValue();
+
+		if (entry.stored) {
+			return chunk;
+		}
+
+		final Deflater deflater = new Deflater(this.level, true);
+		try {
+			if (dictionaryLength > 0) {
+				deflater.setDictionary(bytes, 0, dictionaryLength);
+			}
+			deflater.setInput(bytes, dictionaryLength, chunk.length);
+
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(chunk.length / 2 + 64);
+			final byte[] buffer = new byte[64 * 1024];
+			if (chunk.last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					final int n = deflater.deflate(buffer);
+					compressed.write(buffer, 0, n);
+				}
+			} else {
+				// sync flush ends the chunk on a byte boundary without marking the end of the stream
+				int n;
+				do {
+					n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					compressed.write(buffer, 0, n);
+				} while (n == buffer.length);
+			}
+			chunk.data = compressed.toByteArray();
+			chunk.dataLength = chunk.data.length;
+		} finally {
+			deflater.end();
+		}
+		return chunk;
+	}
+
+	private void copy(final Path path, final OutputStream out, final byte[] buffer) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	private long combine(final List<Chunk> chunks) {
+		long crc = 0;
+		for (final Chunk chunk : chunks) {
+			crc = Crc32Combine.combine(crc, chunk.crc, chunk.length);
+		}
+		return crc;
+	}
+
+	private void writeLocalHeader(final CountingOutputStream out, final FileEntry entry) throws IOException {
+		final boolean descriptor = !entry.stored;
+		final boolean zip64 = entry.zip64;
+
+		out.writeInt(0x04034b50);
+		out.writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+		out.writeShort(FLAG_UTF8 | (descriptor ? FLAG_DATA_DESCRIPTOR : 0));
+		out.writeShort(entry.stored ? METHOD_STORED : METHOD_DEFLATED);
+		out.writeInt(entry.dosTime);
+		out.writeInt(descriptor ? 0 : entry.crc);
+		if (zip64) {
+			out.writeInt(ZIP64_MAGIC);
+			out.writeInt(ZIP64_MAGIC);
+		} else {
+			out.writeInt(descriptor ? 0 : entry.compressedSize);
+			out.writeInt(descriptor ? 0 : entry.size);
+		}
+		out.writeShort(entry.name.length);
+		out.writeShort(zip64 ? 20 : 0);
+		out.write(entry.name);
+		if (zip64) {
+			out.writeShort(0x0001);
+			out.writeShort(16);
+			out.writeLong(descriptor ? 0 : entry.size);
+			out.writeLong(descriptor ? 0 : entry.compressedSize);
+		}
+	}
+
+	private void writeDataDescriptor(final CountingOutputStream out, final FileEntry entry) throws IOException {
+		out.writeInt(0x08074b50);
+		out.writeInt(entry.crc);
+		// same rule as java.util.zip uses to read it back
+		if (entry.zip64 || entry.compressedSize >= ZIP64_MAGIC) {
+			out.writeLong(entry.compressedSize);
+			out.writeLong(entry.size);
+		} else {
+			out.writeInt(entry.compressedSize);
+			out.writeInt(entry.size);
+		}
+	}
+
+	private void writeCentralDirectory(final CountingOutputStream out, final List<FileEntry> entries) throws IOException {
+
+		final long start = out.getCount();
+
+		for (final FileEntry entry : entries) {
+			final boolean sizeOverflow = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+			final boolean offsetOverflow = entry.offset >= ZIP64_MAGIC;
+			final int extraLength = (sizeOverflow ? 16 : 0) + (offsetOverflow ? 8 : 0);
+			final boolean zip64 = entry.zip64 || extraLength > 0;
+
+			out.writeInt(0x02014b50);
+			out.writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+			out.writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+			out.writeShort(FLAG_UTF8 | (entry.stored ? 0 : FLAG_DATA_DESCRIPTOR));
+			out.writeShort(entry.stored ? METHOD_STORED : METHOD_DEFLATED);
+			out.writeInt(entry.dosTime);
+			out.writeInt(entry.crc);
+			out.writeInt(sizeOverflow ? ZIP64_MAGIC : entry.compressedSize);
+			out.writeInt(sizeOverflow ? ZIP64_MAGIC : entry.size);
+			out.writeShort(entry.name.length);
+			out.writeShort(extraLength > 0 ? extraLength + 4 : 0);
+			out.writeShort(0); // comment
+			out.writeShort(0); // disk
+			out.writeShort(0); // internal attributes
+			out.writeInt(0); // external attributes
+			out.writeInt(offsetOverflow ? ZIP64_MAGIC : entry.offset);
+			out.write(entry.name);
+			if (extraLength > 0) {
+				out.writeShort(0x0001);
+				out.writeShort(extraLength);
+				if (sizeOverflow) {
+					out.writeLong(entry.size);
+					out.writeLong(entry.compressedSize);
+				}
+				if (offsetOverflow) {
+					out.writeLong(entry.offset);
+				}
+			}
+		}
+
+		final long end = out.getCount();
+		final long size = end - start;
+		final boolean zip64 = entries.size() >= ZIP64_MAGIC_COUNT || start >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+
+		if (zip64) {
+			// zip64 end of central directory record
+			out.writeInt(0x06064b50);
+			out.writeLong(44);
+			out.writeShort(VERSION_ZIP64);
+			out.writeShort(VERSION_ZIP64);
+			out.writeInt(0);
+			out.writeInt(0);
+			out.writeLong(entries.size());
+			out.writeLong(entries.size());
+			out.writeLong(size);
+			out.writeLong(start);
+
+			// zip64 end of central directory locator
+			out.writeInt(0x07064b50);
+			out.writeInt(0);
+			out.writeLong(end);
+			out.writeInt(1);
+		}
+
+		out.writeInt(0x06054b50);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(zip64 ? ZIP64_MAGIC_COUNT : entries.size());
+		out.writeShort(zip64 ? ZIP64_MAGIC_COUNT : entries.size());
+		out.writeInt(zip64 ? ZIP64_MAGIC : size);
+		out.writeInt(zip64 ? ZIP64_MAGIC : start);
+		out.writeShort(0);
+	}
+
+	/**
+	 * A file in the zip
+	 */
+	private static class FileEntry {
+		private final Path path;
+		private final byte[] name;
+
+		private long size;
+		private int chunkCount;
+		private boolean stored;
+		private boolean zip64;
+		private long dosTime;
+
+		private long offset;
+		private long crc;
+		private long compressedSize;
+
+		FileEntry(final Path path, final String name) {
+			this.path = path;
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Work out how the file is to be zipped
+		 */
+		void prepare() throws IOException {
+			this.size = Files.size(this.path);
+			this.chunkCount = (int) Math.max(1, (this.size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			this.stored = this.size == 0 || Zipper.isCompressed(this.path.getFileName().toString(), Zipper.readHeader(this.path));
+			this.zip64 = this.size >= ZIP64_MAGIC;
+			this.dosTime = toDosTime(Files.getLastModifiedTime(this.path).toMillis());
+		}
+
+		List<Chunk> chunks() {
+			final List<Chunk> chunks = new ArrayList<>(this.chunkCount);
+			for (int i = 0; i < this.chunkCount; i++) {
+				final long chunkOffset = (long) i * CHUNK_SIZE;
+				final int length = (int) Math.min(CHUNK_SIZE, this.size - chunkOffset);
+				chunks.add(new Chunk(this, chunkOffset, length, i == this.chunkCount - 1));
+			}
+			return chunks;
+		}
+
+		private static long toDosTime(final long millis) {
+			final Calendar c = Calendar.getInstance();
+			c.setTimeInMillis(millis);
+			final int year = c.get(Calendar.YEAR);
+			if (year < 1980) {
+				return (1 << 21) | (1 << 16);
+			}
+			return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16
+					| c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+		}
+	}
+
+	/**
+	 * A chunk of a file that is processed independently
+	 */
+	private static class Chunk {
+		private final FileEntry entry;
+		private final long offset;
+		private final int length;
+		private final boolean last;
+
+		private long crc;
+		private byte[] data;
+		private int dataLength;
+
+		Chunk(final FileEntry entry, final long offset, final int length, final boolean last) {
+			this.entry = entry;
+			this.offset = offset;
+			this.length = length;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * Output stream that writes little endian values and counts the bytes written, so offsets can be recorded
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private final OutputStream out;
+		private long count = 0;
+
+		CountingOutputStream(final OutputStream out) {
+			this.out = out;
+		}
+
+		long getCount() {
+			return this.count;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+		void writeShort(final int v) throws IOException {
+			write(v & 0xFF);
+			write((v >>> 8) & 0xFF);
+		}
+
+		void writeInt(final long v) throws IOException {
+			writeShort((int) (v & 0xFFFF));
+			writeShort((int) ((v >>> 16) & 0xFFFF));
+		}
+
+		void writeLong(final long v) throws IOException {
+			writeInt(v & 0xFFFFFFFFL);
+			writeInt(v >>> 32);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+}
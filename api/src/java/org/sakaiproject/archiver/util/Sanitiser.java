@@ -4,17 +4,46 @@ import java.util.Arrays;
 
 /**
  * Utility to sanitise a string so that it doesn't contain non-standard characters.
+ *
+ * This is called for every name written to an archive so it checks each char by hand rather than via a regular expression, and strings
+ * that are already clean are returned as they are without any copying.
  */
 public class Sanitiser {
 
+	private static final char REPLACEMENT = '_';
+
 	/**
-	 * Replace illegal chars in the supplied string with _
+	 * Replace illegal chars in the supplied string with _. Only letters, digits, dots, spaces and dashes are kept.
 	 *
-	 * @param filename
-	 * @return
+	 * @param string
+	 * @return the sanitised string, or the same string if it had no illegal chars
 	 */
 	public static String sanitise(final String string) {
-		return string.replaceAll("[^a-zA-Z0-9.\" \"-]", "_");
+		final int length = string.length();
+
+		int i = 0;
+		while (i < length && isAllowed(string.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
+			return string;
+		}
+
+		final StringBuilder sb = new StringBuilder(length).append(string, 0, i);
+		for (; i < length; i++) {
+			final char c = string.charAt(i);
+			if (isAllowed(c)) {
+				sb.append(c);
+				continue;
+			}
+			sb.append(REPLACEMENT);
+
+			// a character outside the BMP is replaced once, not for each half of the pair
+			if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+				i++;
+			}
+		}
+		return sb.toString();
 	}
 
 	/**
@@ -28,4 +57,8 @@ public class Sanitiser {
 				.map(s -> sanitise(s))
 				.toArray(String[]::new);
 	}
+
+	private static boolean isAllowed(final char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == ' ' || c == '-';
+	}
 }
@@ -2,9 +2,18 @@ package org.sakaiproject.archiver.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -22,6 +31,21 @@ public class Zipper {
 
 	private static Logger log = LoggerFactory.getLogger(Zipper.class);
 
+	/**
+	 * Size of the buffer used to stream each file into the zip
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Extensions of file types that are already compressed and gain nothing from being deflated again
+	 */
+	private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+			"jpg", "jpeg", "png", "gif", "webp", "heic",
+			"mp3", "m4a", "aac", "ogg", "oga", "flac", "wma",
+			"mp4", "m4v", "mov", "avi", "wmv", "mkv", "webm", "flv",
+			"zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar",
+			"docx", "xlsx", "pptx", "odt", "ods", "odp", "epub"));
+
 	/**
 	 * Zip a directory. It is stored alongside the given directory.
 	 *
@@ -31,21 +55,38 @@ public class Zipper {
 	 * @throws ZipWriteException
 	 */
 	public static String zipDirectory(final File directory, final String name) throws IOException, ZipWriteException {
+		return zipDirectory(directory, name, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Zip a directory with the given compression level. It is stored alongside the given directory.
+	 *
+	 * Each file is streamed into the zip so it is never held in memory. Files that are already compressed are stored rather than deflated
+	 * again.
+	 *
+	 * @param directory directory to be zipped
+	 * @param level the deflate level, 0-9 or -1 for the default
+	 * @return the zip file path
+	 * @throws IOException
+	 * @throws ZipWriteException
+	 */
+	public static String zipDirectory(final File directory, final String name, final int level) throws IOException, ZipWriteException {
 
 		// create path to zip
 		final File zipFile = new File(directory.getParent(), name + ".zip");
 
+		final byte[] buffer = new byte[BUFFER_SIZE];
+
 		final Path p = Files.createFile(Paths.get(zipFile.getCanonicalPath()));
-		try (ZipOutputStream zs = new ZipOutputStream(Files.newOutputStream(p))) {
+		try (ZipOutputStream zs = new ZipOutputStream(Files.newOutputStream(p));
+				Stream<Path> paths = Files.walk(Paths.get(directory.getCanonicalPath()))) {
+			zs.setLevel(level);
 			final Path pp = Paths.get(directory.getCanonicalPath());
-			Files.walk(pp)
+			paths
 					.filter(path -> !Files.isDirectory(path))
 					.forEach(path -> {
-						final ZipEntry zipEntry = new ZipEntry(pp.relativize(path).toString());
 						try {
-							zs.putNextEntry(zipEntry);
-							zs.write(Files.readAllBytes(path));
-							zs.closeEntry();
+							addEntry(zs, path, pp.relativize(path).toString(), buffer);
 						} catch (final IOException e) {
 							log.error("Error creating zip file", e);
 							throw new ZipWriteException("Error creating zip file", e);
@@ -54,4 +95,137 @@ public class Zipper {
 		}
 		return zipFile.getCanonicalPath();
 	}
+
+	/**
+	 * Check if a file is already compressed, either by its extension or by sniffing the first few bytes of its content
+	 *
+	 * @param filename the name of the file
+	 * @param header the first bytes of the file. At least 12 bytes are needed to detect all types.
+	 * @return true if the file is already compressed
+	 */
+	public static boolean isCompressed(final String filename, final byte[] header) {
+		final int dot = filename.lastIndexOf('.');
+		if (dot >= 0 && COMPRESSED_EXTENSIONS.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+			return true;
+		}
+		return hasCompressedSignature(header);
+	}
+
+	/**
+	 * Add a file to the zip, streaming it through the buffer
+	 *
+	 * @param zs the zip
+	 * @param path the file to add
+	 * @param entryName the name of the entry in the zip
+	 * @param buffer buffer to copy through
+	 * @throws IOException
+	 */
+	private static void addEntry(final ZipOutputStream zs, final Path path, final String entryName, final byte[] buffer)
+			throws IOException {
+
+		final ZipEntry zipEntry = new ZipEntry(entryName.replace(File.separatorChar, '/'));
+
+		if (isCompressed(path.getFileName().toString(), readHeader(path))) {
+			// stored entries need the size and crc before any content is written
+			final long size = Files.size(path);
+			zipEntry.setMethod(ZipEntry.STORED);
+			zipEntry.setSize(size);
+			zipEntry.setCompressedSize(size);
+			zipEntry.setCrc(crc(path, buffer));
+		}
+
+		zs.putNextEntry(zipEntry);
+		copy(path, zs, buffer);
+		zs.closeEntry();
+	}
+
+	/**
+	 * Read the first few bytes of a file so its type can be sniffed
+	 *
+	 * @param path the file
+	 * @return up to 12 bytes
+	 * @throws IOException
+	 */
+	static byte[] readHeader(final Path path) throws IOException {
+		final byte[] header = new byte[12];
+		int total = 0;
+		try (InputStream in = Files.newInputStream(path)) {
+			int read;
+			while (total < header.length && (read = in.read(header, total, header.length - total)) != -1) {
+				total += read;
+			}
+		}
+		return Arrays.copyOf(header, total);
+	}
+
+	/**
+	 * Calculate the crc of a file
+	 *
+	 * @param path the file
+	 * @param buffer buffer to read through
+	 * @return the crc
+	 * @throws IOException
+	 */
+	private static long crc(final Path path, final byte[] buffer) throws IOException {
+		final CRC32 crc = new CRC32();
+		try (InputStream in = Files.newInputStream(path)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Copy a file to the output stream through the buffer
+	 *
+	 * @param path the file
+	 * @param out where to write it
+	 * @param buffer buffer to copy through
+	 * @throws IOException
+	 */
+	private static void copy(final Path path, final OutputStream out, final byte[] buffer) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * Check the magic bytes for common compressed formats: zip (and office documents), gzip, bzip2, xz, 7z, rar, jpeg, png, gif, webp,
+	 * ogg, mp3 and mp4/quicktime.
+	 *
+	 * @param h the first bytes of the file
+	 * @return true if it matches a compressed format
+	 */
+	private static boolean hasCompressedSignature(final byte[] h) {
+		return startsWith(h, 0x50, 0x4B, 0x03, 0x04)
+				|| startsWith(h, 0x1F, 0x8B)
+				|| startsWith(h, 0x42, 0x5A, 0x68)
+				|| startsWith(h, 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00)
+				|| startsWith(h, 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C)
+				|| startsWith(h, 0x52, 0x61, 0x72, 0x21)
+				|| startsWith(h, 0xFF, 0xD8, 0xFF)
+				|| startsWith(h, 0x89, 0x50, 0x4E, 0x47)
+				|| startsWith(h, 0x47, 0x49, 0x46, 0x38)
+				|| (startsWith(h, 0x52, 0x49, 0x46, 0x46) && h.length >= 12 && h[8] == 'W' && h[9] == 'E' && h[10] == 'B' && h[11] == 'P')
+				|| startsWith(h, 0x4F, 0x67, 0x67, 0x53)
+				|| startsWith(h, 0x49, 0x44, 0x33)
+				|| (h.length >= 8 && h[4] == 'f' && h[5] == 't' && h[6] == 'y' && h[7] == 'p');
+	}
+
+	private static boolean startsWith(final byte[] bytes, final int... signature) {
+		if (bytes.length < signature.length) {
+			return false;
+		}
+		for (int i = 0; i < signature.length; i++) {
+			if ((bytes[i] & 0xFF) != signature[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,73 @@
+package org.sakaiproject.archiver.api.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+
+/**
+ * Test for the {@link ArchivePathPlanner} utility
+ */
+public class ArchivePathPlannerTest {
+
+	@Test
+	public void should_addSuffix_when_namesSanitiseTheSame() {
+		final ArchivePathPlanner planner = new ArchivePathPlanner();
+
+		assertArrayEquals(new String[] { "Forums", "Week 1_", "Intro.html" }, planner.plan("Forums", "Week 1?", "Intro.html"));
+		assertArrayEquals(new String[] { "Forums", "Week 1_ (2)", "Intro.html" }, planner.plan("Forums", "Week 1!", "Intro.html"));
+		assertArrayEquals(new String[] { "Forums", "week 1_ (3)" }, planner.plan("Forums", "week 1#"));
+	}
+
+	@Test
+	public void should_planSamePath_when_namesPlannedAgain() {
+		final ArchivePathPlanner planner = new ArchivePathPlanner();
+		planner.plan("Chat", "Room?", "Room 1.html");
+		planner.plan("Chat", "Room!", "Room 1.html");
+
+		assertArrayEquals(new String[] { "Chat", "Room_ (2)", "Room 1.html" }, planner.plan("Chat", "Room!", "Room 1.html"));
+		assertArrayEquals(new String[] { "Chat", "Room_", "Room 1.html" }, planner.plan("Chat", "", "Room?", "Room 1.html", ""));
+	}
+
+	@Test
+	public void should_planSeparately_when_itemsShareName() {
+		final ArchivePathPlanner planner = new ArchivePathPlanner();
+		final String first = ArchivePathPlanner.item("1", "Re: Question.html");
+		final String second = ArchivePathPlanner.item("2", "Re: Question.html");
+
+		assertArrayEquals(new String[] { "Forums", "Re_ Question.html" }, planner.plan("Forums", first));
+		assertArrayEquals(new String[] { "Forums", "Re_ Question (2).html" }, planner.plan("Forums", second));
+		assertArrayEquals(new String[] { "Forums", "Re_ Question.html" }, planner.plan("Forums", first));
+		assertArrayEquals(new String[] { "Week 1", "page.html" }, planner.plan(ArchivePathPlanner.item("3", "Week 1"), "page.html"));
+		assertArrayEquals(new String[] { "Week 1 (2)", "page.html" }, planner.plan("Week 1", "page.html"));
+	}
+
+	@Test
+	public void should_keepExtension_when_nameTooLong() {
+		final ArchivePathPlanner planner = new ArchivePathPlanner(20);
+
+		assertArrayEquals(new String[] { "Resources", "A very long file.pdf" }, planner.plan("Resources", "A very long file name.pdf"));
+		assertArrayEquals(new String[] { "Resources", "A very long (2).pdf" }, planner.plan("Resources", "A very long file title.pdf"));
+		assertArrayEquals(new String[] { "A very long director", "file.pdf" }, planner.plan("A very long directory.pdf", "file.pdf"));
+	}
+
+	@Test
+	public void should_notLeaveDirectory_when_nameIsDots() {
+		final ArchivePathPlanner planner = new ArchivePathPlanner();
+
+		assertArrayEquals(new String[] { "_", "_", "passwd" }, planner.plan("..", ".", "passwd"));
+		assertArrayEquals(new String[] { "_ (2)", "passwd" }, planner.plan(".", "passwd"));
+		assertArrayEquals(new String[] { "Notes" }, planner.plan("Notes. "));
+	}
+
+	@Test
+	public void should_linkRelatively_when_pathsShareDirectories() {
+		assertEquals("./topics/Week 1/Intro.html", ArchivePathPlanner.relativeLink("Forums/General/General.html",
+				"Forums/General/topics/Week 1/Intro.html"));
+		assertEquals("../../message-attachments/file.pdf", ArchivePathPlanner.relativeLink("Forums/General/topics/Week 1/Intro.html",
+				"Forums/General/message-attachments/file.pdf"));
+		assertEquals("./grades.xls", ArchivePathPlanner.relativeLink("Assignments/index.html", "Assignments/grades.xls"));
+	}
+
+}
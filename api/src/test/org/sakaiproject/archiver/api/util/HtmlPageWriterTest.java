@@ -0,0 +1,66 @@
+package org.sakaiproject.archiver.api.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
+import org.sakaiproject.archiver.util.Htmlifier;
+
+/**
+ * Test for the {@link HtmlPageWriter} utility
+ */
+public class HtmlPageWriterTest {
+
+	@Test
+	public void should_writeSamePageAsHtmlifier_when_htmlAppended() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HtmlPageWriter page = new HtmlPageWriter(out, "MATH1013: Syllabus")) {
+			page.append("<p>Week 1</p>").append("<p>Week 2</p>");
+		}
+
+		assertEquals(Htmlifier.toHtml("<p>Week 1</p><p>Week 2</p>", "MATH1013: Syllabus"), out.toString(StandardCharsets.UTF_8.name()));
+	}
+
+	@Test
+	public void should_escapeText_when_textAppended() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HtmlPageWriter page = new HtmlPageWriter(out, "Q&A <draft>")) {
+			page.appendText("Tom & \"Jerry\" <script>");
+		}
+
+		final String html = out.toString(StandardCharsets.UTF_8.name());
+		assertTrue(html.contains("<h1>Q&amp;A &lt;draft&gt;</h1>"));
+		assertTrue(html.contains("Tom &amp; &quot;Jerry&quot; &lt;script&gt;"));
+	}
+
+	@Test
+	public void should_writeUtf8_when_textHasNonAsciiCharacters() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (HtmlPageWriter page = new HtmlPageWriter(out, null)) {
+			page.appendText("Zo\u00eb \u65e5\u672c");
+		}
+
+		assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).contains("Zo\u00eb \u65e5\u672c"));
+	}
+
+	@Test
+	public void should_countBufferedContent_when_sizeChecked() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long size;
+		try (HtmlPageWriter page = new HtmlPageWriter(out, null)) {
+			page.appendText("Zo\u00eb");
+			size = page.getSize();
+			assertEquals("Nothing should be written to the stream until the page is closed", 0, out.size());
+		}
+
+		final String end = "</div></body></html>";
+		assertTrue(out.toString(StandardCharsets.UTF_8.name()).endsWith(end));
+		assertEquals(out.size() - end.length(), size);
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.sakaiproject.archiver.api.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.commons.lang3.builder.RecursiveToStringStyle;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sakaiproject.archiver.util.HtmlRenderer;
+
+/**
+ * Compares {@link HtmlRenderer} with the reflective {@link RecursiveToStringStyle} that the Htmlifier used before it. This is not run as
+ * part of the build, run the main method from the test classpath.
+ *
+ * Each invocation renders a list of records with nested objects and collections, similar to the forum and assignment data. The number
+ * of records can be changed with -p records=n.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HtmlRendererBenchmark {
+
+	@Param({ "1000" })
+	public int records;
+
+	private List<Message> messages;
+
+	@Setup(Level.Trial)
+	public void createRecords() {
+		this.messages = new ArrayList<>();
+		for (int i = 0; i < this.records; i++) {
+			final Message message = new Message();
+			message.id = i;
+			message.title = "Message " + i;
+			message.body = "<p>The quick brown fox jumps over the lazy dog</p>";
+			message.author = new Author("user" + (i % 50), "User " + (i % 50));
+			message.attachments.add("attachment" + i + ".pdf");
+			message.attachments.add("attachment" + i + ".docx");
+			message.scores = new int[] { i % 10, i % 7 };
+			this.messages.add(message);
+		}
+	}
+
+	@Benchmark
+	public int reflection() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Message message : this.messages) {
+			sb.append(ReflectionToStringBuilder.toString(message, new ReflectiveStyle()));
+		}
+		return sb.length();
+	}
+
+	@Benchmark
+	public int renderer() throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		for (final Message message : this.messages) {
+			HtmlRenderer.render(message, sb);
+		}
+		return sb.length();
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(HtmlRendererBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * The style the Htmlifier used to render objects
+	 */
+	private static class ReflectiveStyle extends RecursiveToStringStyle {
+
+		private static final long serialVersionUID = 1L;
+
+		ReflectiveStyle() {
+			setFieldSeparator("</td></tr>" + SystemUtils.LINE_SEPARATOR + "<tr><td>");
+			setContentStart("<table class=\"table table-bordered table-condensed table-sm\">" + SystemUtils.LINE_SEPARATOR +
+					"<thead><tr><th>Field</th><th>Data</th></tr></thead>" +
+					"<tbody><tr><td>");
+			setFieldNameValueSeparator("</td><td>");
+			setContentEnd("</td></tr>" + SystemUtils.LINE_SEPARATOR + "</tbody></table>");
+			setUseShortClassName(true);
+			setUseClassName(false);
+			setUseIdentityHashCode(false);
+			setArrayContentDetail(true);
+			setArrayStart(null);
+			setArrayEnd(null);
+		}
+	}
+
+	static class Author {
+		String eid;
+		String displayName;
+
+		Author(final String eid, final String displayName) {
+			this.eid = eid;
+			this.displayName = displayName;
+		}
+	}
+
+	static class Message {
+		long id;
+		String title;
+		String body;
+		Author author;
+		List<String> attachments = new ArrayList<>();
+		int[] scores;
+	}
+}
@@ -0,0 +1,72 @@
+package org.sakaiproject.archiver.api.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Test;
+import org.sakaiproject.archiver.util.HtmlRenderer;
+
+/**
+ * Test for the {@link HtmlRenderer} utility
+ */
+public class HtmlRendererTest {
+
+	private static final String TABLE_START = "<table class=\"table table-bordered table-condensed table-sm\">" + SystemUtils.LINE_SEPARATOR
+			+ "<thead><tr><th>Field</th><th>Data</th></tr></thead><tbody><tr><td>";
+
+	private static final String FIELD_SEPARATOR = "</td></tr>" + SystemUtils.LINE_SEPARATOR + "<tr><td>";
+
+	private static final String TABLE_END = "</td></tr>" + SystemUtils.LINE_SEPARATOR + "</tbody></table>";
+
+	@Test
+	public void should_renderFieldsInTable_when_simpleObjectProvided() {
+		final Item item = new Item("Bob Smith");
+		item.tags.addAll(Arrays.asList("a", "b"));
+
+		final String html = HtmlRenderer.render(item);
+
+		assertEquals(TABLE_START + "name</td><td>Bob Smith" + FIELD_SEPARATOR + "next</td><td><null>" + FIELD_SEPARATOR
+				+ "scores</td><td>1,2" + FIELD_SEPARATOR + "tags</td><td>a,b" + TABLE_END, html);
+	}
+
+	@Test
+	public void should_renderNestedTable_when_fieldIsObject() {
+		final Item item = new Item("Bob Smith");
+		item.next = new Item("Mary Jones");
+
+		final String html = HtmlRenderer.render(item);
+
+		assertTrue(html.contains("next</td><td><table"));
+		assertTrue(html.contains("Mary Jones"));
+	}
+
+	@Test
+	public void should_notRecurseForever_when_objectRefersToItself() {
+		final Item item = new Item("Bob Smith");
+		item.next = item;
+
+		final String html = HtmlRenderer.render(item);
+
+		assertFalse(html.contains("next</td><td><table"));
+	}
+
+	static class Item {
+		static final String IGNORED = "static";
+
+		String name;
+		Item next;
+		int[] scores = { 1, 2 };
+		List<String> tags = new ArrayList<>();
+		transient String cached = "transient";
+
+		Item(final String name) {
+			this.name = name;
+		}
+	}
+}
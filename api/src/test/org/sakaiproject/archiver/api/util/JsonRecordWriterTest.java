@@ -0,0 +1,61 @@
+package org.sakaiproject.archiver.api.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
+
+/**
+ * Test for the {@link JsonRecordWriter} utility
+ */
+public class JsonRecordWriterTest {
+
+	@Test
+	public void should_writeJsonArray_when_notLines() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JsonRecordWriter records = new JsonRecordWriter(out, false)) {
+			records.write(new Record("Bob <Smith>", 1));
+			records.write(new Record("Mary", 2));
+			assertEquals(2, records.getCount());
+		}
+
+		assertEquals("[{\"name\":\"Bob <Smith>\",\"score\":1},{\"name\":\"Mary\",\"score\":2}]",
+				new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void should_writeOneRecordPerLine_when_lines() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JsonRecordWriter records = new JsonRecordWriter(out, true)) {
+			records.write(new Record("Bob", 1));
+			records.write(new Record("Mary", 2));
+		}
+
+		assertEquals("{\"name\":\"Bob\",\"score\":1}\n{\"name\":\"Mary\",\"score\":2}\n",
+				new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void should_writeEmptyArray_when_noRecords() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JsonRecordWriter records = new JsonRecordWriter(out, false)) {
+			assertEquals(0, records.getCount());
+		}
+
+		assertEquals("[]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	static class Record {
+		String name;
+		int score;
+
+		Record(final String name, final int score) {
+			this.name = name;
+			this.score = score;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.sakaiproject.archiver.api.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.archiver.util.ParallelZipper;
+
+/**
+ * Test for the {@link ParallelZipper} utility
+ */
+public class ParallelZipperTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File archiveDir;
+
+	@Before
+	public void setup() throws IOException {
+		this.archiveDir = this.folder.newFolder("archive");
+
+		final Random random = new Random(1);
+
+		// large enough to be split into several chunks
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < 3 * 1024 * 1024) {
+			sb.append("line ").append(random.nextInt(1000)).append(" of some compressible text\n");
+		}
+		FileUtils.writeStringToFile(new File(this.archiveDir, "large.txt"), sb.toString(), StandardCharsets.UTF_8);
+
+		final byte[] noise = new byte[2 * 1024 * 1024 + 17];
+		random.nextBytes(noise);
+		FileUtils.writeByteArrayToFile(new File(this.archiveDir, "tool/noise.bin"), noise);
+
+		FileUtils.copyFileToDirectory(new File(getClass().getResource("/LoremIpsum.docx").getFile()), new File(this.archiveDir, "tool"));
+		FileUtils.writeStringToFile(new File(this.archiveDir, "tool/sub/small.html"), "<p>small</p>", StandardCharsets.UTF_8);
+		FileUtils.writeByteArrayToFile(new File(this.archiveDir, "empty.txt"), new byte[0]);
+	}
+
+	@Test
+	public void should_createValidZip_when_filesSplitIntoChunks() throws IOException {
+
+		final String zipfilePath = new ParallelZipper(4, 6).zipDirectory(this.archiveDir, "output");
+
+		// the stream reader verifies the crc and sizes of every entry
+		final Map<String, Integer> methods = new HashMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new FileInputStream(zipfilePath))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				final byte[] expected = FileUtils.readFileToByteArray(new File(this.archiveDir, entry.getName()));
+				Assert.assertArrayEquals("Content should match for " + entry.getName(), expected, read(zip));
+				methods.put(entry.getName(), entry.getMethod());
+			}
+		}
+
+		Assert.assertEquals("All files should be in the zip", 5, methods.size());
+		Assert.assertEquals("text should be deflated", Integer.valueOf(ZipEntry.DEFLATED), methods.get("large.txt"));
+		Assert.assertEquals("docx should be stored", Integer.valueOf(ZipEntry.STORED), methods.get("tool/LoremIpsum.docx"));
+	}
+
+	@Test
+	public void should_createReadableCentralDirectory() throws IOException {
+
+		final String zipfilePath = new ParallelZipper(2, -1).zipDirectory(this.archiveDir, "output");
+
+		try (ZipFile zip = new ZipFile(zipfilePath)) {
+			Assert.assertEquals("All files should be in the zip", 5, zip.size());
+			final ZipEntry large = zip.getEntry("large.txt");
+			Assert.assertEquals("Size should be recorded", new File(this.archiveDir, "large.txt").length(), large.getSize());
+			Assert.assertTrue("Text should have been compressed", large.getCompressedSize() < large.getSize());
+		}
+	}
+
+	private byte[] read(final ZipInputStream zip) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = zip.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+}
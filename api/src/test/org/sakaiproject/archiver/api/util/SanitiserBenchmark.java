@@ -0,0 +1,97 @@
+package org.sakaiproject.archiver.api.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.Sanitiser;
+
+/**
+ * Measures the cost of working out the path of each file written to an archive. This is not run as part of the build, run the main
+ * method from the test classpath.
+ *
+ * Compares the regular expression that the {@link Sanitiser} used before with the current {@link Sanitiser}, and with the
+ * {@link ArchivePathPlanner} that the archiver now plans every path with. Each operation is one file, in one of a few directories that
+ * are shared by many files as they are in a forum. The planner is kept for each iteration, so after the first invocation the paths are
+ * planned again as they are when providers link to the files they have archived.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@OperationsPerInvocation(SanitiserBenchmark.FILES)
+public class SanitiserBenchmark {
+
+	static final int FILES = 1000;
+
+	private List<String[]> paths;
+
+	private ArchivePathPlanner planner;
+
+	@Setup(Level.Trial)
+	public void createPaths() {
+		this.paths = new ArrayList<>();
+		for (int i = 0; i < FILES; i++) {
+			this.paths.add(new String[] { "Forums", "General Discussion", "topics", "Week " + (i % 12) + "?",
+					"Re: Question " + i + ".html" });
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void createPlanner() {
+		this.planner = new ArchivePathPlanner();
+	}
+
+	@Benchmark
+	public int regex() {
+		int length = 0;
+		for (final String[] path : this.paths) {
+			for (final String name : path) {
+				length += name.replaceAll("[^a-zA-Z0-9.\" \"-]", "_").length();
+			}
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int sanitiser() {
+		int length = 0;
+		for (final String[] path : this.paths) {
+			for (final String name : path) {
+				length += Sanitiser.sanitise(name).length();
+			}
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int planner() {
+		int length = 0;
+		for (final String[] path : this.paths) {
+			length += this.planner.plan(path).length;
+		}
+		return length;
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SanitiserBenchmark.class.getSimpleName()).build()).run();
+	}
+}
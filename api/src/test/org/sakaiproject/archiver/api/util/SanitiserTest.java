@@ -0,0 +1,34 @@
+package org.sakaiproject.archiver.api.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.sakaiproject.archiver.util.Sanitiser;
+
+/**
+ * Test for the {@link Sanitiser} utility
+ */
+public class SanitiserTest {
+
+	@Test
+	public void should_returnSameString_when_nothingToReplace() {
+		final String name = "Week 1 - Introduction.html";
+		assertSame(name, Sanitiser.sanitise(name));
+	}
+
+	@Test
+	public void should_replaceIllegalChars_when_present() {
+		assertEquals("Q_A _draft_ _quoted_.pdf", Sanitiser.sanitise("Q&A <draft> \"quoted\".pdf"));
+		assertEquals("a_b_c", Sanitiser.sanitise("a/b\\c"));
+		assertArrayEquals(new String[] { "Week 1_", "Week 1_" }, Sanitiser.sanitise("Week 1?", "Week 1!"));
+	}
+
+	@Test
+	public void should_replaceOnce_when_charOutsideBmp() {
+		assertEquals("Party _.txt", Sanitiser.sanitise("Party \ud83c\udf89.txt"));
+		assertEquals("Zo_", Sanitiser.sanitise("Zo\u00eb"));
+	}
+
+}
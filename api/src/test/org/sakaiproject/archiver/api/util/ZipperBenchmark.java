@@ -0,0 +1,116 @@
+package org.sakaiproject.archiver.api.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sakaiproject.archiver.util.ParallelZipper;
+import org.sakaiproject.archiver.util.Zipper;
+
+/**
+ * Compares {@link Zipper} with {@link ParallelZipper} on a synthetic archive tree. This is not run as part of the build, run the main
+ * method from the test classpath.
+ *
+ * The tree is a mix of compressible text and incompressible binary content of varying sizes, similar to a resources heavy site. The size
+ * defaults to 2GB and can be changed with -p sizeMb=n.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZipperBenchmark {
+
+	@Param({ "2048" })
+	public int sizeMb;
+
+	@Param({ "4" })
+	public int threads;
+
+	private File root;
+	private File archiveDir;
+	private File zip;
+
+	@Setup(Level.Trial)
+	public void createTree() throws IOException {
+		this.root = Files.createTempDirectory("zipper-benchmark").toFile();
+		this.archiveDir = new File(this.root, "archive");
+
+		final Random random = new Random(42);
+		final long target = this.sizeMb * FileUtils.ONE_MB;
+		long written = 0;
+		int count = 0;
+		while (written < target) {
+			// sizes from 4KB up to 32MB, spread over a few directories
+			final int size = (int) Math.min(target - written, 4096L << random.nextInt(14));
+			final File dir = new File(this.archiveDir, "tool" + (count % 8) + File.separator + "dir" + (count % 32));
+			if (count % 5 < 3) {
+				FileUtils.writeByteArrayToFile(new File(dir, "file" + count + ".txt"), text(random, size));
+			} else {
+				final byte[] bytes = new byte[size];
+				random.nextBytes(bytes);
+				FileUtils.writeByteArrayToFile(new File(dir, "file" + count + ".bin"), bytes);
+			}
+			written += size;
+			count++;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteTree() {
+		FileUtils.deleteQuietly(this.root);
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteZip() {
+		FileUtils.deleteQuietly(this.zip);
+	}
+
+	@Benchmark
+	public String zipper() throws IOException {
+		final String path = Zipper.zipDirectory(this.archiveDir, "zipper");
+		this.zip = new File(path);
+		return path;
+	}
+
+	@Benchmark
+	public String parallelZipper() throws IOException {
+		final String path = new ParallelZipper(this.threads, -1).zipDirectory(this.archiveDir, "parallel");
+		this.zip = new File(path);
+		return path;
+	}
+
+	private static byte[] text(final Random random, final int size) {
+		final byte[] bytes = new byte[size];
+		final String words = "the quick brown fox jumps over the lazy dog archive site resource assignment forum ";
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) words.charAt((i + random.nextInt(4)) % words.length());
+		}
+		return bytes;
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ZipperBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
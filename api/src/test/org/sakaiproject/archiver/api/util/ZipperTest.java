@@ -2,10 +2,14 @@ package org.sakaiproject.archiver.api.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sakaiproject.archiver.exception.ZipWriteException;
 import org.sakaiproject.archiver.util.Zipper;
 
@@ -14,6 +18,9 @@ import org.sakaiproject.archiver.util.Zipper;
  */
 public class ZipperTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void should_createZip() {
 
@@ -39,4 +46,34 @@ public class ZipperTest {
 
 	}
 
+	@Test
+	public void should_storeEntry_when_fileAlreadyCompressed() throws IOException {
+
+		final File archiveDir = this.folder.newFolder("archive");
+		FileUtils.copyFileToDirectory(new File(getClass().getResource("/LoremIpsum.docx").getFile()), archiveDir);
+		FileUtils.copyFileToDirectory(new File(getClass().getResource("/LoremIpsum.html").getFile()), archiveDir);
+
+		final String zipfilePath = Zipper.zipDirectory(archiveDir, "output", 9);
+
+		try (ZipFile zip = new ZipFile(zipfilePath)) {
+			final ZipEntry docx = zip.getEntry("LoremIpsum.docx");
+			Assert.assertEquals("docx should be stored", ZipEntry.STORED, docx.getMethod());
+			Assert.assertEquals("docx should be intact", new File(archiveDir, "LoremIpsum.docx").length(), docx.getSize());
+
+			final ZipEntry html = zip.getEntry("LoremIpsum.html");
+			Assert.assertEquals("html should be deflated", ZipEntry.DEFLATED, html.getMethod());
+		}
+	}
+
+	@Test
+	public void should_storeEntry_when_contentSniffedAsCompressed() {
+
+		final byte[] png = new byte[] { (byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A };
+		Assert.assertTrue("png content should be detected", Zipper.isCompressed("image.dat", png));
+
+		final byte[] text = "plain text content".getBytes();
+		Assert.assertFalse("text content should not be detected", Zipper.isCompressed("notes.dat", text));
+		Assert.assertTrue("extension should be detected", Zipper.isCompressed("movie.MP4", text));
+	}
+
 }
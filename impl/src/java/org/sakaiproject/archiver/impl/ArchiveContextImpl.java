@@ -0,0 +1,201 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.archiver.api.ArchiveContext;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SitePage;
+import org.sakaiproject.site.api.ToolConfiguration;
+import org.sakaiproject.user.api.User;
+
+import lombok.Getter;
+
+/**
+ * {@link ArchiveContext} that loads the site once, the first time anything is asked of it, and keeps what is needed from it. Users are
+ * looked up through a {@link UserCache}. Providers run concurrently so this is safe to use from multiple threads.
+ */
+public class ArchiveContextImpl implements ArchiveContext {
+
+	@Getter
+	private final String archiveId;
+
+	@Getter
+	private final String siteId;
+
+	private final Function<String, Site> siteLoader;
+
+	// looks up the title of a tool that is not on a page, for the fallback name
+	private final Function<String, String> toolTitles;
+
+	private final UserCache userCache;
+
+	private final ArchivePathPlanner pathPlanner;
+
+	private final AtomicInteger siteLookups = new AtomicInteger();
+
+	private String siteTitle;
+
+	private String siteTerm;
+
+	private Set<String> memberIds;
+
+	// toolId to the title of the page it is on
+	private Map<String, String> pageTitles;
+
+	// toolId to resolved name, including those that fell back to the tool title
+	private final Map<String, String> toolNames = new ConcurrentHashMap<>();
+
+	/**
+	 * Create the context
+	 *
+	 * @param archiveId the id of the archive
+	 * @param siteId the id of the site being archived
+	 * @param siteLoader gets the site for a siteId
+	 * @param toolTitles gets the title of a tool for a toolId, or null if the tool is not known
+	 * @param userCache the users for this archive
+	 */
+	public ArchiveContextImpl(final String archiveId, final String siteId, final Function<String, Site> siteLoader,
+			final Function<String, String> toolTitles, final UserCache userCache) {
+		this(archiveId, siteId, siteLoader, toolTitles, userCache, new ArchivePathPlanner());
+	}
+
+	/**
+	 * Create the context
+	 *
+	 * @param archiveId the id of the archive
+	 * @param siteId the id of the site being archived
+	 * @param siteLoader gets the site for a siteId
+	 * @param toolTitles gets the title of a tool for a toolId, or null if the tool is not known
+	 * @param userCache the users for this archive
+	 * @param pathPlanner plans the paths of the files in this archive
+	 */
+	public ArchiveContextImpl(final String archiveId, final String siteId, final Function<String, Site> siteLoader,
+			final Function<String, String> toolTitles, final UserCache userCache, final ArchivePathPlanner pathPlanner) {
+		this.archiveId = archiveId;
+		this.siteId = siteId;
+		this.siteLoader = siteLoader;
+		this.toolTitles = toolTitles;
+		this.userCache = userCache;
+		this.pathPlanner = pathPlanner;
+	}
+
+	/**
+	 * Fetch all members of the site in one call, so that providers find them in the cache
+	 */
+	public void prefetchMembers() {
+		load();
+		this.userCache.prefetch(this.memberIds);
+	}
+
+	@Override
+	public String getSiteTitle() {
+		load();
+		return this.siteTitle;
+	}
+
+	@Override
+	public String getSiteTerm() {
+		load();
+		return this.siteTerm;
+	}
+
+	@Override
+	public String getToolName(final String toolId) {
+		load();
+		return this.toolNames.computeIfAbsent(StringUtils.defaultString(toolId), k -> {
+			final String name = this.pageTitles.get(k);
+			if (StringUtils.isNotBlank(name)) {
+				return name;
+			}
+			// try the tool name or fall back to toolId
+			final String title = this.toolTitles.apply(k);
+			return (title != null) ? title : k;
+		});
+	}
+
+	@Override
+	public String getSiteHeader(final String toolId) {
+		final String siteTitle = getSiteTitle();
+		final String toolName = getToolName(toolId);
+
+		if (this.siteTerm != null) {
+			return String.format("%s (%s): %s", siteTitle, this.siteTerm, toolName);
+		} else {
+			return String.format("%s: %s", siteTitle, toolName);
+		}
+	}
+
+	@Override
+	public String getArchivePath(final String dirName, final String filename, final String... subdirectories) {
+		return String.join("/", planPath(dirName, filename, subdirectories));
+	}
+
+	/**
+	 * Plan the path that a file is archived to
+	 *
+	 * @param dirName the name of the directory where the content is archived to
+	 * @param filename the name of the file
+	 * @param subdirectories the subdirectories within the archive where the file is written
+	 * @return the planned names in the path, starting with the directory and ending with the file
+	 */
+	public String[] planPath(final String dirName, final String filename, final String... subdirectories) {
+		final String[] names = new String[subdirectories.length + 2];
+		names[0] = dirName;
+		System.arraycopy(subdirectories, 0, names, 1, subdirectories.length);
+		names[names.length - 1] = filename;
+		return this.pathPlanner.plan(names);
+	}
+
+	@Override
+	public int getSiteLookups() {
+		return this.siteLookups.get();
+	}
+
+	@Override
+	public User getUser(final String userUuid) {
+		return this.userCache.getUser(userUuid);
+	}
+
+	@Override
+	public long getUserHits() {
+		return this.userCache.getHits();
+	}
+
+	@Override
+	public long getUserMisses() {
+		return this.userCache.getMisses();
+	}
+
+	/**
+	 * Load the site and keep its title, term and page titles
+	 */
+	private synchronized void load() {
+		if (this.pageTitles != null) {
+			return;
+		}
+
+		this.siteLookups.incrementAndGet();
+		final Site site = this.siteLoader.apply(this.siteId);
+
+		this.siteTitle = site.getTitle();
+		this.siteTerm = (String) site.getProperties().get(Site.PROP_SITE_TERM);
+		this.memberIds = site.getUsers();
+
+		// find the page and grab the toolname from that.
+		final Map<String, String> titles = new HashMap<>();
+		for (final SitePage page : site.getPages()) {
+			for (final ToolConfiguration toolConfig : page.getTools()) {
+				titles.put(toolConfig.getToolId(), page.getTitle());
+			}
+		}
+		this.pageTitles = titles;
+	}
+
+}
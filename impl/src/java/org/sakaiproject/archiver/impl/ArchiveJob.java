@@ -0,0 +1,218 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.util.Jsonifier;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * An archive that has been requested and is waiting for, or running in, one of the {@link ArchiveScheduler} slots.
+ *
+ * The settings needed to run the archive are persisted with the {@link ArchiveEntity} so that queued archives survive a restart.
+ *
+ * The job is also the cancellation token for the archive. Cancelling it interrupts the providers, and providers check it before they
+ * start and whenever they write content so they stop as soon as possible. Once the archive starts finalising it can no longer be
+ * cancelled.
+ */
+public class ArchiveJob {
+
+	@Getter
+	private final String archiveId;
+
+	@Getter
+	private final String siteId;
+
+	@Getter
+	private final String userUuid;
+
+	@Getter
+	private final boolean includeStudentData;
+
+	@Getter
+	private final List<String> toolIds;
+
+	/**
+	 * For an incremental archive, the archive it builds on. Null for a full archive.
+	 */
+	@Getter
+	@Setter
+	private String baseArchiveId;
+
+	/**
+	 * For an incremental archive, only content changed after this date is included. Null for a full archive.
+	 */
+	@Getter
+	@Setter
+	private Date modifiedSince;
+
+	/**
+	 * Set when the content for this archive is written straight to its zip
+	 */
+	@Getter
+	@Setter
+	private ZipArchiveWriter zipWriter;
+
+	/**
+	 * Records the progress of the archive so it can be resumed after a restart. Null if the archive is written straight to its zip.
+	 */
+	@Getter
+	@Setter
+	private CheckpointJournal journal;
+
+	private final List<Future<?>> providerFutures = new ArrayList<>();
+
+	private int runningProviders = 0;
+
+	private boolean cancelled = false;
+
+	private boolean finalising = false;
+
+	public ArchiveJob(final String archiveId, final String siteId, final String userUuid, final boolean includeStudentData,
+			final List<String> toolIds) {
+		this.archiveId = archiveId;
+		this.siteId = siteId;
+		this.userUuid = userUuid;
+		this.includeStudentData = includeStudentData;
+		this.toolIds = new ArrayList<>(toolIds);
+	}
+
+	/**
+	 * Check if the archive has been cancelled
+	 *
+	 * @return true/false
+	 */
+	public synchronized boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Cancel the archive and interrupt any providers that are running
+	 *
+	 * @return true if the archive was cancelled, false if it is too late as it is already being finalised
+	 */
+	public synchronized boolean cancel() {
+		if (this.finalising) {
+			return false;
+		}
+		if (!this.cancelled) {
+			this.cancelled = true;
+			this.providerFutures.forEach(f -> f.cancel(true));
+		}
+		return true;
+	}
+
+	/**
+	 * Track a provider that has been submitted for this archive so it can be interrupted if the archive is cancelled
+	 *
+	 * @param future the provider task
+	 */
+	public synchronized void addProvider(final Future<?> future) {
+		this.providerFutures.add(future);
+		if (this.cancelled) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Called by a provider task as it starts
+	 *
+	 * @return false if the archive has been cancelled and the provider should not run
+	 */
+	public synchronized boolean providerStarted() {
+		if (this.cancelled) {
+			return false;
+		}
+		this.runningProviders++;
+		return true;
+	}
+
+	/**
+	 * Called by a provider task when it finishes, whether it completed or not
+	 */
+	public synchronized void providerFinished() {
+		this.runningProviders--;
+		notifyAll();
+	}
+
+	/**
+	 * Wait for any providers that are still running to finish. Cancelled providers are interrupted but may take a moment to notice.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if all providers have finished
+	 * @throws InterruptedException if interrupted whilst waiting
+	 */
+	public synchronized boolean awaitProviders(final long timeout) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (this.runningProviders > 0 && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return this.runningProviders == 0;
+	}
+
+	/**
+	 * Mark the archive as finalising so it can no longer be cancelled
+	 *
+	 * @return false if the archive has already been cancelled and should not be finalised
+	 */
+	public synchronized boolean startFinalising() {
+		if (this.cancelled) {
+			return false;
+		}
+		this.finalising = true;
+		return true;
+	}
+
+	/**
+	 * Rebuild a job from a persisted {@link ArchiveEntity}
+	 *
+	 * @param entity the entity with the persisted settings
+	 * @return the job
+	 */
+	public static ArchiveJob fromEntity(final ArchiveEntity entity) {
+		Settings settings = Jsonifier.fromJson(entity.getSettings(), Settings.class);
+		if (settings == null) {
+			settings = new Settings();
+		}
+		final ArchiveJob job = new ArchiveJob(entity.getId(), entity.getSiteId(), entity.getUserUuid(), settings.includeStudentData,
+				Arrays.asList(settings.toolIds));
+		job.setBaseArchiveId(entity.getBaseArchiveId());
+		if (settings.modifiedSince != null) {
+			job.setModifiedSince(new Date(settings.modifiedSince));
+		}
+		return job;
+	}
+
+	/**
+	 * Serialise the settings for this job so they can be stored with the {@link ArchiveEntity}
+	 *
+	 * @return JSON string of the settings
+	 */
+	public String toSettings() {
+		final Settings settings = new Settings();
+		settings.includeStudentData = this.includeStudentData;
+		settings.toolIds = this.toolIds.toArray(new String[this.toolIds.size()]);
+		if (this.modifiedSince != null) {
+			settings.modifiedSince = this.modifiedSince.getTime();
+		}
+		return Jsonifier.toJson(settings);
+	}
+
+	/**
+	 * The persisted form of the settings
+	 */
+	private static class Settings {
+		private boolean includeStudentData;
+		private String[] toolIds = new String[0];
+		private Long modifiedSince;
+	}
+
+}
@@ -5,7 +5,9 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import org.sakaiproject.archiver.dto.Archive;
+import org.sakaiproject.archiver.dto.ProviderResult;
 import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.entity.ArchiveProviderEntity;
 
 /**
  * Maps entity to DTOs and vice versa
@@ -39,6 +41,7 @@ public class ArchiveMapper {
 		dto.setEndDate(entity.getEndDate());
 		dto.setStatus(entity.getStatus());
 		dto.setZipPath(entity.getZipPath());
+		dto.setBaseArchiveId(entity.getBaseArchiveId());
 
 		return dto;
 	}
@@ -55,4 +58,42 @@ public class ArchiveMapper {
 		return archives;
 	}
 
+	/**
+	 * Map an {@link ArchiveProviderEntity} to a {@link ProviderResult} dto or null if entity is null
+	 *
+	 * @param entity
+	 * @return
+	 */
+	public static ProviderResult toDto(final ArchiveProviderEntity entity) {
+
+		if (entity == null) {
+			return null;
+		}
+
+		final ProviderResult dto = new ProviderResult();
+		dto.setArchiveId(entity.getArchiveId());
+		dto.setProvider(entity.getProvider());
+		dto.setToolId(entity.getToolId());
+		dto.setStatus(entity.getStatus());
+		dto.setStartDate(entity.getStartDate());
+		dto.setEndDate(entity.getEndDate());
+		dto.setBytesWritten(entity.getBytesWritten());
+		dto.setFileCount(entity.getFileCount());
+		dto.setError(entity.getError());
+
+		return dto;
+	}
+
+	/**
+	 * Map a list of {@link ArchiveProviderEntity} to a list of {@link ProviderResult} dto
+	 *
+	 * @param entities
+	 * @return
+	 */
+	public static List<ProviderResult> toProviderResults(final List<ArchiveProviderEntity> entities) {
+		final List<ProviderResult> results = new ArrayList<>();
+		results.addAll(entities.stream().map(e -> ArchiveMapper.toDto(e)).collect(Collectors.toList()));
+		return results;
+	}
+
 }
@@ -0,0 +1,89 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.sakaiproject.archiver.exception.ArchiveQueueFullException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs archives in a fixed number of slots so that only a limited number of archives run on a node at once.
+ *
+ * Archives that cannot start straight away wait in a bounded FIFO queue. When the queue is full, new archives are refused so the caller
+ * can apply back-pressure instead of the node running out of heap or disk bandwidth.
+ */
+@Slf4j
+public class ArchiveScheduler {
+
+	private final ThreadPoolExecutor executor;
+
+	private final int queueSize;
+
+	/**
+	 * Create the scheduler
+	 *
+	 * @param slots the number of archives that can run at once
+	 * @param queueSize the number of archives that can wait for a slot
+	 * @param threadFactory factory for the slot threads
+	 */
+	public ArchiveScheduler(final int slots, final int queueSize, final ThreadFactory threadFactory) {
+		this.queueSize = queueSize;
+		this.executor = new ThreadPoolExecutor(slots, slots, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize),
+				threadFactory, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Add an archive to the queue. It will run as soon as a slot is free.
+	 *
+	 * @param archiveId the id of the archive, for logging
+	 * @param task the work to run the archive
+	 * @throws ArchiveQueueFullException if the queue is full
+	 */
+	public void submit(final String archiveId, final Runnable task) throws ArchiveQueueFullException {
+		try {
+			this.executor.execute(task);
+			log.debug("Archive {} queued. Running: {}, queued: {}", archiveId, getRunningCount(), getQueuedCount());
+		} catch (final RejectedExecutionException e) {
+			throw new ArchiveQueueFullException("The archive queue is full, archive " + archiveId + " cannot be accepted");
+		}
+	}
+
+	/**
+	 * Check if there is room in the queue for another archive
+	 *
+	 * @return true/false
+	 */
+	public boolean hasCapacity() {
+		return getQueuedCount() < this.queueSize;
+	}
+
+	/**
+	 * Get the number of archives waiting for a slot
+	 *
+	 * @return
+	 */
+	public int getQueuedCount() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * Get the number of archives currently running
+	 *
+	 * @return
+	 */
+	public int getRunningCount() {
+		return this.executor.getActiveCount();
+	}
+
+	/**
+	 * Stop the scheduler. Any queued archives remain queued in the database and are picked up again on startup.
+	 */
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,191 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.sakaiproject.archiver.dto.Archive;
+
+/**
+ * The latest archive of each site, so that the tool can poll the status of an archive without querying the database every time.
+ *
+ * The archive of a site is updated as it changes state on this node. Archives can also be started or finished by other nodes in the
+ * cluster, so each entry is only kept for a short time before it is loaded again.
+ *
+ * Each change is stamped with a version, so that an archive loaded from the database does not replace a change that was made whilst it
+ * was being loaded. Entries are removed once they expire if the cache grows beyond {@link #MAX_SITES}.
+ *
+ * The archives returned are shared, so they must not be modified.
+ */
+public class ArchiveStatusCache {
+
+	/**
+	 * Number of sites cached before expired entries are removed
+	 */
+	static final int MAX_SITES = 10000;
+
+	// in milliseconds
+	private final LongSupplier ttl;
+
+	private final LongSupplier clock;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong versions = new AtomicLong();
+
+	/**
+	 * Create the cache
+	 *
+	 * @param ttl how long to keep the archive of a site for, in milliseconds. Checked on every lookup so it can be reconfigured.
+	 */
+	public ArchiveStatusCache(final LongSupplier ttl) {
+		this(ttl, System::currentTimeMillis);
+	}
+
+	/**
+	 * Create the cache with a clock, for testing
+	 *
+	 * @param ttl how long to keep the archive of a site for, in milliseconds
+	 * @param clock the current time in milliseconds
+	 */
+	ArchiveStatusCache(final LongSupplier ttl, final LongSupplier clock) {
+		this.ttl = ttl;
+		this.clock = clock;
+	}
+
+	/**
+	 * Get the latest archive of a site, loading it if it is not cached or has expired
+	 *
+	 * @param siteId the id of the site
+	 * @param loader loads the latest archive of a site, or null if it has none
+	 * @return the archive or null if the site has none
+	 */
+	public Archive getLatest(final String siteId, final Function<String, Archive> loader) {
+		if (siteId == null) {
+			return loader.apply(siteId);
+		}
+
+		final long ttl = this.ttl.getAsLong();
+		final long now = this.clock.getAsLong();
+		final Entry entry = this.entries.get(siteId);
+		if (entry != null && entry.known && now - entry.loaded < ttl) {
+			this.hits.incrementAndGet();
+			return entry.archive;
+		}
+
+		this.misses.incrementAndGet();
+		final long version = this.versions.get();
+		final Archive archive = loader.apply(siteId);
+		if (ttl > 0) {
+			// anything that changed whilst loading is newer than what was loaded
+			this.entries.compute(siteId,
+					(k, existing) -> (existing != null && existing.version > version) ? existing : newEntry(archive, true, now));
+			prune(now, ttl);
+		}
+		return archive;
+	}
+
+	/**
+	 * Cache an archive that has just been created, which is now the latest archive of its site
+	 *
+	 * @param archive
+	 */
+	public void put(final Archive archive) {
+		if (archive.getSiteId() == null) {
+			return;
+		}
+		this.entries.put(archive.getSiteId(), newEntry(archive, true, this.clock.getAsLong()));
+	}
+
+	/**
+	 * Update an archive that has changed state. If a different archive, or nothing, is cached for the site it is not known which is the
+	 * latest, so the site is loaded again next time.
+	 *
+	 * @param archive
+	 */
+	public void update(final Archive archive) {
+		if (archive.getSiteId() == null) {
+			return;
+		}
+		final long now = this.clock.getAsLong();
+		this.entries.compute(archive.getSiteId(), (siteId, entry) -> {
+			final boolean known = entry != null && entry.archive != null
+					&& Objects.equals(entry.archive.getArchiveId(), archive.getArchiveId());
+			return newEntry(known ? archive : null, known, now);
+		});
+		prune(now, this.ttl.getAsLong());
+	}
+
+	/**
+	 * Get the number of lookups that were answered from the cache
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that went to the database
+	 *
+	 * @return
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Get the number of sites cached
+	 *
+	 * @return
+	 */
+	int size() {
+		return this.entries.size();
+	}
+
+	private Entry newEntry(final Archive archive, final boolean known, final long loaded) {
+		return new Entry(archive, known, loaded, this.versions.incrementAndGet());
+	}
+
+	/**
+	 * Remove expired entries once there are too many. If they have not expired yet they are all removed, as they can be loaded again.
+	 */
+	private void prune(final long now, final long ttl) {
+		if (this.entries.size() > MAX_SITES) {
+			this.entries.values().removeIf(e -> now - e.loaded >= ttl);
+			if (this.entries.size() > MAX_SITES) {
+				this.entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * The latest archive of a site, when it was cached and the version of the change that cached it
+	 */
+	private static class Entry {
+
+		// null if the site has no archives or the latest archive is not known
+		private final Archive archive;
+
+		// false if the site changed but its latest archive is not known, so it needs to be loaded
+		private final boolean known;
+
+		private final long loaded;
+
+		private final long version;
+
+		Entry(final Archive archive, final boolean known, final long loaded, final long version) {
+			this.archive = archive;
+			this.known = known;
+			this.loaded = loaded;
+			this.version = version;
+		}
+	}
+}
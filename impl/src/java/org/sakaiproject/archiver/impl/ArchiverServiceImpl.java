@@ -1,55 +1,94 @@
 package org.sakaiproject.archiver.impl;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.api.Status;
 import org.sakaiproject.archiver.dto.Archive;
+import org.sakaiproject.archiver.dto.ProviderResult;
 import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.entity.ArchiveProviderEntity;
 import org.sakaiproject.archiver.exception.ArchiveAlreadyInProgressException;
 import org.sakaiproject.archiver.exception.ArchiveCancellationException;
 import org.sakaiproject.archiver.exception.ArchiveCompletionException;
 import org.sakaiproject.archiver.exception.ArchiveInitialisationException;
 import org.sakaiproject.archiver.exception.ArchiveNotFoundException;
 import org.sakaiproject.archiver.exception.ArchiveProcessingException;
+import org.sakaiproject.archiver.exception.ArchiveQueueFullException;
+import org.sakaiproject.archiver.exception.ArchiveStorageFullException;
 import org.sakaiproject.archiver.exception.FileExtensionExcludedException;
 import org.sakaiproject.archiver.exception.FileSizeExceededException;
 import org.sakaiproject.archiver.exception.ToolsNotSpecifiedException;
+import org.sakaiproject.archiver.exception.ZipWriteException;
 import org.sakaiproject.archiver.persistence.ArchiverPersistenceService;
 import org.sakaiproject.archiver.spi.Archiveable;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.Dateifier;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
+import org.sakaiproject.archiver.util.Jsonifier;
+import org.sakaiproject.archiver.util.ParallelZipper;
 import org.sakaiproject.archiver.util.Sanitiser;
 import org.sakaiproject.archiver.util.Zipper;
 import org.sakaiproject.authz.api.AuthzGroupService;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
-import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.site.api.Site;
-import org.sakaiproject.site.api.SitePage;
 import org.sakaiproject.site.api.SiteService;
-import org.sakaiproject.site.api.ToolConfiguration;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.tool.api.Tool;
 import org.sakaiproject.tool.api.ToolManager;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.user.api.UserNotDefinedException;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -81,14 +120,181 @@ public class ArchiverServiceImpl implements ArchiverService {
 	@Setter
 	private SecurityService securityService;
 
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+
+	/**
+	 * Buffer used when streaming content to disk. Each provider thread reuses its own.
+	 */
+	private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[16 * 1024]);
+
+	/**
+	 * Most that is held in memory of a file that is being generated straight into a zip, before it goes to a temporary file instead
+	 */
+	private static final int CONTENT_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Counts what the provider running on the current thread has written
+	 */
+	private static final ThreadLocal<WriteStats> PROVIDER_WRITES = new ThreadLocal<>();
+
+	/**
+	 * Content type recorded in the manifest when it cannot be determined
+	 */
+	private static final String DEFAULT_MIME = "application/octet-stream";
+
+	/**
+	 * Directory under the archive base path that holds the blob store
+	 */
+	private static final String BLOB_DIR = "blobs";
+
+	/**
+	 * Directory under the archive base path for files that are still being written by a provider
+	 */
+	private static final String TEMP_DIR = ".tmp";
+
+	/**
+	 * File in the root of an incremental archive that describes the archive it is based on
+	 */
+	private static final String INCREMENTAL_INFO = "incremental.json";
+
+	/**
+	 * Number of sites read at a time by the storage sweep
+	 */
+	private static final int SWEEP_PAGE_SIZE = 500;
+
+	/**
+	 * How long to wait for the providers of a cancelled archive to stop before its files are removed
+	 */
+	private static final long PROVIDER_STOP_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Shared pool that runs the providers for all archives on this node
+	 */
+	private ExecutorService providerExecutor;
+
+	/**
+	 * Limits how many archives run at once on this node
+	 */
+	private ArchiveScheduler scheduler;
+
+	/**
+	 * Runs background housekeeping tasks
+	 */
+	private ScheduledExecutorService scheduledExecutor;
+
+	/**
+	 * Stores the content of staged archives by hash so it is only written once. Null if deduplication is disabled.
+	 */
+	private BlobStore blobStore;
+
+	/**
+	 * Tracks the space used under the archive base path and removes what is no longer needed
+	 */
+	private StorageManager storage;
+
+	/**
+	 * Archives that are currently running on this node
+	 */
+	private final Map<String, ArchiveJob> activeJobs = new ConcurrentHashMap<>();
+
+	/**
+	 * Site details for each archive running on this node
+	 */
+	private final Map<String, ArchiveContextImpl> contexts = new ConcurrentHashMap<>();
+
+	/**
+	 * What has been written to each archive running on this node
+	 */
+	private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+
+	/**
+	 * Counts of what has been written for each archive running on this node
+	 */
+	private final Map<String, WriteStats> writeStats = new ConcurrentHashMap<>();
+
+	/**
+	 * Latest archive of each site, for the tool to poll
+	 */
+	private final ArchiveStatusCache statusCache = new ArchiveStatusCache(() -> TimeUnit.SECONDS.toMillis(getStatusCacheTtl()));
+
+	/**
+	 * When this node started. Archives of this node from before then were queued or interrupted by the restart.
+	 */
+	private Date startedAt;
+
 	public void init() {
-		log.info("ArchiverService started");
+		this.startedAt = new Date();
+
+		final int providerThreads = getProviderThreads();
+		this.providerExecutor = Executors.newFixedThreadPool(providerThreads, newThreadFactory("archiver-provider"));
+
+		final int slots = getConcurrentArchives();
+		this.scheduler = new ArchiveScheduler(slots, getQueueSize(), newThreadFactory("archiver-slot"));
+
+		// the providers register themselves as they start up so give them a chance before restoring the queue
+		this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor(newThreadFactory("archiver-scheduled"));
+		this.scheduledExecutor.schedule(this::restoreQueue, getQueueRestoreDelay(), TimeUnit.SECONDS);
+
+		if (isDedupEnabled()) {
+			try {
+				this.blobStore = new BlobStore(Paths.get(getArchiveBasePath(), BLOB_DIR));
+				this.scheduledExecutor.scheduleWithFixedDelay(this::reclaimBlobs, 1, 24, TimeUnit.HOURS);
+			} catch (final IOException e) {
+				log.error("Could not create the blob store, archives will not be deduplicated", e);
+			}
+		}
+
+		// measures the space used when it first runs, so the quota is only enforced once the archives have been measured
+		this.storage = new StorageManager(Paths.get(getArchiveBasePath()), () -> getQuota() * FileUtils.ONE_MB, getSweepThreads(),
+				getSweepRate());
+		this.scheduledExecutor.scheduleWithFixedDelay(this::sweepStorage, getQueueRestoreDelay(),
+				TimeUnit.HOURS.toSeconds(getSweepInterval()), TimeUnit.SECONDS);
+
+		log.info("ArchiverService started with {} archive slots and {} provider threads", slots, providerThreads);
+	}
+
+	public void destroy() {
+		this.scheduledExecutor.shutdownNow();
+		this.storage.shutdown();
+		this.scheduler.shutdown();
+		this.providerExecutor.shutdownNow();
 	}
 
 	@Override
 	public void startArchive(final String siteId, final String userUuid, final boolean includeStudentData, final String... toolIds)
 			throws ToolsNotSpecifiedException, ArchiveAlreadyInProgressException, ArchiveInitialisationException,
-			ArchiveCompletionException {
+			ArchiveCompletionException, ArchiveQueueFullException {
+		queueArchive(siteId, userUuid, includeStudentData, null, toolIds);
+	}
+
+	@Override
+	public void startIncrementalArchive(final String siteId, final String userUuid, final boolean includeStudentData,
+			final String baseArchiveId, final String... toolIds)
+			throws ToolsNotSpecifiedException, ArchiveAlreadyInProgressException, ArchiveInitialisationException,
+			ArchiveCompletionException, ArchiveQueueFullException {
+
+		final ArchiveEntity base = this.dao.getByArchiveId(baseArchiveId);
+		if (base == null || !StringUtils.equals(siteId, base.getSiteId()) || base.getStatus() != Status.COMPLETE) {
+			throw new ArchiveInitialisationException("Archive " + baseArchiveId + " is not a complete archive of this site");
+		}
+
+		queueArchive(siteId, userUuid, includeStudentData, base, toolIds);
+	}
+
+	/**
+	 * Validate and queue an archive
+	 *
+	 * @param siteId siteId to archive
+	 * @param userUuid userUuid who started the archive
+	 * @param includeStudentData if student data is to be included
+	 * @param base the archive that this one is an increment of, or null for a full archive
+	 * @param toolIds the id of the tool in the site
+	 */
+	private void queueArchive(final String siteId, final String userUuid, final boolean includeStudentData, final ArchiveEntity base,
+			final String... toolIds)
+			throws ToolsNotSpecifiedException, ArchiveAlreadyInProgressException, ArchiveInitialisationException,
+			ArchiveQueueFullException {
 
 		// validate
 		final List<String> toolsToArchive = Arrays.asList(toolIds);
@@ -101,9 +307,18 @@ public class ArchiverServiceImpl implements ArchiverService {
 			throw new ArchiveAlreadyInProgressException("An archive is already in progress for this site");
 		}
 
+		if (!this.scheduler.hasCapacity()) {
+			throw new ArchiveQueueFullException("The archive queue is full, try again later");
+		}
+
+		if (!this.storage.hasSpace()) {
+			throw new ArchiveStorageFullException("The archives have used all of the space allowed, try again later");
+		}
+
 		// create the record
 		final ArchiveEntity entity = this.dao.create(siteId, userUuid);
 		final String archiveId = entity.getId();
+		this.statusCache.put(ArchiveMapper.toDto(entity));
 
 		// create disk location
 		final String archivePath = buildPath(getArchiveBasePath(), siteId, archiveId);
@@ -113,76 +328,452 @@ public class ArchiverServiceImpl implements ArchiverService {
 			throw new ArchiveInitialisationException("Archive could not be started", e);
 		}
 
-		// update archive with file location
+		final ArchiveJob job = new ArchiveJob(archiveId, siteId, userUuid, includeStudentData, toolsToArchive);
+		if (base != null) {
+			// anything changed after the base archive started may not be in it
+			job.setBaseArchiveId(base.getId());
+			job.setModifiedSince(base.getStartDate());
+		}
+
+		// update archive with file location and the settings needed to run it from the queue
 		entity.setArchivePath(archivePath);
-		this.dao.update(entity);
+		entity.setSettings(job.toSettings());
+		entity.setServerId(this.serverConfigurationService.getServerId());
+		entity.setBaseArchiveId(job.getBaseArchiveId());
+		updateArchive(entity);
 
-		final Map<String, List<Archiveable>> registry = ArchiverRegistry.getInstance().getRegistry();
+		try {
+			this.scheduler.submit(archiveId, () -> runArchive(job));
+		} catch (final ArchiveQueueFullException e) {
+			// lost the race for the last place in the queue
+			entity.setStatus(Status.FAILED);
+			entity.setEndDate(new Date());
+			updateArchive(entity);
+			throw e;
+		}
+	}
+
+	/**
+	 * Run a queued archive. This is called from one of the {@link ArchiveScheduler} slots and blocks that slot until the archive is
+	 * finalised.
+	 *
+	 * @param job the archive to run
+	 */
+	private void runArchive(final ArchiveJob job) {
+
+		final String archiveId = job.getArchiveId();
+		final String siteId = job.getSiteId();
+
+		// registered before anything else so that a cancellation from here on reaches this job
+		this.activeJobs.put(archiveId, job);
+		try {
+			final ArchiveEntity entity = this.dao.getByArchiveId(archiveId);
+			if (entity == null || entity.getStatus() != Status.QUEUED || job.isCancelled()) {
+				log.info("Archive {} is no longer queued and will not be started", archiveId);
+				if (entity != null && entity.getStatus() == Status.CANCELLED) {
+					deleteArchiveFiles(job, entity);
+				}
+				return;
+			}
+
+			final User user = getUser(job.getUserUuid());
+			if (user == null) {
+				entity.setStatus(Status.FAILED);
+				entity.setEndDate(new Date());
+				updateArchive(entity);
+				return;
+			}
+
+			// the site is loaded before the archive is started, so that a site deleted whilst the archive was queued fails it here rather
+			// than leaving it started, where it would block the site and be resumed after every restart
+			final ArchivePathPlanner planner = new ArchivePathPlanner(getMaxNameLength());
+			final ArchiveContextImpl context = newArchiveContext(archiveId, siteId, planner);
+			this.contexts.put(archiveId, context);
+			try {
+				context.prefetchMembers();
+			} catch (final ArchiveProcessingException e) {
+				log.error("Could not load site {} for archive {}", siteId, archiveId, e);
+				entity.setStatus(Status.FAILED);
+				entity.setEndDate(new Date());
+				updateArchive(entity);
+				return;
+			}
+
+			entity.setStatus(Status.STARTED);
+			updateArchive(entity);
+
+			try {
+				runStartedArchive(job, entity, user, planner);
+			} catch (final RuntimeException e) {
+				// anything else must not leave the archive started either, unless it has already been finished or cancelled
+				log.error("Unexpected error running archive {}", archiveId, e);
+				if (entity.getStatus() == Status.STARTED && !job.isCancelled()) {
+					entity.setStatus(Status.FAILED);
+					entity.setEndDate(new Date());
+					updateArchive(entity);
+				}
+			}
+
+		} finally {
+			this.activeJobs.remove(archiveId);
+			final ArchiveContext context = this.contexts.remove(archiveId);
+			if (context != null) {
+				log.info("Archive {} looked up site {} {} time(s), users {} hits {} misses", archiveId, siteId, context.getSiteLookups(),
+						context.getUserHits(), context.getUserMisses());
+			}
+		}
+	}
+
+	/**
+	 * Run an archive that has been started, from writing its content to finalising it
+	 *
+	 * @param job the archive to run
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 * @param user the user to run the providers as
+	 * @param planner the planner for the paths in the archive
+	 */
+	private void runStartedArchive(final ArchiveJob job, final ArchiveEntity entity, final User user, final ArchivePathPlanner planner) {
+
+		final String archiveId = job.getArchiveId();
+		final String siteId = job.getSiteId();
+		final long start = System.currentTimeMillis();
+
+		final Manifest manifest = new Manifest(archiveId);
+		manifest.setBaseArchiveId(job.getBaseArchiveId());
+
+		if (isDirectZip()) {
+			// a partly written zip can't be added to, so an archive written straight to its zip starts again if it is interrupted
+			try {
+				job.setZipWriter(new ZipArchiveWriter(
+						new File(buildPath(getArchiveBasePath(), siteId, getZipName(entity) + ".zip")), getZipLevel()));
+			} catch (final IOException e) {
+				log.error("Could not create zip for archive {}", archiveId, e);
+				entity.setStatus(Status.FAILED);
+				entity.setEndDate(new Date());
+				updateArchive(entity);
+				return;
+			}
+		} else {
+			job.setJournal(openJournal(entity, planner, manifest));
+		}
+
+		this.manifests.put(archiveId, manifest);
+
+		try {
+			Status status = runProviders(job, user);
+			if (status == null) {
+				return;
+			}
+
+			// files that could not be finished are left in the zip, but not in the index or manifest
+			if (status == Status.COMPLETE && job.getZipWriter() != null && !job.getZipWriter().getDiscarded().isEmpty()) {
+				log.error("Archive {} is incomplete, these files could not be finished: {}", archiveId,
+						job.getZipWriter().getDiscarded());
+				status = Status.INCOMPLETE;
+			}
+
+			if (!job.startFinalising()) {
+				log.info("Archive {} was cancelled, discarding what has been written", archiveId);
+				closeQuietly(job.getZipWriter());
+				entity.setStatus(Status.CANCELLED);
+				entity.setEndDate(new Date());
+				updateArchive(entity);
+				deleteArchiveFiles(job, entity);
+				return;
+			}
+
+			log.debug("All archiving threads are complete, finalising the archive.");
+
+			finalise(entity, status, job.getZipWriter(), manifest);
+			if (job.getJournal() != null) {
+				job.getJournal().delete();
+			}
+			if (entity.getStatus() != Status.FAILED && isDeleteStaging()) {
+				deleteStaging(entity);
+			}
 
-		final ExecutorService taskExecutor = Executors.newSingleThreadExecutor();
+		} finally {
+			closeQuietly(job.getZipWriter());
+			if (job.getJournal() != null) {
+				job.getJournal().close();
+			}
+			this.manifests.remove(archiveId);
+			final WriteStats stats = this.writeStats.remove(archiveId);
+			log.info("Archive {} wrote {}", archiveId, (stats != null) ? stats : "nothing");
+		}
+
+		log.info("Archive {} for site {} finished in {} ms", archiveId, siteId, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Run the providers for each of the tools in the archive concurrently on the shared pool and wait for them all to finish
+	 *
+	 * @param job the archive to run
+	 * @param user the user to run the providers as
+	 * @return the {@link Status} of the providers, or null if interrupted whilst waiting
+	 */
+	private Status runProviders(final ArchiveJob job, final User user) {
 
-		final List<Future<Status>> futures = new ArrayList<>();
+		final String archiveId = job.getArchiveId();
+		final String siteId = job.getSiteId();
 
-		final User currentUser = this.userDirectoryService.getCurrentUser();
+		final Map<String, List<Archiveable>> registry = ArchiverRegistry.getInstance().getRegistry();
+
+		final List<Future<ArchiveProviderEntity>> futures = new ArrayList<>();
 
 		// archive the requested toolIds
-		for (final String toolId : toolsToArchive) {
+		for (final String toolId : job.getToolIds()) {
 			final List<Archiveable> archiveables = registry.get(toolId);
 			if (archiveables == null || archiveables.isEmpty()) {
 				log.error("No registered archivers for {}", toolId);
-				return;
+				continue;
 			}
 
 			for (final Archiveable archiveable : archiveables) {
 
-				final Callable<Status> task = () -> {
+				final Callable<ArchiveProviderEntity> task = () -> {
+
+					final String provider = archiveable.getClass().getCanonicalName();
+					log.info("Archiving {} with provider {}", toolId, provider);
 
-					log.info("Archiving {} with provider {}", toolId, archiveable.getClass().getCanonicalName());
+					final ArchiveProviderEntity result = new ArchiveProviderEntity();
+					result.setArchiveId(archiveId);
+					result.setProvider(provider);
+					result.setToolId(toolId);
+					result.setStartDate(new Date());
+
+					final CheckpointJournal journal = job.getJournal();
+					if (journal != null && journal.isProviderCompleted(provider, toolId)) {
+						log.info("Provider {} for tool {} completed before archive {} was resumed", provider, toolId, archiveId);
+						result.setStatus(Status.COMPLETE);
+						result.setEndDate(result.getStartDate());
+						return result;
+					}
+
+					if (!job.providerStarted()) {
+						log.info("Archive {} has been cancelled, provider {} will not run", archiveId, provider);
+						result.setStatus(Status.CANCELLED);
+						result.setEndDate(result.getStartDate());
+						this.dao.saveProviderResult(result);
+						return result;
+					}
 
-					injectUser(currentUser);
+					final WriteStats providerStats = new WriteStats();
+					PROVIDER_WRITES.set(providerStats);
 
+					Session session = null;
 					try {
-						archiveable.archive(archiveId, siteId, includeStudentData);
-						return Status.COMPLETE;
+						session = injectUser(user);
+						archiveable.archive(archiveId, siteId, job.isIncludeStudentData());
+						result.setStatus(Status.COMPLETE);
 					} catch (final Exception e) {
 						log.error(
 								"An exception occurred whilst archiving content for site {} and tool {}. The archive may be incomplete.",
 								siteId, toolId, e);
-						return Status.INCOMPLETE;
+						result.setStatus(Status.INCOMPLETE);
+						result.setError(StringUtils.abbreviate(e.toString(), 2000));
+					} finally {
+						// pool threads are reused so make sure nothing from this task leaks into the next
+						if (session != null) {
+							session.invalidate();
+						}
+						this.threadLocalManager.clear();
+						PROVIDER_WRITES.remove();
+
+						if (job.isCancelled()) {
+							result.setStatus(Status.CANCELLED);
+						}
+						result.setEndDate(new Date());
+						result.setFileCount(providerStats.getFiles());
+						result.setBytesWritten(providerStats.getBytes());
+						log.info("Provider {} for tool {} in archive {} finished in {} ms and wrote {}", provider, toolId, archiveId,
+								result.getEndDate().getTime() - result.getStartDate().getTime(), providerStats);
+
+						// saved here rather than by the waiting thread as a cancelled archive stops waiting for its providers
+						this.dao.saveProviderResult(result);
+						if (journal != null && result.getStatus() == Status.COMPLETE) {
+							journal.providerCompleted(provider, toolId);
+						}
+						job.providerFinished();
 					}
+					return result;
 				};
 
-				// non blocking invocation
-				futures.add(taskExecutor.submit(task));
+				// non blocking invocation, providers run concurrently on the shared pool
+				final Future<ArchiveProviderEntity> future = this.providerExecutor.submit(task);
+				job.addProvider(future);
+				futures.add(future);
 
 			}
 		}
 
-		taskExecutor.shutdown();
+		log.debug("Waiting for all archiving threads to finish...");
 
-		// spin up another executor for the finalise to use
-		final ExecutorService finaliseExecutor = Executors.newSingleThreadExecutor();
-		final Callable<Void> finaliseTask = () -> {
+		// the archive is only complete if every provider completed
+		Status status = Status.COMPLETE;
+		for (final Future<ArchiveProviderEntity> future : futures) {
+			// wait for each to finish and record the result
+			try {
+				final ArchiveProviderEntity result = future.get();
+				if (result.getStatus() != Status.COMPLETE) {
+					status = Status.INCOMPLETE;
+				}
+			} catch (final CancellationException e) {
+				log.debug("Provider for archive {} was cancelled", archiveId);
+				status = Status.CANCELLED;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.error("Interrupted whilst waiting for archive {} to complete", archiveId);
+				return null;
+			} catch (final ExecutionException e) {
+				log.error("Archiving task failed for archive {}", archiveId, e);
+				status = Status.INCOMPLETE;
+			}
+		}
+
+		return status;
+	}
+
+	/**
+	 * Remove blobs that are no longer part of any archive
+	 */
+	private void reclaimBlobs() {
+		try {
+			this.blobStore.reclaim();
+		} catch (final IOException e) {
+			log.error("Could not reclaim blobs", e);
+		}
+	}
+
+	/**
+	 * Remove the archive directory of an archive once it has been zipped, in the background so that it does not hold up the next archive
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 */
+	private void deleteStaging(final ArchiveEntity entity) {
+		final String archivePath = entity.getArchivePath();
+		if (StringUtils.isBlank(archivePath)) {
+			return;
+		}
+		this.scheduledExecutor.execute(() -> {
+			final long freed = this.storage.delete(Paths.get(archivePath));
+			log.debug("Removed the archive directory of archive {}, freeing {} bytes", entity.getId(), freed);
+		});
+	}
 
-			log.debug("Waiting for all archiving threads to finish...");
+	/**
+	 * Apply the retention policy to the finished archives of each site, remove anything left behind that is no longer needed, then
+	 * measure the space used. Sites are read a page at a time, so the archives of only one site are held at once.
+	 */
+	private void sweepStorage() {
+		try {
+			final String serverId = this.serverConfigurationService.getServerId();
+			int expired = 0;
+			String after = null;
+			List<String> siteIds;
+			do {
+				siteIds = this.dao.getSiteIds(after, SWEEP_PAGE_SIZE);
+				for (final String siteId : siteIds) {
+					expired += sweepSite(siteId, serverId);
+				}
+				after = siteIds.isEmpty() ? null : siteIds.get(siteIds.size() - 1);
+			} while (siteIds.size() == SWEEP_PAGE_SIZE);
+			log.info("Expired {} archives", expired);
+
+			this.storage.deleteOlderThan(Paths.get(getArchiveBasePath(), TEMP_DIR), TimeUnit.DAYS.toMillis(1));
+			this.storage.measure();
+		} catch (final Exception e) {
+			log.error("Could not sweep the archive storage", e);
+		}
+	}
 
-			// TODO this should be a list of statuses as the last one could be ok but one of them failed and it will remain at STARTED.
-			// Also means we can do better reporting
-			Status status = Status.COMPLETE;
-			for (final Future<Status> future : futures) {
-				// wait for each to finish and check the status
-				status = future.get();
+	/**
+	 * Apply the {@link RetentionPolicy} to the finished archives of a site. Every node makes the same decision for a site but each only
+	 * removes the archives that it ran, so that each archive is removed once.
+	 *
+	 * @param siteId the id of the site
+	 * @param serverId the id of this node
+	 * @return the number of archives expired
+	 */
+	private int sweepSite(final String siteId, final String serverId) {
+		final RetentionPolicy policy = new RetentionPolicy(getRetentionCount(), getRetentionDays());
+		final boolean deleteStaging = isDeleteStaging();
+
+		// newest first
+		final List<ArchiveEntity> archives = this.dao.getBySiteId(siteId, 0, Integer.MAX_VALUE).stream()
+				.filter(e -> e.getStatus() == Status.COMPLETE || e.getStatus() == Status.INCOMPLETE || e.getStatus() == Status.FAILED)
+				.collect(Collectors.toList());
+		final Set<String> kept = policy.getKept(archives, System.currentTimeMillis());
+
+		int expired = 0;
+		for (final ArchiveEntity entity : archives) {
+			if (!StringUtils.equals(serverId, entity.getServerId())) {
+				continue;
+			}
+			if (!kept.contains(entity.getId())) {
+				expireArchive(entity);
+				expired++;
+			} else if (deleteStaging && entity.getStatus() != Status.FAILED && StringUtils.isNotBlank(entity.getArchivePath())) {
+				// left behind by a restart, or from before staging was removed
+				this.storage.delete(Paths.get(entity.getArchivePath()));
 			}
+		}
+		return expired;
+	}
 
-			log.debug("All archiving threads are complete, finalising the archive.");
+	/**
+	 * Remove the files of an archive and mark it as expired
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 */
+	private void expireArchive(final ArchiveEntity entity) {
+		if (StringUtils.isNotBlank(entity.getZipPath())) {
+			this.storage.delete(Paths.get(entity.getZipPath()));
+			this.storage.delete(Paths.get(FilenameUtils.removeExtension(entity.getZipPath()) + Manifest.BINARY_EXTENSION));
+		}
+		if (StringUtils.isNotBlank(entity.getArchivePath())) {
+			this.storage.delete(Paths.get(entity.getArchivePath()));
+			this.storage.delete(getJournalFile(entity).toPath());
+		}
+		entity.setStatus(Status.EXPIRED);
+		updateArchive(entity);
+		log.info("Archive {} for site {} has expired and been removed", entity.getId(), entity.getSiteId());
+	}
 
-			finalise(entity, status);
+	/**
+	 * Put any archives that were queued on this node before it was shutdown back into the queue, oldest first. Archives that were running
+	 * are queued again too, and resume from their checkpoints when they start.
+	 */
+	private void restoreQueue() {
 
-			return null;
-		};
+		final String serverId = this.serverConfigurationService.getServerId();
 
-		finaliseExecutor.submit(finaliseTask);
-		finaliseExecutor.shutdown();
+		// archives started since this node started are already in the queue
+		final List<ArchiveEntity> queued = Stream
+				.concat(this.dao.findByStatus(Status.STARTED).stream(), this.dao.findByStatus(Status.QUEUED).stream())
+				.filter(e -> StringUtils.equals(serverId, e.getServerId()))
+				.filter(e -> e.getStartDate().before(this.startedAt))
+				.sorted(Comparator.comparing(ArchiveEntity::getStartDate))
+				.collect(Collectors.toList());
+
+		log.info("Restoring {} queued or interrupted archives", queued.size());
+
+		for (final ArchiveEntity entity : queued) {
+			if (entity.getStatus() == Status.STARTED) {
+				log.info("Archive {} was interrupted by a restart and will be resumed", entity.getId());
+				entity.setStatus(Status.QUEUED);
+				updateArchive(entity);
+			}
+			final ArchiveJob job = ArchiveJob.fromEntity(entity);
+			try {
+				this.scheduler.submit(entity.getId(), () -> runArchive(job));
+			} catch (final ArchiveQueueFullException e) {
+				log.error("Queue is full, archive {} could not be restored", entity.getId());
+				entity.setStatus(Status.FAILED);
+				entity.setEndDate(new Date());
+				updateArchive(entity);
+			}
+		}
 	}
 
 	@Override
@@ -197,6 +788,11 @@ public class ArchiverServiceImpl implements ArchiverService {
 		log.debug("Archiving to archive: {} for site: {} and tool: {} in dir: {} and file: {}", archiveId, siteId, toolId,
 				buildPath(subdirectories), filename);
 
+		if (isArchiveCancelled(archiveId)) {
+			log.debug("Archive {} has been cancelled, skipping {}", archiveId, filename);
+			return;
+		}
+
 		try {
 			validateFileExtension(filename);
 		} catch (final FileExtensionExcludedException e1) {
@@ -217,62 +813,325 @@ public class ArchiverServiceImpl implements ArchiverService {
 			return;
 		}
 
-		// archive-base/siteId/archiveId/toolId/[subdirs]/file
-		final String filePath = buildPath(getArchiveBasePath(), siteId, archiveId, Sanitiser.sanitise(toolId),
-				buildPath(Sanitiser.sanitise(subdirectories)), Sanitiser.sanitise(filename));
-		log.debug("Writing to {}", filePath);
-
-		final File file = new File(filePath);
+		// toolId/[subdirs]/file
+		final String relativePath = planPath(archiveId, siteId, toolId, filename, subdirectories);
 
-		try {
-			FileUtils.writeByteArrayToFile(file, content);
-		} catch (final IOException e) {
-			log.error("Could not write file: " + file, e);
+		final long written;
+		final ZipArchiveWriter zipWriter = getZipWriter(archiveId);
+		if (zipWriter != null) {
+			written = writeZipEntry(zipWriter, content, relativePath);
+		} else {
+			// archive-base/siteId/archiveId/toolId/[subdirs]/file
+			written = writeFile(content, buildPath(getArchiveBasePath(), siteId, archiveId, relativePath));
 		}
-		writeFile(content, filePath);
 
+		if (written >= 0) {
+			recordEntry(archiveId, toolId, relativePath, written, HashingInputStream.hash(content), null, null);
+		}
 	}
 
 	@Override
-	public Archive getArchive(final String archiveId) throws ArchiveNotFoundException {
-		final ArchiveEntity entity = this.dao.getByArchiveId(archiveId);
-		if (entity == null) {
-			throw new ArchiveNotFoundException("Archive " + archiveId + " does not exist");
-		}
-
-		return ArchiveMapper.toDto(entity);
+	public void archiveContent(final String archiveId, final String siteId, final String toolId, final InputStream content,
+			final long length, final String filename, final String... subdirectories) {
+		archiveStream(archiveId, siteId, toolId, content, length, filename, null, subdirectories);
 	}
 
 	@Override
-	public List<Archive> getArchives(final String siteId, final int max) {
-		if (StringUtils.isBlank(siteId) && !isSuperUser()) {
-			return Collections.emptyList();
+	public void archiveContent(final String archiveId, final String siteId, final String toolId, final ContentResource resource,
+			final String filename, final String... subdirectories) {
+		try {
+			archiveStream(archiveId, siteId, toolId, resource.streamContent(), resource.getContentLength(), filename, resource,
+					subdirectories);
+		} catch (final ServerOverloadException e) {
+			log.error("Error retrieving data for resource {}", resource.getReference(), e);
 		}
-		final List<ArchiveEntity> entities = this.dao.getBySiteId(siteId, max);
-		return ArchiveMapper.toDtos(entities);
 	}
 
 	@Override
-	public Archive getLatest(final String siteId) {
-		final ArchiveEntity entity = this.dao.getLatest(siteId);
-		if (entity == null) {
-			log.debug("No archive exists for siteId {}", siteId);
-			return null;
+	public OutputStream openContentStream(final String archiveId, final String siteId, final String toolId, final String filename,
+			final String... subdirectories) throws IOException {
+		log.debug("Opening stream to archive: {} for site: {} and tool: {} in dir: {} and file: {}", archiveId, siteId, toolId,
+				buildPath(subdirectories), filename);
+
+		if (isArchiveCancelled(archiveId)) {
+			log.debug("Archive {} has been cancelled, skipping {}", archiveId, filename);
+			return NullOutputStream.NULL_OUTPUT_STREAM;
 		}
 
-		return ArchiveMapper.toDto(entity);
+		try {
+			validateFileExtension(filename);
+		} catch (final FileExtensionExcludedException e) {
+			log.error("File {} is of an excluded extension and will not be archived", filename);
+			return NullOutputStream.NULL_OUTPUT_STREAM;
+		}
+
+		// toolId/[subdirs]/file, planned now so the content can be written once, straight to where it belongs
+		final String relativePath = planPath(archiveId, siteId, toolId, filename, subdirectories);
+
+		final ZipArchiveWriter zipWriter = getZipWriter(archiveId);
+		if (zipWriter != null) {
+			return openZipContentStream(zipWriter, archiveId, toolId, relativePath);
+		}
+		// archive-base/siteId/archiveId/toolId/[subdirs]/file
+		final File file = new File(buildPath(getArchiveBasePath(), siteId, archiveId, relativePath));
+		return openFileContentStream(file, archiveId, toolId, relativePath);
 	}
 
 	/**
-	 * Get base dir for all archives as configured in sakai.properties via <code>archiver.path</code>
-	 *
-	 * Removes any trailing /
+	 * Open a stream that writes a file into a staged archive. The content goes to a temporary file alongside the file, which is moved into
+	 * place, or added to the blob store, when the stream is closed.
 	 *
-	 * Note: This may need adjusting on Windows?
-	 *
-	 * @return
+	 * @param file the file to write
+	 * @param archiveId the id of the archive
+	 * @param toolId the tool the file is for
+	 * @param relativePath the path of the file within the archive
+	 * @return the stream to write the content to
+	 * @throws IOException if the temporary file could not be created
 	 */
-	private String getArchiveBasePath() {
+	private OutputStream openFileContentStream(final File file, final String archiveId, final String toolId, final String relativePath)
+			throws IOException {
+		final Path temp = createTempFile(file);
+		return new ContentStream(new HashingOutputStream(Files.newOutputStream(temp), getMaxFileSize()), archiveId, toolId, relativePath) {
+
+			@Override
+			protected long finish(final HashingOutputStream content) {
+				try {
+					if (ArchiverServiceImpl.this.blobStore != null) {
+						ArchiverServiceImpl.this.blobStore.add(temp, content.getHash(), file.toPath());
+					} else {
+						moveIntoPlace(temp, file);
+					}
+					return content.getCount();
+				} catch (final IOException e) {
+					log.error("Could not write file: " + file, e);
+					return -1;
+				} finally {
+					deleteQuietly(temp);
+				}
+			}
+
+			@Override
+			protected void discard() {
+				deleteQuietly(temp);
+			}
+		};
+	}
+
+	/**
+	 * Open a stream that writes a file straight into the zip of an archive. Adding the entry as it is written would hold the zip for as
+	 * long as the file is being generated, while the provider may archive other files and other providers are waiting, so the content is
+	 * held in memory, or in a temporary file once it is large, and added to the zip in one go when the stream is closed.
+	 *
+	 * @param zipWriter the writer for the archive
+	 * @param archiveId the id of the archive
+	 * @param toolId the tool the file is for
+	 * @param relativePath the path of the file within the zip
+	 * @return the stream to write the content to
+	 * @throws IOException if the temporary directory could not be created
+	 */
+	private OutputStream openZipContentStream(final ZipArchiveWriter zipWriter, final String archiveId, final String toolId,
+			final String relativePath) throws IOException {
+		final Path tempDir = Files.createDirectories(Paths.get(getArchiveBasePath(), TEMP_DIR));
+		final DeferredFileOutputStream buffer = new DeferredFileOutputStream(CONTENT_BUFFER_SIZE, ".content-", ".tmp", tempDir.toFile());
+		return new ContentStream(new HashingOutputStream(buffer, getMaxFileSize()), archiveId, toolId, relativePath) {
+
+			@Override
+			protected long finish(final HashingOutputStream content) {
+				if (buffer.isInMemory()) {
+					return writeZipEntry(zipWriter, buffer.getData(), relativePath);
+				}
+				try (InputStream in = Files.newInputStream(buffer.getFile().toPath())) {
+					return writeZipEntry(zipWriter, in, content.getCount(), relativePath);
+				} catch (final IOException e) {
+					log.error("Could not write zip entry: " + relativePath, e);
+					return -1;
+				} finally {
+					discard();
+				}
+			}
+
+			@Override
+			protected void discard() {
+				if (!buffer.isInMemory()) {
+					deleteQuietly(buffer.getFile().toPath());
+				}
+			}
+		};
+	}
+
+	@Override
+	public boolean isJsonOutputEnabled() {
+		return this.serverConfigurationService.getBoolean("archiver.output.json", false);
+	}
+
+	@Override
+	public JsonRecordWriter openRecordStream(final String archiveId, final String siteId, final String toolId, final String name,
+			final String... subdirectories) throws IOException {
+		final boolean lines = isJsonLines();
+		final String filename = name + (lines ? ".ndjson" : ".json");
+		return new JsonRecordWriter(openContentStream(archiveId, siteId, toolId, filename, subdirectories), lines);
+	}
+
+	/**
+	 * Stream content into the archive. The content is checksummed as it is written.
+	 *
+	 * @param archiveId the id of the archive that the content is for
+	 * @param siteId that this archive is for
+	 * @param toolId the name of the directory where the content should be archived to
+	 * @param content stream of the content to be archived. This will be closed once the content has been archived.
+	 * @param length the length of the content in bytes, or -1 if not known
+	 * @param filename the name of the file that the content will be archived into
+	 * @param resource the resource the content came from, for its content type and reference in the manifest and so that it can be read
+	 *            again. May be null.
+	 * @param subdirectories the subdirectories within the archive where the file will be written
+	 */
+	private void archiveStream(final String archiveId, final String siteId, final String toolId, final InputStream content,
+			final long length, final String filename, final ContentResource resource, final String... subdirectories) {
+		log.debug("Streaming to archive: {} for site: {} and tool: {} in dir: {} and file: {}", archiveId, siteId, toolId,
+				buildPath(subdirectories), filename);
+
+		try (InputStream in = content) {
+
+			if (isArchiveCancelled(archiveId)) {
+				log.debug("Archive {} has been cancelled, skipping {}", archiveId, filename);
+				return;
+			}
+
+			if (in == null || length == 0) {
+				log.error("No content to archive. Skipping.");
+				return;
+			}
+
+			try {
+				validateFileExtension(filename);
+			} catch (final FileExtensionExcludedException e1) {
+				log.error("File {} is of an excluded extension and will not be archived", filename);
+				return;
+			}
+
+			try {
+				validateFileSize(length);
+			} catch (final FileSizeExceededException e1) {
+				log.error("File {} is too large and will not be archived", filename);
+				return;
+			}
+
+			// toolId/[subdirs]/file
+			final String relativePath = planPath(archiveId, siteId, toolId, filename, subdirectories);
+
+			final HashingInputStream hashing = new HashingInputStream(in);
+
+			final long written;
+			final ZipArchiveWriter zipWriter = getZipWriter(archiveId);
+			if (zipWriter != null) {
+				written = writeZipEntry(zipWriter, hashing, length, relativePath);
+			} else if (this.blobStore != null && resource != null) {
+				written = writeResourceBlob(hashing, resource, buildPath(getArchiveBasePath(), siteId, archiveId, relativePath));
+			} else {
+				// archive-base/siteId/archiveId/toolId/[subdirs]/file
+				written = writeStream(hashing, buildPath(getArchiveBasePath(), siteId, archiveId, relativePath));
+			}
+
+			if (written >= 0) {
+				recordEntry(archiveId, toolId, relativePath, written, hashing.getHash(),
+						(resource != null) ? resource.getContentType() : null, (resource != null) ? resource.getReference() : null);
+			}
+
+		} catch (final IOException e) {
+			log.error("Could not close stream for file {}", filename, e);
+		}
+	}
+
+	@Override
+	public Archive getArchive(final String archiveId) throws ArchiveNotFoundException {
+		final ArchiveEntity entity = this.dao.getByArchiveId(archiveId);
+		if (entity == null) {
+			throw new ArchiveNotFoundException("Archive " + archiveId + " does not exist");
+		}
+
+		return ArchiveMapper.toDto(entity);
+	}
+
+	@Override
+	public List<Archive> getArchives(final String siteId, final int max) {
+		if (StringUtils.isBlank(siteId) && !isSuperUser()) {
+			return Collections.emptyList();
+		}
+		final List<ArchiveEntity> entities = this.dao.getBySiteId(siteId, max);
+		return ArchiveMapper.toDtos(entities);
+	}
+
+	@Override
+	public List<Archive> getArchives(final String siteId, final int first, final int count) {
+		if (StringUtils.isBlank(siteId) && !isSuperUser()) {
+			return Collections.emptyList();
+		}
+		final List<ArchiveEntity> entities = this.dao.getBySiteId(siteId, first, count);
+		return ArchiveMapper.toDtos(entities);
+	}
+
+	@Override
+	public long countArchives(final String siteId) {
+		if (StringUtils.isBlank(siteId) && !isSuperUser()) {
+			return 0;
+		}
+		return this.dao.countBySiteId(siteId);
+	}
+
+	@Override
+	public List<ProviderResult> getProviderResults(final String archiveId) {
+		return ArchiveMapper.toProviderResults(this.dao.getProviderResults(archiveId));
+	}
+
+	@Override
+	public Map<String, List<ProviderResult>> getProviderResults(final Collection<String> archiveIds) {
+		return ArchiveMapper.toProviderResults(this.dao.getProviderResults(archiveIds)).stream()
+				.collect(Collectors.groupingBy(ProviderResult::getArchiveId));
+	}
+
+	@Override
+	public Archive getLatestComplete(final String siteId) {
+		return ArchiveMapper.toDto(this.dao.getLatest(siteId, Status.COMPLETE));
+	}
+
+	@Override
+	public Date getModifiedSince(final String archiveId) {
+		final ArchiveJob job = this.activeJobs.get(archiveId);
+		return (job != null) ? job.getModifiedSince() : null;
+	}
+
+	@Override
+	public Archive getLatest(final String siteId) {
+		return this.statusCache.getLatest(siteId, k -> {
+			final ArchiveEntity entity = this.dao.getLatest(k);
+			if (entity == null) {
+				log.debug("No archive exists for siteId {}", k);
+				return null;
+			}
+			return ArchiveMapper.toDto(entity);
+		});
+	}
+
+	/**
+	 * Save an archive that has changed, and update the status cache so that the change is seen straight away on this node
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking the archive
+	 */
+	private void updateArchive(final ArchiveEntity entity) {
+		this.dao.update(entity);
+		this.statusCache.update(ArchiveMapper.toDto(entity));
+	}
+
+	/**
+	 * Get base dir for all archives as configured in sakai.properties via <code>archiver.path</code>
+	 *
+	 * Removes any trailing /
+	 *
+	 * Note: This may need adjusting on Windows?
+	 *
+	 * @return
+	 */
+	private String getArchiveBasePath() {
 		return StringUtils.removeEnd(this.serverConfigurationService.getString("archiver.path", FileUtils.getTempDirectoryPath()), "/");
 	}
 
@@ -289,6 +1148,240 @@ public class ArchiverServiceImpl implements ArchiverService {
 		return config * FileUtils.ONE_MB;
 	}
 
+	/**
+	 * Get the number of threads in the shared pool that runs the providers, as configured in sakai.properties via
+	 * <code>archiver.provider.threads</code>
+	 *
+	 * Default if not specified is: 4
+	 *
+	 * @return
+	 */
+	private int getProviderThreads() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.provider.threads", 4));
+	}
+
+	/**
+	 * Get the number of archives that can run at once on this node, as configured in sakai.properties via
+	 * <code>archiver.concurrent.archives</code>
+	 *
+	 * Default if not specified is: 2
+	 *
+	 * @return
+	 */
+	private int getConcurrentArchives() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.concurrent.archives", 2));
+	}
+
+	/**
+	 * Get the number of archives that can wait for a free slot on this node, as configured in sakai.properties via
+	 * <code>archiver.queue.size</code>
+	 *
+	 * Default if not specified is: 100
+	 *
+	 * @return
+	 */
+	private int getQueueSize() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.queue.size", 100));
+	}
+
+	/**
+	 * Get the delay (in seconds) after startup before queued archives are restored, as configured in sakai.properties via
+	 * <code>archiver.queue.restore.delay</code>
+	 *
+	 * Default if not specified is: 60
+	 *
+	 * @return
+	 */
+	private int getQueueRestoreDelay() {
+		return this.serverConfigurationService.getInt("archiver.queue.restore.delay", 60);
+	}
+
+	/**
+	 * Check if content should be written straight into the zip instead of staged on disk and zipped at the end, as configured in
+	 * sakai.properties via <code>archiver.zip.direct</code>
+	 *
+	 * Default if not specified is: false
+	 *
+	 * @return
+	 */
+	private boolean isDirectZip() {
+		return this.serverConfigurationService.getBoolean("archiver.zip.direct", false);
+	}
+
+	/**
+	 * Get the deflate level used when zipping archives, as configured in sakai.properties via <code>archiver.zip.level</code>. Files that
+	 * are already compressed are always stored without deflating.
+	 *
+	 * Default if not specified is: -1, the default level of the JVM
+	 *
+	 * @return level from 0-9 or -1
+	 */
+	private int getZipLevel() {
+		final int level = this.serverConfigurationService.getInt("archiver.zip.level", Deflater.DEFAULT_COMPRESSION);
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			log.warn("Invalid archiver.zip.level {}, using the default", level);
+			return Deflater.DEFAULT_COMPRESSION;
+		}
+		return level;
+	}
+
+	/**
+	 * Check if the content of staged archives is deduplicated via a blob store under the archive base path, as configured in
+	 * sakai.properties via <code>archiver.dedup.enabled</code>. Requires a filesystem that supports hard links.
+	 *
+	 * Default if not specified is: false
+	 *
+	 * @return
+	 */
+	private boolean isDedupEnabled() {
+		return this.serverConfigurationService.getBoolean("archiver.dedup.enabled", false);
+	}
+
+	/**
+	 * Check if JSON records are written as newline delimited JSON, one record per line, rather than as a JSON array, as configured in
+	 * sakai.properties via <code>archiver.output.json.lines</code>. Only used if <code>archiver.output.json</code> is enabled.
+	 *
+	 * Default if not specified is: false
+	 *
+	 * @return
+	 */
+	private boolean isJsonLines() {
+		return this.serverConfigurationService.getBoolean("archiver.output.json.lines", false);
+	}
+
+	/**
+	 * Get how long the latest archive of a site is cached for when its status is polled, in seconds, as configured in sakai.properties via
+	 * <code>archiver.status.cache.ttl</code>. Changes made on this node are seen straight away, this only delays changes made by other
+	 * nodes in a cluster. Use 0 to always query the database.
+	 *
+	 * Default if not specified is: 10
+	 *
+	 * @return
+	 */
+	private int getStatusCacheTtl() {
+		return Math.max(0, this.serverConfigurationService.getInt("archiver.status.cache.ttl", 10));
+	}
+
+	/**
+	 * Check if the index of an archive loads each directory as it is opened, rather than being a single page with every file in it, as
+	 * configured in sakai.properties via <code>archiver.index.lazy</code>. Use this for sites with a very large number of files.
+	 *
+	 * Default if not specified is: false
+	 *
+	 * @return
+	 */
+	private boolean isLazyIndex() {
+		return this.serverConfigurationService.getBoolean("archiver.index.lazy", false);
+	}
+
+	/**
+	 * Get the maximum length of each directory and file name in an archive, as configured in sakai.properties via
+	 * <code>archiver.name.length</code>. Longer names are shortened, keeping their extension.
+	 *
+	 * Default if not specified is: 100
+	 *
+	 * @return
+	 */
+	private int getMaxNameLength() {
+		return Math.max(ArchivePathPlanner.MIN_MAX_NAME_LENGTH,
+				this.serverConfigurationService.getInt("archiver.name.length", ArchivePathPlanner.DEFAULT_MAX_NAME_LENGTH));
+	}
+
+	/**
+	 * Get the number of threads used to compress the archive directory, as configured in sakai.properties via
+	 * <code>archiver.zip.threads</code>. More than one uses the {@link ParallelZipper}.
+	 *
+	 * Default if not specified is: 1
+	 *
+	 * @return
+	 */
+	private int getZipThreads() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.zip.threads", 1));
+	}
+
+	/**
+	 * Check if the archive directory is removed once it has been zipped, as configured in sakai.properties via
+	 * <code>archiver.staging.delete</code>. Otherwise each archive takes up twice its size on disk.
+	 *
+	 * Default if not specified is: true
+	 *
+	 * @return
+	 */
+	private boolean isDeleteStaging() {
+		return this.serverConfigurationService.getBoolean("archiver.staging.delete", true);
+	}
+
+	/**
+	 * Get the number of finished archives kept for each site, as configured in sakai.properties via
+	 * <code>archiver.retention.count</code>. Older archives are removed by the storage sweep. Use 0 to keep them all.
+	 *
+	 * Default if not specified is: 0
+	 *
+	 * @return
+	 */
+	private int getRetentionCount() {
+		return Math.max(0, this.serverConfigurationService.getInt("archiver.retention.count", 0));
+	}
+
+	/**
+	 * Get the number of days finished archives are kept for, as configured in sakai.properties via <code>archiver.retention.days</code>.
+	 * Older archives are removed by the storage sweep. Use 0 to keep them forever.
+	 *
+	 * Default if not specified is: 0
+	 *
+	 * @return
+	 */
+	private int getRetentionDays() {
+		return Math.max(0, this.serverConfigurationService.getInt("archiver.retention.days", 0));
+	}
+
+	/**
+	 * Get the maximum space the archives can use under the archive base path in megabytes, as configured in sakai.properties via
+	 * <code>archiver.quota</code>. New archives are refused once it is reached. Use 0 for no limit.
+	 *
+	 * Default if not specified is: 0
+	 *
+	 * @return
+	 */
+	private long getQuota() {
+		return Math.max(0, this.serverConfigurationService.getInt("archiver.quota", 0));
+	}
+
+	/**
+	 * Get how often the storage sweep runs in hours, as configured in sakai.properties via <code>archiver.storage.sweep.interval</code>
+	 *
+	 * Default if not specified is: 24
+	 *
+	 * @return
+	 */
+	private int getSweepInterval() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.storage.sweep.interval", 24));
+	}
+
+	/**
+	 * Get the number of threads the storage sweep walks the archive base path with, as configured in sakai.properties via
+	 * <code>archiver.storage.sweep.threads</code>
+	 *
+	 * Default if not specified is: 2
+	 *
+	 * @return
+	 */
+	private int getSweepThreads() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.storage.sweep.threads", 2));
+	}
+
+	/**
+	 * Get the maximum number of files the storage sweep visits each second, as configured in sakai.properties via
+	 * <code>archiver.storage.sweep.rate</code>. This limits the disk IO used by a sweep of a large number of archives.
+	 *
+	 * Default if not specified is: 1000
+	 *
+	 * @return
+	 */
+	private int getSweepRate() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.storage.sweep.rate", 1000));
+	}
+
 	/**
 	 * Get any excluded extensions as configured in sakai.properties via <code>archiver.excluded.extensions</code>
 	 *
@@ -305,6 +1398,26 @@ public class ArchiverServiceImpl implements ArchiverService {
 		return excludedExtensions;
 	}
 
+	/**
+	 * Plan the path of a file relative to the root of an archive. Archives that are running on this node keep their planner in their
+	 * context so that names are planned the same way, and kept unique, for all of their providers.
+	 *
+	 * @param archiveId the id of the archive
+	 * @param siteId the id of the site
+	 * @param toolId the toolId the file is archived for
+	 * @param filename the name of the file
+	 * @param subdirectories the subdirectories the file is archived in
+	 * @return toolId/[subdirs]/file
+	 */
+	private String planPath(final String archiveId, final String siteId, final String toolId, final String filename,
+			final String... subdirectories) {
+		ArchiveContextImpl context = this.contexts.get(archiveId);
+		if (context == null) {
+			context = newArchiveContext(archiveId, siteId);
+		}
+		return buildPath(context.planPath(toolId, filename, subdirectories));
+	}
+
 	/**
 	 * Build a path made up of the parts supplied, and using the system's file separator. Null safe in both array and element.
 	 */
@@ -321,52 +1434,163 @@ public class ArchiverServiceImpl implements ArchiverService {
 	}
 
 	/**
-	 * Build the index page
+	 * Build the index from the files recorded in the manifest, rather than walking the archive directory. The index is streamed into the
+	 * archive, either as a single page or as a page that loads each directory when it is opened.
+	 *
+	 * @param entity with archive details
+	 * @param paths the paths of the files in the archive
+	 * @param output opens each file of the index within the archive
+	 * @throws IOException
+	 */
+	private void buildIndex(final ArchiveEntity entity, final List<String> paths, final IndexBuilder.IndexOutput output)
+			throws IOException {
+
+		final IndexBuilder indexBuilder = new IndexBuilder(entity.getArchivePath(), getSiteTitle(entity.getSiteId()), paths);
+		if (isLazyIndex()) {
+			log.debug("Writing lazy index for {} files", paths.size());
+			indexBuilder.writeLazy(output);
+		} else {
+			log.debug("Writing index for {} files", paths.size());
+			indexBuilder.write(output);
+		}
+	}
+
+	/**
+	 * Finalise an archiving record with the specified status.
+	 *
+	 * Also builds the index page.
+	 *
+	 * Note that the passed in status could be overridden if an error occurs in finalising the archive.
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 * @param status the {@link Status} to set
+	 * @param zipWriter the writer if the content has been written straight to the zip, or null if the archive directory is to be zipped
+	 * @param manifest the record of what has been written
+	 */
+	private void finalise(final ArchiveEntity entity, final Status status, final ZipArchiveWriter zipWriter, final Manifest manifest) {
+
+		try {
+			final List<String> paths = manifest.getPaths();
+
+			if (entity.getBaseArchiveId() != null) {
+				writeIncrementalInfo(entity, zipWriter);
+				paths.add(INCREMENTAL_INFO);
+			}
+
+			writeArchiveFile(entity, zipWriter, Manifest.JSON_NAME, manifest.toJson().getBytes(StandardCharsets.UTF_8));
+			paths.add(Manifest.JSON_NAME);
+
+			if (zipWriter != null) {
+				// content is already in the zip, just add the index
+				buildIndex(entity, zipWriter.getEntries(), zipWriter::openEntry);
+				zipWriter.close();
+				entity.setZipPath(zipWriter.getZipPath());
+			} else {
+				try {
+					buildIndex(entity, paths, path -> FileUtils.openOutputStream(new File(entity.getArchivePath(), path)));
+				} catch (final IOException e) {
+					log.error("Could not write the index for archive {}", entity.getId(), e);
+				}
+
+				// zips the archive directory
+				final File archiveDirectory = new File(entity.getArchivePath());
+				final int zipThreads = getZipThreads();
+				if (zipThreads > 1) {
+					entity.setZipPath(new ParallelZipper(zipThreads, getZipLevel()).zipDirectory(archiveDirectory, getZipName(entity)));
+				} else {
+					entity.setZipPath(Zipper.zipDirectory(archiveDirectory, getZipName(entity), getZipLevel()));
+				}
+			}
+
+			// binary manifest alongside the zip so it can be read without opening the zip
+			final File binaryManifest = new File(FilenameUtils.removeExtension(entity.getZipPath()) + Manifest.BINARY_EXTENSION);
+			try (OutputStream out = FileUtils.openOutputStream(binaryManifest)) {
+				manifest.write(out);
+			}
+			if (this.storage != null) {
+				this.storage.add(new File(entity.getZipPath()).length() + binaryManifest.length());
+			}
+
+			entity.setStatus(status);
+		} catch (final IOException e) {
+			log.error("Could not zip archive {}", entity.getId(), e);
+			entity.setStatus(Status.FAILED);
+		} catch (final ZipWriteException e) {
+			log.error("Could not zip archive {}", entity.getId(), e);
+			entity.setStatus(Status.FAILED);
+		} catch (final RuntimeException e) {
+			// anything else must not leave the archive started, where it would block the site until it is resumed and fails again
+			log.error("Unexpected error finalising archive {}", entity.getId(), e);
+			entity.setStatus(Status.FAILED);
+		}
+
+		// close the db record
+		entity.setEndDate(new Date());
+		updateArchive(entity);
+	}
+
+	/**
+	 * Write the details of the base archive into an incremental archive, so it is clear which archive it should be applied on top of
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 * @param zipWriter the writer if the content has been written straight to the zip, or null
+	 * @throws IOException
+	 */
+	private void writeIncrementalInfo(final ArchiveEntity entity, final ZipArchiveWriter zipWriter) throws IOException {
+		final ArchiveEntity base = this.dao.getByArchiveId(entity.getBaseArchiveId());
+
+		final Map<String, String> info = new LinkedHashMap<>();
+		info.put("archiveId", entity.getId());
+		info.put("baseArchiveId", entity.getBaseArchiveId());
+		if (base != null) {
+			info.put("baseArchiveZip", FilenameUtils.getName(base.getZipPath()));
+			info.put("modifiedSince", Dateifier.toIso8601(base.getStartDate()));
+		}
+		writeArchiveFile(entity, zipWriter, INCREMENTAL_INFO, Jsonifier.toJson(info).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write a file into the root of the archive, which is either the zip or the archive directory
 	 *
-	 * @param entity with archive details
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 * @param zipWriter the writer if the content has been written straight to the zip, or null
+	 * @param name the name of the file
+	 * @param content the content of the file
+	 * @throws IOException
 	 */
-	private void buildIndex(final ArchiveEntity entity) {
-
-		// TODO add the archiveId so that it is excluded from the index directories and doesn't appear as a top level folder
-
-		final IndexBuilder indexBuilder = new IndexBuilder(entity.getArchivePath(), getSiteTitle(entity.getSiteId()));
-		final String indexHtml = indexBuilder.build();
-
-		log.debug("Writing index.html: {}", indexHtml);
-
-		final String indexPath = buildPath(entity.getArchivePath(), "index.html");
-		writeFile(indexHtml.getBytes(), indexPath);
+	private void writeArchiveFile(final ArchiveEntity entity, final ZipArchiveWriter zipWriter, final String name, final byte[] content)
+			throws IOException {
+		if (zipWriter != null) {
+			zipWriter.write(name, content);
+		} else if (writeFile(content, buildPath(entity.getArchivePath(), name)) < 0) {
+			throw new IOException("Could not write " + name);
+		}
 	}
 
 	/**
-	 * Finalise an archiving record with the specified status.
-	 *
-	 * Also builds the index page.
-	 *
-	 * Note that the passed in status could be overridden if an error occurs in finalising the archive.
+	 * Get the name of the zip for an archive, without the extension
 	 *
 	 * @param entity the {@link ArchiveEntity} tracking this archive
-	 * @param status the {@link Status} to set
+	 * @return
 	 */
-	private void finalise(final ArchiveEntity entity, final Status status) {
-
-		buildIndex(entity);
+	private String getZipName(final ArchiveEntity entity) {
+		return Sanitiser.sanitise(getSiteTitle(entity.getSiteId()) + "-" + entity.getId());
+	}
 
-		// zips the archive directory
-		final String zipName = Sanitiser.sanitise(getSiteTitle(entity.getSiteId()) + "-" + entity.getId());
-		final File archiveDirectory = new File(entity.getArchivePath());
+	/**
+	 * Close a zip writer, logging rather than throwing any error
+	 *
+	 * @param zipWriter the writer, may be null
+	 */
+	private void closeQuietly(final ZipArchiveWriter zipWriter) {
+		if (zipWriter == null) {
+			return;
+		}
 		try {
-			final String zipPath = Zipper.zipDirectory(archiveDirectory, zipName);
-			entity.setZipPath(zipPath);
-			entity.setStatus(status);
+			zipWriter.close();
 		} catch (final IOException e) {
-			log.error("Could not zip archive");
-			entity.setStatus(Status.FAILED);
+			log.error("Could not close zip", e);
 		}
-
-		// close the db record
-		entity.setEndDate(new Date());
-		this.dao.update(entity);
 	}
 
 	/**
@@ -381,6 +1605,16 @@ public class ArchiverServiceImpl implements ArchiverService {
 		if (ArrayUtils.isNotEmpty(content)) {
 			size = content.length;
 		}
+		validateFileSize(size);
+	}
+
+	/**
+	 * Validate the declared length of a file to be archived. A negative length means it is unknown and will be checked as it is written.
+	 *
+	 * @param size
+	 * @throws FileSizeExceededException
+	 */
+	private void validateFileSize(final long size) throws FileSizeExceededException {
 		log.debug("File size: {}", size);
 
 		if (size > getMaxFileSize()) {
@@ -403,36 +1637,44 @@ public class ArchiverServiceImpl implements ArchiverService {
 	}
 
 	/**
-	 * Checks if an archive is in progress for the given site.
+	 * Checks if an archive is queued or in progress for the given site.
 	 *
 	 * @return true/false
 	 */
 	private boolean isArchiveInProgress(final String siteId) {
+		return !this.dao.findInProgress(siteId).isEmpty();
+	}
 
-		final ArchiveEntity entity = this.dao.getLatest(siteId);
-		if (entity == null) {
-			return false;
+	/**
+	 * Get the user that an archive runs as
+	 *
+	 * @param userUuid the uuid of the user
+	 * @return the {@link User} or null if they cannot be found
+	 */
+	private User getUser(final String userUuid) {
+		try {
+			return this.userDirectoryService.getUser(userUuid);
+		} catch (final UserNotDefinedException e) {
+			log.error("User {} could not be found", userUuid);
+			return null;
 		}
-		return (entity.getStatus() == Status.STARTED);
 	}
 
 	/**
-	 * Inject user into the session so that Sakai permission checks will be happy
+	 * Inject user into a new session so that Sakai permission checks will be happy. Each provider task gets its own session.
 	 *
 	 * @param user the user to inject into the session
+	 * @return the session that was started
 	 *
 	 * @throws ArchiveInitialisationException if the archive could not
 	 */
-	private void injectUser(final User user) throws ArchiveInitialisationException {
+	private Session injectUser(final User user) throws ArchiveInitialisationException {
 
 		if (user == null) {
 			throw new ArchiveInitialisationException("Archive session could not be updated. Archiver cannot be run.");
 		}
 
-		Session session = this.sessionManager.getCurrentSession();
-		if (session == null) {
-			session = this.sessionManager.startSession();
-		}
+		final Session session = this.sessionManager.startSession();
 
 		log.debug("Injecting session {} with user {}", session.getId(), user.getEid());
 
@@ -444,59 +1686,187 @@ public class ArchiverServiceImpl implements ArchiverService {
 		this.authzGroupService.refreshUser(user.getId());
 
 		log.debug("Session ready");
+
+		return session;
 	}
 
 	@Override
 	public String getSiteHeader(final String siteId, final String toolId) {
-
-		final Site site = getSite(siteId);
-		final String siteTitle = getSiteTitle(siteId);
-		final String toolName = getToolName(siteId, toolId);
-
-		final ResourceProperties props = site.getProperties();
-		final String term = (String) props.get(Site.PROP_SITE_TERM);
-		if (term != null) {
-			return String.format("%s (%s): %s", siteTitle, term, toolName);
-		} else {
-			return String.format("%s: %s", siteTitle, toolName);
-		}
-
+		return getContextForSite(siteId).getSiteHeader(toolId);
 	}
 
 	@Override
 	public String getToolName(final String siteId, final String toolId) {
-		final Site site = getSite(siteId);
+		return getContextForSite(siteId).getToolName(toolId);
+	}
 
-		String name = null;
+	@Override
+	public ArchiveContext getArchiveContext(final String archiveId) {
+		final ArchiveContext context = this.contexts.get(archiveId);
+		if (context != null) {
+			return context;
+		}
+		final ArchiveEntity entity = this.dao.getByArchiveId(archiveId);
+		if (entity == null) {
+			throw new ArchiveProcessingException("Archive " + archiveId + " could not be found");
+		}
+		return newArchiveContext(archiveId, entity.getSiteId());
+	}
 
-		// find the page and grab the toolname from that.
-		for (final SitePage page : site.getPages()) {
-			for (final ToolConfiguration toolConfig : page.getTools()) {
-				if (StringUtils.equals(toolId, toolConfig.getToolId())) {
-					name = page.getTitle();
-				}
+	/**
+	 * Get the context of an archive of the site that is running on this node, so that its cached site details are used. If there is
+	 * none, a new context is created.
+	 *
+	 * @param siteId the id of the site
+	 * @return the context
+	 */
+	private ArchiveContext getContextForSite(final String siteId) {
+		for (final ArchiveContext context : this.contexts.values()) {
+			if (StringUtils.equals(siteId, context.getSiteId())) {
+				return context;
 			}
 		}
-		// try the tool name or fall back to toolId
-		if (StringUtils.isBlank(name)) {
+		return newArchiveContext(null, siteId);
+	}
+
+	/**
+	 * Create a context for an archive
+	 *
+	 * @param archiveId the id of the archive
+	 * @param siteId the id of the site
+	 * @return the context
+	 */
+	private ArchiveContextImpl newArchiveContext(final String archiveId, final String siteId) {
+		return newArchiveContext(archiveId, siteId, new ArchivePathPlanner(getMaxNameLength()));
+	}
+
+	/**
+	 * Create a context for an archive that plans its paths with the given planner
+	 *
+	 * @param archiveId the id of the archive
+	 * @param siteId the id of the site
+	 * @param planner the planner for the paths in the archive
+	 * @return the context
+	 */
+	private ArchiveContextImpl newArchiveContext(final String archiveId, final String siteId, final ArchivePathPlanner planner) {
+		return new ArchiveContextImpl(archiveId, siteId, this::getSite, toolId -> {
 			final Tool t = this.toolManager.getTool(toolId);
-			name = (t != null) ? t.getTitle() : toolId;
-		}
-		return name;
+			return (t != null) ? t.getTitle() : null;
+		}, new UserCache(this.userDirectoryService), planner);
 	}
 
 	@Override
 	public void cancelArchive(final String archiveId) throws ArchiveCancellationException {
 		final ArchiveEntity entity = this.dao.getByArchiveId(archiveId);
-		if (entity.getStatus() != Status.STARTED) {
-			throw new ArchiveCancellationException("Archive could not be cancelled as it is not in the STARTED state.");
+		if (entity.getStatus() != Status.QUEUED && entity.getStatus() != Status.STARTED) {
+			throw new ArchiveCancellationException("Archive could not be cancelled as it is not in the QUEUED or STARTED state.");
+		}
+
+		// a running archive has its providers interrupted and its files removed once they have stopped
+		final ArchiveJob job = this.activeJobs.get(archiveId);
+		if (job != null && !job.cancel()) {
+			throw new ArchiveCancellationException("Archive could not be cancelled as it is already being finalised.");
 		}
+
 		entity.setStatus(Status.CANCELLED);
 		entity.setEndDate(new Date());
-		this.dao.update(entity);
+		updateArchive(entity);
+
+		// a queued archive will see that it has been cancelled when it reaches a slot and will not start, its directory is removed then.
+	}
+
+	@Override
+	public boolean isArchiveCancelled(final String archiveId) {
+		final ArchiveJob job = this.activeJobs.get(archiveId);
+		return job != null && job.isCancelled();
+	}
+
+	@Override
+	public boolean isItemArchived(final String archiveId, final String toolId, final String itemId) {
+		final CheckpointJournal journal = getJournal(archiveId);
+		return journal != null && journal.isItemCompleted(toolId, itemId);
+	}
+
+	@Override
+	public void checkpointItem(final String archiveId, final String toolId, final String itemId) {
+		final CheckpointJournal journal = getJournal(archiveId);
+		if (journal != null) {
+			journal.itemCompleted(toolId, itemId);
+		}
+	}
+
+	/**
+	 * Get the checkpoint journal of an archive that is running on this node
+	 *
+	 * @param archiveId the id of the archive
+	 * @return the journal, or null if the archive is not running here or is not being journaled
+	 */
+	private CheckpointJournal getJournal(final String archiveId) {
+		final ArchiveJob job = this.activeJobs.get(archiveId);
+		return (job != null) ? job.getJournal() : null;
+	}
+
+	/**
+	 * Open the checkpoint journal of an archive, restoring what was written before if the archive is being resumed
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 * @param planner the planner for the archive, to restore the paths that were planned
+	 * @param manifest the manifest for the archive, to restore the files that were written
+	 * @return the journal, or null if it could not be opened in which case the archive can not be resumed
+	 */
+	private CheckpointJournal openJournal(final ArchiveEntity entity, final ArchivePathPlanner planner, final Manifest manifest) {
+		try {
+			final CheckpointJournal journal = CheckpointJournal.open(getJournalFile(entity));
+			if (journal.isResumed()) {
+				log.info("Resuming archive {} from its checkpoints", entity.getId());
+			}
+			journal.restore(planner, manifest);
+			return journal;
+		} catch (final IOException e) {
+			log.error("Could not open the checkpoint journal for archive {}, it will not be resumable", entity.getId(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Get the checkpoint journal file of an archive, which is kept next to the archive directory
+	 *
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 * @return
+	 */
+	private File getJournalFile(final ArchiveEntity entity) {
+		return new File(entity.getArchivePath() + CheckpointJournal.EXTENSION);
+	}
 
-		// note that this does not cleanup any files that were produced nor kill the thread if it is still running. This was out of scope
-		// but would be good to do right here.
+	/**
+	 * Remove the archive directory and any partial zip of a cancelled archive. This happens in the background once any providers that
+	 * are still running have stopped, so that nothing is written back after it has been deleted.
+	 *
+	 * @param job the cancelled archive
+	 * @param entity the {@link ArchiveEntity} tracking this archive
+	 */
+	private void deleteArchiveFiles(final ArchiveJob job, final ArchiveEntity entity) {
+		final String archivePath = entity.getArchivePath();
+		final ZipArchiveWriter zipWriter = job.getZipWriter();
+
+		this.scheduledExecutor.execute(() -> {
+			try {
+				if (!job.awaitProviders(PROVIDER_STOP_TIMEOUT)) {
+					log.warn("Providers for cancelled archive {} are still running, removing its files anyway", job.getArchiveId());
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (StringUtils.isNotBlank(archivePath)) {
+				FileUtils.deleteQuietly(new File(archivePath));
+				FileUtils.deleteQuietly(getJournalFile(entity));
+			}
+			if (zipWriter != null) {
+				FileUtils.deleteQuietly(zipWriter.getZipFile());
+			}
+			log.info("Removed files for cancelled archive {}", job.getArchiveId());
+		});
 	}
 
 	/**
@@ -522,8 +1892,7 @@ public class ArchiverServiceImpl implements ArchiverService {
 	 * @return
 	 */
 	private String getSiteTitle(final String siteId) {
-		final Site site = getSite(siteId);
-		return site.getTitle();
+		return getContextForSite(siteId).getSiteTitle();
 	}
 
 	/**
@@ -537,20 +1906,392 @@ public class ArchiverServiceImpl implements ArchiverService {
 	}
 
 	/**
-	 * Write the given byte[] to a file. Makes no guarantee that this will work and will log if it doesn't. Don't rely on it.
+	 * Create a {@link ThreadFactory} that names its threads so they can be identified in logs and thread dumps
+	 *
+	 * @param prefix the prefix for each thread name
+	 * @return
+	 */
+	private ThreadFactory newThreadFactory(final String prefix) {
+		final AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			final Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Write the given byte[] to a file. The content is written to a temporary file alongside and then moved into place so a partial file
+	 * is never left behind. Makes no guarantee that this will work and will log if it doesn't. Don't rely on it.
+	 *
+	 * @param content byte[] to write
+	 * @param filePath full path to write to
+	 * @return the number of bytes written or -1 if the file could not be written
+	 */
+	private long writeFile(final byte[] content, final String filePath) {
+		log.debug("Writing to {}", filePath);
+
+		if (this.blobStore != null) {
+			return writeBlob(content, filePath);
+		}
+
+		final File file = new File(filePath);
+
+		Path temp = null;
+		try {
+			temp = createTempFile(file);
+			Files.write(temp, content);
+			moveIntoPlace(temp, file);
+			return content.length;
+		} catch (final IOException e) {
+			log.error("Could not write file: " + file, e);
+			deleteQuietly(temp);
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the zip writer for an archive if it is running on this node and writing straight to its zip
+	 *
+	 * @param archiveId the id of the archive
+	 * @return the {@link ZipArchiveWriter} or null if content is to be staged on disk
+	 */
+	private ZipArchiveWriter getZipWriter(final String archiveId) {
+		final ArchiveJob job = this.activeJobs.get(archiveId);
+		return (job != null) ? job.getZipWriter() : null;
+	}
+
+	/**
+	 * Write the given byte[] to the zip. Makes no guarantee that this will work and will log if it doesn't.
 	 *
+	 * @param zipWriter the writer for the archive
 	 * @param content byte[] to write
+	 * @param path path within the zip
+	 * @return the number of bytes written or -1 if the entry could not be written
+	 */
+	private long writeZipEntry(final ZipArchiveWriter zipWriter, final byte[] content, final String path) {
+		log.debug("Writing zip entry {}", path);
+		try {
+			zipWriter.write(path, content);
+			return content.length;
+		} catch (final IOException e) {
+			log.error("Could not write zip entry: " + path, e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Copy the given stream to the zip. Makes no guarantee that this will work and will log if it doesn't. An entry that could not be
+	 * finished is discarded by the writer and makes the archive incomplete.
+	 *
+	 * @param zipWriter the writer for the archive
+	 * @param in stream to copy. The caller is responsible for closing it.
+	 * @param length the declared length of the content, or less than 0 if it is not known
+	 * @param path path within the zip
+	 * @return the number of bytes written or -1 if the entry could not be written
+	 */
+	private long writeZipEntry(final ZipArchiveWriter zipWriter, final InputStream in, final long length, final String path) {
+		log.debug("Writing zip entry {}", path);
+		try {
+			return zipWriter.write(path, in, length, getMaxFileSize());
+		} catch (final FileSizeExceededException e) {
+			log.error("File {} is too large to be archived", path);
+			return -1;
+		} catch (final IOException e) {
+			log.error("Could not write zip entry: " + path, e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Copy the given stream to a file through a small per thread buffer so the content is never held in memory. The size limit is
+	 * enforced as the content is copied in case the declared length was wrong. As with {@link #writeFile(byte[], String)} the content
+	 * goes to a temporary file that is moved into place once complete. Makes no guarantee that this will work and will log if it
+	 * doesn't. Don't rely on it.
+	 *
+	 * @param in stream to copy. The caller is responsible for closing it.
 	 * @param filePath full path to write to
+	 * @return the number of bytes written or -1 if the file could not be written
 	 */
-	private void writeFile(final byte[] content, final String filePath) {
+	private long writeStream(final InputStream in, final String filePath) {
 		log.debug("Writing to {}", filePath);
 
+		if (this.blobStore != null) {
+			return writeBlob(in, filePath);
+		}
+
 		final File file = new File(filePath);
+		final long maxFileSize = getMaxFileSize();
+		final byte[] buffer = COPY_BUFFER.get();
 
+		Path temp = null;
+		long written = 0;
 		try {
-			FileUtils.writeByteArrayToFile(file, content);
+			temp = createTempFile(file);
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					written += read;
+					if (written > maxFileSize) {
+						throw new FileSizeExceededException();
+					}
+					out.write(buffer, 0, read);
+				}
+			}
+			moveIntoPlace(temp, file);
+			return written;
+		} catch (final FileSizeExceededException e) {
+			log.error("File {} is larger than declared and too large to be archived", file);
+			deleteQuietly(temp);
+			return -1;
 		} catch (final IOException e) {
 			log.error("Could not write file: " + file, e);
+			deleteQuietly(temp);
+			return -1;
+		}
+	}
+
+	/**
+	 * Write the given byte[] via the blob store. Its hash is known before it is written, so if the same content has been archived before
+	 * the file is linked to it rather than written again.
+	 *
+	 * @param content byte[] to write
+	 * @param filePath full path to write to
+	 * @return the number of bytes in the file or -1 if the file could not be written
+	 */
+	private long writeBlob(final byte[] content, final String filePath) {
+		try {
+			if (this.blobStore.linkExisting(HashingInputStream.hash(content), Paths.get(filePath))) {
+				return content.length;
+			}
+		} catch (final IOException e) {
+			log.error("Could not write file: " + filePath, e);
+			return -1;
+		}
+		return writeBlob(new ByteArrayInputStream(content), filePath);
+	}
+
+	/**
+	 * Write a resource via the blob store. A resource can be read again, so it is read once to find its hash and is only copied, from a
+	 * second read, if its content is not already in the store. Content that has been archived before is then read but not written again.
+	 *
+	 * @param in the first read of the resource. The caller is responsible for closing it.
+	 * @param resource the resource, to read it again if it needs to be copied
+	 * @param filePath full path to write to
+	 * @return the number of bytes in the file or -1 if the file could not be written
+	 */
+	private long writeResourceBlob(final HashingInputStream in, final ContentResource resource, final String filePath) {
+		final long maxFileSize = getMaxFileSize();
+		final byte[] buffer = COPY_BUFFER.get();
+		try {
+			while (in.read(buffer) != -1) {
+				if (in.getCount() > maxFileSize) {
+					throw new FileSizeExceededException();
+				}
+			}
+			if (this.blobStore.linkExisting(in.getHash(), Paths.get(filePath))) {
+				return in.getCount();
+			}
+			try (InputStream again = resource.streamContent()) {
+				return this.blobStore.write(again, Paths.get(filePath), maxFileSize, buffer);
+			}
+		} catch (final FileSizeExceededException e) {
+			log.error("File {} is larger than declared and too large to be archived", filePath);
+			return -1;
+		} catch (final IOException | ServerOverloadException e) {
+			log.error("Could not write file: " + filePath, e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Write the given stream via the blob store. It can only be read once so it is written as it is hashed, and if the same content has
+	 * been archived before the file is linked to it rather than kept, which saves the space but not the write.
+	 *
+	 * @param in stream to write
+	 * @param filePath full path to write to
+	 * @return the number of bytes in the file or -1 if the file could not be written
+	 */
+	private long writeBlob(final InputStream in, final String filePath) {
+		try {
+			return this.blobStore.write(in, Paths.get(filePath), getMaxFileSize(), COPY_BUFFER.get());
+		} catch (final FileSizeExceededException e) {
+			log.error("File {} is larger than declared and too large to be archived", filePath);
+			return -1;
+		} catch (final IOException e) {
+			log.error("Could not write file: " + filePath, e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Create a temporary file in the same directory as the given file, so that it can be atomically moved into place
+	 *
+	 * @param file the file that will be written
+	 * @return path to the temporary file
+	 * @throws IOException
+	 */
+	private Path createTempFile(final File file) throws IOException {
+		final File dir = file.getAbsoluteFile().getParentFile();
+		FileUtils.forceMkdir(dir);
+		return Files.createTempFile(dir.toPath(), ".archiver-", ".tmp");
+	}
+
+	/**
+	 * Move a fully written temporary file into place, replacing anything already there
+	 *
+	 * @param temp the temporary file
+	 * @param file the final location
+	 * @throws IOException
+	 */
+	private void moveIntoPlace(final Path temp, final File file) throws IOException {
+		try {
+			Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Delete a temporary file if it exists, logging rather than throwing any error
+	 *
+	 * @param temp the temporary file, may be null
+	 */
+	private void deleteQuietly(final Path temp) {
+		if (temp == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(temp);
+		} catch (final IOException e) {
+			log.error("Could not remove temporary file {}", temp, e);
+		}
+	}
+
+	/**
+	 * Record a file that has been written to an archive, in its statistics and its manifest
+	 *
+	 * @param archiveId the id of the archive
+	 * @param toolId the tool the file is for
+	 * @param relativePath the path of the file within the archive
+	 * @param size the number of bytes written
+	 * @param sha256 the hash of the content
+	 * @param mime the content type, or null to guess it from the filename
+	 * @param reference the reference of the entity the content came from, or null
+	 */
+	private void recordEntry(final String archiveId, final String toolId, final String relativePath, final long size,
+			final String sha256, final String mime, final String reference) {
+		recordWrite(archiveId, size);
+
+		final Manifest manifest = this.manifests.get(archiveId);
+		if (manifest != null) {
+			final String contentType = (mime != null) ? mime : URLConnection.guessContentTypeFromName(relativePath);
+			final ManifestEntry entry = new ManifestEntry(FilenameUtils.separatorsToUnix(relativePath), toolId, size, sha256,
+					StringUtils.defaultIfBlank(contentType, DEFAULT_MIME), reference);
+			manifest.add(entry);
+
+			final CheckpointJournal journal = getJournal(archiveId);
+			if (journal != null) {
+				journal.fileWritten(entry);
+			}
+		}
+	}
+
+	/**
+	 * Add a write to the statistics for an archive
+	 *
+	 * @param archiveId the id of the archive
+	 * @param bytes the number of bytes written, or -1 if the write failed
+	 */
+	private void recordWrite(final String archiveId, final long bytes) {
+		if (bytes >= 0) {
+			this.writeStats.computeIfAbsent(archiveId, k -> new WriteStats()).record(bytes);
+			if (this.storage != null) {
+				this.storage.add(bytes);
+			}
+
+			final WriteStats providerStats = PROVIDER_WRITES.get();
+			if (providerStats != null) {
+				providerStats.record(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Get the write statistics for an archive that is running on this node
+	 *
+	 * @param archiveId the id of the archive
+	 * @return the {@link WriteStats} or null if nothing has been written
+	 */
+	WriteStats getWriteStats(final String archiveId) {
+		return this.writeStats.get(archiveId);
+	}
+
+
+	/**
+	 * A file that is added to an archive as it is generated. The content is hashed, counted and limited to the maximum file size as it is
+	 * written, so it is only written once, and is added to the archive when the stream is closed unless it is incomplete, empty or the
+	 * archive has been cancelled.
+	 */
+	private abstract class ContentStream extends BufferedOutputStream {
+
+		private final HashingOutputStream hashing;
+		private final String archiveId;
+		private final String toolId;
+		private final String relativePath;
+		private boolean closed;
+
+		ContentStream(final HashingOutputStream hashing, final String archiveId, final String toolId, final String relativePath) {
+			super(hashing);
+			this.hashing = hashing;
+			this.archiveId = archiveId;
+			this.toolId = toolId;
+			this.relativePath = relativePath;
+		}
+
+		/**
+		 * Add the complete content to the archive
+		 *
+		 * @param content the content that was written
+		 * @return the number of bytes written or -1 if the file could not be added
+		 */
+		protected abstract long finish(HashingOutputStream content);
+
+		/**
+		 * Throw away content that will not be archived
+		 */
+		protected abstract void discard();
+
+		@Override
+		public void close() throws IOException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+
+			boolean complete = false;
+			try {
+				super.close();
+				complete = !this.hashing.isExceeded();
+			} finally {
+				if (!complete) {
+					if (this.hashing.isExceeded()) {
+						log.error("File {} is too large and will not be archived", this.relativePath);
+					}
+					discard();
+				} else if (isArchiveCancelled(this.archiveId)) {
+					log.debug("Archive {} has been cancelled, skipping {}", this.archiveId, this.relativePath);
+					discard();
+				} else if (this.hashing.getCount() == 0) {
+					log.error("No content to archive. Skipping.");
+					discard();
+				} else {
+					final long written = finish(this.hashing);
+					if (written >= 0) {
+						recordEntry(this.archiveId, this.toolId, this.relativePath, written, this.hashing.getHash(), null, null);
+					}
+				}
+			}
 		}
 	}
 
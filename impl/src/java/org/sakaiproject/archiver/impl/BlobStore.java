@@ -0,0 +1,245 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.sakaiproject.archiver.exception.FileSizeExceededException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content addressed store for the files in archives, so that content which is the same across archives is only stored once.
+ *
+ * Each blob is named by the SHA-256 of its content. Files in an archive directory are hard links to the blob, so the link count of a blob
+ * is its reference count: a blob with a single link is only referenced by the store and can be reclaimed once the archives that used it
+ * have been removed.
+ *
+ * Content whose hash is known before it is written, such as content in memory or a resource that can be read twice, is linked to an
+ * existing blob without being written again. A stream that can only be read once, or content that is generated, is hashed as it is written
+ * to a temporary file, so if its blob already exists only the space is saved.
+ *
+ * The store must be on the same filesystem as the archive directories. If hard links are not supported, files are written as normal
+ * copies.
+ */
+@Slf4j
+public class BlobStore {
+
+	private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+
+	private final Path root;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Create the store
+	 *
+	 * @param root the directory for the blobs
+	 * @throws IOException if the directory cannot be created
+	 */
+	public BlobStore(final Path root) throws IOException {
+		this.root = Files.createDirectories(root);
+	}
+
+	/**
+	 * Link the given file to content that is already in the store, replacing anything already there, so that the content is not written
+	 * again
+	 *
+	 * @param hash the SHA-256 of the content, in hex
+	 * @param target the file in the archive
+	 * @return true if the file now links to the content, false if the content is not in the store and needs to be written
+	 * @throws IOException if the file could not be linked
+	 */
+	public boolean linkExisting(final String hash, final Path target) throws IOException {
+		final Path blob = getBlobPath(hash);
+		if (!Files.exists(blob)) {
+			return false;
+		}
+		Files.createDirectories(target.getParent());
+		Files.deleteIfExists(target);
+
+		try {
+			Files.createLink(target, blob);
+		} catch (final NoSuchFileException e) {
+			// reclaimed between finding it and linking to it
+			return false;
+		} catch (final UnsupportedOperationException | FileSystemException e) {
+			if (e instanceof FileAlreadyExistsException) {
+				throw e;
+			}
+			log.debug("Could not link {} to the blob store, it will be written as a copy", target, e);
+			return false;
+		}
+		this.hits.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Write content into the store and link it to the given file, replacing anything already there. The content is written to a temporary
+	 * file as it is hashed, which is discarded if the blob is already in the store.
+	 *
+	 * @param in the content. The caller is responsible for closing it. If it is a {@link HashingInputStream} its hash is used rather than
+	 *            calculating it again.
+	 * @param target the file in the archive
+	 * @param maxSize the maximum number of bytes allowed
+	 * @param buffer buffer to copy through
+	 * @return the number of bytes in the file
+	 * @throws IOException if the content could not be written
+	 * @throws FileSizeExceededException if the content is larger than the maximum size
+	 */
+	public long write(final InputStream in, final Path target, final long maxSize, final byte[] buffer)
+			throws IOException, FileSizeExceededException {
+
+		final HashingInputStream hashing = (in instanceof HashingInputStream) ? (HashingInputStream) in : new HashingInputStream(in);
+		final Path temp = Files.createTempFile(this.root, ".blob-", ".tmp");
+		try {
+			long written = 0;
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				int read;
+				while ((read = hashing.read(buffer)) != -1) {
+					written += read;
+					if (written > maxSize) {
+						throw new FileSizeExceededException();
+					}
+					out.write(buffer, 0, read);
+				}
+			}
+
+			link(temp, getBlobPath(hashing.getHash()), target);
+			return written;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Add a file that has already been written and hashed to the store and link it to the given file, replacing anything already there.
+	 * The file becomes the blob rather than being copied, so it must be on the same filesystem as the store. The caller is responsible for
+	 * removing it afterwards.
+	 *
+	 * @param temp the fully written file
+	 * @param hash the SHA-256 of its content, in hex
+	 * @param target the file in the archive
+	 * @throws IOException if the file could not be added
+	 */
+	public void add(final Path temp, final String hash, final Path target) throws IOException {
+		link(temp, getBlobPath(hash), target);
+	}
+
+	/**
+	 * Remove any blobs that are no longer referenced by an archive
+	 *
+	 * @return the number of blobs removed
+	 * @throws IOException if the store could not be read
+	 */
+	public int reclaim() throws IOException {
+		final AtomicInteger reclaimed = new AtomicInteger();
+		try (Stream<Path> paths = Files.walk(this.root)) {
+			paths.filter(path -> BLOB_NAME.matcher(path.getFileName().toString()).matches())
+					.filter(path -> getReferenceCount(path) == 0)
+					.forEach(path -> {
+						try {
+							// if this races with a new reference the archive keeps its link and the blob is simply added again next time
+							Files.deleteIfExists(path);
+							reclaimed.incrementAndGet();
+						} catch (final IOException e) {
+							log.error("Could not remove blob {}", path, e);
+						}
+					});
+		}
+		log.info("Reclaimed {} unreferenced blobs", reclaimed.get());
+		return reclaimed.get();
+	}
+
+	/**
+	 * Get the number of archive files that reference a blob
+	 *
+	 * @param blob the blob
+	 * @return the number of references, or -1 if it cannot be determined
+	 */
+	int getReferenceCount(final Path blob) {
+		try {
+			return ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() - 1;
+		} catch (final IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the number of writes that found their content already in the store
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Get the path to a blob. Blobs are spread over subdirectories by the first two characters of their hash.
+	 *
+	 * @param hash the SHA-256 of the content, in hex
+	 * @return
+	 */
+	Path getBlobPath(final String hash) {
+		return this.root.resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	/**
+	 * Add the fully written temporary file to the store, unless the blob is already there, and link the target to the blob
+	 */
+	private void link(final Path temp, final Path blob, final Path target) throws IOException {
+		Files.createDirectories(blob.getParent());
+		Files.createDirectories(target.getParent());
+		Files.deleteIfExists(target);
+
+		try {
+			for (int attempt = 0;; attempt++) {
+				final boolean added = addBlob(temp, blob);
+				try {
+					Files.createLink(target, blob);
+					if (!added) {
+						this.hits.incrementAndGet();
+					}
+					return;
+				} catch (final NoSuchFileException e) {
+					// reclaimed between finding it and linking to it, so add it again
+					if (attempt > 0) {
+						throw e;
+					}
+				}
+			}
+		} catch (final UnsupportedOperationException | FileSystemException e) {
+			if (e instanceof NoSuchFileException || e instanceof FileAlreadyExistsException) {
+				throw e;
+			}
+			log.debug("Could not link {} to the blob store, writing a copy", target, e);
+			Files.copy(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Add a blob by linking it to the temporary file. Creating the link fails if the blob exists, so concurrent writes of the same content
+	 * are safe.
+	 *
+	 * @return true if the blob was added, false if it was already in the store
+	 */
+	private boolean addBlob(final Path temp, final Path blob) throws IOException {
+		try {
+			Files.createLink(blob, temp);
+			return true;
+		} catch (final FileAlreadyExistsException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.Jsonifier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Journal of the progress of an archive, so that an archive that was interrupted by a restart can be resumed rather than started again.
+ *
+ * The journal records each provider that completes, each item that a provider has finished with, each file that is written so that the
+ * {@link Manifest} can be rebuilt, and each path that is planned so that the {@link ArchivePathPlanner} plans the same paths again. It is
+ * kept alongside the archive directory rather than in it so that it is not zipped.
+ *
+ * Each record is a line of JSON, appended and flushed as it happens. A record that was only partly written when the node stopped is
+ * ignored. If the journal cannot be written the archive carries on, it just cannot be resumed from that point.
+ */
+@Slf4j
+public class CheckpointJournal implements Closeable {
+
+	static final String EXTENSION = ".checkpoints";
+
+	private final File file;
+
+	private final Set<String> completedProviders = ConcurrentHashMap.newKeySet();
+
+	private final Set<String> completedItems = ConcurrentHashMap.newKeySet();
+
+	// read from an earlier run and only kept until they are restored
+	private List<String[]> restoredPaths = new ArrayList<>();
+	private List<ManifestEntry> restoredEntries = new ArrayList<>();
+
+	private final boolean resumed;
+
+	private Writer writer;
+
+	private CheckpointJournal(final File file, final boolean resumed) {
+		this.file = file;
+		this.resumed = resumed;
+	}
+
+	/**
+	 * Open the journal for an archive, reading what was recorded by any earlier run
+	 *
+	 * @param file the journal file
+	 * @return the journal, ready to record to
+	 * @throws IOException if the journal cannot be read or opened
+	 */
+	public static CheckpointJournal open(final File file) throws IOException {
+		final CheckpointJournal journal = new CheckpointJournal(file, file.length() > 0);
+		if (journal.resumed) {
+			journal.read();
+			terminateLastLine(file);
+		}
+		journal.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		return journal;
+	}
+
+	/**
+	 * Check if the archive is being resumed from an earlier run
+	 *
+	 * @return true if anything was recorded before the journal was opened
+	 */
+	public boolean isResumed() {
+		return this.resumed;
+	}
+
+	/**
+	 * Restore the paths and files recorded by an earlier run, then record any new paths planned from here on
+	 *
+	 * @param planner the planner for the archive, which must not have planned anything yet
+	 * @param manifest the manifest for the archive
+	 */
+	public synchronized void restore(final ArchivePathPlanner planner, final Manifest manifest) {
+		this.restoredPaths.forEach(planner::plan);
+		this.restoredEntries.forEach(manifest::add);
+		log.debug("Restored {} paths and {} files from {}", this.restoredPaths.size(), this.restoredEntries.size(), this.file);
+
+		this.restoredPaths = new ArrayList<>();
+		this.restoredEntries = new ArrayList<>();
+		planner.setListener(this::pathPlanned);
+	}
+
+	/**
+	 * Check if a provider completed in an earlier run
+	 *
+	 * @param provider the class of the provider
+	 * @param toolId the tool it ran for
+	 * @return true/false
+	 */
+	public boolean isProviderCompleted(final String provider, final String toolId) {
+		return this.completedProviders.contains(key(provider, toolId));
+	}
+
+	/**
+	 * Record that a provider has completed
+	 *
+	 * @param provider the class of the provider
+	 * @param toolId the tool it ran for
+	 */
+	public void providerCompleted(final String provider, final String toolId) {
+		this.completedProviders.add(key(provider, toolId));
+		final Record record = new Record();
+		record.provider = provider;
+		record.tool = toolId;
+		append(record);
+	}
+
+	/**
+	 * Check if a provider has finished with an item, in this or an earlier run
+	 *
+	 * @param toolId the tool the item belongs to
+	 * @param itemId the id of the item
+	 * @return true/false
+	 */
+	public boolean isItemCompleted(final String toolId, final String itemId) {
+		return this.completedItems.contains(key(toolId, itemId));
+	}
+
+	/**
+	 * Record that a provider has finished with an item. Everything written for the item must have been written first.
+	 *
+	 * @param toolId the tool the item belongs to
+	 * @param itemId the id of the item
+	 */
+	public void itemCompleted(final String toolId, final String itemId) {
+		if (this.completedItems.add(key(toolId, itemId))) {
+			final Record record = new Record();
+			record.tool = toolId;
+			record.item = itemId;
+			append(record);
+		}
+	}
+
+	/**
+	 * Record a file that has been written to the archive
+	 *
+	 * @param entry the entry for the file in the manifest
+	 */
+	public void fileWritten(final ManifestEntry entry) {
+		final Record record = new Record();
+		record.entry = entry;
+		append(record);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (this.writer != null) {
+			try {
+				this.writer.close();
+			} catch (final IOException e) {
+				log.error("Could not close checkpoint journal {}", this.file, e);
+			}
+			this.writer = null;
+		}
+	}
+
+	/**
+	 * Close and remove the journal, once the archive no longer needs to be resumed
+	 */
+	public void delete() {
+		close();
+		try {
+			Files.deleteIfExists(this.file.toPath());
+		} catch (final IOException e) {
+			log.error("Could not remove checkpoint journal {}", this.file, e);
+		}
+	}
+
+	private void pathPlanned(final String[] names) {
+		final Record record = new Record();
+		record.path = names;
+		append(record);
+	}
+
+	private synchronized void append(final Record record) {
+		if (this.writer == null) {
+			return;
+		}
+		try {
+			this.writer.write(Jsonifier.toJson(record));
+			this.writer.write('\n');
+			this.writer.flush();
+		} catch (final IOException e) {
+			log.error("Could not write checkpoint journal {}, the archive can only be resumed from before this point", this.file, e);
+			close();
+		}
+	}
+
+	private void read() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final Record record;
+				try {
+					record = Jsonifier.fromJson(line, Record.class);
+				} catch (final RuntimeException e) {
+					// the JSON parser throws unchecked exceptions for malformed input
+					log.debug("Ignoring incomplete record in {}", this.file);
+					continue;
+				}
+				if (record == null) {
+					continue;
+				}
+				if (record.path != null) {
+					this.restoredPaths.add(record.path);
+				} else if (record.entry != null) {
+					this.restoredEntries.add(record.entry);
+				} else if (record.provider != null) {
+					this.completedProviders.add(key(record.provider, record.tool));
+				} else if (record.item != null) {
+					this.completedItems.add(key(record.tool, record.item));
+				}
+			}
+		}
+	}
+
+	/**
+	 * End the journal with a newline if the last record was only partly written, so it is not joined to the next record
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void terminateLastLine(final File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(raf.length() - 1);
+			if (raf.read() != '\n') {
+				raf.write('\n');
+			}
+		}
+	}
+
+	private static String key(final String first, final String second) {
+		return StringUtils.defaultString(first) + '\n' + StringUtils.defaultString(second);
+	}
+
+	/**
+	 * A line of the journal, only one of path, entry, provider or item is set
+	 */
+	private static class Record {
+		private String[] path;
+		private ManifestEntry entry;
+		private String provider;
+		private String tool;
+		private String item;
+	}
+}
@@ -0,0 +1,117 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates the SHA-256 of a stream and counts its bytes as it is read, so content only needs to be read once to be both written and
+ * checksummed.
+ */
+public class HashingInputStream extends FilterInputStream {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final MessageDigest digest = newDigest();
+
+	private long count = 0;
+
+	private String hash;
+
+	public HashingInputStream(final InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = this.in.read();
+		if (b != -1) {
+			this.digest.update((byte) b);
+			this.count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int read = this.in.read(b, off, len);
+		if (read > 0) {
+			this.digest.update(b, off, read);
+			this.count += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		// skipped bytes would be missing from the hash
+		return 0;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(final int readlimit) {
+		// not supported
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Get the number of bytes read so far
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Get the SHA-256 of everything read. Once called, nothing more should be read.
+	 *
+	 * @return the hash in lowercase hex
+	 */
+	public String getHash() {
+		if (this.hash == null) {
+			this.hash = toHex(this.digest.digest());
+		}
+		return this.hash;
+	}
+
+	/**
+	 * Calculate the SHA-256 of some content
+	 *
+	 * @param content
+	 * @return the hash in lowercase hex
+	 */
+	public static String hash(final byte[] content) {
+		return toHex(newDigest().digest(content));
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			// every JVM must support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(final byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Calculates the SHA-256 of a stream and counts its bytes as it is written, so generated content only needs to be written once to be both
+ * stored and checksummed. Writing more than the maximum size fails rather than writing the content in full only for it to be discarded.
+ */
+public class HashingOutputStream extends FilterOutputStream {
+
+	private final MessageDigest digest = HashingInputStream.newDigest();
+
+	private final long maxSize;
+
+	private long count = 0;
+
+	private boolean exceeded;
+
+	private String hash;
+
+	/**
+	 * @param out the stream to write to
+	 * @param maxSize the maximum number of bytes allowed
+	 */
+	public HashingOutputStream(final OutputStream out, final long maxSize) {
+		super(out);
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		checkSize(1);
+		this.out.write(b);
+		this.digest.update((byte) b);
+		this.count++;
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		checkSize(len);
+		this.out.write(b, off, len);
+		this.digest.update(b, off, len);
+		this.count += len;
+	}
+
+	/**
+	 * Get the number of bytes written so far
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Whether more than the maximum size was written, in which case the content is incomplete
+	 *
+	 * @return
+	 */
+	public boolean isExceeded() {
+		return this.exceeded;
+	}
+
+	/**
+	 * Get the SHA-256 of everything written. Once called, nothing more should be written.
+	 *
+	 * @return the hash in lowercase hex
+	 */
+	public String getHash() {
+		if (this.hash == null) {
+			this.hash = HashingInputStream.toHex(this.digest.digest());
+		}
+		return this.hash;
+	}
+
+	private void checkSize(final int len) throws IOException {
+		if (this.exceeded || this.count + len > this.maxSize) {
+			this.exceeded = true;
+			throw new IOException("Content is larger than the maximum of " + this.maxSize + " bytes");
+		}
+	}
+
+}
@@ -1,127 +1,301 @@
 package org.sakaiproject.archiver.impl;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.archiver.util.Jsonifier;
 
 /**
- * Manages the assembly of the top level index page for an archive path
+ * Manages the assembly of the top level index page for an archive path, from the list of files in the archive
+ *
+ * The index is either a single page with the whole tree in it, or for large archives a page that loads each directory as it is opened.
+ * The lazy index writes a small script for each directory into {@link #INDEX_DIR}, which are loaded via script tags rather than ajax so
+ * that the index still works when the archive is opened from disk.
  *
  * Note that this uses jsTree library from https://www.jstree.com/. Please see that site for applicable licenses.
  */
 public class IndexBuilder {
 
-	private final StringBuilder sb = new StringBuilder();
-	private final File archiveBase;
+	/**
+	 * Name of the index page
+	 */
+	public static final String INDEX_NAME = "index.html";
+
+	/**
+	 * Directory within the archive that the lazy index writes a script for each directory into
+	 */
+	public static final String INDEX_DIR = "index-files";
+
+	private static final String FOLDER_ICON = "glyphicon glyphicon-folder-open";
+	private static final String FILE_ICON = "glyphicon glyphicon-file";
+
+	private final String rootName;
 	private final String title;
+	private final List<String> paths;
 
 	private int dirCount = 0;
 
 	/**
-	 * Initialise the {@link IndexBuilder}
+	 * Opens a stream for each file of the index
+	 */
+	@FunctionalInterface
+	public interface IndexOutput {
+
+		/**
+		 * Open a file of the index
+		 *
+		 * @param path the path of the file, relative to the root dir of the archive
+		 * @return the stream to write the file to. This is closed once the file is written.
+		 * @throws IOException
+		 */
+		OutputStream open(String path) throws IOException;
+	}
+
+	/**
+	 * Initialise the {@link IndexBuilder} from a list of the files in the archive, rather than from the files on disk
 	 *
 	 * @param path root dir of the archive
+	 * @param title
+	 * @param paths the paths of each file in the archive, relative to the root dir
 	 */
-	public IndexBuilder(final String path, final String title) {
-		this.archiveBase = new File(path);
+	public IndexBuilder(final String path, final String title, final List<String> paths) {
+		this.rootName = new File(path).getName();
 		this.title = title;
+		this.paths = paths;
 	}
 
 	/**
-	 * Build the index
+	 * Build the index as a single page
 	 *
 	 * @return
 	 */
 	public String build() {
+		final StringWriter out = new StringWriter();
+		try {
+			writePage(out);
+		} catch (final IOException e) {
+			// can't happen with a StringWriter
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Write the index as a single page with the whole tree in it
+	 *
+	 * @param output opens the index page
+	 * @throws IOException
+	 */
+	public void write(final IndexOutput output) throws IOException {
+		try (Writer out = open(output, INDEX_NAME)) {
+			writePage(out);
+		}
+	}
+
+	/**
+	 * Write the index as a page that loads the children of each directory when it is opened. Each directory is written as a script in
+	 * {@link #INDEX_DIR} that is named by the number of the directory.
+	 *
+	 * @param output opens the index page and each script
+	 * @throws IOException
+	 */
+	public void writeLazy(final IndexOutput output) throws IOException {
+		try (Writer out = open(output, INDEX_NAME)) {
+			writeStart(out, getLazyScript());
+			out.write("</div></div></body></html>");
+		}
+		writeDirectories(output, buildTree());
+	}
+
+	/**
+	 * Write the script for each directory. Directories are numbered breadth first so that the number of each subdirectory is known when
+	 * its parent is written.
+	 *
+	 * @param output opens each script
+	 * @param root the root of the tree
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	private void writeDirectories(final IndexOutput output, final Map<String, Object> root) throws IOException {
+		final Deque<Map<String, Object>> queue = new ArrayDeque<>();
+		queue.add(root);
+
+		int number = 0;
+		int next = 1;
+		while (!queue.isEmpty()) {
+			final Map<String, Object> children = queue.remove();
 
-		getStart();
-		renderDirectory(this.archiveBase);
-		getEnd();
+			final List<Map<String, Object>> nodes = new ArrayList<>(children.size());
+			for (final Map.Entry<String, Object> child : children.entrySet()) {
+				final Map<String, Object> node = new LinkedHashMap<>();
+				node.put("text", StringEscapeUtils.escapeHtml4(child.getKey()));
+				if (child.getValue() instanceof Map) {
+					node.put("id", "d" + next++);
+					node.put("icon", FOLDER_ICON);
+					node.put("children", true);
+					queue.add((Map<String, Object>) child.getValue());
+				} else {
+					node.put("icon", FILE_ICON);
+					node.put("a_attr", Collections.singletonMap("href", child.getValue()));
+				}
+				nodes.add(node);
+			}
+
+			try (Writer out = open(output, INDEX_DIR + "/" + number + ".js")) {
+				out.write("archiveIndex(" + number + ", ");
+				out.write(Jsonifier.toJson(nodes));
+				out.write(");");
+			}
+			number++;
+		}
+	}
 
-		return this.sb.toString();
+	private void writePage(final Writer out) throws IOException {
+		this.dirCount = 0;
+		writeStart(out,
+				"$(document).ready(function() { $('#tree').jstree({ \"plugins\" : [ \"state\" ] }).bind('changed.jstree', function (e, data) { if(data.node) { var href = data.node.a_attr.href; if(href !== '#') { window.open(href, '_self'); }}})});");
+		out.write("<ul>");
+		renderNode(out, this.rootName, buildTree());
+		out.write("</ul></div></div></body></html>");
 	}
 
 	/**
-	 * Render a directory and all children
+	 * Render a directory from the tree of paths and all children
 	 *
-	 * @param folder
-	 * @param sb
+	 * @param out where to write to
+	 * @param name name of the directory
+	 * @param children the children of the directory. Values are either another directory or the relative path to a file.
+	 * @throws IOException
 	 */
-	private void renderDirectory(final File folder) {
+	@SuppressWarnings("unchecked")
+	private void renderNode(final Writer out, final String name, final Map<String, Object> children) throws IOException {
 
 		if (this.dirCount == 0) {
-			this.sb.append("<li data-jstree='{\"opened\":true, \"selected\":true, \"icon\":\"glyphicon glyphicon-folder-open\"}'>");
+			out.write("<li data-jstree='{\"opened\":true, \"selected\":true, \"icon\":\"" + FOLDER_ICON + "\"}'>");
 		} else {
-			this.sb.append("<li data-jstree='{\"icon\":\"glyphicon glyphicon-folder-open\"}'>");
+			out.write("<li data-jstree='{\"icon\":\"" + FOLDER_ICON + "\"}'>");
 		}
 		this.dirCount++;
-		this.sb.append(folder.getName());
-		this.sb.append("<ul>");
-		for (final File file : folder.listFiles()) {
-			if (file.isDirectory()) {
-				renderDirectory(file);
+		out.write(StringEscapeUtils.escapeHtml4(name));
+		out.write("<ul>");
+		for (final Map.Entry<String, Object> child : children.entrySet()) {
+			if (child.getValue() instanceof Map) {
+				renderNode(out, child.getKey(), (Map<String, Object>) child.getValue());
 			} else {
-				renderFile(file);
+				renderFile(out, child.getKey(), (String) child.getValue());
 			}
 		}
-		this.sb.append("</ul>");
+		out.write("</ul>");
+	}
 
+	/**
+	 * Turn the list of paths into a tree of directories
+	 *
+	 * @return the root of the tree
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> buildTree() {
+		final Map<String, Object> root = new TreeMap<>();
+		for (final String path : this.paths) {
+			final String[] parts = StringUtils.split(path, "/");
+			if (parts.length == 0) {
+				continue;
+			}
+			Map<String, Object> current = root;
+			for (int i = 0; i < parts.length - 1; i++) {
+				current = (Map<String, Object>) current.computeIfAbsent(parts[i], k -> new TreeMap<String, Object>());
+			}
+			current.put(parts[parts.length - 1], path);
+		}
+		return root;
 	}
 
 	/**
 	 * Render a file
 	 *
-	 * @param file
-	 * @param sb
+	 * @param out where to write to
+	 * @param name name of the file
+	 * @param relativePath path to the file from the top level index.html file
+	 * @throws IOException
 	 */
-	private void renderFile(final File file) {
-		this.sb.append("<li data-jstree='{\"icon\":\"glyphicon glyphicon-file\"}'>");
-		this.sb.append("<a href=\"" + getRelativePath(file) + "\">");
-		this.sb.append(file.getName());
-		this.sb.append("</a></li>");
+	private void renderFile(final Writer out, final String name, final String relativePath) throws IOException {
+		out.write("<li data-jstree='{\"icon\":\"" + FILE_ICON + "\"}'>");
+		out.write("<a href=\"" + StringEscapeUtils.escapeHtml4(relativePath) + "\">");
+		out.write(StringEscapeUtils.escapeHtml4(name));
+		out.write("</a></li>");
 	}
 
-	private void getStart() {
-
-		this.sb.append("<!DOCTYPE html>");
-		this.sb.append("<html lang=\"en\">");
-		this.sb.append("<head>");
-		this.sb.append("<title>" + this.title + "</title>");
-		this.sb.append("<meta charset=\"utf-8\">");
-		this.sb.append("<meta http-equiv=\"X-UA-Compatible\" content=\"IE=edge\">");
-		this.sb.append("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">");
-		this.sb.append("<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap.min.css\">");
-		this.sb.append("<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap-theme.min.css\">");
-		this.sb.append(
-				"<link rel=\"stylesheet\" href=\"https://cdnjs.cloudflare.com/ajax/libs/jstree/3.2.1/themes/default/style.min.css\"/>");
-
-		this.sb.append("<script src=\"https://ajax.googleapis.com/ajax/libs/jquery/1.12.4/jquery.min.js\"></script>");
-		this.sb.append("<script src=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/js/bootstrap.min.js\"></script>");
-		this.sb.append("<script src=\"https://cdnjs.cloudflare.com/ajax/libs/jstree/3.2.1/jstree.min.js\"></script>");
-
-		this.sb.append(
-				"<script>$(document).ready(function() { $('#tree').jstree({ \"plugins\" : [ \"state\" ] }).bind('changed.jstree', function (e, data) { if(data.node) { var href = data.node.a_attr.href; if(href !== '#') { window.open(href, '_self'); }}})});</script>");
-
-		this.sb.append("</head>");
-		this.sb.append("<body>");
-		this.sb.append("<div class=\"container\">");
-		this.sb.append("<h1>" + this.title + "</h1>");
-		this.sb.append("<div id=\"tree\">");
-		this.sb.append("<ul>");
+	/**
+	 * Get the script for the lazy index. The root is opened straight away, and the children of each directory are loaded from its script
+	 * when it is opened, which hands them back via <code>archiveIndex</code>.
+	 *
+	 * @return
+	 */
+	private String getLazyScript() {
+		final Map<String, Object> root = new LinkedHashMap<>();
+		root.put("id", "d0");
+		root.put("text", StringEscapeUtils.escapeHtml4(this.rootName));
+		root.put("icon", FOLDER_ICON);
+		root.put("children", true);
+		root.put("state", Collections.singletonMap("opened", true));
+
+		return "var pending = {};"
+				+ "function archiveIndex(id, nodes) { var done = pending[id]; delete pending[id]; if (done) { done(nodes); } }"
+				+ "$(document).ready(function() { $('#tree').jstree({ \"core\" : { \"data\" : function (node, cb) {"
+				+ " var tree = this;"
+				+ " if (node.id === '#') { cb.call(tree, [" + Jsonifier.toJson(root) + "]); return; }"
+				+ " var id = node.id.substring(1);"
+				+ " pending[id] = function (nodes) { cb.call(tree, nodes); };"
+				+ " var script = document.createElement('script'); script.src = '" + INDEX_DIR + "/' + id + '.js';"
+				+ " document.getElementsByTagName('head')[0].appendChild(script);"
+				+ " }}, \"plugins\" : [ \"state\" ] }).bind('changed.jstree', function (e, data) { if(data.node && data.node.a_attr) {"
+				+ " var href = data.node.a_attr.href; if(href && href !== '#') { window.open(href, '_self'); }}})});";
 	}
 
-	private void getEnd() {
-		this.sb.append("</ul></div></div></body></html>");
+	private void writeStart(final Writer out, final String script) throws IOException {
+
+		out.write("<!DOCTYPE html>");
+		out.write("<html lang=\"en\">");
+		out.write("<head>");
+		out.write("<title>" + StringEscapeUtils.escapeHtml4(this.title) + "</title>");
+		out.write("<meta charset=\"utf-8\">");
+		out.write("<meta http-equiv=\"X-UA-Compatible\" content=\"IE=edge\">");
+		out.write("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">");
+		out.write("<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap.min.css\">");
+		out.write("<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/css/bootstrap-theme.min.css\">");
+		out.write("<link rel=\"stylesheet\" href=\"https://cdnjs.cloudflare.com/ajax/libs/jstree/3.2.1/themes/default/style.min.css\"/>");
+
+		out.write("<script src=\"https://ajax.googleapis.com/ajax/libs/jquery/1.12.4/jquery.min.js\"></script>");
+		out.write("<script src=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.7/js/bootstrap.min.js\"></script>");
+		out.write("<script src=\"https://cdnjs.cloudflare.com/ajax/libs/jstree/3.2.1/jstree.min.js\"></script>");
+
+		out.write("<script>" + script + "</script>");
+
+		out.write("</head>");
+		out.write("<body>");
+		out.write("<div class=\"container\">");
+		out.write("<h1>" + StringEscapeUtils.escapeHtml4(this.title) + "</h1>");
+		out.write("<div id=\"tree\">");
 	}
 
-	/**
-	 * Determines a relative path to the file from the top level index.html file
-	 *
-	 * @param file
-	 * @return relative path
-	 */
-	private String getRelativePath(final File file) {
-		return StringUtils.removeStart(StringUtils.removeStart(file.getAbsolutePath(), this.archiveBase.getAbsolutePath()), "/");
+	private static Writer open(final IndexOutput output, final String path) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(output.open(path), StandardCharsets.UTF_8));
 	}
 
 }
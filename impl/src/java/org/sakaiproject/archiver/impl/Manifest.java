@@ -0,0 +1,173 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.archiver.util.Jsonifier;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Record of everything written to an archive, built as the content is written so nothing needs to be read back from disk later.
+ *
+ * The manifest is stored as <code>manifest.json</code> inside the archive, and in a compact binary form alongside the zip so it can be
+ * read without opening the zip. The binary form is:
+ *
+ * <pre>
+ * magic "SAMF", int version, UTF archiveId, UTF baseArchiveId, int count
+ * then for each entry: UTF path, UTF tool, long size, 32 byte SHA-256, UTF mime, UTF reference
+ * </pre>
+ *
+ * where missing values are written as empty strings. Providers run concurrently so this is safe to update from multiple threads.
+ */
+public class Manifest {
+
+	static final String JSON_NAME = "manifest.json";
+
+	static final String BINARY_EXTENSION = ".manifest";
+
+	private static final int MAGIC = 0x53414D46;
+
+	private static final int VERSION = 1;
+
+	@Getter
+	private final String archiveId;
+
+	/**
+	 * The archive that this archive is an increment of, or null if it is a full archive
+	 */
+	@Getter
+	@Setter
+	private String baseArchiveId;
+
+	// keyed by path so a file that is written again replaces the earlier entry
+	private final Map<String, ManifestEntry> entries = new LinkedHashMap<>();
+
+	public Manifest(final String archiveId) {
+		this.archiveId = archiveId;
+	}
+
+	/**
+	 * Record a file that has been written to the archive
+	 *
+	 * @param entry
+	 */
+	public synchronized void add(final ManifestEntry entry) {
+		this.entries.put(entry.getPath(), entry);
+	}
+
+	/**
+	 * Get the entries, in the order they were written
+	 *
+	 * @return
+	 */
+	public synchronized List<ManifestEntry> getEntries() {
+		return new ArrayList<>(this.entries.values());
+	}
+
+	/**
+	 * Get the paths of all files in the archive, in the order they were written
+	 *
+	 * @return
+	 */
+	public synchronized List<String> getPaths() {
+		return new ArrayList<>(this.entries.keySet());
+	}
+
+	/**
+	 * Get the manifest as JSON
+	 *
+	 * @return
+	 */
+	public String toJson() {
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("archiveId", this.archiveId);
+		json.put("baseArchiveId", this.baseArchiveId);
+		json.put("entries", getEntries());
+		return Jsonifier.toJson(json);
+	}
+
+	/**
+	 * Write the manifest in its binary form
+	 *
+	 * @param out where to write it. The caller is responsible for closing it.
+	 * @throws IOException
+	 */
+	public void write(final OutputStream out) throws IOException {
+		final List<ManifestEntry> list = getEntries();
+
+		final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeUTF(StringUtils.defaultString(this.archiveId));
+		data.writeUTF(StringUtils.defaultString(this.baseArchiveId));
+		data.writeInt(list.size());
+		for (final ManifestEntry entry : list) {
+			data.writeUTF(entry.getPath());
+			data.writeUTF(StringUtils.defaultString(entry.getTool()));
+			data.writeLong(entry.getSize());
+			data.write(fromHex(entry.getSha256()));
+			data.writeUTF(StringUtils.defaultString(entry.getMime()));
+			data.writeUTF(StringUtils.defaultString(entry.getReference()));
+		}
+		data.flush();
+	}
+
+	/**
+	 * Read a manifest from its binary form
+	 *
+	 * @param in the binary manifest. The caller is responsible for closing it.
+	 * @return the manifest
+	 * @throws IOException if it cannot be read or is not a manifest
+	 */
+	public static Manifest read(final InputStream in) throws IOException {
+		final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+			throw new IOException("Not a manifest, or an unsupported version");
+		}
+
+		final Manifest manifest = new Manifest(StringUtils.trimToNull(data.readUTF()));
+		manifest.setBaseArchiveId(StringUtils.trimToNull(data.readUTF()));
+
+		final int count = data.readInt();
+		final byte[] sha256 = new byte[32];
+		for (int i = 0; i < count; i++) {
+			final String path = data.readUTF();
+			final String tool = StringUtils.trimToNull(data.readUTF());
+			final long size = data.readLong();
+			data.readFully(sha256);
+			final String mime = StringUtils.trimToNull(data.readUTF());
+			final String reference = StringUtils.trimToNull(data.readUTF());
+			manifest.add(new ManifestEntry(path, tool, size, toHex(sha256), mime, reference));
+		}
+		return manifest;
+	}
+
+	private static byte[] fromHex(final String hex) {
+		final byte[] bytes = new byte[32];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.sakaiproject.archiver.impl;
+
+import lombok.Getter;
+
+/**
+ * A file in an archive, as recorded in its {@link Manifest}
+ */
+public class ManifestEntry {
+
+	/**
+	 * Path of the file within the archive, always using forward slashes
+	 */
+	@Getter
+	private final String path;
+
+	@Getter
+	private final String tool;
+
+	@Getter
+	private final long size;
+
+	/**
+	 * SHA-256 of the content, in lowercase hex
+	 */
+	@Getter
+	private final String sha256;
+
+	@Getter
+	private final String mime;
+
+	/**
+	 * Reference of the entity the content came from, eg a content hosting resource. May be null.
+	 */
+	@Getter
+	private final String reference;
+
+	public ManifestEntry(final String path, final String tool, final long size, final String sha256, final String mime,
+			final String reference) {
+		this.path = path;
+		this.tool = tool;
+		this.size = size;
+		this.sha256 = sha256;
+		this.mime = mime;
+		this.reference = reference;
+	}
+
+}
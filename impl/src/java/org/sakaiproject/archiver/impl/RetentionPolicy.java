@@ -0,0 +1,71 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.sakaiproject.archiver.api.Status;
+import org.sakaiproject.archiver.entity.ArchiveEntity;
+
+/**
+ * Decides which of the finished archives of a site are kept, by keeping a number of the newest archives and/or those newer than a number
+ * of days.
+ *
+ * The latest complete archive of a site is always kept so there is always something to restore from. An incremental archive can only be
+ * restored on top of the archives it is built on, so these are kept for as long as it is.
+ */
+public class RetentionPolicy {
+
+	private final int count;
+
+	private final int days;
+
+	/**
+	 * Create the policy
+	 *
+	 * @param count the number of archives to keep for each site, or 0 to keep them all
+	 * @param days the number of days to keep archives for, or 0 to keep them forever
+	 */
+	public RetentionPolicy(final int count, final int days) {
+		this.count = count;
+		this.days = days;
+	}
+
+	/**
+	 * Get the archives of a site that are kept
+	 *
+	 * @param archives the finished archives of the site, newest first
+	 * @param now the current time in milliseconds
+	 * @return the ids of the archives that are kept, the rest have expired
+	 */
+	public Set<String> getKept(final List<ArchiveEntity> archives, final long now) {
+		final long cutoff = now - TimeUnit.DAYS.toMillis(this.days);
+
+		final Set<String> kept = new HashSet<>();
+		archives.stream().filter(e -> e.getStatus() == Status.COMPLETE).findFirst().ifPresent(e -> kept.add(e.getId()));
+		for (int i = 0; i < archives.size(); i++) {
+			final ArchiveEntity entity = archives.get(i);
+			final boolean tooMany = this.count > 0 && i >= this.count;
+			final boolean tooOld = this.days > 0 && entity.getStartDate().getTime() < cutoff;
+			if (!tooMany && !tooOld) {
+				kept.add(entity.getId());
+			}
+		}
+
+		// follow each kept archive back to the full archive it is built on
+		final Map<String, ArchiveEntity> byId = archives.stream().collect(Collectors.toMap(ArchiveEntity::getId, e -> e));
+		final Deque<String> chain = new ArrayDeque<>(kept);
+		while (!chain.isEmpty()) {
+			final ArchiveEntity entity = byId.get(chain.pop());
+			if (entity != null && entity.getBaseArchiveId() != null && kept.add(entity.getBaseArchiveId())) {
+				chain.push(entity.getBaseArchiveId());
+			}
+		}
+		return kept;
+	}
+}
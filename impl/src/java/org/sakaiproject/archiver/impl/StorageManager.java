@@ -0,0 +1,321 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps track of the disk space used by the archiver and removes files that are no longer needed.
+ *
+ * The space used is measured by walking the tree in parallel, one task for each directory, and is kept up to date in between by the
+ * writes and deletes made through this class. Files that are hard linked more than once, ie blobs shared between archive directories, are
+ * only counted once and only free space when their last link is removed.
+ *
+ * Walking and deleting are rate limited to a number of files per second across all threads, so that a sweep of a large tree does not
+ * compete with the node for disk IO.
+ */
+@Slf4j
+public class StorageManager {
+
+	private final Path root;
+
+	// in bytes, 0 or less if there is no quota
+	private final LongSupplier quota;
+
+	private final ForkJoinPool pool;
+
+	private final long nanosPerFile;
+
+	private final AtomicLong used = new AtomicLong();
+
+	// when the next file can be visited, for the rate limit
+	private long nextFile = 0;
+
+	// cleared if the filesystem has no unix attributes, in which case link counts are not known
+	private volatile boolean unixAttributes = true;
+
+	/**
+	 * Create the manager
+	 *
+	 * @param root the directory the archiver writes to
+	 * @param quota the maximum number of bytes the archiver can use, or 0 for no limit. Checked on every call so it can be reconfigured.
+	 * @param threads the number of threads to walk the tree with
+	 * @param filesPerSecond the maximum number of files to visit each second
+	 */
+	public StorageManager(final Path root, final LongSupplier quota, final int threads, final int filesPerSecond) {
+		this.root = root;
+		this.quota = quota;
+		this.pool = new ForkJoinPool(threads);
+		this.nanosPerFile = TimeUnit.SECONDS.toNanos(1) / Math.max(1, filesPerSecond);
+	}
+
+	/**
+	 * Check if there is space for more archives
+	 *
+	 * @return true if there is no quota or the space used is below it
+	 */
+	public boolean hasSpace() {
+		final long limit = this.quota.getAsLong();
+		return limit <= 0 || this.used.get() < limit;
+	}
+
+	/**
+	 * Get the space used, as of the last measurement and any changes since
+	 *
+	 * @return the number of bytes
+	 */
+	public long getUsed() {
+		return this.used.get();
+	}
+
+	/**
+	 * Record space that has been used by a file written since the last measurement
+	 *
+	 * @param bytes
+	 */
+	public void add(final long bytes) {
+		this.used.addAndGet(bytes);
+	}
+
+	/**
+	 * Measure the space used by walking the whole tree
+	 *
+	 * @return the number of bytes used
+	 */
+	public long measure() {
+		final long start = System.currentTimeMillis();
+		final long size = this.pool.invoke(new SizeTask(this.root, ConcurrentHashMap.newKeySet()));
+		this.used.set(size);
+		log.info("Archives use {} bytes, measured in {} ms", size, System.currentTimeMillis() - start);
+		return size;
+	}
+
+	/**
+	 * Delete a file or directory tree
+	 *
+	 * @param path the file or directory
+	 * @return the number of bytes freed
+	 */
+	public long delete(final Path path) {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return 0;
+		}
+		final long freed = this.pool.invoke(new DeleteTask(path));
+		this.used.addAndGet(-freed);
+		log.debug("Deleted {}, freeing {} bytes", path, freed);
+		return freed;
+	}
+
+	/**
+	 * Delete the files directly in a directory that have not been modified for a while, eg temporary files left behind by a restart
+	 *
+	 * @param dir the directory
+	 * @param maxAge the age in milliseconds that files must be older than
+	 * @return the number of files deleted
+	 */
+	public int deleteOlderThan(final Path dir, final long maxAge) {
+		if (!Files.isDirectory(dir)) {
+			return 0;
+		}
+		final long cutoff = System.currentTimeMillis() - maxAge;
+		int deleted = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (final Path file : files) {
+				throttle();
+				try {
+					final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() < cutoff) {
+						final long size = freedBy(file, attrs);
+						Files.deleteIfExists(file);
+						this.used.addAndGet(-size);
+						deleted++;
+					}
+				} catch (final IOException e) {
+					log.error("Could not remove {}", file, e);
+				}
+			}
+		} catch (final IOException e) {
+			log.error("Could not remove old files from {}", dir, e);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Stop any walk or delete that is running
+	 */
+	public void shutdown() {
+		this.pool.shutdownNow();
+	}
+
+	/**
+	 * Wait until the next file can be visited
+	 */
+	private void throttle() {
+		final long wait;
+		synchronized (this) {
+			final long now = System.nanoTime();
+			if (this.nextFile < now) {
+				this.nextFile = now;
+			}
+			wait = this.nextFile - now;
+			this.nextFile += this.nanosPerFile;
+		}
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Get the link count and inode of a file, if they are known
+	 *
+	 * @param file
+	 * @return the attributes of the file, including <code>nlink</code> and <code>ino</code>, or null if they are not supported
+	 */
+	private Map<String, Object> getLinks(final Path file) {
+		if (!this.unixAttributes) {
+			return null;
+		}
+		try {
+			return Files.readAttributes(file, "unix:nlink,ino", LinkOption.NOFOLLOW_LINKS);
+		} catch (final UnsupportedOperationException | IllegalArgumentException e) {
+			this.unixAttributes = false;
+			return null;
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the space that deleting a file would free. A file with other links frees nothing until the last one is deleted.
+	 */
+	private long freedBy(final Path file, final BasicFileAttributes attrs) {
+		final Map<String, Object> links = getLinks(file);
+		return (links == null || ((Number) links.get("nlink")).intValue() <= 1) ? attrs.size() : 0;
+	}
+
+	/**
+	 * Get the contents of a directory, or nothing if it has gone
+	 */
+	private static List<Path> list(final Path dir) {
+		final List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			stream.forEach(paths::add);
+		} catch (final NoSuchFileException e) {
+			// removed whilst being walked
+		} catch (final IOException e) {
+			log.error("Could not list {}", dir, e);
+		}
+		return paths;
+	}
+
+	/**
+	 * Adds up the size of a directory, forking a task for each subdirectory
+	 */
+	private class SizeTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path dir;
+
+		// inodes of files with more than one link that have been counted
+		private final Set<Object> linked;
+
+		SizeTask(final Path dir, final Set<Object> linked) {
+			this.dir = dir;
+			this.linked = linked;
+		}
+
+		@Override
+		protected Long compute() {
+			long size = 0;
+			final List<SizeTask> subdirs = new ArrayList<>();
+			for (final Path path : list(this.dir)) {
+				throttle();
+				try {
+					final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					if (attrs.isDirectory()) {
+						final SizeTask task = new SizeTask(path, this.linked);
+						task.fork();
+						subdirs.add(task);
+					} else if (attrs.isRegularFile()) {
+						final Map<String, Object> links = getLinks(path);
+						if (links == null || ((Number) links.get("nlink")).intValue() <= 1 || this.linked.add(links.get("ino"))) {
+							size += attrs.size();
+						}
+					}
+				} catch (final IOException e) {
+					// removed whilst being walked
+					log.debug("Could not measure {}", path, e);
+				}
+			}
+			for (final SizeTask task : subdirs) {
+				size += task.join();
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Deletes a file or directory, forking a task for each subdirectory and deleting the directory once they have finished
+	 */
+	private class DeleteTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+
+		DeleteTask(final Path path) {
+			this.path = path;
+		}
+
+		@Override
+		protected Long compute() {
+			long freed = 0;
+			try {
+				final BasicFileAttributes attrs = Files.readAttributes(this.path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				if (attrs.isDirectory()) {
+					final List<DeleteTask> children = new ArrayList<>();
+					for (final Path child : list(this.path)) {
+						final DeleteTask task = new DeleteTask(child);
+						task.fork();
+						children.add(task);
+					}
+					for (final DeleteTask task : children) {
+						freed += task.join();
+					}
+					Files.deleteIfExists(this.path);
+				} else {
+					throttle();
+					final long size = freedBy(this.path, attrs);
+					Files.deleteIfExists(this.path);
+					freed = size;
+				}
+			} catch (final NoSuchFileException e) {
+				// already gone
+			} catch (final IOException e) {
+				log.error("Could not delete {}", this.path, e);
+			}
+			return freed;
+		}
+	}
+}
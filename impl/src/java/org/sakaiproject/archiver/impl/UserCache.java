@@ -0,0 +1,110 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.user.api.UserNotDefinedException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Users looked up for an archive, so that each user is only fetched from the {@link UserDirectoryService} once no matter how many chat
+ * messages, submissions or files they have. Users that cannot be found are remembered too, so they are not looked up again.
+ *
+ * Providers run concurrently so this is safe to use from multiple threads.
+ */
+@Slf4j
+public class UserCache {
+
+	private final UserDirectoryService userDirectoryService;
+
+	// empty if the user could not be found
+	private final Map<String, Optional<User>> users = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	public UserCache(final UserDirectoryService userDirectoryService) {
+		this.userDirectoryService = userDirectoryService;
+	}
+
+	/**
+	 * Fetch a set of users in a single call, eg the members of the site, so later lookups for them do not go to the directory. Users that
+	 * are not returned are cached as not found.
+	 *
+	 * @param userUuids the users to fetch
+	 */
+	public void prefetch(final Collection<String> userUuids) {
+		final Set<String> wanted = new HashSet<>(userUuids);
+		wanted.removeAll(this.users.keySet());
+		if (wanted.isEmpty()) {
+			return;
+		}
+
+		final List<User> found = this.userDirectoryService.getUsers(new ArrayList<>(wanted));
+		for (final User user : found) {
+			this.users.put(user.getId(), Optional.of(user));
+			wanted.remove(user.getId());
+		}
+		wanted.forEach(userUuid -> this.users.putIfAbsent(userUuid, Optional.empty()));
+
+		log.debug("Prefetched {} users, {} could not be found", found.size(), wanted.size());
+	}
+
+	/**
+	 * Get a user
+	 *
+	 * @param userUuid the id of the user
+	 * @return the user or null if they could not be found
+	 */
+	public User getUser(final String userUuid) {
+		if (userUuid == null) {
+			return null;
+		}
+
+		final Optional<User> cached = this.users.get(userUuid);
+		if (cached != null) {
+			this.hits.incrementAndGet();
+			return cached.orElse(null);
+		}
+
+		return this.users.computeIfAbsent(userUuid, k -> {
+			this.misses.incrementAndGet();
+			try {
+				return Optional.of(this.userDirectoryService.getUser(k));
+			} catch (final UserNotDefinedException e) {
+				log.debug("User {} could not be found", k);
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
+	/**
+	 * Get the number of lookups that were answered from the cache
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that had to go to the directory
+	 *
+	 * @return
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.sakaiproject.archiver.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Counts the files and bytes written for an archive. Providers run concurrently so this is safe to update from multiple threads.
+ */
+public class WriteStats {
+
+	private final AtomicInteger files = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * Record a file that has been written
+	 *
+	 * @param size the number of bytes in the file
+	 */
+	public void record(final long size) {
+		this.files.incrementAndGet();
+		this.bytes.addAndGet(size);
+	}
+
+	/**
+	 * Get the number of files written
+	 *
+	 * @return
+	 */
+	public int getFiles() {
+		return this.files.get();
+	}
+
+	/**
+	 * Get the total number of bytes written
+	 *
+	 * @return
+	 */
+	public long getBytes() {
+		return this.bytes.get();
+	}
+
+	@Override
+	public String toString() {
+		return getFiles() + " files, " + FileUtils.byteCountToDisplaySize(getBytes());
+	}
+
+}
@@ -0,0 +1,256 @@
+package org.sakaiproject.archiver.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.sakaiproject.archiver.exception.FileSizeExceededException;
+import org.sakaiproject.archiver.util.Zipper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the content of an archive straight into its zip file, rather than staging it on disk and zipping it at the end.
+ *
+ * Providers for an archive run concurrently so all writes are serialised through this writer. The paths of everything written are kept
+ * so that the index can be built without reading the zip back. Large archives are written in zip64 format automatically.
+ */
+@Slf4j
+public class ZipArchiveWriter implements Closeable {
+
+	private final File zipFile;
+	private final ZipOutputStream out;
+	private final List<String> entries = new ArrayList<>();
+	private final List<String> discarded = new ArrayList<>();
+	private final byte[] buffer = new byte[16 * 1024];
+	private final int level;
+
+	private boolean closed = false;
+
+	/**
+	 * Create the writer and the zip file
+	 *
+	 * @param zipFile the zip file to create
+	 * @param level the deflate level, 0-9 or -1 for the default
+	 * @throws IOException if the zip file cannot be created
+	 */
+	public ZipArchiveWriter(final File zipFile, final int level) throws IOException {
+		this.zipFile = zipFile;
+		this.out = new ZipOutputStream(new BufferedOutputStream(FileUtils.openOutputStream(zipFile)));
+		this.out.setLevel(level);
+		this.level = level;
+	}
+
+	/**
+	 * Add a file to the zip. Content that is already compressed is stored rather than deflated again.
+	 *
+	 * @param path the path of the file within the zip
+	 * @param content the content of the file
+	 * @throws IOException if the file could not be added, eg if the path already exists in the zip
+	 */
+	public synchronized void write(final String path, final byte[] content) throws IOException {
+		final ZipEntry entry = newEntry(path);
+		if (Zipper.isCompressed(path, Arrays.copyOf(content, Math.min(content.length, 12)))) {
+			final CRC32 crc = new CRC32();
+			crc.update(content);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(content.length);
+			entry.setCompressedSize(content.length);
+			entry.setCrc(crc.getValue());
+		}
+		this.out.putNextEntry(entry);
+		this.out.write(content);
+		closeEntry(entry.getName());
+	}
+
+	/**
+	 * Add a file to the zip by copying the given stream. Content that is already compressed is written without being deflated again. The
+	 * size and crc of a stored entry are needed before its content, so it is written as a deflated entry at level 0 instead.
+	 *
+	 * A file that is declared to be larger than the maximum size is rejected before anything is written. An entry can't be removed from
+	 * the zip once it is started, so if the content turns out to be larger than the maximum size, or can't be read, what has been written
+	 * is left in the zip but the entry is discarded: it is not listed in {@link #getEntries()} and is listed in {@link #getDiscarded()}.
+	 *
+	 * @param path the path of the file within the zip
+	 * @param in the content of the file. The caller is responsible for closing it.
+	 * @param length the declared length of the content, or less than 0 if it is not known
+	 * @param maxSize the maximum number of bytes to write
+	 * @return the number of bytes written
+	 * @throws FileSizeExceededException if the content is larger than the maximum size
+	 * @throws IOException if the file could not be added, eg if the path already exists in the zip or the content could not be read
+	 */
+	public synchronized long write(final String path, final InputStream in, final long length, final long maxSize)
+			throws FileSizeExceededException, IOException {
+		if (length > maxSize) {
+			throw new FileSizeExceededException();
+		}
+		final ZipEntry entry = newEntry(path);
+
+		// sniff the type before the entry is started, a short read just means a small file
+		final int headerLength = read(in, this.buffer, 12);
+		final boolean compressed = Zipper.isCompressed(path, Arrays.copyOf(this.buffer, headerLength));
+		if (compressed) {
+			this.out.setLevel(Deflater.NO_COMPRESSION);
+		}
+
+		this.out.putNextEntry(entry);
+		long written = 0;
+		try {
+			int read = headerLength;
+			while (read > 0) {
+				if (written + read > maxSize) {
+					discard(entry.getName());
+					log.error("File {} is larger than declared and too large to be archived", path);
+					throw new FileSizeExceededException();
+				}
+				this.out.write(this.buffer, 0, read);
+				written += read;
+				read = readContent(in, entry.getName());
+			}
+			closeEntry(entry.getName());
+		} finally {
+			if (compressed) {
+				this.out.setLevel(this.level);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Open a file in the zip to write its content as it is generated, eg the index. The content is always deflated. Nothing else can be
+	 * written to the zip until the stream is closed.
+	 *
+	 * @param path the path of the file within the zip
+	 * @return the stream to write the content to. Closing it finishes the file but not the zip.
+	 * @throws IOException if the file could not be added, eg if the path already exists in the zip
+	 */
+	public synchronized OutputStream openEntry(final String path) throws IOException {
+		final ZipEntry entry = newEntry(path);
+		this.out.putNextEntry(entry);
+		return new FilterOutputStream(this.out) {
+			private boolean entryClosed;
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) throws IOException {
+				this.out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (!this.entryClosed) {
+					this.entryClosed = true;
+					synchronized (ZipArchiveWriter.this) {
+						closeEntry(entry.getName());
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Get the paths of all files written to the zip so far
+	 *
+	 * @return list of paths, in the order they were written
+	 */
+	public synchronized List<String> getEntries() {
+		return Collections.unmodifiableList(new ArrayList<>(this.entries));
+	}
+
+	/**
+	 * Get the paths of files that were started in the zip but could not be finished, so their content in the zip is incomplete
+	 *
+	 * @return list of paths, in the order they were discarded
+	 */
+	public synchronized List<String> getDiscarded() {
+		return Collections.unmodifiableList(new ArrayList<>(this.discarded));
+	}
+
+	/**
+	 * Get the path to the zip file
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public String getZipPath() throws IOException {
+		return this.zipFile.getCanonicalPath();
+	}
+
+	/**
+	 * Get the zip file
+	 *
+	 * @return
+	 */
+	public File getZipFile() {
+		return this.zipFile;
+	}
+
+	/**
+	 * Finish the zip. Safe to call more than once.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!this.closed) {
+			this.closed = true;
+			this.out.close();
+		}
+	}
+
+	private ZipEntry newEntry(final String path) throws IOException {
+		if (this.closed) {
+			throw new IOException("Zip " + this.zipFile + " is already closed");
+		}
+		// zip entries always use forward slashes
+		return new ZipEntry(FilenameUtils.separatorsToUnix(path));
+	}
+
+	private void closeEntry(final String name) throws IOException {
+		this.out.closeEntry();
+		this.entries.add(name);
+	}
+
+	private void discard(final String name) throws IOException {
+		this.out.closeEntry();
+		this.discarded.add(name);
+	}
+
+	/**
+	 * Read the next chunk of the content of an entry, discarding the entry if the content can't be read
+	 */
+	private int readContent(final InputStream in, final String name) throws IOException {
+		try {
+			return in.read(this.buffer);
+		} catch (final IOException e) {
+			discard(name);
+			throw e;
+		}
+	}
+
+	/**
+	 * Read up to the given number of bytes into the start of the buffer
+	 *
+	 * @return the number of bytes read, less than asked for only at the end of the stream
+	 */
+	private static int read(final InputStream in, final byte[] buffer, final int length) throws IOException {
+		int total = 0;
+		int read;
+		while (total < length && (read = in.read(buffer, total, length - total)) != -1) {
+			total += read;
+		}
+		return total;
+	}
+
+}
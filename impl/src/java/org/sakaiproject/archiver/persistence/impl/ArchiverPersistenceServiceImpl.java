@@ -1,5 +1,8 @@
 package org.sakaiproject.archiver.persistence.impl;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -7,9 +10,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.sakaiproject.archiver.api.Status;
 import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.entity.ArchiveProviderEntity;
 import org.sakaiproject.archiver.persistence.ArchiverPersistenceService;
 import org.springframework.orm.hibernate4.support.HibernateDaoSupport;
 
@@ -33,7 +38,7 @@ public class ArchiverPersistenceServiceImpl extends HibernateDaoSupport implemen
 		entity.setSiteId(siteId);
 		entity.setUserUuid(userUuid);
 		entity.setStartDate(new Date());
-		entity.setStatus(Status.STARTED);
+		entity.setStatus(Status.QUEUED);
 
 		final Session session = getSessionFactory().getCurrentSession();
 		session.save(entity);
@@ -59,7 +64,18 @@ public class ArchiverPersistenceServiceImpl extends HibernateDaoSupport implemen
 	public ArchiveEntity getLatest(final String siteId) {
 		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveEntity.class);
 		criteria.add(Restrictions.eq("siteId", siteId));
-		criteria.addOrder(Order.desc("endDate"));
+		// the end date is null until an archive finishes, so order by the start date which is always set and is indexed with the site
+		criteria.addOrder(Order.desc("startDate"));
+		criteria.setMaxResults(1);
+		return (ArchiveEntity) criteria.uniqueResult();
+	}
+
+	@Override
+	public ArchiveEntity getLatest(final String siteId, final Status status) {
+		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveEntity.class);
+		criteria.add(Restrictions.eq("siteId", siteId));
+		criteria.add(Restrictions.eq("status", status));
+		criteria.addOrder(Order.desc("startDate"));
 		criteria.setMaxResults(1);
 		return (ArchiveEntity) criteria.uniqueResult();
 	}
@@ -73,14 +89,114 @@ public class ArchiverPersistenceServiceImpl extends HibernateDaoSupport implemen
 
 	@Override
 	public List<ArchiveEntity> getBySiteId(final String siteId, final int max) {
+		return getBySiteId(siteId, 0, max);
+	}
+
+	@Override
+	public List<ArchiveEntity> getBySiteId(final String siteId, final int first, final int count) {
+		final Criteria criteria = createSiteCriteria(siteId);
+		criteria.addOrder(Order.desc("startDate"));
+		criteria.addOrder(Order.desc("endDate"));
+		// archives can start at the same time so this keeps the order stable from one page to the next
+		criteria.addOrder(Order.asc("id"));
+		criteria.setFirstResult(first);
+		criteria.setMaxResults(count);
+		return criteria.list();
+	}
+
+	@Override
+	public long countBySiteId(final String siteId) {
+		final Criteria criteria = createSiteCriteria(siteId);
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).longValue();
+	}
+
+	@Override
+	public List<String> getSiteIds(final String after, final int count) {
+		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveEntity.class);
+		if (after != null) {
+			criteria.add(Restrictions.gt("siteId", after));
+		}
+		// pages start after the last site rather than at an offset, so that each page is read from the site index
+		criteria.setProjection(Projections.distinct(Projections.property("siteId")));
+		criteria.addOrder(Order.asc("siteId"));
+		criteria.setMaxResults(count);
+		return criteria.list();
+	}
+
+	@Override
+	public List<ArchiveEntity> findByStatus(final Status status) {
+		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveEntity.class);
+		criteria.add(Restrictions.eq("status", status));
+		return criteria.list();
+	}
+
+	@Override
+	public List<ArchiveEntity> findInProgress(final String siteId) {
+		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveEntity.class);
+		criteria.add(Restrictions.eq("siteId", siteId));
+		criteria.add(Restrictions.in("status", Arrays.asList(Status.QUEUED, Status.STARTED)));
+		return criteria.list();
+	}
+
+	@Override
+	public ArchiveProviderEntity saveProviderResult(final ArchiveProviderEntity entity) {
+
+		final Session session = getSessionFactory().getCurrentSession();
+
+		// a provider that runs again when an archive is resumed replaces its earlier result
+		final Criteria criteria = session.createCriteria(ArchiveProviderEntity.class);
+		criteria.add(Restrictions.eq("archiveId", entity.getArchiveId()));
+		criteria.add(Restrictions.eq("provider", entity.getProvider()));
+		criteria.add(Restrictions.eq("toolId", entity.getToolId()));
+		final List<ArchiveProviderEntity> earlier = criteria.list();
+
+		if (earlier.isEmpty()) {
+			session.save(entity);
+		} else {
+			earlier.subList(1, earlier.size()).forEach(session::delete);
+			session.evict(earlier.get(0));
+			entity.setId(earlier.get(0).getId());
+			session.update(entity);
+		}
+		session.flush();
+
+		log.debug("saved: " + entity.getId());
+
+		return entity;
+	}
+
+	@Override
+	public List<ArchiveProviderEntity> getProviderResults(final String archiveId) {
+		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveProviderEntity.class);
+		criteria.add(Restrictions.eq("archiveId", archiveId));
+		criteria.addOrder(Order.asc("startDate"));
+		return criteria.list();
+	}
+
+	@Override
+	public List<ArchiveProviderEntity> getProviderResults(final Collection<String> archiveIds) {
+		if (archiveIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveProviderEntity.class);
+		criteria.add(Restrictions.in("archiveId", archiveIds));
+		criteria.addOrder(Order.asc("startDate"));
+		return criteria.list();
+	}
+
+	/**
+	 * Create criteria for the archives of a site, or of all sites if the siteId is blank
+	 *
+	 * @param siteId
+	 * @return
+	 */
+	private Criteria createSiteCriteria(final String siteId) {
 		final Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveEntity.class);
 		if (StringUtils.isNotBlank(siteId)) {
 			criteria.add(Restrictions.eq("siteId", siteId));
 		}
-		criteria.addOrder(Order.desc("startDate"));
-		criteria.addOrder(Order.desc("endDate"));
-		criteria.setMaxResults(max);
-		return criteria.list();
+		return criteria;
 	}
 
 }
@@ -0,0 +1,61 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SitePage;
+import org.sakaiproject.site.api.ToolConfiguration;
+
+public class ArchiveContextTest {
+
+	private Site site;
+
+	private ResourceProperties properties;
+
+	@Before
+	public void setup() {
+		final ToolConfiguration toolConfig = mock(ToolConfiguration.class);
+		when(toolConfig.getToolId()).thenReturn("sakai.forums");
+
+		final SitePage page = mock(SitePage.class);
+		when(page.getTitle()).thenReturn("Discussions");
+		when(page.getTools()).thenReturn(Arrays.asList(toolConfig));
+
+		this.properties = mock(ResourceProperties.class);
+
+		this.site = mock(Site.class);
+		when(this.site.getTitle()).thenReturn("MATH1013");
+		when(this.site.getProperties()).thenReturn(this.properties);
+		when(this.site.getPages()).thenReturn(Collections.singletonList(page));
+	}
+
+	@Test
+	public final void should_lookupSiteOnce_when_headerRequestedRepeatedly() {
+		when(this.properties.get(Site.PROP_SITE_TERM)).thenReturn("Semester 2");
+		final ArchiveContextImpl context = new ArchiveContextImpl("archive", "site", siteId -> this.site, toolId -> null, null);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals("MATH1013 (Semester 2): Discussions", context.getSiteHeader("sakai.forums"));
+		}
+
+		assertEquals("Site should only be looked up once", 1, context.getSiteLookups());
+	}
+
+	@Test
+	public final void should_useToolTitle_when_toolNotOnPage() {
+		final ArchiveContextImpl context = new ArchiveContextImpl("archive", "site", siteId -> this.site,
+				toolId -> "sakai.chat".equals(toolId) ? "Chat Room" : null, null);
+
+		assertEquals("MATH1013: Chat Room", context.getSiteHeader("sakai.chat"));
+		assertEquals("sakai.unknown", context.getToolName("sakai.unknown"));
+	}
+
+}
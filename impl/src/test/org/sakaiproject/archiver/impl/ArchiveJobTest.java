@@ -0,0 +1,75 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArchiveJobTest {
+
+	private ArchiveJob job;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setup() {
+		this.job = new ArchiveJob("archive", "site", "user", false, Arrays.asList("sakai.resources"));
+		this.executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void teardown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public final void should_interruptProvider_when_cancelled() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final Future<?> future = this.executor.submit(() -> {
+			if (!this.job.providerStarted()) {
+				return;
+			}
+			try {
+				started.countDown();
+				Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				this.job.providerFinished();
+			}
+		});
+		this.job.addProvider(future);
+		assertTrue("Provider should have started", started.await(5, TimeUnit.SECONDS));
+
+		assertTrue("Running archive should be cancelled", this.job.cancel());
+
+		assertTrue("Provider should have stopped", this.job.awaitProviders(TimeUnit.SECONDS.toMillis(5)));
+		assertTrue("Provider should be cancelled", future.isCancelled());
+		assertFalse("Cancelled archive should not be finalised", this.job.startFinalising());
+	}
+
+	@Test
+	public final void should_notStartProvider_when_alreadyCancelled() {
+		this.job.cancel();
+
+		assertFalse("Provider should not start", this.job.providerStarted());
+	}
+
+	@Test
+	public final void should_refuseCancel_when_finalising() {
+		assertTrue("Archive should be finalising", this.job.startFinalising());
+
+		assertFalse("Archive should not be cancelled", this.job.cancel());
+		assertFalse("Archive should not be marked cancelled", this.job.isCancelled());
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.archiver.exception.ArchiveQueueFullException;
+
+public class ArchiveSchedulerTest {
+
+	private ArchiveScheduler scheduler;
+
+	private CountDownLatch started;
+
+	private CountDownLatch release;
+
+	@Before
+	public void setup() {
+		this.scheduler = new ArchiveScheduler(1, 1, Executors.defaultThreadFactory());
+		this.started = new CountDownLatch(1);
+		this.release = new CountDownLatch(1);
+	}
+
+	@After
+	public void teardown() {
+		this.release.countDown();
+		this.scheduler.shutdown();
+	}
+
+	@Test
+	public final void should_queueArchive_when_allSlotsBusy() throws Exception {
+		this.scheduler.submit("running", blockingTask());
+		assertTrue("First archive should have started", this.started.await(5, TimeUnit.SECONDS));
+
+		this.scheduler.submit("queued", blockingTask());
+
+		assertEquals("One archive should be running", 1, this.scheduler.getRunningCount());
+		assertEquals("One archive should be queued", 1, this.scheduler.getQueuedCount());
+		assertFalse("Queue should be full", this.scheduler.hasCapacity());
+	}
+
+	@Test(expected = ArchiveQueueFullException.class)
+	public final void should_rejectArchive_when_queueFull() throws Exception {
+		this.scheduler.submit("running", blockingTask());
+		assertTrue("First archive should have started", this.started.await(5, TimeUnit.SECONDS));
+
+		this.scheduler.submit("queued", blockingTask());
+		this.scheduler.submit("rejected", blockingTask());
+	}
+
+	private Runnable blockingTask() {
+		return () -> {
+			this.started.countDown();
+			try {
+				this.release.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.archiver.api.Status;
+import org.sakaiproject.archiver.dto.Archive;
+
+public class ArchiveStatusCacheTest {
+
+	private final AtomicLong now = new AtomicLong(1000);
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private Archive latest;
+
+	private ArchiveStatusCache cache;
+
+	private final Function<String, Archive> loader = siteId -> {
+		this.loads.incrementAndGet();
+		return this.latest;
+	};
+
+	@Before
+	public void setup() {
+		this.cache = new ArchiveStatusCache(() -> 10000, this.now::get);
+		this.latest = newArchive("archive1", Status.STARTED);
+	}
+
+	@Test
+	public final void should_loadOnce_when_polledWithinTtl() {
+		for (int i = 0; i < 100; i++) {
+			assertSame(this.latest, this.cache.getLatest("site", this.loader));
+			this.now.addAndGet(50);
+		}
+
+		assertEquals("Archive should only be loaded once", 1, this.loads.get());
+		assertEquals(99, this.cache.getHits());
+
+		this.now.addAndGet(10000);
+		this.cache.getLatest("site", this.loader);
+		assertEquals("Archive should be loaded again once expired", 2, this.loads.get());
+	}
+
+	@Test
+	public final void should_seeChange_when_archiveUpdated() {
+		this.cache.getLatest("site", this.loader);
+
+		final Archive complete = newArchive("archive1", Status.COMPLETE);
+		this.cache.update(complete);
+
+		assertSame(complete, this.cache.getLatest("site", this.loader));
+		assertEquals("Update should not need a load", 1, this.loads.get());
+	}
+
+	@Test
+	public final void should_reload_when_otherArchiveUpdated() {
+		this.latest = null;
+		assertNull(this.cache.getLatest("site", this.loader));
+
+		final Archive created = newArchive("archive2", Status.QUEUED);
+		this.cache.put(created);
+		assertSame(created, this.cache.getLatest("site", this.loader));
+
+		this.cache.update(newArchive("archive1", Status.CANCELLED));
+		this.latest = created;
+		this.cache.getLatest("site", this.loader);
+		assertEquals("Site should be loaded again when it is not known which archive is latest", 2, this.loads.get());
+	}
+
+	@Test
+	public final void should_keepUpdate_when_updatedWhilstLoading() {
+		this.cache.put(newArchive("archive1", Status.QUEUED));
+		this.now.addAndGet(10000);
+
+		final Archive complete = newArchive("archive1", Status.COMPLETE);
+		final Archive loaded = this.cache.getLatest("site", siteId -> {
+			// finishes on another thread after the database has been read
+			this.cache.update(complete);
+			return this.latest;
+		});
+
+		assertSame("Lookup should return what it loaded", this.latest, loaded);
+		assertSame("Load should not replace the newer status", complete, this.cache.getLatest("site", this.loader));
+		assertEquals(0, this.loads.get());
+	}
+
+	@Test
+	public final void should_removeExpired_when_tooManySites() {
+		for (int i = 0; i < ArchiveStatusCache.MAX_SITES; i++) {
+			this.cache.getLatest("site" + i, this.loader);
+		}
+		assertEquals(ArchiveStatusCache.MAX_SITES, this.cache.size());
+
+		this.now.addAndGet(10000);
+		this.cache.getLatest("another", this.loader);
+		assertEquals("Expired sites should be removed", 1, this.cache.size());
+	}
+
+	private static Archive newArchive(final String archiveId, final Status status) {
+		final Archive archive = new Archive();
+		archive.setArchiveId(archiveId);
+		archive.setSiteId("site");
+		archive.setStatus(status);
+		return archive;
+	}
+
+}
@@ -1,14 +1,30 @@
 package org.sakaiproject.archiver.impl;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -16,7 +32,9 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.sakaiproject.archiver.api.Status;
 import org.sakaiproject.archiver.dto.Archive;
 import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.exception.ArchiveInitialisationException;
 import org.sakaiproject.archiver.persistence.ArchiverPersistenceService;
+import org.sakaiproject.component.api.ServerConfigurationService;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ArchiverServiceImplTest {
@@ -24,6 +42,12 @@ public class ArchiverServiceImplTest {
 	@Mock
 	private ArchiverPersistenceService dao;
 
+	@Mock
+	private ServerConfigurationService serverConfigurationService;
+
+	@Rule
+	public TemporaryFolder archiveBase = new TemporaryFolder();
+
 	@InjectMocks
 	private ArchiverServiceImpl impl;
 
@@ -53,4 +77,131 @@ public class ArchiverServiceImplTest {
 		assertNull("Archive should be in progress", archive);
 	}
 
+	@Test
+	public final void should_returnPage_when_archivesPagedForSite() {
+		final String siteId = UUID.randomUUID().toString();
+		final ArchiveEntity entity = TestHelper.mockArchiveEntity(UUID.randomUUID().toString(), siteId, UUID.randomUUID().toString(),
+				new Date(), new Date(), Status.COMPLETE, null);
+		when(this.dao.getBySiteId(siteId, 20, 10)).thenReturn(Collections.singletonList(entity));
+		when(this.dao.countBySiteId(siteId)).thenReturn(21L);
+
+		final List<Archive> archives = this.impl.getArchives(siteId, 20, 10);
+		assertEquals("Page should have the last archive", 1, archives.size());
+		assertEquals(entity.getId(), archives.get(0).getArchiveId());
+		assertEquals(21L, this.impl.countArchives(siteId));
+	}
+
+	@Test(expected = ArchiveInitialisationException.class)
+	public final void should_notStartIncrementalArchive_when_baseArchiveIncomplete() throws Exception {
+		final String archiveId = UUID.randomUUID().toString();
+		final String siteId = UUID.randomUUID().toString();
+		final String userUuid = UUID.randomUUID().toString();
+
+		final ArchiveEntity base = TestHelper.mockArchiveEntity(archiveId, siteId, userUuid, new Date(), new Date(), Status.INCOMPLETE,
+				null);
+		when(this.dao.getByArchiveId(archiveId)).thenReturn(base);
+
+		this.impl.startIncrementalArchive(siteId, userUuid, false, archiveId, "sakai.resources");
+	}
+
+	@Test
+	public final void should_writeFileOnce_when_contentArchived() throws IOException {
+		final String archiveId = UUID.randomUUID().toString();
+		final String siteId = UUID.randomUUID().toString();
+		final byte[] content = "archived content".getBytes(StandardCharsets.UTF_8);
+		mockArchiveBase(50);
+
+		this.impl.archiveContent(archiveId, siteId, "tool", content, "file.txt");
+
+		final File file = getArchivedFile(siteId, archiveId, "tool", "file.txt");
+		assertArrayEquals("Archived file should match the content", content, FileUtils.readFileToByteArray(file));
+		assertEquals("No temporary files should remain", 1, file.getParentFile().list().length);
+
+		final WriteStats stats = this.impl.getWriteStats(archiveId);
+		assertEquals("One file should have been written", 1, stats.getFiles());
+		assertEquals("Bytes should only be counted once", content.length, stats.getBytes());
+	}
+
+	@Test
+	public final void should_writeFile_when_contentStreamed() throws IOException {
+		final String archiveId = UUID.randomUUID().toString();
+		final String siteId = UUID.randomUUID().toString();
+		final byte[] content = "streamed content".getBytes(StandardCharsets.UTF_8);
+		mockArchiveBase(50);
+
+		this.impl.archiveContent(archiveId, siteId, "tool", new ByteArrayInputStream(content), content.length, "file.txt");
+
+		final File file = getArchivedFile(siteId, archiveId, "tool", "file.txt");
+		assertArrayEquals("Archived file should match the content", content, FileUtils.readFileToByteArray(file));
+		assertEquals("No temporary files should remain", 1, file.getParentFile().list().length);
+		assertEquals("Bytes should only be counted once", content.length, this.impl.getWriteStats(archiveId).getBytes());
+	}
+
+	@Test
+	public final void should_notLeaveFile_when_streamLargerThanLimit() throws IOException {
+		final String archiveId = UUID.randomUUID().toString();
+		final String siteId = UUID.randomUUID().toString();
+		final byte[] content = "streamed content".getBytes(StandardCharsets.UTF_8);
+		mockArchiveBase(0);
+
+		this.impl.archiveContent(archiveId, siteId, "tool", new ByteArrayInputStream(content), -1, "file.txt");
+
+		final File file = getArchivedFile(siteId, archiveId, "tool", "file.txt");
+		assertFalse("File should not have been archived", file.exists());
+		assertEquals("No temporary files should remain", 0, file.getParentFile().list().length);
+		assertNull("Nothing should have been counted", this.impl.getWriteStats(archiveId));
+	}
+
+	@Test
+	public final void should_writeFileOnce_when_contentStreamOpened() throws IOException {
+		final String archiveId = UUID.randomUUID().toString();
+		final String siteId = UUID.randomUUID().toString();
+		final byte[] content = "generated content".getBytes(StandardCharsets.UTF_8);
+		mockArchiveBase(50);
+
+		try (OutputStream out = this.impl.openContentStream(archiveId, siteId, "tool", "page.html")) {
+			out.write(content);
+		}
+
+		final File file = getArchivedFile(siteId, archiveId, "tool", "page.html");
+		assertArrayEquals("Archived file should match the content", content, FileUtils.readFileToByteArray(file));
+		assertEquals("No temporary files should remain", 1, file.getParentFile().list().length);
+
+		final WriteStats stats = this.impl.getWriteStats(archiveId);
+		assertEquals("One file should have been written", 1, stats.getFiles());
+		assertEquals("Bytes should only be counted once", content.length, stats.getBytes());
+	}
+
+	@Test
+	public final void should_failWrite_when_contentStreamLargerThanLimit() throws IOException {
+		final String archiveId = UUID.randomUUID().toString();
+		final String siteId = UUID.randomUUID().toString();
+		final byte[] content = "generated content".getBytes(StandardCharsets.UTF_8);
+		mockArchiveBase(0);
+
+		boolean failed = false;
+		try (OutputStream out = this.impl.openContentStream(archiveId, siteId, "tool", "page.html")) {
+			out.write(content);
+			out.flush();
+		} catch (final IOException e) {
+			failed = true;
+		}
+
+		final File file = getArchivedFile(siteId, archiveId, "tool", "page.html");
+		assertTrue("Writing should fail once the content is too large", failed);
+		assertFalse("File should not have been archived", file.exists());
+		assertEquals("No temporary files should remain", 0, file.getParentFile().list().length);
+		assertNull("Nothing should have been counted", this.impl.getWriteStats(archiveId));
+	}
+
+	private void mockArchiveBase(final int maxFileSize) {
+		when(this.serverConfigurationService.getString(eq("archiver.path"), anyString()))
+				.thenReturn(this.archiveBase.getRoot().getAbsolutePath());
+		when(this.serverConfigurationService.getInt(eq("archiver.max.filesize"), anyInt())).thenReturn(maxFileSize);
+	}
+
+	private File getArchivedFile(final String siteId, final String archiveId, final String toolId, final String filename) {
+		return FileUtils.getFile(this.archiveBase.getRoot(), siteId, archiveId, toolId, filename);
+	}
+
 }
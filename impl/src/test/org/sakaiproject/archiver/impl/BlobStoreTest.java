@@ -0,0 +1,103 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.archiver.exception.FileSizeExceededException;
+
+public class BlobStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BlobStore store;
+
+	private Path root;
+
+	private final byte[] buffer = new byte[1024];
+
+	@Before
+	public void setup() throws IOException {
+		this.root = this.folder.getRoot().toPath();
+		this.store = new BlobStore(this.root.resolve("blobs"));
+	}
+
+	@Test
+	public final void should_linkExistingBlob_when_sameContentWrittenTwice() throws Exception {
+		final byte[] content = "the same content".getBytes(StandardCharsets.UTF_8);
+		final Path first = this.root.resolve("archive1/resources/file.txt");
+		final Path second = this.root.resolve("archive2/resources/file.txt");
+
+		write(content, first);
+		write(content, second);
+
+		assertArrayEquals("Content should be intact", content, Files.readAllBytes(second));
+		assertEquals("Second write should have found the blob", 1, this.store.getHits());
+		assumeTrue("Hard links are not supported", this.store.getReferenceCount(first) >= 0);
+		assertTrue("Files should share the blob", Files.isSameFile(first, second));
+		assertEquals("Blob should have two references", 2, this.store.getReferenceCount(first));
+	}
+
+	@Test
+	public final void should_linkWithoutWriting_when_hashKnownAndBlobExists() throws Exception {
+		final byte[] content = "the same content".getBytes(StandardCharsets.UTF_8);
+		final Path first = this.root.resolve("archive1/resources/file.txt");
+		final Path second = this.root.resolve("archive2/resources/file.txt");
+		final String hash = HashingInputStream.hash(content);
+
+		assertFalse("Unknown content should need writing", this.store.linkExisting(hash, first));
+		assertFalse("Nothing should have been linked", Files.exists(first));
+		write(content, first);
+		assumeTrue("Hard links are not supported", this.store.getReferenceCount(first) >= 0);
+
+		assertTrue("Known content should be linked", this.store.linkExisting(hash, second));
+		assertArrayEquals("Content should be intact", content, Files.readAllBytes(second));
+		assertEquals(1, this.store.getHits());
+		assertEquals("Blob should have two references", 2, this.store.getReferenceCount(first));
+	}
+
+	@Test
+	public final void should_reclaimBlob_when_noLongerReferenced() throws Exception {
+		final Path kept = this.root.resolve("archive1/kept.txt");
+		final Path removed = this.root.resolve("archive1/removed.txt");
+		write("kept".getBytes(StandardCharsets.UTF_8), kept);
+		write("removed".getBytes(StandardCharsets.UTF_8), removed);
+		assumeTrue("Hard links are not supported", this.store.getReferenceCount(kept) >= 0);
+
+		assertEquals("Referenced blobs should be kept", 0, this.store.reclaim());
+
+		Files.delete(removed);
+		assertEquals("Unreferenced blob should be removed", 1, this.store.reclaim());
+		assertTrue("Remaining file should be intact", Files.exists(kept));
+	}
+
+	@Test
+	public final void should_notLeaveFile_when_contentTooLarge() throws Exception {
+		final Path target = this.root.resolve("archive1/large.bin");
+		try {
+			this.store.write(new ByteArrayInputStream(new byte[2048]), target, 1024, this.buffer);
+		} catch (final FileSizeExceededException e) {
+			assertFalse("File should not exist", Files.exists(target));
+			return;
+		}
+		throw new AssertionError("Write should have failed");
+	}
+
+	private void write(final byte[] content, final Path target) throws Exception {
+		this.store.write(new ByteArrayInputStream(content), target, Long.MAX_VALUE, this.buffer);
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+
+public class CheckpointJournalTest {
+
+	private static final String SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public final void should_restoreProgress_when_journalReopened() throws IOException {
+		final File file = new File(this.folder.getRoot(), "archive" + CheckpointJournal.EXTENSION);
+
+		final ArchivePathPlanner planner = new ArchivePathPlanner();
+		final CheckpointJournal journal = CheckpointJournal.open(file);
+		assertFalse("New journal should not be resumed", journal.isResumed());
+		journal.restore(planner, new Manifest("archive"));
+
+		final String[] first = planner.plan("Resources", "Week 1?");
+		final String[] second = planner.plan("Resources", "Week 1!");
+		journal.fileWritten(new ManifestEntry("Resources/Week 1_", "sakai.resources", 5, SHA256, "text/plain", "/content/a"));
+		journal.itemCompleted("sakai.resources", "/content/a");
+		journal.providerCompleted("ChatArchiver", "sakai.chat");
+		journal.close();
+
+		final ArchivePathPlanner resumedPlanner = new ArchivePathPlanner();
+		final Manifest manifest = new Manifest("archive");
+		final CheckpointJournal resumed = CheckpointJournal.open(file);
+		assertTrue("Journal should be resumed", resumed.isResumed());
+		resumed.restore(resumedPlanner, manifest);
+
+		assertTrue(resumed.isItemCompleted("sakai.resources", "/content/a"));
+		assertFalse(resumed.isItemCompleted("sakai.resources", "/content/b"));
+		assertTrue(resumed.isProviderCompleted("ChatArchiver", "sakai.chat"));
+		assertFalse(resumed.isProviderCompleted("ChatArchiver", "sakai.resources"));
+		assertEquals(Arrays.asList("Resources/Week 1_"), manifest.getPaths());
+
+		// planned in a different order, but the names already planned keep their paths
+		assertArrayEquals(second, resumedPlanner.plan("Resources", "Week 1!"));
+		assertArrayEquals(first, resumedPlanner.plan("Resources", "Week 1?"));
+		resumed.delete();
+		assertFalse("Journal should be removed", file.exists());
+	}
+
+	@Test
+	public final void should_ignorePartialRecord_when_journalInterruptedMidWrite() throws IOException {
+		final File file = new File(this.folder.getRoot(), "archive" + CheckpointJournal.EXTENSION);
+
+		final CheckpointJournal journal = CheckpointJournal.open(file);
+		journal.itemCompleted("sakai.assignment.grades", "a1");
+		journal.close();
+		Files.write(file.toPath(), "{\"tool\":\"sakai.assignment.grades\",\"item\":\"a".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		final CheckpointJournal resumed = CheckpointJournal.open(file);
+		resumed.itemCompleted("sakai.assignment.grades", "a3");
+		resumed.close();
+
+		final CheckpointJournal again = CheckpointJournal.open(file);
+		assertTrue(again.isItemCompleted("sakai.assignment.grades", "a1"));
+		assertTrue("Record after the partial one should be read", again.isItemCompleted("sakai.assignment.grades", "a3"));
+		assertFalse(again.isItemCompleted("sakai.assignment.grades", "a"));
+		again.close();
+	}
+
+}
@@ -0,0 +1,63 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class IndexBuilderTest {
+
+	private static final List<String> PATHS = Arrays.asList("Chat/Room/Room 1.html", "Chat/Room/Room 2.html", "Syllabus/Week 1.html",
+			"manifest.json");
+
+	@Test
+	public final void should_writeEveryFile_when_singlePage() throws IOException {
+		final Map<String, ByteArrayOutputStream> files = new TreeMap<>();
+		new IndexBuilder("/archives/site/archive", "MATH1013", PATHS).write(path -> newFile(files, path));
+
+		assertEquals("Only the index page should be written", Arrays.asList("index.html"), new ArrayList<>(files.keySet()));
+		final String html = read(files, "index.html");
+		for (final String path : PATHS) {
+			assertTrue("Index should link to " + path, html.contains("<a href=\"" + path + "\">"));
+		}
+	}
+
+	@Test
+	public final void should_writeScriptPerDirectory_when_lazy() throws IOException {
+		final Map<String, ByteArrayOutputStream> files = new TreeMap<>();
+		new IndexBuilder("/archives/site/archive", "MATH1013", PATHS).writeLazy(path -> newFile(files, path));
+
+		// root, Chat, Syllabus then Room, numbered breadth first
+		assertEquals(Arrays.asList("index-files/0.js", "index-files/1.js", "index-files/2.js", "index-files/3.js", "index.html"),
+				new ArrayList<>(files.keySet()));
+
+		assertFalse("Files should not be in the page", read(files, "index.html").contains("Room 1.html"));
+		assertEquals("archiveIndex(0, [{\"text\":\"Chat\",\"id\":\"d1\",\"icon\":\"glyphicon glyphicon-folder-open\",\"children\":true},"
+				+ "{\"text\":\"Syllabus\",\"id\":\"d2\",\"icon\":\"glyphicon glyphicon-folder-open\",\"children\":true},"
+				+ "{\"text\":\"manifest.json\",\"icon\":\"glyphicon glyphicon-file\",\"a_attr\":{\"href\":\"manifest.json\"}}]);",
+				read(files, "index-files/0.js"));
+		assertTrue(read(files, "index-files/1.js").contains("\"id\":\"d3\""));
+		assertTrue(read(files, "index-files/3.js").contains("{\"href\":\"Chat/Room/Room 2.html\"}"));
+	}
+
+	private static ByteArrayOutputStream newFile(final Map<String, ByteArrayOutputStream> files, final String path) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		files.put(path, out);
+		return out;
+	}
+
+	private static String read(final Map<String, ByteArrayOutputStream> files, final String path) throws UnsupportedEncodingException {
+		return files.get(path).toString("UTF-8");
+	}
+
+}
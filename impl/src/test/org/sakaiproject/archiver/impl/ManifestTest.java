@@ -0,0 +1,69 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ManifestTest {
+
+	private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+	@Test
+	public final void should_hashContent_when_streamIsRead() throws IOException {
+		final byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+		final HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(content));
+
+		IOUtils.toByteArray(in);
+
+		assertEquals("Stream hash should match", HELLO_SHA256, in.getHash());
+		assertEquals("Byte hash should match", HELLO_SHA256, HashingInputStream.hash(content));
+		assertEquals("All bytes should be counted", content.length, in.getCount());
+	}
+
+	@Test
+	public final void should_readSameEntries_when_writtenAsBinary() throws IOException {
+		final Manifest manifest = new Manifest("archive");
+		manifest.setBaseArchiveId("base");
+		manifest.add(new ManifestEntry("sakai.resources/a.txt", "sakai.resources", 5, HELLO_SHA256, "text/plain", "/content/a.txt"));
+		manifest.add(new ManifestEntry("sakai.chat/chat.html", "sakai.chat", 5, HELLO_SHA256, "text/html", null));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manifest.write(out);
+		final Manifest read;
+		try (InputStream in = new ByteArrayInputStream(out.toByteArray())) {
+			read = Manifest.read(in);
+		}
+
+		assertEquals("archive", read.getArchiveId());
+		assertEquals("base", read.getBaseArchiveId());
+		final List<ManifestEntry> entries = read.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals("sakai.resources/a.txt", entries.get(0).getPath());
+		assertEquals(HELLO_SHA256, entries.get(0).getSha256());
+		assertEquals("/content/a.txt", entries.get(0).getReference());
+		assertEquals(5, entries.get(1).getSize());
+		assertNull("Missing reference should be read as null", entries.get(1).getReference());
+	}
+
+	@Test
+	public final void should_replaceEntry_when_pathWrittenAgain() {
+		final Manifest manifest = new Manifest("archive");
+		manifest.add(new ManifestEntry("sakai.chat/chat.html", "sakai.chat", 5, HELLO_SHA256, "text/html", null));
+		manifest.add(new ManifestEntry("sakai.chat/index.html", "sakai.chat", 1, HELLO_SHA256, "text/html", null));
+		manifest.add(new ManifestEntry("sakai.chat/chat.html", "sakai.chat", 10, HELLO_SHA256, "text/html", null));
+
+		assertEquals(Arrays.asList("sakai.chat/chat.html", "sakai.chat/index.html"), manifest.getPaths());
+		assertEquals(10, manifest.getEntries().get(0).getSize());
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.sakaiproject.archiver.api.Status;
+import org.sakaiproject.archiver.entity.ArchiveEntity;
+
+public class RetentionPolicyTest {
+
+	private static final long NOW = TimeUnit.DAYS.toMillis(1000);
+
+	@Test
+	public final void should_keepNewest_when_tooManyArchives() {
+		final List<ArchiveEntity> archives = Arrays.asList(
+				newArchive("a4", 1, Status.COMPLETE, null),
+				newArchive("a3", 2, Status.FAILED, null),
+				newArchive("a2", 3, Status.COMPLETE, null),
+				newArchive("a1", 4, Status.COMPLETE, null));
+
+		assertEquals(new HashSet<>(Arrays.asList("a4", "a3")), new RetentionPolicy(2, 0).getKept(archives, NOW));
+		assertEquals("Everything should be kept without a policy", 4, new RetentionPolicy(0, 0).getKept(archives, NOW).size());
+	}
+
+	@Test
+	public final void should_keepLatestComplete_when_allArchivesTooOld() {
+		final List<ArchiveEntity> archives = Arrays.asList(
+				newArchive("a3", 40, Status.INCOMPLETE, null),
+				newArchive("a2", 50, Status.COMPLETE, null),
+				newArchive("a1", 60, Status.COMPLETE, null));
+
+		assertEquals(new HashSet<>(Arrays.asList("a2")), new RetentionPolicy(0, 30).getKept(archives, NOW));
+	}
+
+	@Test
+	public final void should_keepChain_when_incrementalArchiveKept() {
+		final List<ArchiveEntity> archives = Arrays.asList(
+				newArchive("i2", 1, Status.COMPLETE, "i1"),
+				newArchive("i1", 10, Status.COMPLETE, "full"),
+				newArchive("other", 20, Status.COMPLETE, null),
+				newArchive("full", 30, Status.COMPLETE, null));
+
+		assertEquals(new HashSet<>(Arrays.asList("i2", "i1", "full")), new RetentionPolicy(1, 0).getKept(archives, NOW));
+	}
+
+	private static ArchiveEntity newArchive(final String archiveId, final int daysAgo, final Status status, final String baseArchiveId) {
+		final Date startDate = new Date(NOW - TimeUnit.DAYS.toMillis(daysAgo));
+		final ArchiveEntity entity = TestHelper.mockArchiveEntity(archiveId, "site", "user", startDate, null, status, null);
+		entity.setBaseArchiveId(baseArchiveId);
+		return entity;
+	}
+}
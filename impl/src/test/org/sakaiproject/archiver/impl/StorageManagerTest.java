@@ -0,0 +1,101 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StorageManagerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StorageManager storage;
+
+	@After
+	public final void shutdown() {
+		if (this.storage != null) {
+			this.storage.shutdown();
+		}
+	}
+
+	@Test
+	public final void should_countLinkedFileOnce_when_measured() throws IOException {
+		final Path root = this.folder.getRoot().toPath();
+		final Path blob = write(root.resolve("blobs/ab/abcd"), 100);
+		write(root.resolve("site1/archive1/Resources/a.txt"), 10);
+		Files.createDirectories(root.resolve("site1/archive2/Resources"));
+		Files.createLink(root.resolve("site1/archive2/Resources/b.txt"), blob);
+
+		this.storage = new StorageManager(root, () -> 0, 2, Integer.MAX_VALUE);
+
+		assertEquals(110, this.storage.measure());
+		assertEquals(110, this.storage.getUsed());
+	}
+
+	@Test
+	public final void should_onlyFreeUnlinkedFiles_when_deleted() throws IOException {
+		final Path root = this.folder.getRoot().toPath();
+		final Path blob = write(root.resolve("blobs/ab/abcd"), 100);
+		final Path archive = root.resolve("site1/archive1");
+		write(archive.resolve("Resources/a.txt"), 10);
+		Files.createLink(archive.resolve("Resources/b.txt"), blob);
+
+		this.storage = new StorageManager(root, () -> 0, 2, Integer.MAX_VALUE);
+		this.storage.measure();
+
+		assertEquals("Linked file should not free any space", 10, this.storage.delete(archive));
+		assertFalse("Archive directory should be removed", Files.exists(archive));
+		assertTrue("Blob should be kept", Files.exists(blob));
+		assertEquals(100, this.storage.getUsed());
+	}
+
+	@Test
+	public final void should_haveNoSpace_when_quotaReached() throws IOException {
+		final Path root = this.folder.getRoot().toPath();
+		final Path zip = write(root.resolve("site1/archive1.zip"), 100);
+		final long[] quota = { 0 };
+
+		this.storage = new StorageManager(root, () -> quota[0], 1, Integer.MAX_VALUE);
+		this.storage.measure();
+		assertTrue("No quota should always have space", this.storage.hasSpace());
+
+		quota[0] = 150;
+		assertTrue(this.storage.hasSpace());
+
+		this.storage.add(50);
+		assertFalse("Quota should be reached", this.storage.hasSpace());
+
+		this.storage.delete(zip);
+		assertTrue("Space should be freed", this.storage.hasSpace());
+	}
+
+	@Test
+	public final void should_onlyDeleteOldFiles_when_deletingOlderThan() throws IOException {
+		final Path tmp = this.folder.getRoot().toPath().resolve(".tmp");
+		final Path old = write(tmp.resolve(".archiver-1.tmp"), 10);
+		final Path recent = write(tmp.resolve(".archiver-2.tmp"), 10);
+		Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+
+		this.storage = new StorageManager(this.folder.getRoot().toPath(), () -> 0, 1, Integer.MAX_VALUE);
+
+		assertEquals(1, this.storage.deleteOlderThan(tmp, TimeUnit.DAYS.toMillis(1)));
+		assertFalse(Files.exists(old));
+		assertTrue(Files.exists(recent));
+	}
+
+	private static Path write(final Path file, final int size) throws IOException {
+		Files.createDirectories(file.getParent());
+		return Files.write(file, new byte[size]);
+	}
+}
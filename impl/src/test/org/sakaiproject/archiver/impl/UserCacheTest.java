@@ -0,0 +1,68 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.user.api.UserNotDefinedException;
+
+public class UserCacheTest {
+
+	private UserDirectoryService userDirectoryService;
+
+	private User user;
+
+	private UserCache cache;
+
+	@Before
+	public void setup() {
+		this.userDirectoryService = mock(UserDirectoryService.class);
+		this.user = mock(User.class);
+		when(this.user.getId()).thenReturn("member");
+		this.cache = new UserCache(this.userDirectoryService);
+	}
+
+	@Test
+	public final void should_notLookupUser_when_prefetched() throws UserNotDefinedException {
+		when(this.userDirectoryService.getUsers(anyListOf(String.class))).thenReturn(Collections.singletonList(this.user));
+
+		this.cache.prefetch(Arrays.asList("member", "removed"));
+
+		for (int i = 0; i < 100; i++) {
+			assertSame(this.user, this.cache.getUser("member"));
+			assertNull(this.cache.getUser("removed"));
+		}
+
+		verify(this.userDirectoryService, never()).getUser(anyString());
+		assertEquals(200, this.cache.getHits());
+		assertEquals(0, this.cache.getMisses());
+	}
+
+	@Test
+	public final void should_lookupUnknownUserOnce_when_notFound() throws UserNotDefinedException {
+		when(this.userDirectoryService.getUser("unknown")).thenThrow(new UserNotDefinedException("unknown"));
+
+		for (int i = 0; i < 100; i++) {
+			assertNull(this.cache.getUser("unknown"));
+		}
+
+		verify(this.userDirectoryService, times(1)).getUser("unknown");
+		assertEquals(99, this.cache.getHits());
+		assertEquals(1, this.cache.getMisses());
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.sakaiproject.archiver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.archiver.exception.FileSizeExceededException;
+
+public class ZipArchiveWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public final void should_discardEntry_when_streamLargerThanMaxSize() throws IOException, FileSizeExceededException {
+		final File file = new File(this.folder.getRoot(), "archive.zip");
+		try (ZipArchiveWriter writer = new ZipArchiveWriter(file, 1)) {
+			try {
+				writer.write("Resources/big.txt", new ByteArrayInputStream(new byte[100]), 10, 50);
+				fail("Content larger than the maximum size should be rejected");
+			} catch (final FileSizeExceededException e) {
+				// expected
+			}
+			writer.write("Resources/small.txt", new ByteArrayInputStream(new byte[10]), 10, 50);
+
+			assertEquals(Collections.singletonList("Resources/small.txt"), writer.getEntries());
+			assertEquals(Collections.singletonList("Resources/big.txt"), writer.getDiscarded());
+		}
+	}
+
+	@Test
+	public final void should_rejectBeforeWriting_when_declaredLengthLargerThanMaxSize() throws IOException {
+		final File file = new File(this.folder.getRoot(), "archive.zip");
+		try (ZipArchiveWriter writer = new ZipArchiveWriter(file, 1)) {
+			try {
+				writer.write("Resources/big.txt", new ByteArrayInputStream(new byte[100]), 100, 50);
+				fail("Content declared larger than the maximum size should be rejected");
+			} catch (final FileSizeExceededException e) {
+				// expected
+			}
+			assertTrue(writer.getEntries().isEmpty());
+			assertTrue("Nothing should have been started", writer.getDiscarded().isEmpty());
+		}
+		try (ZipFile zip = new ZipFile(file)) {
+			assertEquals(0, zip.size());
+		}
+	}
+
+	@Test
+	public final void should_notDeflateAgain_when_streamedContentCompressed() throws IOException, FileSizeExceededException {
+		final File file = new File(this.folder.getRoot(), "archive.zip");
+		final byte[] content = new byte[64 * 1024];
+		Arrays.fill(content, (byte) 'a');
+		try (ZipArchiveWriter writer = new ZipArchiveWriter(file, 9)) {
+			writer.write("Resources/photo.jpg", new ByteArrayInputStream(content), content.length, content.length);
+			writer.write("Resources/notes.txt", new ByteArrayInputStream(content), content.length, content.length);
+		}
+		try (ZipFile zip = new ZipFile(file)) {
+			final ZipEntry photo = zip.getEntry("Resources/photo.jpg");
+			final ZipEntry notes = zip.getEntry("Resources/notes.txt");
+			assertEquals(content.length, photo.getSize());
+			assertTrue("Compressed content should not be deflated again", photo.getCompressedSize() >= content.length);
+			assertTrue("Other content should still be deflated", notes.getCompressedSize() < content.length / 10);
+		}
+	}
+}
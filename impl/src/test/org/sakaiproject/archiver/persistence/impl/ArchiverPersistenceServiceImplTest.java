@@ -0,0 +1,257 @@
+package org.sakaiproject.archiver.persistence.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.Configuration;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.sakaiproject.archiver.api.Status;
+import org.sakaiproject.archiver.entity.ArchiveEntity;
+import org.sakaiproject.archiver.entity.ArchiveProviderEntity;
+
+/**
+ * Loads a million archives into an embedded database to check that the queries used while archiving are supported by the indexes on
+ * {@link ArchiveEntity}. The tables are created from the entities, so the indexes are the ones that would be created in production, and
+ * the plans checked are those of the SQL that Hibernate generates for each query.
+ *
+ * This takes a while so it is only run when the <code>archiver.dbtest</code> system property is set, eg
+ * <code>mvn test -Darchiver.dbtest=true</code>.
+ */
+public class ArchiverPersistenceServiceImplTest {
+
+	private static final String URL = "jdbc:h2:mem:archiver;DB_CLOSE_DELAY=-1";
+
+	private static final int ROWS = 1_000_000;
+	private static final int SITES = 20_000;
+	private static final int IN_PROGRESS = 200;
+
+	private static SessionFactory sessionFactory;
+	private static Connection connection;
+
+	// the SQL of each statement that Hibernate prepares
+	private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+	private ArchiverPersistenceServiceImpl dao;
+
+	@BeforeClass
+	public static void loadArchives() throws SQLException {
+		Assume.assumeTrue(Boolean.getBoolean("archiver.dbtest"));
+
+		final Configuration configuration = new Configuration()
+				.setInterceptor(new EmptyInterceptor() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public String onPrepareStatement(final String sql) {
+						statements.add(sql);
+						return sql;
+					}
+				})
+				.addAnnotatedClass(ArchiveEntity.class)
+				.addAnnotatedClass(ArchiveProviderEntity.class)
+				.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+				.setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+				.setProperty("hibernate.connection.url", URL)
+				.setProperty("hibernate.hbm2ddl.auto", "create")
+				.setProperty("hibernate.current_session_context_class", "thread");
+		sessionFactory = configuration
+				.buildSessionFactory(new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build());
+
+		connection = DriverManager.getConnection(URL);
+		connection.setAutoCommit(false);
+		try (PreparedStatement insert = connection.prepareStatement(
+				"insert into archiver_archives (id, site_id, user_uuid, status, start_date, end_date) values (?, ?, ?, ?, ?, ?)")) {
+			final long now = System.currentTimeMillis();
+			for (int i = 0; i < ROWS; i++) {
+				// the last archives to be loaded are the ones still in progress
+				final Status status = (i >= ROWS - IN_PROGRESS) ? (i % 2 == 0 ? Status.STARTED : Status.QUEUED)
+						: (i % 10 == 0 ? Status.INCOMPLETE : Status.COMPLETE);
+				final long start = now - TimeUnit.MINUTES.toMillis(ROWS - i);
+
+				insert.setString(1, UUID.randomUUID().toString());
+				insert.setString(2, "site" + (i % SITES));
+				insert.setString(3, "user" + (i % 1000));
+				insert.setString(4, status.name());
+				insert.setTimestamp(5, new Timestamp(start));
+				insert.setTimestamp(6, (status == Status.STARTED || status == Status.QUEUED) ? null : new Timestamp(start + 1000));
+				insert.addBatch();
+				if (i % 10_000 == 0) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+		}
+		connection.commit();
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("analyze");
+		}
+	}
+
+	@AfterClass
+	public static void close() throws SQLException {
+		if (connection != null) {
+			connection.close();
+		}
+		if (sessionFactory != null) {
+			sessionFactory.close();
+		}
+	}
+
+	@Test
+	public final void should_useSiteIndex_when_latestArchiveQueried() throws SQLException {
+		final String plan = explain(dao -> dao.getLatest("site1"), "site1", 1);
+		assertTrue("Plan should use the site index: " + plan, plan.contains("ARCHIVER_SITE_START_DATE_IDX"));
+	}
+
+	@Test
+	public final void should_useSiteIndex_when_inProgressQueried() throws SQLException {
+		final String plan = explain(dao -> dao.findInProgress("site1"), "site1", Status.QUEUED.name(), Status.STARTED.name());
+		assertTrue("Plan should use the site index: " + plan, plan.contains("ARCHIVER_SITE_START_DATE_IDX"));
+	}
+
+	@Test
+	public final void should_useStatusIndex_when_archivesQueriedByStatus() throws SQLException {
+		final String plan = explain(dao -> dao.findByStatus(Status.STARTED), Status.STARTED.name());
+		assertTrue("Plan should use the status index: " + plan, plan.contains("ARCHIVER_STATUS_IDX"));
+	}
+
+	@Test
+	public final void should_findInProgress_when_latestArchiveStarted() {
+		inTransaction(dao -> {
+			final ArchiveEntity latest = dao.getLatest("site" + ((ROWS - 2) % SITES));
+			assertEquals(Status.STARTED, latest.getStatus());
+
+			final List<ArchiveEntity> inProgress = dao.findInProgress(latest.getSiteId());
+			assertEquals(1, inProgress.size());
+			assertEquals(latest.getId(), inProgress.get(0).getId());
+		});
+	}
+
+	@Test
+	public final void should_findByStatus_when_fewArchivesInProgress() {
+		inTransaction(dao -> assertEquals(IN_PROGRESS / 2, dao.findByStatus(Status.STARTED).size()));
+	}
+
+	@Test
+	public final void should_useSiteIndex_when_siteIdsPaged() throws SQLException {
+		final String plan = explain(dao -> dao.getSiteIds("site1", 500), "site1", 500);
+		assertTrue("Plan should use the site index: " + plan, plan.contains("ARCHIVER_SITE_START_DATE_IDX"));
+	}
+
+	@Test
+	public final void should_pageEverySiteOnce_when_siteIdsPaged() {
+		inTransaction(dao -> {
+			final Set<String> siteIds = new HashSet<>();
+			String after = null;
+			List<String> page;
+			do {
+				page = dao.getSiteIds(after, 5000);
+				page.forEach(siteId -> assertTrue("Site should only be paged once: " + siteId, siteIds.add(siteId)));
+				after = page.isEmpty() ? after : page.get(page.size() - 1);
+			} while (!page.isEmpty());
+			assertEquals(SITES, siteIds.size());
+		});
+	}
+
+	@Test
+	public final void should_replaceResult_when_providerRunAgain() {
+		inTransaction(dao -> {
+			dao.saveProviderResult(newResult("archive1", "ChatArchiver", Status.INCOMPLETE));
+			dao.saveProviderResult(newResult("archive1", "ResourcesArchiver", Status.COMPLETE));
+			dao.saveProviderResult(newResult("archive1", "ChatArchiver", Status.COMPLETE));
+
+			final List<ArchiveProviderEntity> results = dao.getProviderResults("archive1");
+			assertEquals(2, results.size());
+			assertTrue(results.stream().allMatch(r -> r.getStatus() == Status.COMPLETE));
+		});
+	}
+
+	@Test
+	public final void should_getResultsOfEachArchive_when_pageOfArchivesQueried() {
+		inTransaction(dao -> {
+			dao.saveProviderResult(newResult("archive2", "ChatArchiver", Status.COMPLETE));
+			dao.saveProviderResult(newResult("archive3", "ChatArchiver", Status.COMPLETE));
+			dao.saveProviderResult(newResult("archive3", "ResourcesArchiver", Status.INCOMPLETE));
+			dao.saveProviderResult(newResult("archive4", "ChatArchiver", Status.COMPLETE));
+
+			final List<ArchiveProviderEntity> results = dao.getProviderResults(Arrays.asList("archive2", "archive3"));
+			assertEquals(3, results.size());
+			assertTrue(results.stream().noneMatch(r -> r.getArchiveId().equals("archive4")));
+			assertTrue("There should be no results without any archives", dao.getProviderResults(Collections.emptyList()).isEmpty());
+		});
+	}
+
+	private static ArchiveProviderEntity newResult(final String archiveId, final String provider, final Status status) {
+		final ArchiveProviderEntity result = new ArchiveProviderEntity();
+		result.setArchiveId(archiveId);
+		result.setProvider(provider);
+		result.setToolId("sakai.tool");
+		result.setStatus(status);
+		result.setStartDate(new Date());
+		return result;
+	}
+
+	private void inTransaction(final Consumer<ArchiverPersistenceServiceImpl> work) {
+		if (this.dao == null) {
+			this.dao = new ArchiverPersistenceServiceImpl();
+			this.dao.setSessionFactory(sessionFactory);
+		}
+		final Transaction transaction = sessionFactory.getCurrentSession().beginTransaction();
+		try {
+			work.accept(this.dao);
+		} finally {
+			transaction.rollback();
+		}
+	}
+
+	/**
+	 * Get the plan of the SQL that Hibernate generates for a query
+	 *
+	 * @param query the query to run
+	 * @param parameters the values of the parameters in the SQL, in order
+	 * @return the plan
+	 * @throws SQLException
+	 */
+	private String explain(final Consumer<ArchiverPersistenceServiceImpl> query, final Object... parameters) throws SQLException {
+		statements.clear();
+		inTransaction(query);
+		assertEquals("Query should be a single statement: " + statements, 1, statements.size());
+
+		try (PreparedStatement statement = connection.prepareStatement("explain " + statements.get(0))) {
+			for (int i = 0; i < parameters.length; i++) {
+				statement.setObject(i + 1, parameters[i]);
+			}
+			try (ResultSet rs = statement.executeQuery()) {
+				rs.next();
+				return rs.getString(1).toUpperCase(Locale.ROOT);
+			}
+		}
+	}
+}
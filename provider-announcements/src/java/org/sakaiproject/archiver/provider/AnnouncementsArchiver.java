@@ -1,24 +1,31 @@
 package org.sakaiproject.archiver.provider;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.announcement.api.AnnouncementMessage;
 import org.sakaiproject.announcement.api.AnnouncementService;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
-import org.sakaiproject.archiver.util.Sanitiser;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.Dateifier;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
 import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.exception.TypeException;
 import org.sakaiproject.message.api.Message;
 import org.sakaiproject.site.api.SiteService;
 
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -48,8 +55,6 @@ public class AnnouncementsArchiver implements Archiveable {
 	@Setter
 	private ContentHostingService contentHostingService;
 
-	private String attachmentsHtml;
-
 	@Override
 	public void archive(final String archiveId, final String siteId, final boolean includeStudentContent) {
 
@@ -64,37 +69,52 @@ public class AnnouncementsArchiver implements Archiveable {
 
 			final List<String> savedFiles = new ArrayList<>();
 
-			// Go through each announcement and save the data we are interested in
-			for (final Message message : announcements) {
-				this.attachmentsHtml = "";
-				final AnnouncementMessage announcement = (AnnouncementMessage) message;
-
-				// archive the attachments for this announcement
-				final List<Reference> attachments = announcement.getAnnouncementHeader().getAttachments();
-				archiveAttachments(attachments, announcement, archiveId, siteId, toolName);
-
-				// convert to html
-				final String htmlBody = getAsHtml(announcement);
-				final String fileContents = Htmlifier.toHtml(htmlBody, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-
-				// Save this announcement
-				log.debug("Announcement data: " + fileContents);
-				this.archiverService.archiveContent(archiveId, siteId, toolName, fileContents.getBytes(),
-						announcement.getAnnouncementHeader().getSubject() + ".html");
-
-				// Keep track of the announcements being saved, for the index
-				savedFiles.add(Sanitiser.sanitise(announcement.getAnnouncementHeader().getSubject() + ".html"));
+			// only set for an incremental archive
+			final Date modifiedSince = this.archiverService.getModifiedSince(archiveId);
+			final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
+
+			// Go through each announcement and save the data we are interested in, also as a JSON record if enabled
+			try (JsonRecordWriter records = this.archiverService.isJsonOutputEnabled()
+					? this.archiverService.openRecordStream(archiveId, siteId, toolName, "announcements")
+					: null) {
+				for (final Message message : announcements) {
+					if (modifiedSince != null && message.getHeader().getDate().getTime() < modifiedSince.getTime()) {
+						continue;
+					}
+					final AnnouncementMessage announcement = (AnnouncementMessage) message;
+
+					// Save this announcement, with its attachments. It is planned by its id as well as its subject, so announcements with
+					// the same subject are archived separately.
+					final String filename = ArchivePathPlanner.item(announcement.getId(),
+							announcement.getAnnouncementHeader().getSubject() + ".html");
+					final String pagePath = context.getArchivePath(toolName, filename);
+					final List<String> attachmentLinks;
+					try (HtmlPageWriter page = new HtmlPageWriter(this.archiverService.openContentStream(archiveId, siteId, toolName,
+							filename), context.getSiteHeader(TOOL_ID))) {
+						attachmentLinks = writeAnnouncement(page, announcement, archiveId, siteId, toolName, context, pagePath);
+					}
+					if (records != null) {
+						records.write(new AnnouncementRecord(announcement, attachmentLinks));
+					}
+
+					// Keep track of the announcements being saved, for the index
+					savedFiles.add(pagePath);
+				}
 			}
 
-			// If there is more than one saved file, we need an index
-			if (savedFiles.size() > 1) {
-				final String indexHtml = getIndexHtml(savedFiles);
-				final String finalIndexHtml = Htmlifier.toHtml(indexHtml, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-				this.archiverService.archiveContent(archiveId, siteId, toolName, finalIndexHtml.getBytes(), "Announcements_List.html");
+			// If there is more than one saved file, we need an index. An incremental archive keeps the index from the base archive.
+			if (savedFiles.size() > 1 && modifiedSince == null) {
+				try (HtmlPageWriter page = new HtmlPageWriter(
+						this.archiverService.openContentStream(archiveId, siteId, toolName, "Announcements_List.html"),
+						context.getSiteHeader(TOOL_ID))) {
+					writeIndex(page, context.getArchivePath(toolName, "Announcements_List.html"), savedFiles);
+				}
 			}
 
 		} catch (final PermissionException e) {
 			log.error("Failed to get announcements", e);
+		} catch (final IOException e) {
+			log.error("Failed to archive announcements", e);
 		}
 	}
 
@@ -103,79 +123,124 @@ public class AnnouncementsArchiver implements Archiveable {
 		return this.archiverService.getToolName(siteId, TOOL_ID);
 	}
 
-	private String getAsHtml(final AnnouncementMessage announcement) {
-		final StringBuilder sb = new StringBuilder();
-
-		sb.append("<h2>" + announcement.getAnnouncementHeader().getSubject() + "</h2>");
-		sb.append("<p>" + announcement.getHeader().getFrom().getDisplayName()
-				+ String.format(" (%s) ", announcement.getHeader().getDate().getDisplay()) + "</p");
-		sb.append("<p>" + announcement.getBody() + "</p>");
-		sb.append("<p><ul style=\"list-style: none;padding-left:0;\">" + this.attachmentsHtml + "</ul></p>");
-
-		return sb.toString();
+	/**
+	 * Write an announcement, archiving its attachments as they are listed
+	 *
+	 * @param page the page to write to
+	 * @param announcement
+	 * @param archiveId
+	 * @param siteId
+	 * @param toolName
+	 * @param context the context of the archive, to plan the paths of the attachments
+	 * @param pagePath the path of the page within the archive, to link from
+	 * @return the links to the attachments that were archived
+	 * @throws PermissionException
+	 * @throws IOException
+	 */
+	private List<String> writeAnnouncement(final HtmlPageWriter page, final AnnouncementMessage announcement, final String archiveId,
+			final String siteId, final String toolName, final ArchiveContext context, final String pagePath)
+			throws PermissionException, IOException {
+
+		page.append("<h2>").appendText(announcement.getAnnouncementHeader().getSubject()).append("</h2>");
+		page.append("<p>").appendText(announcement.getHeader().getFrom().getDisplayName())
+				.appendText(String.format(" (%s) ", announcement.getHeader().getDate().getDisplay())).append("</p>");
+		page.append("<p>").append(announcement.getBody()).append("</p>");
+		page.append("<p><ul style=\"list-style: none;padding-left:0;\">");
+		final List<String> attachmentLinks = archiveAttachments(page, announcement.getAnnouncementHeader().getAttachments(),
+				announcement, archiveId, siteId, toolName, context, pagePath);
+		page.append("</ul></p>");
+		return attachmentLinks;
 	}
 
 	/**
-	 * Construct the announcements index html string
+	 * Write the announcements index
 	 *
-	 * @param savedFiles a list of saved files to be listed as links
-	 * @return indexHtml
+	 * @param page the page to write to
+	 * @param indexPath the path of the index within the archive
+	 * @param savedFiles the paths of the saved files to be listed as links
+	 * @throws IOException
 	 */
-	private String getIndexHtml(final List<String> savedFiles) {
-		final StringBuilder sb = new StringBuilder();
-
-		sb.append("<p><ol>");
+	private void writeIndex(final HtmlPageWriter page, final String indexPath, final List<String> savedFiles) throws IOException {
+		page.append("<p><ol>");
 
-		for (final String fileName : savedFiles) {
-			sb.append("<li><a href=\"./" + fileName + "\">" + fileName + "</a></li>");
+		for (final String path : savedFiles) {
+			page.append("<li><a href=\"").append(ArchivePathPlanner.relativeLink(indexPath, path)).append("\">")
+					.appendText(StringUtils.substringAfterLast(path, "/")).append("</a></li>");
 		}
 
-		sb.append("</ol></p>");
-
-		return sb.toString();
+		page.append("</ol></p>");
 	}
 
 	/**
-	 * Archive the attachments associated with an announcement
+	 * Archive the attachments associated with an announcement, adding a link to each one to the page
 	 *
+	 * @param page the page to write the links to
 	 * @param attachments
-	 * @param title
+	 * @param announcement
 	 * @param archiveId
 	 * @param siteId
 	 * @param toolId
+	 * @param context the context of the archive, to plan the paths of the attachments
+	 * @param pagePath the path of the page within the archive, to link from
+	 * @return the links to the attachments that were archived
 	 * @throws PermissionException
+	 * @throws IOException
 	 */
-	private void archiveAttachments(final List<Reference> attachments, final AnnouncementMessage announcement, final String archiveId,
-			final String siteId, final String toolId) throws PermissionException {
+	private List<String> archiveAttachments(final HtmlPageWriter page, final List<Reference> attachments,
+			final AnnouncementMessage announcement, final String archiveId, final String siteId, final String toolId,
+			final ArchiveContext context, final String pagePath) throws PermissionException, IOException {
+
+		final String attachmentLocation = ArchivePathPlanner.item(announcement.getId(),
+				announcement.getAnnouncementHeader().getSubject() + "_attachments");
+		final List<String> attachmentLinks = new ArrayList<>();
 
 		for (final Reference attachment : attachments) {
-			byte[] attachmentBytes;
 			try {
-				attachmentBytes = this.contentHostingService.getResource(attachment.getId()).getContent();
+				final ContentResource resource = this.contentHostingService.getResource(attachment.getId());
 				final String attachmentName = attachment.getProperties()
 						.getPropertyFormatted(attachment.getProperties().getNamePropDisplayName());
-				this.archiverService.archiveContent(archiveId, siteId, toolId, attachmentBytes,
-						attachmentName, announcement.getAnnouncementHeader().getSubject() + "_attachments");
-				addToAttachmentsHtml(Sanitiser.sanitise(announcement.getAnnouncementHeader().getSubject()) + "_attachments/",
-						Sanitiser.sanitise(attachmentName));
+				final String plannedName = ArchivePathPlanner.item(attachment.getId(), attachmentName);
+				this.archiverService.archiveContent(archiveId, siteId, toolId, resource, plannedName, attachmentLocation);
+
+				final String link = ArchivePathPlanner.relativeLink(pagePath,
+						context.getArchivePath(toolId, plannedName, attachmentLocation));
+				page.append("<li><a href=\"").append(link).append("\">").appendText(attachmentName).append("</a></li>");
+				attachmentLinks.add(link);
 
-			} catch (ServerOverloadException | IdUnusedException | TypeException e) {
+			} catch (IdUnusedException | TypeException e) {
 				log.error("Error getting attachment for announcement: " + announcement.getAnnouncementHeader().getSubject());
 				continue;
 			}
 		}
+		return attachmentLinks;
 	}
 
 	/**
-	 * Set the html string that contains a list of attachment hyperlinks
-	 *
-	 * @param attachmentLocation
-	 * @param attachmentName
+	 * An announcement as it is archived as JSON
 	 */
-	private void addToAttachmentsHtml(final String attachmentLocation, final String attachmentName) {
+	private static class AnnouncementRecord {
 
-		final String attachmentHyperlink = "<li><a href=\"./" + attachmentLocation + attachmentName + "\">" + attachmentName
-				+ "</a></li>";
-		this.attachmentsHtml += attachmentHyperlink;
+		@Getter
+		private final String subject;
+
+		@Getter
+		private final String from;
+
+		@Getter
+		private final String date;
+
+		@Getter
+		private final String body;
+
+		@Getter
+		private final List<String> attachments;
+
+		AnnouncementRecord(final AnnouncementMessage announcement, final List<String> attachments) {
+			this.subject = announcement.getAnnouncementHeader().getSubject();
+			this.from = announcement.getHeader().getFrom().getDisplayName();
+			this.date = Dateifier.toIso8601(new Date(announcement.getHeader().getDate().getTime()));
+			this.body = announcement.getBody();
+			this.attachments = attachments;
+		}
 	}
-}
+}
\ No newline at end of file
@@ -1,32 +1,32 @@
 package org.sakaiproject.archiver.provider;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
-import org.sakaiproject.archiver.util.Sanitiser;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
 import org.sakaiproject.assignment.api.Assignment;
 import org.sakaiproject.assignment.api.AssignmentService;
 import org.sakaiproject.assignment.api.AssignmentSubmission;
 import org.sakaiproject.assignment.api.model.AssignmentSupplementItemService;
 import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.exception.TypeException;
 import org.sakaiproject.service.gradebook.shared.GradebookService;
 import org.sakaiproject.site.api.Group;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.user.api.User;
-import org.sakaiproject.user.api.UserDirectoryService;
-import org.sakaiproject.user.api.UserNotDefinedException;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -62,53 +62,52 @@ public class AssignmentsArchiver implements Archiveable {
 	@Setter
 	private SiteService siteService;
 
-	@Setter
-	private UserDirectoryService userDirectoryService;
-
 	@Setter
 	private AssignmentSupplementItemService assignmentSupplementItemService;
 
-	private String toolName;
-
 	@Override
 	public void archive(final String archiveId, final String siteId, final boolean includeStudentContent) {
 
 		final List<Assignment> assignments = this.assignmentService.getListAssignmentsForContext(siteId);
 
-		// List to hold the names of the assignments for this site
-		final List<String> assignmentNames = new ArrayList<>();
-
-		this.toolName = getToolName(siteId, TOOL_ID);
+		final String toolName = getToolName(siteId, TOOL_ID);
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
 
 		for (final Assignment assignment : assignments) {
 
-			assignmentNames.add(assignment.getTitle());
-
-			String assignmentAttachmentsHtml = "";
-
-			// archive the attachments for the assignment
-			assignmentAttachmentsHtml = archiveAttachments(assignment.getContent().getAttachments(), new String[] { assignment.getTitle() },
-					archiveId, siteId, "attachments", assignmentAttachmentsHtml);
+			// already in the archive if it is being resumed after a restart, it is still listed in the index
+			if (this.archiverService.isItemArchived(archiveId, TOOL_ID, assignment.getId())) {
+				continue;
+			}
 
-			// archive the assignment data
-			final String detailsHtml = getDetailsAsHtml(assignment, assignmentAttachmentsHtml);
-			final String finalDetailsHtml = Htmlifier.toHtml(detailsHtml, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-			this.archiverService.archiveContent(archiveId, siteId, this.toolName, finalDetailsHtml.getBytes(), "details.html",
-					assignment.getTitle());
+			// archive the assignment data, with its attachments
+			try (HtmlPageWriter page = new HtmlPageWriter(
+					this.archiverService.openContentStream(archiveId, siteId, toolName, "details.html", getDirName(assignment)),
+					context.getSiteHeader(TOOL_ID))) {
+				writeDetails(page, context, assignment, archiveId, siteId, toolName);
+			} catch (final IOException e) {
+				log.error("Error archiving assignment: " + assignment.getTitle(), e);
+			}
 
 			// if we want student content, archive the submissions for the assignment
 			if (includeStudentContent) {
-				archiveSubmissions(assignment, archiveId, siteId);
+				archiveSubmissions(assignment, archiveId, siteId, toolName);
 			}
+
+			this.archiverService.checkpointItem(archiveId, TOOL_ID, assignment.getId());
 		}
 
 		// save an index file
-		final String indexHtml = getIndexHtml(assignmentNames);
-		final String finalIndexHtml = Htmlifier.toHtml(indexHtml, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-		this.archiverService.archiveContent(archiveId, siteId, this.toolName, finalIndexHtml.getBytes(), "Assignment_List.html");
+		try (HtmlPageWriter page = new HtmlPageWriter(
+				this.archiverService.openContentStream(archiveId, siteId, toolName, "Assignment_List.html"),
+				context.getSiteHeader(TOOL_ID))) {
+			writeIndex(page, context, toolName, assignments);
+		} catch (final IOException e) {
+			log.error("Error archiving assignment list for site {}", siteId, e);
+		}
 
 		// archive the grades spreadsheet for the site
-		archiveGradesSpreadsheet(archiveId, siteId);
+		archiveGradesSpreadsheet(archiveId, siteId, toolName);
 	}
 
 	@Override
@@ -117,52 +116,60 @@ public class AssignmentsArchiver implements Archiveable {
 	}
 
 	/**
-	 * Construct the details html string
+	 * Write the details of an assignment, archiving its attachments as they are listed
 	 *
+	 * @param page the page to write to
+	 * @param context the context of the archive, to plan the paths of the attachments
 	 * @param assignment
-	 * @param attachmentsHtml
-	 * @return detailsHtml
+	 * @param archiveId
+	 * @param siteId
+	 * @param toolName the name of the directory to archive to
+	 * @throws IOException
 	 */
-	private String getDetailsAsHtml(final Assignment assignment, final String attachmentsHtml) {
-		final StringBuilder sb = new StringBuilder();
+	private void writeDetails(final HtmlPageWriter page, final ArchiveContext context, final Assignment assignment,
+			final String archiveId, final String siteId, final String toolName) throws IOException {
 
-		sb.append("<h2>" + assignment.getTitle() + "</h2>");
+		page.append("<h2>").appendText(assignment.getTitle()).append("</h2>");
 
 		if (assignment.getContent() != null) {
-			sb.append("<p>" + assignment.getContent().getInstructions() + "</p>");
+			page.append("<p>").append(assignment.getContent().getInstructions()).append("</p>");
 		}
 
-		sb.append("<p>Due at: " + assignment.getDueTimeString() + "</p>");
+		page.append("<p>Due at: ").appendText(assignment.getDueTimeString()).append("</p>");
 
 		if (assignment.getContent() != null) {
 			final String gradingScale = assignment.getContent().getTypeOfGradeString();
 			if (StringUtils.equals(gradingScale, "Points")) {
-				sb.append("<p>Maximum score: " + assignment.getContent().getMaxGradePointDisplay() + " " + gradingScale + "</p>");
+				page.append("<p>Maximum score: ").appendText(assignment.getContent().getMaxGradePointDisplay() + " " + gradingScale)
+						.append("</p>");
 			} else {
-				sb.append("<p>Grading scale: " + gradingScale + "</p>");
+				page.append("<p>Grading scale: ").appendText(gradingScale).append("</p>");
+			}
+			page.append("<p>Submission type: ").appendText(assignment.getContent().getTypeOfSubmissionString()).append("</p>");
+
+			final List<Reference> attachments = assignment.getContent().getAttachments();
+			if (!attachments.isEmpty()) {
+				page.append("<p>Attachment(s): <ul style=\"list-style: none;padding-left:0;\">");
+				final String[] subdirs = new String[] { getDirName(assignment) };
+				archiveAttachments(page, context.getArchivePath(toolName, "details.html", subdirs), context, attachments, subdirs,
+						archiveId, siteId, toolName, "attachments");
+				page.append("</ul></p>");
 			}
-			sb.append("<p>Submission type: " + assignment.getContent().getTypeOfSubmissionString() + "</p>");
-		}
-
-		if (StringUtils.isNotBlank(attachmentsHtml)) {
-			sb.append("<p>Attachment(s): <ul style=\"list-style: none;padding-left:0;\">" + attachmentsHtml + "</ul></p>");
 		}
-
-		return sb.toString();
 	}
 
-	private String getIndexHtml(final List<String> assignmentNames) {
-		final StringBuilder sb = new StringBuilder();
+	private void writeIndex(final HtmlPageWriter page, final ArchiveContext context, final String toolName,
+			final List<Assignment> assignments) throws IOException {
+		final String indexPath = context.getArchivePath(toolName, "Assignment_List.html");
 
-		sb.append("<h2>Assignment List</h2>");
-		for (final String assignmentName : assignmentNames) {
-			final String sanitisedName = Sanitiser.sanitise(assignmentName);
-			sb.append("<p><a href=\"" + sanitisedName + "/details.html\">" + sanitisedName + "</a></p>");
+		page.append("<h2>Assignment List</h2>");
+		for (final Assignment assignment : assignments) {
+			final String link = ArchivePathPlanner.relativeLink(indexPath,
+					context.getArchivePath(toolName, "details.html", getDirName(assignment)));
+			page.append("<p><a href=\"").append(link).append("\">").appendText(assignment.getTitle()).append("</a></p>");
 		}
 
-		sb.append("<p>Grades: <a href=\"./grades.xls\">grades.xls</a></p>");
-
-		return sb.toString();
+		page.append("<p>Grades: <a href=\"./grades.xls\">grades.xls</a></p>");
 	}
 
 	/**
@@ -171,92 +178,111 @@ public class AssignmentsArchiver implements Archiveable {
 	 * @param assignment
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 */
 	@SuppressWarnings("unchecked")
 
-	private void archiveSubmissions(final Assignment assignment, final String archiveId, final String siteId) {
+	private void archiveSubmissions(final Assignment assignment, final String archiveId, final String siteId, final String toolName) {
 		final List<AssignmentSubmission> submissions = this.assignmentService.getSubmissions(assignment);
 
-		for (final AssignmentSubmission submission : submissions) {
-
-			String submissionAttachmentsHtml = "";
+		// submitters are looked up once for the whole archive
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
 
-			final String[] submissionSubdirs = getSubDirs(assignment, submission.getSubmitterId());
-
-			// archive the attachments for this submission
-			submissionAttachmentsHtml = archiveAttachments(submission.getSubmittedAttachments(), submissionSubdirs, archiveId, siteId,
-					"submission", submissionAttachmentsHtml);
+		for (final AssignmentSubmission submission : submissions) {
 
-			// archive the feedback attachments, if there are any
-			String feedbackAttachmentsHtml = "";
-			if (submission.getGraded() && !submission.getFeedbackAttachments().isEmpty()) {
-				feedbackAttachmentsHtml = archiveAttachments(submission.getFeedbackAttachments(), submissionSubdirs, archiveId, siteId,
-						"feedback", feedbackAttachmentsHtml);
-			}
+			final String[] submissionSubdirs = getSubDirs(context, assignment, submission.getSubmitterId());
 
-			// archive this submission
-			if (submission.getTimeSubmitted() != null) {
-				final String submissionHtml = getSubmissionAsHtml(submission, submissionAttachmentsHtml, feedbackAttachmentsHtml);
-				final String finalSubmissionHtml = Htmlifier.toHtml(submissionHtml, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-				this.archiverService.archiveContent(archiveId, siteId, this.toolName, finalSubmissionHtml.getBytes(), "submission.html",
-						submissionSubdirs);
+			try {
+				if (submission.getTimeSubmitted() != null) {
+					// archive this submission, with its attachments and any feedback attachments
+					try (HtmlPageWriter page = new HtmlPageWriter(
+							this.archiverService.openContentStream(archiveId, siteId, toolName, "submission.html", submissionSubdirs),
+							context.getSiteHeader(TOOL_ID))) {
+						writeSubmission(page, context, submission, submissionSubdirs, archiveId, siteId, toolName);
+					}
+				} else {
+					// a submission that was never submitted has no page, but any attachments are still archived
+					archiveAttachments(null, null, context, submission.getSubmittedAttachments(), submissionSubdirs, archiveId, siteId,
+							toolName, "submission");
+					if (submission.getGraded()) {
+						archiveAttachments(null, null, context, submission.getFeedbackAttachments(), submissionSubdirs, archiveId, siteId,
+								toolName, "feedback");
+					}
+				}
+			} catch (final IOException e) {
+				log.error("Error archiving submission: " + submission.getId(), e);
 			}
 		}
 	}
 
 	/**
-	 * Construct the submission html string
+	 * Write a submission, archiving its attachments as they are listed
 	 *
+	 * @param page the page to write to
+	 * @param context the context of the archive, to look up the submitter
 	 * @param submission
-	 * @param feedbackAttachmentsHtml
-	 * @return submissionAttachmentsHtml
+	 * @param subdirs where the submission is archived
+	 * @param archiveId
+	 * @param siteId
+	 * @param toolName the name of the directory to archive to
+	 * @throws IOException
 	 */
-	private String getSubmissionAsHtml(final AssignmentSubmission submission, final String submissionAttachmentsHtml,
-			final String feedbackAttachmentsHtml) {
-
-		final StringBuilder sb = new StringBuilder();
+	private void writeSubmission(final HtmlPageWriter page, final ArchiveContext context, final AssignmentSubmission submission,
+			final String[] subdirs, final String archiveId, final String siteId, final String toolName) throws IOException {
 
-		sb.append("<h2>" + submission.getAssignment().getTitle() + "</h2>");
+		page.append("<h2>").appendText(submission.getAssignment().getTitle()).append("</h2>");
 
-		final User user = getUser(submission.getSubmitterId());
+		final User user = context.getUser(submission.getSubmitterId());
 		if (user != null) {
-			sb.append("<p>" + user.getEid() + "</p>");
+			page.append("<p>").appendText(user.getEid()).append("</p>");
 		}
 
-		sb.append("<p>" + submission.getTimeSubmittedString() + "</p>");
-		sb.append("<p>" + submission.getSubmittedText() + "</p>");
-		sb.append("<p><ul style=\"list-style: none;padding-left:0;\">" + submissionAttachmentsHtml + "</ul></p>");
+		page.append("<p>").appendText(submission.getTimeSubmittedString()).append("</p>");
+		page.append("<p>").append(submission.getSubmittedText()).append("</p>");
+		final String pagePath = context.getArchivePath(toolName, "submission.html", subdirs);
+		page.append("<p><ul style=\"list-style: none;padding-left:0;\">");
+		archiveAttachments(page, pagePath, context, submission.getSubmittedAttachments(), subdirs, archiveId, siteId, toolName,
+				"submission");
+		page.append("</ul></p>");
 
 		if (submission.getGraded()) {
-			sb.append("<p>Instructor Feedback: " + submission.getFeedbackComment() + "</p>");
-			sb.append("<p><ul style=\"list-style: none;padding-left:0;\">" + feedbackAttachmentsHtml + "</ul></p>");
+			page.append("<p>Instructor Feedback: ").append(submission.getFeedbackComment()).append("</p>");
+			page.append("<p><ul style=\"list-style: none;padding-left:0;\">");
+			archiveAttachments(page, pagePath, context, submission.getFeedbackAttachments(), subdirs, archiveId, siteId, toolName,
+					"feedback");
+			page.append("</ul></p>");
 		}
-
-		return sb.toString();
 	}
 
 	/**
-	 * Archive a list of attachments
+	 * Archive a list of attachments, adding a link to each one to the page
 	 *
+	 * @param page the page to write the links to, or null if there is no page
+	 * @param pagePath the path of the page within the archive, to link from, or null if there is no page
+	 * @param context the context of the archive, to plan the paths of the attachments
 	 * @param attachments
 	 * @param subdirs
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 * @param finalFolder
-	 * @param attachmentsHtml
-	 * @return attachmentsHtml
+	 * @throws IOException
 	 */
-	private String archiveAttachments(final List<Reference> attachments, final String[] subdirs, final String archiveId,
-			final String siteId, final String finalFolder, final String attachmentsHtml) {
-		String tempAttachmentsHtmlString = attachmentsHtml;
+	private void archiveAttachments(final HtmlPageWriter page, final String pagePath, final ArchiveContext context,
+			final List<Reference> attachments, final String[] subdirs, final String archiveId, final String siteId, final String toolName,
+			final String finalFolder) throws IOException {
 		for (final Reference attachment : attachments) {
 			try {
-				tempAttachmentsHtmlString += archiveAttachment(attachment, archiveId, siteId, subdirs, finalFolder, attachmentsHtml);
-			} catch (ServerOverloadException | PermissionException | IdUnusedException | TypeException e) {
+				final String attachmentName = archiveAttachment(attachment, archiveId, siteId, toolName, subdirs, finalFolder);
+				if (page != null) {
+					final String link = ArchivePathPlanner.relativeLink(pagePath, context.getArchivePath(toolName,
+							ArchivePathPlanner.item(attachment.getId(), attachmentName), ArrayUtils.addAll(subdirs, finalFolder)));
+					page.append("<li><a href=\"").append(link).append("\">").appendText(attachmentName).append("</a></li>");
+				}
+			} catch (PermissionException | IdUnusedException | TypeException e) {
 				log.error("Error getting attachment: " + attachment.getId());
 			}
 		}
-		return tempAttachmentsHtmlString;
 	}
 
 	/**
@@ -265,39 +291,21 @@ public class AssignmentsArchiver implements Archiveable {
 	 * @param attachment
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 * @param subdir
 	 * @param finalFolder
-	 * @param attachmentsHtml
-	 * @return attachmentsHtml
-	 * @throws ServerOverloadException
+	 * @return the name of the attachment
 	 * @throws PermissionException
 	 * @throws IdUnusedException
 	 * @throws TypeException
 	 */
-	private String archiveAttachment(final Reference attachment, final String archiveId, final String siteId, final String[] subdir,
-			final String finalFolder, final String attachmentsHtml)
-			throws ServerOverloadException, PermissionException, IdUnusedException, TypeException {
-		final byte[] attachmentBytes = this.contentHostingService.getResource(attachment.getId()).getContent();
+	private String archiveAttachment(final Reference attachment, final String archiveId, final String siteId, final String toolName,
+			final String[] subdir, final String finalFolder) throws PermissionException, IdUnusedException, TypeException {
+		final ContentResource resource = this.contentHostingService.getResource(attachment.getId());
 		final String attachmentName = attachment.getProperties().getPropertyFormatted(attachment.getProperties().getNamePropDisplayName());
-		this.archiverService.archiveContent(archiveId, siteId, this.toolName, attachmentBytes, attachmentName,
-				ArrayUtils.addAll(subdir, finalFolder));
-		return addToAttachmentsHtml(finalFolder, attachmentName, attachmentsHtml);
-	}
-
-	/**
-	 * Set the html string that contains a list of attachment hyperlinks
-	 *
-	 * @param attachmentLocation
-	 * @param attachmentName
-	 * @param attachmentsHtml
-	 * @return attachmentsHtml
-	 */
-	private String addToAttachmentsHtml(final String attachmentLocation, final String attachmentName, final String attachmentsHtml) {
-
-		final String sanitisedName = Sanitiser.sanitise(attachmentName);
-		final String attachmentHyperlink = "<li><a href=\"./" + attachmentLocation + "/" + sanitisedName + "\">" + sanitisedName
-				+ "</a></li>";
-		return attachmentsHtml + attachmentHyperlink;
+		this.archiverService.archiveContent(archiveId, siteId, toolName, resource,
+				ArchivePathPlanner.item(attachment.getId(), attachmentName), ArrayUtils.addAll(subdir, finalFolder));
+		return attachmentName;
 	}
 
 	/**
@@ -305,8 +313,9 @@ public class AssignmentsArchiver implements Archiveable {
 	 *
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 */
-	private void archiveGradesSpreadsheet(final String archiveId, final String siteId) {
+	private void archiveGradesSpreadsheet(final String archiveId, final String siteId, final String toolName) {
 
 		// Note: The AssignmentService contains a method 'gradesSpreadsheetReference' but this cannot be used in this context.
 		// GradeSheetExporter#getGradesSpreadsheet will not accept that format.
@@ -318,7 +327,7 @@ public class AssignmentsArchiver implements Archiveable {
 
 			gradesSpreadsheet = this.assignmentService.getGradesSpreadsheet(spreadsheetReference);
 			if (gradesSpreadsheet != null) {
-				this.archiverService.archiveContent(archiveId, siteId, this.toolName, gradesSpreadsheet, "grades.xls");
+				this.archiverService.archiveContent(archiveId, siteId, toolName, gradesSpreadsheet, "grades.xls");
 			}
 		} catch (IdUnusedException | PermissionException e) {
 			log.error("Error getting grades spreadsheet for site {} ", siteId);
@@ -328,28 +337,29 @@ public class AssignmentsArchiver implements Archiveable {
 	/**
 	 * Get the subdirectory structure for a submission or feedback item
 	 *
+	 * @param context the context of the archive, to look up the submitter
 	 * @param assignmentTitle
 	 * @param submitterId
 	 * @param folderName
 	 * @return subdirectory string
 	 */
-	private String[] getSubDirs(final Assignment assignment, final String submitterId) {
+	private String[] getSubDirs(final ArchiveContext context, final Assignment assignment, final String submitterId) {
 
 		final List<String> subDirs = new ArrayList<>();
-		subDirs.add(assignment.getTitle());
+		subDirs.add(getDirName(assignment));
 		subDirs.add("submissions");
 
 		// Get the user associated with this submitterId
-		final User user = getUser(submitterId);
+		final User user = context.getUser(submitterId);
 		if (user != null) {
-			subDirs.add(user.getSortName());
+			subDirs.add(ArchivePathPlanner.item(submitterId, user.getSortName()));
 			return subDirs.toArray(new String[subDirs.size()]);
 		}
 
 		// If a user wasn't found, maybe it's a group submission
 		final Group group = getGroup(assignment.getContext(), submitterId);
 		if (group != null) {
-			subDirs.add(group.getTitle());
+			subDirs.add(ArchivePathPlanner.item(submitterId, group.getTitle()));
 			return subDirs.toArray(new String[subDirs.size()]);
 		}
 
@@ -361,17 +371,14 @@ public class AssignmentsArchiver implements Archiveable {
 	}
 
 	/**
-	 * Helper method to get the User associated with a submitterId
+	 * Get the name of the directory an assignment is archived to. It is planned by the id of the assignment as well as its title, so
+	 * assignments with the same title are archived separately.
 	 *
-	 * @param submitterId
-	 * @return user
+	 * @param assignment
+	 * @return the name to plan
 	 */
-	private User getUser(final String submitterId) {
-		try {
-			return this.userDirectoryService.getUser(submitterId);
-		} catch (final UserNotDefinedException e) {
-			return null;
-		}
+	private String getDirName(final Assignment assignment) {
+		return ArchivePathPlanner.item(assignment.getId(), assignment.getTitle());
 	}
 
 	/**
@@ -1,20 +1,25 @@
 package org.sakaiproject.archiver.provider;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
 import org.sakaiproject.archiver.util.Dateifier;
-import org.sakaiproject.archiver.util.Htmlifier;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
 import org.sakaiproject.chat2.model.ChatChannel;
 import org.sakaiproject.chat2.model.ChatManager;
 import org.sakaiproject.chat2.model.ChatMessage;
+import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.user.api.User;
-import org.sakaiproject.user.api.UserDirectoryService;
-import org.sakaiproject.user.api.UserNotDefinedException;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -43,7 +48,7 @@ public class ChatArchiver implements Archiveable {
 	private ArchiverService archiverService;
 
 	@Setter
-	private UserDirectoryService userDirectoryService;
+	private ServerConfigurationService serverConfigurationService;
 
 	@Override
 	public void archive(final String archiveId, final String siteId, final boolean includeStudentContent) {
@@ -57,49 +62,122 @@ public class ChatArchiver implements Archiveable {
 
 		final String toolName = getToolName(siteId, TOOL_ID);
 
+		// site details and users are looked up once for the whole archive rather than for every message
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
+
+		// only set for an incremental archive, in which case only the newer messages are fetched
+		final Date modifiedSince = this.archiverService.getModifiedSince(archiveId);
+
 		for (final ChatChannel chatChannel : chatChannels) {
 
-			final int numMessages = this.chatManager.getChannelMessagesCount(chatChannel, null, null);
-			final List<String> savedFiles = new ArrayList<>();
+			if (this.archiverService.isArchiveCancelled(archiveId)) {
+				log.info("Archive {} has been cancelled, stopping", archiveId);
+				return;
+			}
+
+			try {
+				archiveChannel(context, toolName, chatChannel, modifiedSince);
+			} catch (final PermissionException e) {
+				log.error("Could not retrieve some chat messages for channel: " + chatChannel.getTitle(), e);
+			} catch (final IOException e) {
+				log.error("Could not write chat messages for channel: " + chatChannel.getTitle(), e);
+			}
+		}
+	}
+
+	/**
+	 * Archive the messages in a channel, oldest first. Messages are fetched in batches and written straight into the archive, starting
+	 * a new file whenever the current one reaches the configured number of messages or size, so only one batch is ever held in memory.
+	 *
+	 * @param context the context of the archive
+	 * @param toolName the name of the directory to archive to
+	 * @param chatChannel the channel to archive
+	 * @param modifiedSince only archive messages after this date, or null for all messages
+	 * @throws PermissionException
+	 * @throws IOException
+	 */
+	private void archiveChannel(final ArchiveContext context, final String toolName, final ChatChannel chatChannel,
+			final Date modifiedSince) throws PermissionException, IOException {
 
-			// Go through and get chat messages, 100 at a time (i.e. 1-100, 101-200, etc)
-			for (int start = 0; start <= numMessages - (numMessages % 100); start += 100) {
+		final int numMessages = this.chatManager.getChannelMessagesCount(chatChannel, null, modifiedSince);
+		if (numMessages == 0) {
+			log.debug("No messages in channel {}", chatChannel.getTitle());
+			return;
+		}
 
-				try {
-					final List<ChatMessage> chatMessages = this.chatManager.getChannelMessages(chatChannel, null, null, start, 100,
-							false);
+		final int batchSize = getBatchSize();
+		final int messagesPerFile = getMessagesPerFile();
+		final long maxFileSize = getMaxFileSize();
+		final String header = context.getSiteHeader(TOOL_ID);
 
-					final List<SimpleChatMessage> messagesToSave = createArchiveItems(chatMessages);
+		// planned by the id of the channel as well as its title, so channels with the same title are archived separately
+		final String channelDir = ArchivePathPlanner.item(chatChannel.getId(), chatChannel.getTitle());
 
-					// Convert to HTML and save to file
-					final int rangeStart = start + 1;
-					final int rangeEnd = numMessages - start >= 100 ? start + 100 : numMessages;
+		final List<ChatFile> savedFiles = new ArrayList<>();
+		ChatFile file = null;
+		JsonRecordWriter records = null;
+		try {
+			if (this.archiverService.isJsonOutputEnabled()) {
+				final String recordsName = (modifiedSince == null) ? "messages"
+						: String.format("messages since %s", Dateifier.toIso8601(modifiedSince));
+				records = this.archiverService.openRecordStream(context.getArchiveId(), context.getSiteId(), toolName, recordsName,
+						channelDir);
+			}
 
-					final String chatHtml = getAsHtml(messagesToSave);
-					final String finalChatHtml = Htmlifier.toHtml(chatHtml, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-					log.debug("Chat HTML: " + finalChatHtml);
+			int messageNumber = 0;
+			for (int start = 0; start < numMessages; start += batchSize) {
 
-					final String fileName = String.format(" %s %s-%s%s", chatChannel.getTitle(), rangeStart, rangeEnd, ".html");
-					this.archiverService.archiveContent(archiveId, siteId, toolName, finalChatHtml.getBytes(),
-							fileName, chatChannel.getTitle());
-					// Add to the list of saved files to be used by the index
-					savedFiles.add(fileName);
+				if (this.archiverService.isArchiveCancelled(context.getArchiveId())) {
+					return;
+				}
 
-				} catch (final PermissionException e) {
-					log.error("Could not retrieve some chat messages for channel: " + chatChannel.getTitle(), e);
-					continue;
+				final List<ChatMessage> chatMessages = this.chatManager.getChannelMessages(chatChannel, null, modifiedSince, start,
+						batchSize, true);
+				if (chatMessages.isEmpty()) {
+					break;
 				}
-			}
 
-			// If there is more than one saved file, we need an index.html
-			if (savedFiles.size() > 1) {
-				final String indexHtml = getIndexHtml(savedFiles);
-				final String finalIndexHtml = Htmlifier.toHtml(indexHtml,
-						"Index for " + this.archiverService.getSiteHeader(siteId, TOOL_ID));
-				this.archiverService.archiveContent(archiveId, siteId, toolName, finalIndexHtml.getBytes(), "index.html",
-						chatChannel.getTitle());
+				for (final ChatMessage message : chatMessages) {
+					if (file != null && file.isFull(messagesPerFile, maxFileSize)) {
+						file.close();
+						file = null;
+					}
+					if (file == null) {
+						// name the files in an incremental archive so they don't replace those in the base archive
+						final String fileName = (modifiedSince == null)
+								? String.format("%s %s.html", chatChannel.getTitle(), savedFiles.size() + 1)
+								: String.format("%s since %s %s.html", chatChannel.getTitle(), Dateifier.toIso8601(modifiedSince),
+										savedFiles.size() + 1);
+						file = new ChatFile(fileName, messageNumber + 1, this.archiverService.openContentStream(context.getArchiveId(),
+								context.getSiteId(), toolName, fileName, channelDir), header);
+						savedFiles.add(file);
+					}
+					final SimpleChatMessage item = createArchiveItem(context, message);
+					file.write(item);
+					if (records != null) {
+						records.write(item);
+					}
+					messageNumber++;
+				}
 			}
+		} finally {
+			try {
+				if (file != null) {
+					file.close();
+				}
+			} finally {
+				if (records != null) {
+					records.close();
+				}
+			}
+		}
 
+		// If there is more than one saved file, we need an index.html. An incremental archive keeps the index from the base archive.
+		if (savedFiles.size() > 1 && modifiedSince == null) {
+			try (HtmlPageWriter page = new HtmlPageWriter(this.archiverService.openContentStream(context.getArchiveId(),
+					context.getSiteId(), toolName, "index.html", channelDir), "Index for " + header)) {
+				writeIndex(page, context, toolName, channelDir, savedFiles);
+			}
 		}
 	}
 
@@ -109,100 +187,183 @@ public class ChatArchiver implements Archiveable {
 	}
 
 	/**
-	 * Construct the chat html string
-	 *
-	 * @param msgs a list of chat messages
-	 * @return chatHtml
-	 */
-	private String getAsHtml(final List<SimpleChatMessage> msgs) {
-		final StringBuilder sb = new StringBuilder();
-
-		for (final SimpleChatMessage msg : msgs) {
-			sb.append("<p><b>" + msg.getOwner() + "&nbsp;(" + msg.getDate() + "):</b> " + msg.getBody() + "</p>");
-		}
-
-		return sb.toString();
-	}
-
-	/**
-	 * Construct the chat index html string
+	 * Write the chat html for a message
 	 *
-	 * @param savedFiles a list of saved files to be listed as links
-	 * @return indexHtml
+	 * @param page the page to write to
+	 * @param msg a chat message
+	 * @throws IOException
 	 */
-	private String getIndexHtml(final List<String> savedFiles) {
-		final StringBuilder sb = new StringBuilder();
-
-		sb.append("<p><ol>");
-
-		for (final String fileName : savedFiles) {
-			sb.append("<li><a href=\"./" + fileName + "\">" + fileName + "</a></li>");
-		}
-
-		sb.append("</ol></p>");
-
-		return sb.toString();
+	private static void writeMessage(final HtmlPageWriter page, final SimpleChatMessage msg) throws IOException {
+		page.append("<p><b>").appendText(msg.getOwner()).append("&nbsp;(").appendText(msg.getDate()).append("):</b> ")
+				.append(msg.getBody()).append("</p>");
 	}
 
 	/**
-	 * Build the list of messages to be archived for this channel
+	 * Write the chat index
 	 *
-	 * @param chatMessages
-	 * @return the list of messages to be saved
+	 * @param page the page to write to
+	 * @param context the context of the archive, to plan the paths of the files
+	 * @param toolName the name of the directory the files are archived to
+	 * @param channelDir the name of the directory of the channel the files are archived in
+	 * @param savedFiles the files that were written, to be listed as links
+	 * @throws IOException
 	 */
-	private List<SimpleChatMessage> createArchiveItems(final List<ChatMessage> chatMessages) {
-		final List<SimpleChatMessage> messagesToSave = new ArrayList<>();
-		for (final ChatMessage message : chatMessages) {
-			final SimpleChatMessage simpleChatMessage = createArchiveItem(message);
-			messagesToSave.add(simpleChatMessage);
+	private void writeIndex(final HtmlPageWriter page, final ArchiveContext context, final String toolName, final String channelDir,
+			final List<ChatFile> savedFiles) throws IOException {
+		final String indexPath = context.getArchivePath(toolName, "index.html", channelDir);
+		page.append("<p><ol>");
+
+		for (final ChatFile file : savedFiles) {
+			final String link = ArchivePathPlanner.relativeLink(indexPath, context.getArchivePath(toolName, file.getName(), channelDir));
+			page.append("<li><a href=\"").append(link).append("\">").appendText(file.getName()).append("</a> ");
+			page.append(file.getFirstMessage() + "-" + file.getLastMessage());
+			page.append(" (").appendText(file.getFirstDate()).append(" - ").appendText(file.getLastDate()).append(")</li>");
 		}
 
-		return messagesToSave;
+		page.append("</ol></p>");
 	}
 
 	/**
 	 * Build the archive item for an individual chat message
 	 *
+	 * @param context the context of the archive, to look up the message owner
 	 * @param message
 	 * @return
 	 */
 
-	private SimpleChatMessage createArchiveItem(final ChatMessage message) {
+	private SimpleChatMessage createArchiveItem(final ArchiveContext context, final ChatMessage message) {
 
 		final SimpleChatMessage simpleChatMessage = new SimpleChatMessage();
 		simpleChatMessage.setBody(message.getBody());
 		simpleChatMessage.setDate(Dateifier.toIso8601(message.getMessageDate()));
 
-		final User user = getUser(message.getOwner());
+		// uuid is used in place of the display name if the user could not be found
+		final User user = context.getUser(message.getOwner());
 		simpleChatMessage.setOwner((user != null) ? user.getDisplayName() : message.getOwner());
 
 		return simpleChatMessage;
 	}
 
 	/**
-	 * Helper to get the user associated with a chat message
+	 * Get the number of messages fetched from the chat service at a time, as configured in sakai.properties via
+	 * <code>archiver.chat.batch.size</code>
 	 *
-	 * @param owner
-	 * @return user
+	 * Default if not specified is: 1000
+	 *
+	 * @return
+	 */
+	private int getBatchSize() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.chat.batch.size", 1000));
+	}
+
+	/**
+	 * Get the number of messages written to each chat file before a new file is started, as configured in sakai.properties via
+	 * <code>archiver.chat.file.messages</code>
+	 *
+	 * Default if not specified is: 5000
+	 *
+	 * @return
 	 */
-	private User getUser(final String owner) {
+	private int getMessagesPerFile() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.chat.file.messages", 5000));
+	}
 
-		User user;
+	/**
+	 * Get the size (in bytes) a chat file can reach before a new file is started, as configured in sakai.properties via
+	 * <code>archiver.chat.file.size</code> which is a number in MB.
+	 *
+	 * Default if not specified is: 5MB
+	 *
+	 * @return
+	 */
+	private long getMaxFileSize() {
+		return Math.max(1, this.serverConfigurationService.getInt("archiver.chat.file.size", 5)) * 1024L * 1024L;
+	}
 
-		try {
-			user = this.userDirectoryService.getUser(owner);
-			return user;
+	/**
+	 * A chat html file that is being written into the archive
+	 */
+	private static class ChatFile {
+
+		@Getter
+		private final String name;
+
+		@Getter
+		private final int firstMessage;
+
+		@Getter
+		private int lastMessage;
+
+		@Getter
+		private String firstDate;
 
-		} catch (final UserNotDefinedException e) {
-			log.warn("Could not find user with userId: {}. Uuid will be used in place of display name and eid.", owner);
+		@Getter
+		private String lastDate;
+
+		// released once the file is closed, as the summary is kept for the index
+		private HtmlPageWriter page;
+
+		/**
+		 * Start the file
+		 *
+		 * @param name the name of the file
+		 * @param firstMessage the number of the first message in the channel that will be in this file
+		 * @param out where to write it, which is closed when the file is closed
+		 * @param header the heading for the page
+		 * @throws IOException
+		 */
+		ChatFile(final String name, final int firstMessage, final OutputStream out, final String header) throws IOException {
+			this.name = name;
+			this.firstMessage = firstMessage;
+			this.lastMessage = firstMessage - 1;
+			this.page = new HtmlPageWriter(out, header);
+		}
+
+		/**
+		 * Add a message to the file
+		 *
+		 * @param msg
+		 * @throws IOException
+		 */
+		void write(final SimpleChatMessage msg) throws IOException {
+			writeMessage(this.page, msg);
+			if (this.firstDate == null) {
+				this.firstDate = msg.getDate();
+			}
+			this.lastDate = msg.getDate();
+			this.lastMessage++;
+		}
+
+		/**
+		 * Check if the file has reached either limit and a new file should be started
+		 *
+		 * @param maxMessages the number of messages allowed in the file
+		 * @param maxBytes the size allowed for the file
+		 * @return
+		 * @throws IOException
+		 */
+		boolean isFull(final int maxMessages, final long maxBytes) throws IOException {
+			return this.lastMessage - this.firstMessage + 1 >= maxMessages || this.page.getSize() >= maxBytes;
+		}
+
+		/**
+		 * Finish the file, which adds it to the archive
+		 *
+		 * @throws IOException
+		 */
+		void close() throws IOException {
+			try {
+				this.page.close();
+			} finally {
+				this.page = null;
+			}
 		}
-		return null;
 	}
 
 	/**
 	 * Simplified helper class to represent an individual chat message
 	 */
-	private class SimpleChatMessage {
+	private static class SimpleChatMessage {
 
 		@Getter
 		@Setter
@@ -2,6 +2,7 @@ package org.sakaiproject.archiver.provider;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,12 +13,15 @@ import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.entity.api.EntityPropertyNotDefinedException;
+import org.sakaiproject.entity.api.EntityPropertyTypeException;
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.exception.IdUnusedException;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.time.api.Time;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
 
@@ -67,26 +71,31 @@ public class DropboxArchiver implements Archiveable {
 
 		final String toolName = getToolName(siteId, TOOL_ID);
 
-		studentUuids.forEach(studentUuid -> {
+		// only set for an incremental archive
+		final Date modifiedSince = this.archiverService.getModifiedSince(archiveId);
+
+		for (final String studentUuid : studentUuids) {
+
+			if (this.archiverService.isArchiveCancelled(archiveId)) {
+				log.info("Archive {} has been cancelled, stopping", archiveId);
+				return;
+			}
+
 			final String collectionId = getDropBoxCollectionId(siteId, studentUuid);
 			final List<ContentResource> resources = this.contentHostingService.getAllResources(collectionId);
 
-			final String studentName = getStudentName(studentUuid, studentNames);
+			// planned by the student's id as well as their name, so students with the same name are archived separately
+			final String studentName = ArchivePathPlanner.item(studentUuid, getStudentName(studentUuid, studentNames));
 
-			resources.forEach(resource -> {
+			resources.stream().filter(resource -> isModifiedSince(resource, modifiedSince)).forEach(resource -> {
 
 				final String[] subdirs = prepend(studentName, getSubDirs(siteId, studentUuid, resource));
 
-				try {
-					this.archiverService.archiveContent(archiveId, siteId, toolName, resource.getContent(), getFilename(resource),
-							subdirs);
-				} catch (final ServerOverloadException e) {
-					log.error("Error retrieving data for resource {}", resource.getUrl(true));
-				}
+				this.archiverService.archiveContent(archiveId, siteId, toolName, resource, getFilename(resource), subdirs);
 
 			});
 
-		});
+		}
 
 	}
 
@@ -95,6 +104,26 @@ public class DropboxArchiver implements Archiveable {
 		return this.archiverService.getToolName(siteId, TOOL_ID);
 	}
 
+	/**
+	 * Check if a resource has been modified since the given date
+	 *
+	 * @param resource
+	 * @param since the date to compare against, or null if everything is to be archived
+	 * @return true if the resource should be archived
+	 */
+	private boolean isModifiedSince(final ContentResource resource, final Date since) {
+		if (since == null) {
+			return true;
+		}
+		try {
+			final Time modified = resource.getProperties().getTimeProperty(ResourceProperties.PROP_MODIFIED_DATE);
+			return modified == null || modified.getTime() >= since.getTime();
+		} catch (final EntityPropertyNotDefinedException | EntityPropertyTypeException e) {
+			// can't tell so include it
+			return true;
+		}
+	}
+
 	/**
 	 * Get a list of students in the site, as uuids
 	 *
@@ -1,8 +1,12 @@
 package org.sakaiproject.archiver.provider;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.sakaiproject.api.app.messageforums.Attachment;
 import org.sakaiproject.api.app.messageforums.DiscussionForum;
@@ -10,15 +14,17 @@ import org.sakaiproject.api.app.messageforums.DiscussionTopic;
 import org.sakaiproject.api.app.messageforums.Message;
 import org.sakaiproject.api.app.messageforums.Topic;
 import org.sakaiproject.api.app.messageforums.ui.DiscussionForumManager;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
-import org.sakaiproject.archiver.util.Sanitiser;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
 import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.exception.TypeException;
 
 import lombok.Setter;
@@ -49,19 +55,17 @@ public class ForumsArchiver implements Archiveable {
 	@Setter
 	private ArchiverService archiverService;
 
-	private String toolName;
-
 	@SuppressWarnings("unchecked")
 	@Override
 	public void archive(final String archiveId, final String siteId, final boolean includeStudentContent) {
 
 		final List<DiscussionForum> forums = this.forumManager.getDiscussionForumsWithTopics(siteId);
 
-		this.toolName = getToolName(siteId, TOOL_ID);
+		final String toolName = getToolName(siteId, TOOL_ID);
 
 		for (final DiscussionForum forum : forums) {
 			// Archive the forum, including topics (and messages if includeStudentContent is true)
-			archiveForum(forum, archiveId, siteId, includeStudentContent);
+			archiveForum(forum, archiveId, siteId, toolName, includeStudentContent);
 		}
 	}
 
@@ -76,14 +80,21 @@ public class ForumsArchiver implements Archiveable {
 	 * @param forum
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 */
 	@SuppressWarnings("unchecked")
-	private void archiveForum(final DiscussionForum forum, final String archiveId, final String siteId,
+	private void archiveForum(final DiscussionForum forum, final String archiveId, final String siteId, final String toolName,
 			final boolean includeStudentContent) {
 
 		// Set up the simple forum object
 		final SimpleForum simpleForum = new SimpleForum(forum);
 
+		// links in the forum page are relative to where it is archived. Forums, topics and messages are planned by their ids as well as
+		// their titles, so ones with the same title are archived separately.
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
+		final String forumDir = ArchivePathPlanner.item(String.valueOf(forum.getId()), forum.getTitle());
+		final String forumPath = context.getArchivePath(toolName, forum.getTitle() + ".html", forumDir);
+
 		// Initialise the array to hold each topic for this forum
 		List<SimpleTopic> simpleTopics = new ArrayList<>();
 
@@ -91,22 +102,24 @@ public class ForumsArchiver implements Archiveable {
 
 		// Archive the topics and messages
 		for (final DiscussionTopic topic : topics) {
-			simpleTopics = archiveTopics(forum, topic, simpleTopics, archiveId, siteId, includeStudentContent);
+			simpleTopics = archiveTopics(forum, topic, simpleTopics, context, forumPath, archiveId, siteId, toolName,
+					includeStudentContent);
 		}
 
 		// Archive the attachments for this forum
 		final List<String> forumAttachmentsLoc = new ArrayList<>();
-		forumAttachmentsLoc.add(Sanitiser.sanitise(forum.getTitle()));
+		forumAttachmentsLoc.add(forumDir);
 		forumAttachmentsLoc.add("forum-attachments");
-		archiveAttachments(forum.getAttachments(), forumAttachmentsLoc, archiveId, siteId, simpleForum);
-		finaliseAttachmentsHtml(simpleForum);
+		archiveAttachments(forum.getAttachments(), forumAttachmentsLoc, context, forumPath, archiveId, siteId, toolName, simpleForum);
 
 		// Now that all the topics are set, archive the forum
 		simpleForum.setTopics(simpleTopics);
-		final String forumHtml = getForumHtml(simpleForum);
-		final String finalForumHtml = Htmlifier.toHtml(forumHtml, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-		this.archiverService.archiveContent(archiveId, siteId, this.toolName, finalForumHtml.getBytes(), forum.getTitle() + ".html",
-				forum.getTitle());
+		try (HtmlPageWriter page = new HtmlPageWriter(this.archiverService.openContentStream(archiveId, siteId, toolName,
+				forum.getTitle() + ".html", forumDir), context.getSiteHeader(TOOL_ID))) {
+			writeForum(page, simpleForum);
+		} catch (final IOException e) {
+			log.error("Error archiving forum: " + forum.getTitle(), e);
+		}
 	}
 
 	/**
@@ -115,13 +128,17 @@ public class ForumsArchiver implements Archiveable {
 	 * @param forum
 	 * @param topic
 	 * @param simpleTopics
+	 * @param context the context of the archive, to plan the paths of the messages and attachments
+	 * @param forumPath the path of the forum page within the archive, to link from
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 * @param includeStudentContent
 	 * @return the list of topics
 	 */
 	private List<SimpleTopic> archiveTopics(final DiscussionForum forum, final DiscussionTopic topic, final List<SimpleTopic> simpleTopics,
-			final String archiveId, final String siteId, final boolean includeStudentContent) {
+			final ArchiveContext context, final String forumPath, final String archiveId, final String siteId, final String toolName,
+			final boolean includeStudentContent) {
 
 		final SimpleTopic simpleTopic = new SimpleTopic(topic);
 
@@ -130,9 +147,9 @@ public class ForumsArchiver implements Archiveable {
 
 		// Set up the folder structure for saving attachments and messages
 		final List<String> folderStructure = new ArrayList<>();
-		folderStructure.add(Sanitiser.sanitise(forum.getTitle()));
+		folderStructure.add(ArchivePathPlanner.item(String.valueOf(forum.getId()), forum.getTitle()));
 		folderStructure.add("topics");
-		folderStructure.add(Sanitiser.sanitise(topic.getTitle()));
+		folderStructure.add(ArchivePathPlanner.item(String.valueOf(topic.getId()), topic.getTitle()));
 
 		// Set up the folder structure for saving topic attachments
 		final List<String> topicAttachmentsLoc = new ArrayList<>();
@@ -140,8 +157,7 @@ public class ForumsArchiver implements Archiveable {
 		topicAttachmentsLoc.add("topic-attachments");
 
 		// Archive the attachments for this topic
-		archiveAttachments(topic.getAttachments(), topicAttachmentsLoc, archiveId, siteId, simpleTopic);
-		finaliseAttachmentsHtml(simpleTopic);
+		archiveAttachments(topic.getAttachments(), topicAttachmentsLoc, context, forumPath, archiveId, siteId, toolName, simpleTopic);
 
 		// Archive the messages within a topic, if we want student content
 		if (includeStudentContent) {
@@ -151,7 +167,7 @@ public class ForumsArchiver implements Archiveable {
 			Collections.sort(messages, new DateComparator());
 
 			// Archive the messages for this topic
-			archiveMessages(messages, topic, simpleTopic, folderStructure, archiveId, siteId);
+			archiveMessages(messages, topic, simpleTopic, folderStructure, context, forumPath, archiveId, siteId, toolName);
 		}
 		return simpleTopics;
 	}
@@ -163,121 +179,180 @@ public class ForumsArchiver implements Archiveable {
 	 * @param topic
 	 * @param simpleTopic
 	 * @param folderStructure
+	 * @param context the context of the archive, to plan the paths of the messages and attachments
+	 * @param forumPath the path of the forum page within the archive, to link from
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 */
 	private void archiveMessages(final List<Message> messages, final DiscussionTopic topic, final SimpleTopic simpleTopic,
-			final List<String> folderStructure, final String archiveId, final String siteId) {
+			final List<String> folderStructure, final ArchiveContext context, final String forumPath, final String archiveId,
+			final String siteId, final String toolName) {
 
-		for (final Message message : messages) {
+		// only set for an incremental archive
+		final Date modifiedSince = this.archiverService.getModifiedSince(archiveId);
 
-			// Find the top level message
-			if (message.getInReplyTo() == null) {
-				final SimpleMessage topLevelMessage = new SimpleMessage(message);
+		final String[] subdirs = folderStructure.toArray(new String[folderStructure.size()]);
 
-				// Set message replies and archive the attachments for each message
-				setMessageReplies(topLevelMessage, messages, folderStructure, archiveId, siteId, topic.getId());
+		// each conversation is also archived as a JSON record if enabled
+		try (JsonRecordWriter records = this.archiverService.isJsonOutputEnabled()
+				? this.archiverService.openRecordStream(archiveId, siteId, toolName, "conversations", subdirs)
+				: null) {
+			for (final Message message : messages) {
+				if (message.getInReplyTo() != null) {
+					continue;
+				}
+				final String conversationName = ArchivePathPlanner.item(String.valueOf(message.getId()), message.getTitle() + ".html");
+				final String conversationPath = context.getArchivePath(toolName, conversationName, subdirs);
+
+				// Find the top level message, unchanged conversations are already in the base archive
+				if (isModifiedSince(message, messages, modifiedSince)) {
+					final SimpleMessage topLevelMessage = new SimpleMessage(message);
+
+					// Set message replies and archive the attachments for each message
+					setMessageReplies(topLevelMessage, messages, folderStructure, context, conversationPath, archiveId, siteId, toolName,
+							topic.getId());
+
+					// Archive the attachments for the top level message
+					if (message.getHasAttachments()) {
+						addAttachmentsToMessage(message, topLevelMessage, folderStructure, context, conversationPath, archiveId, siteId,
+								toolName, topic.getId());
+					}
+
+					// Archive the messages
+					try (HtmlPageWriter page = new HtmlPageWriter(
+							this.archiverService.openContentStream(archiveId, siteId, toolName, conversationName, subdirs),
+							context.getSiteHeader(TOOL_ID))) {
+						writeMessage(page, topLevelMessage);
+					} catch (final IOException e) {
+						log.error("Error archiving conversation: " + message.getTitle(), e);
+					}
+					if (records != null) {
+						records.write(topLevelMessage);
+					}
 
-				// Archive the attachments for the top level message
-				if (message.getHasAttachments()) {
-					addAttachmentsToMessage(message, topLevelMessage, folderStructure, archiveId, siteId, topic.getId());
-					finaliseAttachmentsHtml(topLevelMessage);
 				}
 
-				// Archive the messages
-				final String conversationHtml = getMessageHtml(topLevelMessage);
-				final String finalConversationHtml = Htmlifier.toHtml(conversationHtml,
-						this.archiverService.getSiteHeader(siteId, TOOL_ID));
-				this.archiverService.archiveContent(archiveId, siteId, this.toolName, finalConversationHtml.getBytes(),
-						message.getTitle() + ".html", folderStructure.toArray(new String[folderStructure.size()]));
-
-				// Add a link of the conversation location to the SimpleTopic associated with this conversation
-				final List<String> linksToTopicConversations = simpleTopic.getConversationLinks();
-				linksToTopicConversations.add("<a href=\"./topics/" + Sanitiser.sanitise(simpleTopic.getTitle()) + "/"
-						+ Sanitiser.sanitise(message.getTitle()) + ".html"
+				// Add a link of the conversation location to the SimpleTopic associated with this conversation. An unchanged conversation
+				// is still linked to, in the base archive.
+				simpleTopic.getConversationLinks().add("<a href=\"" + ArchivePathPlanner.relativeLink(forumPath, conversationPath)
 						+ "\">" + message.getTitle() + ".html" + "</a> ");
-				simpleTopic.setConversationLinks(linksToTopicConversations);
 			}
+		} catch (final IOException e) {
+			log.error("Error archiving conversations for topic: " + topic.getTitle(), e);
 		}
 	}
 
 	/**
-	 * Get the html string for the forum
+	 * Check if a message or any of the replies to it have been posted or modified since the given date
 	 *
-	 * @param simpleForum
-	 * @return forumHtml
+	 * @param message the message at the top of the conversation
+	 * @param messages The full list of messages for this topic
+	 * @param since the date to compare against, or null if everything is to be archived
+	 * @return true if the conversation should be archived
 	 */
-	private String getForumHtml(final SimpleForum simpleForum) {
+	private boolean isModifiedSince(final Message message, final List<Message> messages, final Date since) {
+		if (since == null || isAfter(message.getCreated(), since) || isAfter(message.getModified(), since)) {
+			return true;
+		}
+		for (final Message reply : messages) {
+			if (reply.getInReplyTo() != null && Objects.equals(reply.getInReplyTo().getId(), message.getId())
+					&& isModifiedSince(reply, messages, since)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isAfter(final Date date, final Date since) {
+		return date != null && !date.before(since);
+	}
 
-		final StringBuilder sb = new StringBuilder();
+	/**
+	 * Write the forum and its topics
+	 *
+	 * @param page the page to write to
+	 * @param simpleForum
+	 * @throws IOException
+	 */
+	private void writeForum(final HtmlPageWriter page, final SimpleForum simpleForum) throws IOException {
 
-		sb.append("<h2>Forum: " + simpleForum.getTitle() + "</h2>");
-		sb.append("<p>Short Description: " + simpleForum.getShortDescription() + "</p>");
-		sb.append("<p>Full Description: " + simpleForum.getExtendedDescription() + "</p>");
-		sb.append("<p>" + simpleForum.getAttachments() + "</p>");
+		page.append("<h2>Forum: ").appendText(simpleForum.getTitle()).append("</h2>");
+		page.append("<p>Short Description: ").append(simpleForum.getShortDescription()).append("</p>");
+		page.append("<p>Full Description: ").append(simpleForum.getExtendedDescription()).append("</p>");
+		writeAttachments(page, simpleForum);
 
 		for (final SimpleTopic topic : simpleForum.getTopics()) {
-			sb.append("<h3>Topic: " + topic.getTitle() + "</h3>");
-			sb.append("<p>Short Description: " + topic.getShortDescription() + "</p>");
-			sb.append("<p>Full Description: " + topic.getExtendedDescription() + "</p>");
-			sb.append("<p>" + topic.getAttachments() + "</p>");
+			page.append("<h3>Topic: ").appendText(topic.getTitle()).append("</h3>");
+			page.append("<p>Short Description: ").append(topic.getShortDescription()).append("</p>");
+			page.append("<p>Full Description: ").append(topic.getExtendedDescription()).append("</p>");
+			writeAttachments(page, topic);
 			if (!topic.getConversationLinks().isEmpty()) {
-				sb.append("<p>Conversations: ");
+				page.append("<p>Conversations: ");
 				for (final String loc : topic.getConversationLinks()) {
-					sb.append("<p>" + loc + "</p>");
+					page.append("<p>").append(loc).append("</p>");
 				}
-				sb.append("</p>");
+				page.append("</p>");
 			}
 		}
-
-		return sb.toString();
 	}
 
 	/**
-	 * Get the html string for a conversation
+	 * Write a conversation
 	 *
-	 * @param msg
-	 * @return conversationHtml
+	 * @param page the page to write to
+	 * @param msg the message at the top of the conversation
+	 * @throws IOException
 	 */
-	private String getMessageHtml(final SimpleMessage msg) {
-		final StringBuilder sb = new StringBuilder();
+	private void writeMessage(final HtmlPageWriter page, final SimpleMessage msg) throws IOException {
 
-		sb.append("<h4>" + msg.getTitle() + "</h4>");
+		page.append("<h4>").appendText(msg.getTitle()).append("</h4>");
 
-		sb.append(String.format("<p>%s (%s)</p>", msg.getAuthoredBy(), msg.getCreatedOn()));
-		sb.append("<p>" + msg.getBody() + "</p>");
-		sb.append("<p>" + msg.getAttachments() + "</p>");
+		writeAuthor(page, msg);
+		page.append("<p>").append(msg.getBody()).append("</p>");
+		writeAttachments(page, msg);
 
-		if (!msg.getReplies().isEmpty()) {
-			sb.append(getRepliesHtml(msg));
-		}
-
-		return sb.toString();
+		writeReplies(page, msg);
 	}
 
 	/**
-	 * Get the html string for all the replies for a message
+	 * Write all the replies for a message
 	 *
+	 * @param page the page to write to
 	 * @param msg
-	 * @return repliesHtml
+	 * @throws IOException
 	 */
-	private String getRepliesHtml(final SimpleMessage msg) {
-
-		final StringBuilder sb = new StringBuilder();
+	private void writeReplies(final HtmlPageWriter page, final SimpleMessage msg) throws IOException {
 
 		for (final SimpleMessage reply : msg.getReplies()) {
-			sb.append("<blockquote>");
-			sb.append(String.format("<p>%s (%s)</p>", reply.getAuthoredBy(), reply.getCreatedOn()));
-			sb.append("<p>" + reply.getBody() + "</p>");
-			sb.append("<p>" + reply.getAttachments() + "</p>");
+			page.append("<blockquote>");
+			writeAuthor(page, reply);
+			page.append("<p>").append(reply.getBody()).append("</p>");
+			writeAttachments(page, reply);
 
-			if (!reply.getReplies().isEmpty()) {
-				sb.append(getRepliesHtml(reply));
-			}
-			sb.append("</blockquote>");
+			writeReplies(page, reply);
+			page.append("</blockquote>");
 		}
+	}
 
-		return sb.toString();
+	private void writeAuthor(final HtmlPageWriter page, final SimpleMessage msg) throws IOException {
+		page.append("<p>").appendText(msg.getAuthoredBy()).append(" (").appendText(msg.getCreatedOn()).append(")</p>");
+	}
+
+	/**
+	 * Write the list of links to the attachments of an item
+	 *
+	 * @param page the page to write to
+	 * @param simpleArchiveItem
+	 * @throws IOException
+	 */
+	private void writeAttachments(final HtmlPageWriter page, final SimpleArchiveItem simpleArchiveItem) throws IOException {
+		page.append("<p><ul style=\"list-style: none;padding-left:0;\">");
+		for (final Map.Entry<String, String> attachment : simpleArchiveItem.getAttachments().entrySet()) {
+			page.append("<li><a href=\"").append(attachment.getKey()).append("\">").appendText(attachment.getValue())
+					.append("</a></li>");
+		}
+		page.append("</ul></p>");
 	}
 
 	/**
@@ -287,10 +362,14 @@ public class ForumsArchiver implements Archiveable {
 	 * @param messages The full list of messages for this topic
 	 * @param siteId
 	 * @param archiveId
+	 * @param toolName the name of the directory to archive to
 	 * @param folderStructure
+	 * @param context the context of the archive, to plan the paths of the attachments
+	 * @param conversationPath the path of the conversation page within the archive, to link from
 	 */
 	private void setMessageReplies(final SimpleMessage simpleTopMessage, final List<Message> messages, final List<String> folderStructure,
-			final String archiveId, final String siteId, final Long topicId) {
+			final ArchiveContext context, final String conversationPath, final String archiveId, final String siteId, final String toolName,
+			final Long topicId) {
 
 		for (final Message message : messages) {
 			// if this message is in reply to the top message
@@ -302,10 +381,11 @@ public class ForumsArchiver implements Archiveable {
 				// Archive the attachments for this message
 				// This has to be done here since we need to set the attachments html string for each message as the attachments are saved
 				if (message.getHasAttachments()) {
-					addAttachmentsToMessage(message, thisMessage, folderStructure, archiveId, siteId, topicId);
+					addAttachmentsToMessage(message, thisMessage, folderStructure, context, conversationPath, archiveId, siteId, toolName,
+							topicId);
 				}
 				// Recursively set the replies for this inner message
-				setMessageReplies(thisMessage, messages, folderStructure, archiveId, siteId, topicId);
+				setMessageReplies(thisMessage, messages, folderStructure, context, conversationPath, archiveId, siteId, toolName, topicId);
 			}
 		}
 	}
@@ -316,13 +396,17 @@ public class ForumsArchiver implements Archiveable {
 	 * @param message
 	 * @param simpleMessage
 	 * @param folderStructure
+	 * @param context the context of the archive, to plan the paths of the attachments
+	 * @param conversationPath the path of the conversation page within the archive, to link from
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 * @param topicId
 	 */
 	@SuppressWarnings("unchecked")
 	private void addAttachmentsToMessage(final Message message, final SimpleMessage simpleMessage, final List<String> folderStructure,
-			final String archiveId, final String siteId, final Long topicId) {
+			final ArchiveContext context, final String conversationPath, final String archiveId, final String siteId, final String toolName,
+			final Long topicId) {
 		final Topic topicWithMessageAttachments = this.forumManager.getTopicByIdWithMessagesAndAttachments(topicId);
 		setAttachments(message, topicWithMessageAttachments.getMessages());
 
@@ -330,28 +414,34 @@ public class ForumsArchiver implements Archiveable {
 		messageAttachmentsLoc.addAll(folderStructure);
 		messageAttachmentsLoc.add("message-attachments");
 		messageAttachmentsLoc.add("message-" + message.getId());
-		archiveAttachments(message.getAttachments(), messageAttachmentsLoc, archiveId, siteId, simpleMessage);
-		finaliseAttachmentsHtml(simpleMessage);
+		archiveAttachments(message.getAttachments(), messageAttachmentsLoc, context, conversationPath, archiveId, siteId, toolName,
+				simpleMessage);
 	}
 
 	/**
 	 * Archive a list of attachments
 	 *
 	 * @param assignment
+	 * @param context the context of the archive, to plan the paths of the attachments
+	 * @param pagePath the path of the page the item is written to within the archive, to link from
 	 * @param archiveId
 	 * @param siteId
-	 * @param simpleArchiveItem the object that the attachmentHtml needs to be updated for (SimpleMessage, SimpleTopic or SimpleForum)
+	 * @param toolName the name of the directory to archive to
+	 * @param simpleArchiveItem the object that the attachment links need to be added to (SimpleMessage, SimpleTopic or SimpleForum)
 	 */
-	private void archiveAttachments(final List<Attachment> attachments, final List<String> subdirs,
-			final String archiveId, final String siteId, final SimpleArchiveItem simpleArchiveItem) {
+	private void archiveAttachments(final List<Attachment> attachments, final List<String> subdirs, final ArchiveContext context,
+			final String pagePath, final String archiveId, final String siteId, final String toolName,
+			final SimpleArchiveItem simpleArchiveItem) {
 		for (final Attachment attachment : attachments) {
 			try {
-				final byte[] attachmentBytes = this.contentHostingService.getResource(attachment.getAttachmentId()).getContent();
-				this.archiverService.archiveContent(archiveId, siteId, this.toolName, attachmentBytes,
-						attachment.getAttachmentName(), subdirs.toArray(new String[subdirs.size()]));
-				// update the attachments HTML string, so there is a link to this attachment in the html file
-				addToAttachmentsHtml(subdirs, attachment.getAttachmentName(), simpleArchiveItem);
-			} catch (ServerOverloadException | IdUnusedException | TypeException | PermissionException e) {
+				final ContentResource resource = this.contentHostingService.getResource(attachment.getAttachmentId());
+				final String[] attachmentSubdirs = subdirs.toArray(new String[subdirs.size()]);
+				final String attachmentName = ArchivePathPlanner.item(attachment.getAttachmentId(), attachment.getAttachmentName());
+				this.archiverService.archiveContent(archiveId, siteId, toolName, resource, attachmentName, attachmentSubdirs);
+				// keep a link to this attachment for the html file
+				simpleArchiveItem.getAttachments().put(ArchivePathPlanner.relativeLink(pagePath,
+						context.getArchivePath(toolName, attachmentName, attachmentSubdirs)), attachment.getAttachmentName());
+			} catch (IdUnusedException | TypeException | PermissionException e) {
 				log.error("Error getting attachment with ID: ", attachment.getId());
 				continue;
 			}
@@ -377,45 +467,4 @@ public class ForumsArchiver implements Archiveable {
 			}
 		}
 	}
-
-	/**
-	 * Set the html string that contains a list of attachment hyperlinks
-	 *
-	 * @param attachmentLocation
-	 * @param attachmentName
-	 * @param simpleArchiveItem
-	 */
-	private void addToAttachmentsHtml(final List<String> attachmentLocation, final String attachmentName,
-			final SimpleArchiveItem simpleArchiveItem) {
-
-		String attachmentHyperlink;
-
-		String fullDir = "";
-
-		for (final String folder : attachmentLocation) {
-			fullDir += folder + "/";
-		}
-		fullDir += Sanitiser.sanitise(attachmentName);
-
-		if (simpleArchiveItem instanceof SimpleMessage) {
-			attachmentHyperlink = "<li><a href=\"../../../" + fullDir + "\">" + attachmentName
-					+ "</a></li>";
-		} else {
-			attachmentHyperlink = "<li><a href=\"../" + fullDir + "\">" + attachmentName
-					+ "</a></li>";
-		}
-
-		simpleArchiveItem.setAttachments(simpleArchiveItem.getAttachments() + attachmentHyperlink);
-	}
-
-	/**
-	 * Finalise the attachments html string by surrounding it by unordered list tags
-	 *
-	 * @param simpleArchiveItem
-	 */
-	private void finaliseAttachmentsHtml(final SimpleArchiveItem simpleArchiveItem) {
-
-		simpleArchiveItem.setAttachments("<ul style=\"list-style: none;padding-left:0;\">" + simpleArchiveItem.getAttachments() + "</ul>");
-
-	}
 }
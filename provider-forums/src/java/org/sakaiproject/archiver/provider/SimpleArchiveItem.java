@@ -1,12 +1,16 @@
 package org.sakaiproject.archiver.provider;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import lombok.Getter;
-import lombok.Setter;
 
 public abstract class SimpleArchiveItem {
 
+	/**
+	 * Links to the attachments that were archived for this item, from the link to the attachment name
+	 */
 	@Getter
-	@Setter
-	public String attachments = "";
+	private final Map<String, String> attachments = new LinkedHashMap<>();
 
 }
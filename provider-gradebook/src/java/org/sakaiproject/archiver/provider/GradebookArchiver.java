@@ -20,6 +20,7 @@ import org.sakaiproject.archiver.provider.util.FormatHelper;
 import org.sakaiproject.archiver.provider.util.I18n;
 import org.sakaiproject.archiver.provider.util.LastNameComparator;
 import org.sakaiproject.archiver.spi.Archiveable;
+import org.sakaiproject.archiver.util.JsonRecordWriter;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 import org.sakaiproject.service.gradebook.shared.CourseGrade;
@@ -106,12 +107,23 @@ public class GradebookArchiver implements Archiveable {
 
 			final List<StudentGradeInfo> grades = new ArrayList<>(matrix.values());
 
-			grades.forEach(gradeInfo -> {
-				final List<String> row = buildRow(gradeInfo, assignments);
+			// each row is also archived as a JSON record, keyed by the csv header, if enabled
+			try (JsonRecordWriter records = this.archiverService.isJsonOutputEnabled()
+					? this.archiverService.openRecordStream(archiveId, siteId, TOOL_NAME, "gradebook-export")
+					: null) {
+				for (final StudentGradeInfo gradeInfo : grades) {
+					final List<String> row = buildRow(gradeInfo, assignments);
 
-				// add row to csv
-				csvData.addRow(row.toArray(new String[row.size()]));
-			});
+					// add row to csv
+					csvData.addRow(row.toArray(new String[row.size()]));
+
+					if (records != null) {
+						records.write(buildRecord(header, row));
+					}
+				}
+			} catch (final IOException e) {
+				log.error("Error archiving gradebook records for site: {}", siteId, e);
+			}
 		}
 
 		// finalise the csv
@@ -214,6 +226,21 @@ public class GradebookArchiver implements Archiveable {
 		return row;
 	}
 
+	/**
+	 * Build the JSON record for a student from their row of the CSV
+	 *
+	 * @param header the header of the CSV
+	 * @param row the row for the student
+	 * @return map of column header to value, in the order of the columns
+	 */
+	private Map<String, String> buildRecord(final List<String> header, final List<String> row) {
+		final Map<String, String> record = new LinkedHashMap<>();
+		for (int i = 0; i < header.size(); i++) {
+			record.put(header.get(i), row.get(i));
+		}
+		return record;
+	}
+
 	/**
 	 * Get a list of gradeable users (ie students) as uuids
 	 *
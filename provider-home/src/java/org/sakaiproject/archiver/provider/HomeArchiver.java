@@ -10,10 +10,12 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -46,8 +48,6 @@ public class HomeArchiver implements Archiveable {
 	@Setter
 	private ArchiverService archiverService;
 
-	private String toolName;
-
 	@Override
 	public void archive(final String archiveId, final String siteId, final boolean includeStudentContent) {
 
@@ -59,20 +59,23 @@ public class HomeArchiver implements Archiveable {
 			return;
 		}
 
-		this.toolName = getToolName(siteId, TOOL_ID);
+		final String toolName = getToolName(siteId, TOOL_ID);
 
 		// get the html for the home frame
 		final String description = site.getHtmlDescription();
 		final String originalHtml = createHtmlFileContents(description);
 
 		// archive any images, alter html to point to the archived images
-		final String htmlWithLocalImages = archiveImages(originalHtml, archiveId, siteId);
-
-		// add header to html
-		final String finalHtml = Htmlifier.toHtml(htmlWithLocalImages, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-
-		// archive the home frame html
-		this.archiverService.archiveContent(archiveId, siteId, this.toolName, finalHtml.getBytes(), "index.html");
+		final String htmlWithLocalImages = archiveImages(originalHtml, archiveId, siteId, toolName);
+
+		// archive the home frame html, with a header
+		try (HtmlPageWriter page = new HtmlPageWriter(
+				this.archiverService.openContentStream(archiveId, siteId, toolName, "index.html"),
+				this.archiverService.getArchiveContext(archiveId).getSiteHeader(TOOL_ID))) {
+			page.append(htmlWithLocalImages);
+		} catch (final IOException e) {
+			log.error("Error archiving home frame for site {}", siteId, e);
+		}
 	}
 
 	@Override
@@ -96,13 +99,18 @@ public class HomeArchiver implements Archiveable {
 	 * @param originalHtml
 	 * @param archiveId
 	 * @param siteId
+	 * @param toolName the name of the directory to archive to
 	 * @return updated html
 	 */
-	private String archiveImages(final String originalHtml, final String archiveId, final String siteId) {
+	private String archiveImages(final String originalHtml, final String archiveId, final String siteId, final String toolName) {
 
 		final Document doc = Jsoup.parse(originalHtml);
 		final List<Element> imageElements = doc.select("img");
 
+		// links in the page are relative to where it is archived
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
+		final String pagePath = context.getArchivePath(toolName, "index.html");
+
 		for (final Element e : imageElements) {
 			try {
 
@@ -118,10 +126,10 @@ public class HomeArchiver implements Archiveable {
 				e.attr("height", "auto");
 
 				// archive the image
-				this.archiverService.archiveContent(archiveId, siteId, this.toolName, bytes, filename, "images");
+				this.archiverService.archiveContent(archiveId, siteId, toolName, bytes, filename, "images");
 
 				// change the src for this image in the html
-				e.attr("src", "images/" + filename);
+				e.attr("src", ArchivePathPlanner.relativeLink(pagePath, context.getArchivePath(toolName, filename, "images")));
 
 			} catch (final IOException e1) {
 				log.debug("Error when saving image from src: " + e.absUrl("src"));
@@ -1,5 +1,6 @@
 package org.sakaiproject.archiver.provider;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.Collections;
@@ -10,7 +11,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -57,10 +59,15 @@ public class NewsArchiver implements Archiveable {
 			final String toolId = t.getToolId();
 			final String toolName = getToolName(siteId, toolId);
 			final String filename = t.getTitle();
-			final String htmlBody = getAsHtml(getNewsData(t));
-			final String html = Htmlifier.toHtml(htmlBody, this.archiverService.getSiteHeader(siteId, toolId));
-			log.debug("news html: " + html);
-			this.archiverService.archiveContent(archiveId, siteId, toolName, html.getBytes(), filename + ".html");
+			// planned by the id of the tool as well as its title, so news tools with the same title are archived separately
+			try (HtmlPageWriter page = new HtmlPageWriter(
+					this.archiverService.openContentStream(archiveId, siteId, toolName,
+							ArchivePathPlanner.item(t.getId(), filename + ".html")),
+					this.archiverService.getArchiveContext(archiveId).getSiteHeader(toolId))) {
+				writeNews(page, getNewsData(t));
+			} catch (final IOException e) {
+				log.error("Error archiving news tool {}", filename, e);
+			}
 
 		});
 
@@ -143,20 +150,17 @@ public class NewsArchiver implements Archiveable {
 	}
 
 	/**
-	 * Get HTML representation
+	 * Write the HTML representation
 	 *
+	 * @param page the page to write to
 	 * @param data
-	 * @return
+	 * @throws IOException
 	 */
-	private String getAsHtml(final NewsData data) {
-		final StringBuilder sb = new StringBuilder();
-
+	private void writeNews(final HtmlPageWriter page, final NewsData data) throws IOException {
 		if (StringUtils.isNotBlank(data.getTitle())) {
-			sb.append("<h2>" + data.getTitle() + "</h2>");
+			page.append("<h2>").appendText(data.getTitle()).append("</h2>");
 		}
-		sb.append("<p><a href=\"" + data.getUrl() + "\">" + data.getUrl() + "</a></p>");
-
-		return sb.toString();
+		page.append("<p><a href=\"").appendText(data.getUrl()).append("\">").appendText(data.getUrl()).append("</a></p>");
 	}
 
 	/**
@@ -9,6 +9,7 @@ import org.sakaiproject.api.app.postem.data.GradebookManager;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.entity.api.EntityManager;
@@ -63,7 +64,8 @@ public class PostemArchiver implements Archiveable {
 
 		gradebooks.forEach(gradebook -> {
 			final byte[] fileContents = getFileContents(gradebook);
-			final String filename = getFileName(gradebook);
+			// planned by the id of the gradebook as well as its title, so gradebooks with the same title are archived separately
+			final String filename = ArchivePathPlanner.item(String.valueOf(gradebook.getId()), getFileName(gradebook));
 
 			if (ArrayUtils.isNotEmpty(fileContents)) {
 				this.archiverService.archiveContent(archiveId, siteId, toolName, fileContents, filename);
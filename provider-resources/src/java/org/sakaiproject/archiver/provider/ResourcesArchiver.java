@@ -1,20 +1,23 @@
 package org.sakaiproject.archiver.provider;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.entity.api.EntityPropertyNotDefinedException;
+import org.sakaiproject.entity.api.EntityPropertyTypeException;
 import org.sakaiproject.entity.api.ResourceProperties;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.site.api.SiteService;
-import org.sakaiproject.user.api.UserDirectoryService;
-import org.sakaiproject.user.api.UserNotDefinedException;
+import org.sakaiproject.time.api.Time;
+import org.sakaiproject.user.api.User;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -44,9 +47,6 @@ public class ResourcesArchiver implements Archiveable {
 	@Setter
 	private ContentHostingService contentHostingService;
 
-	@Setter
-	private UserDirectoryService userDirectoryService;
-
 	@Setter
 	private ArchiverService archiverService;
 
@@ -58,29 +58,46 @@ public class ResourcesArchiver implements Archiveable {
 
 		final String toolName = getToolName(siteId, TOOL_ID);
 
+		// only set for an incremental archive
+		final Date modifiedSince = this.archiverService.getModifiedSince(archiveId);
+
 		// TODO do we care about controlling student uploaded files here?
 		// List<String> studentUuids = this.getStudentUuids(siteId);
 
+		// creators are looked up once for the whole archive
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
+
 		// maintain a cache of display names for this archive run
 		final Map<String, String> userDisplayNames = new HashMap<>();
 
-		resources.forEach(resource -> {
+		for (final ContentResource resource : resources) {
+
+			if (this.archiverService.isArchiveCancelled(archiveId)) {
+				log.info("Archive {} has been cancelled, stopping", archiveId);
+				return;
+			}
+
+			if (!isModifiedSince(resource, modifiedSince)) {
+				continue;
+			}
+
+			// already in the archive if it is being resumed after a restart
+			if (this.archiverService.isItemArchived(archiveId, TOOL_ID, resource.getId())) {
+				continue;
+			}
 
 			final String creatorUuid = getCreatorUuid(resource);
-			userDisplayNames.computeIfAbsent(creatorUuid, k -> getUserDisplayName(creatorUuid));
+			userDisplayNames.computeIfAbsent(creatorUuid, k -> getUserDisplayName(context, creatorUuid));
 
 			final String[] subdirs = getSubDirs(siteId, resource);
 			final String filename = getFilename(resource);
 
 			log.debug("resource: {}", resource.getUrl());
 
-			try {
-				this.archiverService.archiveContent(archiveId, siteId, toolName, resource.getContent(), filename, subdirs);
-			} catch (final ServerOverloadException e) {
-				log.error("Error retrieving data for resource {}", resource.getUrl(true));
-			}
+			this.archiverService.archiveContent(archiveId, siteId, toolName, resource, filename, subdirs);
+			this.archiverService.checkpointItem(archiveId, TOOL_ID, resource.getId());
 
-		});
+		}
 	}
 
 	@Override
@@ -88,6 +105,26 @@ public class ResourcesArchiver implements Archiveable {
 		return this.archiverService.getToolName(siteId, TOOL_ID);
 	}
 
+	/**
+	 * Check if a resource has been modified since the given date
+	 *
+	 * @param resource
+	 * @param since the date to compare against, or null if everything is to be archived
+	 * @return true if the resource should be archived
+	 */
+	private boolean isModifiedSince(final ContentResource resource, final Date since) {
+		if (since == null) {
+			return true;
+		}
+		try {
+			final Time modified = resource.getProperties().getTimeProperty(ResourceProperties.PROP_MODIFIED_DATE);
+			return modified == null || modified.getTime() >= since.getTime();
+		} catch (final EntityPropertyNotDefinedException | EntityPropertyTypeException e) {
+			// can't tell so include it
+			return true;
+		}
+	}
+
 	/**
 	 * Get the collection Id for the site
 	 *
@@ -141,16 +178,17 @@ public class ResourcesArchiver implements Archiveable {
 	/**
 	 * Get the display name for a single user. Fall back to uuid if not found
 	 *
+	 * @param context the context of the archive, to look up the user
 	 * @param userUuid uuid to lookup
 	 * @return
 	 */
-	private String getUserDisplayName(final String userUuid) {
-		try {
-			return this.userDirectoryService.getUser(userUuid).getDisplayName();
-		} catch (final UserNotDefinedException e) {
+	private String getUserDisplayName(final ArchiveContext context, final String userUuid) {
+		final User user = context.getUser(userUuid);
+		if (user == null) {
 			log.debug("User {} could not be found, falling back to uuid", userUuid);
+			return userUuid;
 		}
-		return userUuid;
+		return user.getDisplayName();
 	}
 
 }
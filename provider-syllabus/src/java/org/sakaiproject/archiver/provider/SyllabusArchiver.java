@@ -1,23 +1,24 @@
 package org.sakaiproject.archiver.provider;
 
+import java.io.IOException;
 import java.util.Set;
 
 import org.sakaiproject.api.app.syllabus.SyllabusAttachment;
 import org.sakaiproject.api.app.syllabus.SyllabusData;
 import org.sakaiproject.api.app.syllabus.SyllabusItem;
 import org.sakaiproject.api.app.syllabus.SyllabusManager;
+import org.sakaiproject.archiver.api.ArchiveContext;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
-import org.sakaiproject.archiver.util.Sanitiser;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
 import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.exception.TypeException;
 
-import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -62,37 +63,27 @@ public class SyllabusArchiver implements Archiveable {
 		// Get the data
 		final Set<SyllabusData> syllabusSet = this.syllabusManager.getSyllabiForSyllabusItem(siteSyllabus);
 
+		final ArchiveContext context = this.archiverService.getArchiveContext(archiveId);
+
 		// Go through and archive each syllabus item
 		for (final SyllabusData syllabus : syllabusSet) {
 
-			final SimpleSyllabus simpleSyllabus = new SimpleSyllabus(syllabus.getTitle(), syllabus.getAsset());
-
-			// archive the attachments
-			final Set<SyllabusAttachment> syllabusAttachments = this.syllabusManager.getSyllabusAttachmentsForSyllabusData(syllabus);
-
-			for (final SyllabusAttachment syllabusAttachment : syllabusAttachments) {
-				byte[] syllabusAttachmentBytes;
-				try {
-					syllabusAttachmentBytes = this.contentHostingService.getResource(syllabusAttachment.getAttachmentId()).getContent();
-					this.archiverService.archiveContent(archiveId, siteId, toolName, syllabusAttachmentBytes, syllabusAttachment.getName(),
-							syllabus.getTitle() + "_attachments");
-					addToAttachmentsHtml(Sanitiser.sanitise(syllabus.getTitle()) + "_attachments/",
-							Sanitiser.sanitise(syllabusAttachment.getName()), simpleSyllabus);
-				} catch (ServerOverloadException | PermissionException | IdUnusedException | TypeException e) {
-					log.error("Error getting syllabus attachment " + syllabusAttachment.getName() + " in syllabus " + syllabus.getTitle());
-					continue;
-				}
-			}
+			// archive the syllabus as a html file, with its attachments
+			try (HtmlPageWriter page = new HtmlPageWriter(
+					this.archiverService.openContentStream(archiveId, siteId, toolName, getItemName(syllabus, ".html")),
+					context.getSiteHeader(TOOL_ID))) {
 
-			if (!syllabusAttachments.isEmpty()) {
-				finaliseAttachmentsHtml(simpleSyllabus);
-			}
+				page.append("<p>").append(syllabus.getAsset()).append("</p>");
 
-			// archive the syllabus as a html file
-			final String htmlBody = getAsHtml(simpleSyllabus);
-			final String html = Htmlifier.toHtml(htmlBody, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-			log.debug("Archive item metadata: " + html);
-			this.archiverService.archiveContent(archiveId, siteId, toolName, html.getBytes(), simpleSyllabus.getTitle() + ".html");
+				final Set<SyllabusAttachment> syllabusAttachments = this.syllabusManager.getSyllabusAttachmentsForSyllabusData(syllabus);
+				if (!syllabusAttachments.isEmpty()) {
+					page.append("<p><ul style=\"list-style: none;padding-left:0;\">");
+					archiveAttachments(page, context, syllabusAttachments, syllabus, archiveId, siteId, toolName);
+					page.append("</ul></p>");
+				}
+			} catch (final IOException e) {
+				log.error("Error archiving syllabus " + syllabus.getTitle(), e);
+			}
 		}
 	}
 
@@ -102,72 +93,49 @@ public class SyllabusArchiver implements Archiveable {
 	}
 
 	/**
-	 * Set the html string that contains a list of attachment hyperlinks
-	 *
-	 * @param attachmentLocation
-	 * @param attachmentName
-	 * @param simpleSyllabus
-	 */
-	private void addToAttachmentsHtml(final String attachmentLocation, final String attachmentName,
-			final SimpleSyllabus simpleSyllabus) {
-
-		final String attachmentHyperlink = "<li><a href=\"./" + attachmentLocation + attachmentName + "\">" + attachmentName
-				+ "</a></li>";
-		simpleSyllabus.setAttachments(simpleSyllabus.getAttachments() + attachmentHyperlink);
-	}
-
-	/**
-	 * Finalise the attachments html string by surrounding it by unordered list tags
+	 * Archive the attachments of a syllabus item, adding a link to each one to the page
 	 *
-	 * @param simpleSyllabus
+	 * @param page the page to write the links to
+	 * @param context the context of the archive, to plan the paths of the attachments
+	 * @param syllabusAttachments
+	 * @param syllabus
+	 * @param archiveId
+	 * @param siteId
+	 * @param toolName
+	 * @throws IOException
 	 */
-	private void finaliseAttachmentsHtml(final SimpleSyllabus simpleSyllabus) {
-
-		simpleSyllabus
-				.setAttachments("<ul style=\"list-style: none;padding-left:0;\">" + simpleSyllabus.getAttachments() + "</ul>");
-
-	}
-
-	/**
-	 * Construct the syllabus html string
-	 *
-	 * @param simpleSyllabus
-	 * @return syllabusBodyHtml
-	 */
-	private String getAsHtml(final SimpleSyllabus simpleSyllabus) {
-
-		final StringBuilder sb = new StringBuilder();
-
-		sb.append("<p>" + simpleSyllabus.getBody() + "</p>");
-
-		if (simpleSyllabus.getAttachments().length() > 0) {
-			sb.append("<p>" + simpleSyllabus.getAttachments() + "</p>");
+	private void archiveAttachments(final HtmlPageWriter page, final ArchiveContext context,
+			final Set<SyllabusAttachment> syllabusAttachments, final SyllabusData syllabus, final String archiveId, final String siteId,
+			final String toolName) throws IOException {
+
+		final String pagePath = context.getArchivePath(toolName, getItemName(syllabus, ".html"));
+		final String attachmentLocation = getItemName(syllabus, "_attachments");
+
+		for (final SyllabusAttachment syllabusAttachment : syllabusAttachments) {
+			try {
+				final ContentResource resource = this.contentHostingService.getResource(syllabusAttachment.getAttachmentId());
+				final String attachmentName = ArchivePathPlanner.item(syllabusAttachment.getAttachmentId(), syllabusAttachment.getName());
+				this.archiverService.archiveContent(archiveId, siteId, toolName, resource, attachmentName, attachmentLocation);
+
+				final String link = ArchivePathPlanner.relativeLink(pagePath, context.getArchivePath(toolName, attachmentName,
+						attachmentLocation));
+				page.append("<li><a href=\"").append(link).append("\">").appendText(syllabusAttachment.getName()).append("</a></li>");
+			} catch (PermissionException | IdUnusedException | TypeException e) {
+				log.error("Error getting syllabus attachment " + syllabusAttachment.getName() + " in syllabus " + syllabus.getTitle());
+				continue;
+			}
 		}
-
-		return sb.toString();
 	}
 
 	/**
-	 * Simplified helper class to represent metadata for an individual syllabus item in a site
+	 * Get the name that a syllabus item is archived under. It is planned by the id of the item as well as its title, so items with the
+	 * same title are archived separately.
+	 *
+	 * @param syllabus
+	 * @param suffix added to the title, eg the extension
+	 * @return the name to plan
 	 */
-	private static class SimpleSyllabus {
-
-		@Getter
-		@Setter
-		private String title;
-
-		@Getter
-		@Setter
-		private String body;
-
-		@Getter
-		@Setter
-		private String attachments = "";
-
-		public SimpleSyllabus(final String title, final String body) {
-			this.title = title;
-			this.body = body;
-		}
+	private String getItemName(final SyllabusData syllabus, final String suffix) {
+		return ArchivePathPlanner.item(String.valueOf(syllabus.getSyllabusId()), syllabus.getTitle() + suffix);
 	}
-
 }
@@ -1,5 +1,6 @@
 package org.sakaiproject.archiver.provider;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -7,6 +8,7 @@ import java.util.Set;
 import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.spi.Archiveable;
+import org.sakaiproject.archiver.util.ArchivePathPlanner;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -49,7 +51,9 @@ public class WebContentArchiver implements Archiveable {
 			final String url = t.getPlacementConfig().getProperty("source");
 			final String filename = t.getTitle();
 			final String fileContents = createUrlFileContents(url);
-			this.archiverService.archiveContent(archiveId, siteId, TOOL_NAME, fileContents.getBytes(), filename + ".url");
+			// planned by the id of the tool as well as its title, so tools with the same title are archived separately
+			this.archiverService.archiveContent(archiveId, siteId, TOOL_NAME, fileContents.getBytes(StandardCharsets.UTF_8),
+					ArchivePathPlanner.item(t.getId(), filename + ".url"));
 		});
 
 	}
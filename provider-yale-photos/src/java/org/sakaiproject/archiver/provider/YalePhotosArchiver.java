@@ -26,7 +26,7 @@ import org.sakaiproject.archiver.api.ArchiverRegistry;
 import org.sakaiproject.archiver.api.ArchiverService;
 import org.sakaiproject.archiver.provider.model.RosterEntry;
 import org.sakaiproject.archiver.spi.Archiveable;
-import org.sakaiproject.archiver.util.Htmlifier;
+import org.sakaiproject.archiver.util.HtmlPageWriter;
 import org.sakaiproject.entitybroker.EntityBroker;
 import org.sakaiproject.entitybroker.entityprovider.extension.ActionReturn;
 import org.sakaiproject.entitybroker.exception.EntityNotFoundException;
@@ -192,11 +192,11 @@ public class YalePhotosArchiver implements Archiveable {
 			log.debug("roster entries: " + entries);
 
 			// now turn the list into some nice HTML
-			final String htmlBody = getAsHtml(entries);
-			final String html = Htmlifier.toHtml(htmlBody, this.archiverService.getSiteHeader(siteId, TOOL_ID));
-			log.debug("html: " + html);
-
-			this.archiverService.archiveContent(archiveId, siteId, toolName, html.getBytes(), "roster.html");
+			try (HtmlPageWriter page = new HtmlPageWriter(
+					this.archiverService.openContentStream(archiveId, siteId, toolName, "roster.html"),
+					this.archiverService.getArchiveContext(archiveId).getSiteHeader(TOOL_ID))) {
+				writeRoster(page, entries);
+			}
 
 		} catch (InvalidFormatException | EncryptedDocumentException | IOException e) {
 			log.error("Roster export could not be processed", e);
@@ -305,44 +305,40 @@ public class YalePhotosArchiver implements Archiveable {
 	 * This uses bootstrap classes and one row of many columns which will auto wrap. For more control over the layout it could be split into
 	 * multiple rows.
 	 *
+	 * @param page the page to write to
 	 * @param entries
-	 * @return
+	 * @throws IOException
 	 */
-	private String getAsHtml(final List<RosterEntry> entries) {
-
-		final StringBuilder sb = new StringBuilder();
+	private void writeRoster(final HtmlPageWriter page, final List<RosterEntry> entries) throws IOException {
 
 		// get the count of each role in the list
 		final Map<String, Long> roleCount = entries.stream().collect(Collectors.groupingBy(e -> e.getRole(), Collectors.counting()));
 
 		// add a role tally
-		sb.append("<div class=\"lead\">");
-		roleCount.forEach((k, v) -> {
-			sb.append(k + "&nbsp;<strong>" + v + "</strong><br />");
-		});
-		sb.append("</div>");
+		page.append("<div class=\"lead\">");
+		for (final Map.Entry<String, Long> role : roleCount.entrySet()) {
+			page.appendText(role.getKey()).append("&nbsp;<strong>").append(String.valueOf(role.getValue())).append("</strong><br />");
+		}
+		page.append("</div>");
 
 		// output the roster data
-		sb.append("<div class=\"row\">");
+		page.append("<div class=\"row\">");
 
-		entries.forEach(entry -> {
-			sb.append("<div class=\"col-xs-3\">");
-			sb.append("<img class=\"img-rounded\" src=\"" + entry.getPhotoUrl() + "\">");
-			sb.append("<div>" + entry.getDisplayName() + "</div>");
-			sb.append("<div>Role: " + entry.getRole() + "</div>");
-			sb.append("<div>" + entry.getEmailAddress() + "</div>");
+		for (final RosterEntry entry : entries) {
+			page.append("<div class=\"col-xs-3\">");
+			page.append("<img class=\"img-rounded\" src=\"").appendText(entry.getPhotoUrl()).append("\">");
+			page.append("<div>").appendText(entry.getDisplayName()).append("</div>");
+			page.append("<div>Role: ").appendText(entry.getRole()).append("</div>");
+			page.append("<div>").appendText(entry.getEmailAddress()).append("</div>");
 
-			entry.getFields().forEach((field, value) -> {
-				sb.append("<div>" + field + ": " + value + "</div>");
-			});
-			sb.append("<br />"); // spacer hack
-			sb.append("</div>");
-		});
-
-		sb.append("</div>");
-
-		return sb.toString();
+			for (final Map.Entry<String, String> field : entry.getFields().entrySet()) {
+				page.append("<div>").appendText(field.getKey()).append(": ").appendText(field.getValue()).append("</div>");
+			}
+			page.append("<br />"); // spacer hack
+			page.append("</div>");
+		}
 
+		page.append("</div>");
 	}
 
 }
@@ -6,10 +6,13 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -20,11 +23,13 @@ import org.sakaiproject.archiver.app.model.ArchiveSettings;
 import org.sakaiproject.archiver.app.model.ArchiveSite;
 import org.sakaiproject.archiver.app.model.ArchiveableTool;
 import org.sakaiproject.archiver.dto.Archive;
+import org.sakaiproject.archiver.dto.ProviderResult;
 import org.sakaiproject.archiver.exception.ArchiveAlreadyInProgressException;
 import org.sakaiproject.archiver.exception.ArchiveCancellationException;
 import org.sakaiproject.archiver.exception.ArchiveCompletionException;
 import org.sakaiproject.archiver.exception.ArchiveInitialisationException;
 import org.sakaiproject.archiver.exception.ArchiveNotFoundException;
+import org.sakaiproject.archiver.exception.ArchiveQueueFullException;
 import org.sakaiproject.archiver.exception.ToolsNotSpecifiedException;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
@@ -38,7 +43,6 @@ import org.sakaiproject.site.api.ToolConfiguration;
 import org.sakaiproject.tool.api.ToolManager;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
-import org.sakaiproject.user.api.UserNotDefinedException;
 import org.sakaiproject.util.ResourceLoader;
 
 import lombok.Setter;
@@ -158,6 +162,18 @@ public class ArchiverBusinessService {
 
 	}
 
+	/**
+	 * Checks if an archive is waiting for a free slot for the current site.
+	 *
+	 * @return true/false
+	 */
+	public boolean isArchiveQueued() {
+		final String siteId = getCurrentSiteId();
+
+		final Archive archive = this.archiverService.getLatest(siteId);
+		return (archive != null && archive.getStatus() == Status.QUEUED);
+	}
+
 	/**
 	 * Checks if an archive was recently completed for the current site. Recent is defined as last 30 seconds.
 	 *
@@ -189,10 +205,11 @@ public class ArchiverBusinessService {
 	 * @throws {@link ArchiveAlreadyInProgressException} if an archive is already in progress for the given site
 	 * @throws {@link ArchiveInitialisationException} if the archive could not be initialised
 	 * @throws {@link ArchiveCompletionException} if the archive could not be completed properly
+	 * @throws {@link ArchiveQueueFullException} if the archive queue is full
 	 */
 	public void createArchive(final ArchiveSettings settings)
 			throws ToolsNotSpecifiedException, ArchiveAlreadyInProgressException, ArchiveInitialisationException,
-			ArchiveCompletionException {
+			ArchiveCompletionException, ArchiveQueueFullException {
 
 		log.debug("settings: " + settings);
 
@@ -203,7 +220,21 @@ public class ArchiverBusinessService {
 		final String[] toolIds = settings.getArchiveableTools().stream().filter(t -> t.isIncludeInArchive()).map(t -> t.getToolId())
 				.toArray(String[]::new);
 
-		this.archiverService.startArchive(siteId, userUuid, settings.isIncludeStudentData(), toolIds);
+		final Archive base = settings.isIncremental() ? this.archiverService.getLatestComplete(siteId) : null;
+		if (base != null) {
+			this.archiverService.startIncrementalArchive(siteId, userUuid, settings.isIncludeStudentData(), base.getArchiveId(), toolIds);
+		} else {
+			this.archiverService.startArchive(siteId, userUuid, settings.isIncludeStudentData(), toolIds);
+		}
+	}
+
+	/**
+	 * Checks if there is a complete archive for the current site that an incremental archive can be based on
+	 *
+	 * @return true/false
+	 */
+	public boolean canArchiveIncrementally() {
+		return this.archiverService.getLatestComplete(getCurrentSiteId()) != null;
 	}
 
 	/**
@@ -218,18 +249,49 @@ public class ArchiverBusinessService {
 	}
 
 	/**
-	 * Get a user's display name
+	 * Get a page of Archives for the given site.
 	 *
-	 * @param userUuid
-	 * @return display name or uuid if user cannot be found
+	 * @param siteId the siteId to get the archives for, or null for all sites
+	 * @param first the index of the first archive to return
+	 * @param count the maximum number to return
+	 * @return
 	 */
-	public String getUserDisplayName(final String userUuid) {
-		try {
-			return this.userDirectoryService.getUser(userUuid).getDisplayName();
-		} catch (final UserNotDefinedException e) {
-			log.debug("No user found for {}", userUuid);
-			return userUuid;
-		}
+	public List<Archive> getArchives(final String siteId, final int first, final int count) {
+		return this.archiverService.getArchives(siteId, first, count);
+	}
+
+	/**
+	 * Count the Archives for the given site.
+	 *
+	 * @param siteId the siteId to count the archives for, or null for all sites
+	 * @return
+	 */
+	public long countArchives(final String siteId) {
+		return this.archiverService.countArchives(siteId);
+	}
+
+	/**
+	 * Get the results of each provider that ran for a set of archives in a single lookup
+	 *
+	 * @param archiveIds the ids of the archives
+	 * @return map of archiveId to its results. Archives that have not run yet are not in the map.
+	 */
+	public Map<String, List<ProviderResult>> getProviderResults(final Collection<String> archiveIds) {
+		return this.archiverService.getProviderResults(archiveIds);
+	}
+
+	/**
+	 * Get the display names of a set of users in a single lookup
+	 *
+	 * @param userUuids
+	 * @return map of uuid to display name. Users that cannot be found are mapped to their uuid.
+	 */
+	public Map<String, String> getUserDisplayNames(final Collection<String> userUuids) {
+		final Map<String, String> names = new HashMap<>();
+		this.userDirectoryService.getUsers(new ArrayList<>(new HashSet<>(userUuids)))
+				.forEach(user -> names.put(user.getId(), user.getDisplayName()));
+		userUuids.forEach(userUuid -> names.putIfAbsent(userUuid, userUuid));
+		return names;
 	}
 
 	/**
@@ -290,6 +352,18 @@ public class ArchiverBusinessService {
 		}
 	}
 
+	/**
+	 * Get the titles of a set of sites. Each site is only looked up once, however many times it is in the collection.
+	 *
+	 * @param siteIds
+	 * @return map of siteId to title. Sites that cannot be found are mapped to their siteId.
+	 */
+	public Map<String, String> getSiteTitles(final Collection<String> siteIds) {
+		final Map<String, String> titles = new HashMap<>();
+		new HashSet<>(siteIds).forEach(siteId -> titles.put(siteId, getSiteTitle(siteId)));
+		return titles;
+	}
+
 	/**
 	 * Cancel an archive
 	 * 
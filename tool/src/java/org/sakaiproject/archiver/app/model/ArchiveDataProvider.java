@@ -0,0 +1,147 @@
+package org.sakaiproject.archiver.app.model;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.archiver.app.business.ArchiverBusinessService;
+import org.sakaiproject.archiver.dto.Archive;
+import org.sakaiproject.archiver.dto.ProviderResult;
+
+/**
+ * Provides the archives of a site, or of all sites, a page at a time from the database.
+ *
+ * The site titles, creator names and provider results for the page are looked up together when the page is loaded, rather than for each
+ * row as it is rendered. The page, count and names are only kept until the end of the request.
+ */
+public class ArchiveDataProvider implements IDataProvider<Archive> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String siteId;
+	private final long max;
+
+	@SpringBean(name = "org.sakaiproject.archiver.app.business.ArchiverBusinessService")
+	private transient ArchiverBusinessService businessService;
+
+	private transient Long size;
+	private transient long first;
+	private transient List<Archive> page;
+	private transient Map<String, String> siteTitles;
+	private transient Map<String, String> creatorNames;
+	private transient Map<String, List<ProviderResult>> providerResults;
+
+	/**
+	 * Provide archives for a site
+	 *
+	 * @param siteId the site to provide the archives of, or null for all sites. Site titles are only looked up for all sites.
+	 * @param max the maximum number of archives to provide, newest first
+	 */
+	public ArchiveDataProvider(final String siteId, final int max) {
+		Injector.get().inject(this);
+		this.siteId = siteId;
+		this.max = max;
+	}
+
+	@Override
+	public Iterator<? extends Archive> iterator(final long first, final long count) {
+		final long limit = Math.min(count, size() - first);
+		if (limit <= 0) {
+			return Collections.emptyIterator();
+		}
+		if (this.page == null || this.first != first || this.page.size() != limit) {
+			loadPage(first, limit);
+		}
+		return this.page.iterator();
+	}
+
+	@Override
+	public long size() {
+		if (this.size == null) {
+			this.size = Math.min(getBusinessService().countArchives(this.siteId), this.max);
+		}
+		return this.size;
+	}
+
+	@Override
+	public IModel<Archive> model(final Archive archive) {
+		return Model.of(archive);
+	}
+
+	@Override
+	public void detach() {
+		this.size = null;
+		this.page = null;
+		this.siteTitles = null;
+		this.creatorNames = null;
+		this.providerResults = null;
+	}
+
+	/**
+	 * Get the title of the site of an archive in the current page
+	 *
+	 * @param siteId
+	 * @return the title, or the siteId if it is not known
+	 */
+	public String getSiteTitle(final String siteId) {
+		return (this.siteTitles != null) ? this.siteTitles.getOrDefault(siteId, siteId) : siteId;
+	}
+
+	/**
+	 * Get the display name of the user that created an archive in the current page
+	 *
+	 * @param userUuid
+	 * @return the display name, or the uuid if it is not known
+	 */
+	public String getCreatorName(final String userUuid) {
+		return (this.creatorNames != null) ? this.creatorNames.getOrDefault(userUuid, userUuid) : userUuid;
+	}
+
+	/**
+	 * Get the results of each provider that ran for an archive in the current page
+	 *
+	 * @param archiveId
+	 * @return the results, in the order they started, or an empty list if the archive has not run yet
+	 */
+	public List<ProviderResult> getProviderResults(final String archiveId) {
+		return (this.providerResults != null) ? this.providerResults.getOrDefault(archiveId, Collections.emptyList())
+				: Collections.emptyList();
+	}
+
+	/**
+	 * Load a page of archives along with the site titles, creator names and provider results for it
+	 *
+	 * @param first the index of the first archive
+	 * @param count the number of archives
+	 */
+	private void loadPage(final long first, final long count) {
+		final ArchiverBusinessService service = getBusinessService();
+
+		this.first = first;
+		this.page = service.getArchives(this.siteId, (int) first, (int) count);
+		this.creatorNames = service.getUserDisplayNames(this.page.stream().map(Archive::getUserUuid).collect(Collectors.toList()));
+		this.siteTitles = (this.siteId == null)
+				? service.getSiteTitles(this.page.stream().map(Archive::getSiteId).collect(Collectors.toList()))
+				: Collections.emptyMap();
+		this.providerResults = service.getProviderResults(this.page.stream().map(Archive::getArchiveId).collect(Collectors.toList()));
+	}
+
+	/**
+	 * The service is transient so it is injected again after the page has been deserialised
+	 *
+	 * @return
+	 */
+	private ArchiverBusinessService getBusinessService() {
+		if (this.businessService == null) {
+			Injector.get().inject(this);
+		}
+		return this.businessService;
+	}
+}
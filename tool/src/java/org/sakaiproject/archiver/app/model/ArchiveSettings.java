@@ -24,6 +24,13 @@ public class ArchiveSettings implements Serializable {
 	@Setter
 	private List<ArchiveableTool> archiveableTools;
 
+	/**
+	 * Only include content changed since the last complete archive
+	 */
+	@Getter
+	@Setter
+	private boolean incremental;
+
 	@Override
 	public String toString() {
 		return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
@@ -20,6 +20,8 @@ import org.sakaiproject.archiver.app.model.ArchiveableTool;
 import org.sakaiproject.archiver.exception.ArchiveAlreadyInProgressException;
 import org.sakaiproject.archiver.exception.ArchiveCompletionException;
 import org.sakaiproject.archiver.exception.ArchiveInitialisationException;
+import org.sakaiproject.archiver.exception.ArchiveQueueFullException;
+import org.sakaiproject.archiver.exception.ArchiveStorageFullException;
 import org.sakaiproject.archiver.exception.ToolsNotSpecifiedException;
 
 public class CreateArchivePage extends BasePage {
@@ -68,7 +70,7 @@ public class CreateArchivePage extends BasePage {
 
 				try {
 					CreateArchivePage.this.businessService.createArchive(formSettings);
-					updateStatusBanner(statusBanner, Status.IN_PROGRESS);
+					updateStatusBanner(statusBanner, getArchiveStatus());
 				} catch (final ToolsNotSpecifiedException e) {
 					error(getString("archive.error.notools"));
 				} catch (final ArchiveAlreadyInProgressException e) {
@@ -77,6 +79,10 @@ public class CreateArchivePage extends BasePage {
 					error(getString("archive.error.starting"));
 				} catch (final ArchiveCompletionException e) {
 					error(getString("archive.error.completing"));
+				} catch (final ArchiveStorageFullException e) {
+					error(getString("archive.error.storage"));
+				} catch (final ArchiveQueueFullException e) {
+					error(getString("archive.error.busy"));
 				}
 
 			}
@@ -118,6 +124,20 @@ public class CreateArchivePage extends BasePage {
 		includeStudentData.setOutputMarkupId(true);
 		form.add(includeStudentData);
 
+		// incremental, only if there is a complete archive to build on
+		final boolean canArchiveIncrementally = this.businessService.canArchiveIncrementally();
+		final CheckBox incremental = new CheckBox("incremental", new PropertyModel<Boolean>(settings, "incremental")) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isVisible() {
+				return canArchiveIncrementally;
+			}
+		};
+		incremental.setOutputMarkupId(true);
+		form.add(incremental);
+
 		add(form);
 
 		// error message if no tools
@@ -156,6 +176,11 @@ public class CreateArchivePage extends BasePage {
 		if (status == Status.NONE) {
 			label.setVisible(false);
 		}
+		if (status == Status.QUEUED) {
+			label.setDefaultModel(new ResourceModel("archive.status.queued"));
+			label.add(AttributeModifier.replace("class", "messageInformation"));
+			label.setVisible(true);
+		}
 		if (status == Status.IN_PROGRESS) {
 			label.setDefaultModel(new ResourceModel("archive.status.inprogress"));
 			label.add(AttributeModifier.replace("class", "messageSuccess"));
@@ -175,7 +200,9 @@ public class CreateArchivePage extends BasePage {
 	 * @return
 	 */
 	private Status getArchiveStatus() {
-		if (this.businessService.isArchiveInProgress()) {
+		if (this.businessService.isArchiveQueued()) {
+			return Status.QUEUED;
+		} else if (this.businessService.isArchiveInProgress()) {
 			return Status.IN_PROGRESS;
 		} else if (this.businessService.isArchiveRecentlyCompleted()) {
 			return Status.RECENTLY_COMPLETED;
@@ -189,6 +216,7 @@ public class CreateArchivePage extends BasePage {
 	 *
 	 */
 	private enum Status {
+		QUEUED,
 		IN_PROGRESS,
 		RECENTLY_COMPLETED,
 		NONE;
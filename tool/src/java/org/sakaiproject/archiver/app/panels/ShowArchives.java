@@ -3,6 +3,7 @@ package org.sakaiproject.archiver.app.panels;
 import java.io.File;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.wicket.AttributeModifier;
@@ -11,18 +12,22 @@ import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.DownloadLink;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.markup.html.navigation.paging.PagingNavigator;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.markup.repeater.data.DataView;
-import org.apache.wicket.markup.repeater.data.ListDataProvider;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.model.StringResourceModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.sakaiproject.archiver.api.Status;
 import org.sakaiproject.archiver.app.business.ArchiverBusinessService;
 import org.sakaiproject.archiver.app.components.RichFeedbackPanel;
+import org.sakaiproject.archiver.app.model.ArchiveDataProvider;
 import org.sakaiproject.archiver.dto.Archive;
+import org.sakaiproject.archiver.dto.ProviderResult;
 import org.sakaiproject.archiver.exception.ArchiveCancellationException;
 import org.sakaiproject.archiver.exception.ArchiveNotFoundException;
 import org.sakaiproject.archiver.exception.ZipNotFoundException;
@@ -45,7 +50,8 @@ public class ShowArchives extends Panel {
 	@SpringBean(name = "org.sakaiproject.archiver.app.business.ArchiverBusinessService")
 	private transient ArchiverBusinessService businessService;
 
-	List<Archive> archives;
+	// pages the archives from the database and looks up the site titles, creator names and provider results for each page together
+	private ArchiveDataProvider dataProvider;
 
 	/**
 	 * Show archives for current site
@@ -91,10 +97,7 @@ public class ShowArchives extends Panel {
 
 		log.debug("Archives for: " + this.siteId);
 
-		// get list of archives
-		getArchives();
-
-		log.debug("Count: " + this.archives.size());
+		this.dataProvider = new ArchiveDataProvider(this.siteId, this.max);
 
 		// wrap the table
 		final WebMarkupContainer table = new WebMarkupContainer("archiveHistoryTable") {
@@ -102,7 +105,7 @@ public class ShowArchives extends Panel {
 
 			@Override
 			public boolean isVisible() {
-				return !ShowArchives.this.archives.isEmpty();
+				return ShowArchives.this.dataProvider.size() > 0;
 			}
 		};
 		table.setOutputMarkupId(true);
@@ -118,17 +121,7 @@ public class ShowArchives extends Panel {
 			}
 		});
 
-		// archive data view, wrapped and getData overriden so it can use whatever data we have
-		final ListDataProvider<Archive> listDataProvider = new ListDataProvider<Archive>() {
-			private static final long serialVersionUID = 1L;
-
-			@Override
-			protected List<Archive> getData() {
-				return ShowArchives.this.archives;
-			}
-		};
-
-		final DataView<Archive> view = new DataView<Archive>("archiveHistoryView", listDataProvider) {
+		final DataView<Archive> view = new DataView<Archive>("archiveHistoryView", this.dataProvider) {
 			private static final long serialVersionUID = 1L;
 
 			@Override
@@ -138,7 +131,7 @@ public class ShowArchives extends Panel {
 				log.debug(archive.toString());
 
 				// this column is only shown if showSite is true
-				item.add(new Label("site", ShowArchives.this.businessService.getSiteTitle(archive.getSiteId())) {
+				item.add(new Label("site", ShowArchives.this.dataProvider.getSiteTitle(archive.getSiteId())) {
 					private static final long serialVersionUID = 1L;
 
 					@Override
@@ -151,6 +144,7 @@ public class ShowArchives extends Panel {
 
 				final WebMarkupContainer status = new WebMarkupContainer("status");
 				status.add(new Label("statusText", archive.getStatus().toString()));
+				status.add(new WebMarkupContainer("incremental").setVisible(archive.isIncremental()));
 				status.add(new AjaxLink<Void>("cancelLink") {
 
 					private static final long serialVersionUID = 1L;
@@ -159,7 +153,7 @@ public class ShowArchives extends Panel {
 					public void onClick(final AjaxRequestTarget target) {
 						try {
 							ShowArchives.this.businessService.cancelArchive(archive.getArchiveId());
-							getArchives();
+							ShowArchives.this.dataProvider.detach();
 						} catch (final ArchiveCancellationException e) {
 							error(getString("archive.error.cancel"));
 							target.addChildren(getPage(), RichFeedbackPanel.class);
@@ -170,14 +164,38 @@ public class ShowArchives extends Panel {
 
 					@Override
 					public boolean isVisible() {
-						return (archive.getStatus() == Status.STARTED);
+						return (archive.getStatus() == Status.QUEUED || archive.getStatus() == Status.STARTED);
 					}
 
 				});
+
+				// breakdown of each provider so a partial failure can be traced to the tool that caused it
+				status.add(new ListView<ProviderResult>("providers", getProviderResultsModel(archive)) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void populateItem(final ListItem<ProviderResult> providerItem) {
+						final ProviderResult result = providerItem.getModelObject();
+						providerItem.add(new Label("providerTool", result.getToolId()));
+						providerItem.add(new Label("providerStatus", result.getStatus().toString()));
+						providerItem.add(new Label("providerSummary", new StringResourceModel("history.provider.summary", null,
+								new Object[] { result.getFileCount(), FileUtils.byteCountToDisplaySize(result.getBytesWritten()),
+										result.getDuration() / 1000 })));
+						if (StringUtils.isNotBlank(result.getError())) {
+							providerItem.add(AttributeModifier.replace("title", result.getError()));
+							providerItem.add(AttributeModifier.append("class", "text-danger"));
+						}
+					}
+
+					@Override
+					public boolean isVisible() {
+						return archive.getStatus() != Status.QUEUED;
+					}
+				});
 				status.setOutputMarkupId(true);
 				item.add(status);
 
-				item.add(new Label("creator", ShowArchives.this.businessService.getUserDisplayName(archive.getUserUuid())));
+				item.add(new Label("creator", ShowArchives.this.dataProvider.getCreatorName(archive.getUserUuid())));
 
 				// download link
 				final DownloadLink downloadLink = new DownloadLink("downloadLink", getFileModel(archive), getFileName(archive)) {
@@ -192,7 +210,7 @@ public class ShowArchives extends Panel {
 				item.add(downloadLink);
 
 				// highlight archives that are in progress
-				if (archive.getStatus() == Status.STARTED) {
+				if (archive.getStatus() == Status.QUEUED || archive.getStatus() == Status.STARTED) {
 					item.add(AttributeModifier.append("class", "warning"));
 				}
 			}
@@ -208,7 +226,7 @@ public class ShowArchives extends Panel {
 
 			@Override
 			public boolean isVisible() {
-				return ShowArchives.this.archives.isEmpty();
+				return ShowArchives.this.dataProvider.size() == 0;
 			}
 		});
 	}
@@ -238,6 +256,26 @@ public class ShowArchives extends Panel {
 		};
 	}
 
+	/**
+	 * Get the provider results for the archive. These are looked up for the whole page by the {@link ArchiveDataProvider}, and delegated
+	 * to a {@link LoadableDetachableModel} so they are not kept with the page.
+	 *
+	 * @param archive
+	 * @return
+	 */
+	private IModel<List<ProviderResult>> getProviderResultsModel(final Archive archive) {
+
+		return new LoadableDetachableModel<List<ProviderResult>>() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected List<ProviderResult> load() {
+				return ShowArchives.this.dataProvider.getProviderResults(archive.getArchiveId());
+			}
+		};
+	}
+
 	/**
 	 * Get name of file
 	 *
@@ -253,13 +291,4 @@ public class ShowArchives extends Panel {
 		return null;
 	}
 
-	/**
-	 * Convenience method to get the list of archives
-	 *
-	 * @return
-	 */
-	private void getArchives() {
-		this.archives = this.businessService.getArchives(this.siteId, this.max);
-	}
-
 }